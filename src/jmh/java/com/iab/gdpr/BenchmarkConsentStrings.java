@@ -0,0 +1,206 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Builds realistic consent strings for the benchmarks. Vendor sections are generated as runs of consecutive vendor
+ * ids, the way CMPs tend to produce them, and can be written either as a bit field or as a range section.
+ */
+final class BenchmarkConsentStrings {
+	private static final long CREATED = 15864213160L;
+	private static final long UPDATED = 15864213170L;
+
+	private BenchmarkConsentStrings() {
+	}
+
+	/**
+	 * @return a version 1 consent string whose vendor consents cover up to maxVendorId
+	 */
+	static String v1(int maxVendorId, boolean rangeEncoding, long seed) {
+		Random random = new Random(seed);
+		BitWriter bits = new BitWriter();
+		bits.write(1, 6);
+		bits.write(CREATED, 36);
+		bits.write(UPDATED, 36);
+		bits.write(10, 12);
+		bits.write(22, 12);
+		bits.write(0, 6);
+		bits.write(4, 6).write(13, 6);
+		bits.write(150, 12);
+		bits.write(0xF80000, 24);
+		bits.write(maxVendorId, 16);
+		boolean[] consents = vendorRuns(maxVendorId, random);
+		if (rangeEncoding) {
+			bits.write(1, 1);
+			// default consent of 0, the entries list the consented vendors
+			bits.write(0, 1);
+			writeRangeEntries(bits, consents);
+		} else {
+			bits.write(0, 1);
+			writeBitField(bits, consents);
+		}
+		return bits.toBase64();
+	}
+
+	/**
+	 * @return a version 2 TC string whose vendor sections cover up to maxVendorId, optionally followed by a
+	 *      disclosed vendors and a publisher TC segment
+	 */
+	static String v2(int maxVendorId, boolean rangeEncoding, boolean withSegments, long seed) {
+		Random random = new Random(seed);
+		BitWriter core = new BitWriter();
+		core.write(2, 6);
+		core.write(CREATED, 36);
+		core.write(UPDATED, 36);
+		core.write(300, 12);
+		core.write(2, 12);
+		core.write(1, 6);
+		core.write(4, 6).write(13, 6);
+		core.write(48, 12);
+		core.write(2, 6);
+		core.write(0, 1);
+		core.write(0, 1);
+		core.write(0x800, 12);
+		core.write(0xFFC000, 24);
+		core.write(0x7BC000, 24);
+		core.write(0, 1);
+		core.write(3, 6).write(4, 6);
+		writeVendorSection(core, vendorRuns(maxVendorId, random), rangeEncoding);
+		writeVendorSection(core, vendorRuns(maxVendorId, random), rangeEncoding);
+		// two publisher restrictions
+		core.write(2, 12);
+		for (int purposeId : new int[] { 2, 7 }) {
+			core.write(purposeId, 6);
+			core.write(1, 2);
+			writeRangeEntries(core, vendorRuns(maxVendorId, random));
+		}
+		if (!withSegments) {
+			return core.toBase64();
+		}
+
+		BitWriter disclosed = new BitWriter();
+		disclosed.write(1, 3);
+		writeVendorSection(disclosed, vendorRuns(maxVendorId, random), rangeEncoding);
+
+		BitWriter publisherTc = new BitWriter();
+		publisherTc.write(3, 3);
+		publisherTc.write(0xF00000, 24);
+		publisherTc.write(0x0F0000, 24);
+		publisherTc.write(2, 6);
+		publisherTc.write(3, 2);
+		publisherTc.write(1, 2);
+		return core.toBase64() + "." + disclosed.toBase64() + "." + publisherTc.toBase64();
+	}
+
+	/**
+	 * @return count vendor ids between 1 and maxVendorId, in random order
+	 */
+	static int[] vendorIds(int count, int maxVendorId, long seed) {
+		Random random = new Random(seed);
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = 1 + random.nextInt(maxVendorId);
+		}
+		return ids;
+	}
+
+	/**
+	 * @return sorted, disjoint range entries over 1..65535
+	 */
+	static RangeEntry[] rangeEntries(int count, long seed) {
+		Random random = new Random(seed);
+		int stride = 65535 / count;
+		RangeEntry[] entries = new RangeEntry[count];
+		for (int i = 0; i < count; i++) {
+			int start = 1 + i * stride;
+			entries[i] = new RangeEntry(start, start + random.nextInt(Math.max(stride - 1, 1)));
+		}
+		return entries;
+	}
+
+	// alternating runs of consented and not consented vendors; index 0 stands for vendor 1
+	private static boolean[] vendorRuns(int maxVendorId, Random random) {
+		boolean[] consents = new boolean[maxVendorId];
+		boolean consented = random.nextBoolean();
+		for (int i = 0; i < maxVendorId;) {
+			int run = Math.min(1 + random.nextInt(20), maxVendorId - i);
+			Arrays.fill(consents, i, i + run, consented);
+			consented = !consented;
+			i += run;
+		}
+		return consents;
+	}
+
+	private static void writeVendorSection(BitWriter bits, boolean[] vendors, boolean rangeEncoding) {
+		bits.write(vendors.length, 16);
+		bits.write(rangeEncoding ? 1 : 0, 1);
+		if (rangeEncoding) {
+			writeRangeEntries(bits, vendors);
+		} else {
+			writeBitField(bits, vendors);
+		}
+	}
+
+	private static void writeBitField(BitWriter bits, boolean[] vendors) {
+		for (boolean vendor : vendors) {
+			bits.write(vendor ? 1 : 0, 1);
+		}
+	}
+
+	private static void writeRangeEntries(BitWriter bits, boolean[] vendors) {
+		BitWriter entries = new BitWriter();
+		int numEntries = 0;
+		for (int i = 0; i < vendors.length; i++) {
+			if (!vendors[i]) {
+				continue;
+			}
+			int end = i;
+			while (end + 1 < vendors.length && vendors[end + 1]) {
+				end++;
+			}
+			if (end == i) {
+				entries.write(0, 1).write(i + 1, 16);
+			} else {
+				entries.write(1, 1).write(i + 1, 16).write(end + 1, 16);
+			}
+			numEntries++;
+			i = end;
+		}
+		bits.write(numEntries, 12);
+		bits.append(entries);
+	}
+
+	private static final class BitWriter {
+		private byte[] bytes = new byte[64];
+		private int length;
+
+		BitWriter write(long value, int size) {
+			for (int i = size - 1; i >= 0; i--) {
+				writeBit(((value >>> i) & 1) != 0);
+			}
+			return this;
+		}
+
+		void append(BitWriter other) {
+			for (int i = 0; i < other.length; i++) {
+				writeBit((other.bytes[i >>> 3] & (0x80 >>> (i & 7))) != 0);
+			}
+		}
+
+		private void writeBit(boolean bit) {
+			if ((length >>> 3) == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			if (bit) {
+				bytes[length >>> 3] |= 0x80 >>> (length & 7);
+			}
+			length++;
+		}
+
+		String toBase64() {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, (length + 7) >>> 3));
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.iab.gdpr;
+
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field extraction from a decoded byte array versus straight from the base64 text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitsBenchmark {
+	@Param({ "bytes", "base64" })
+	public String source;
+
+	private Bits bits;
+
+	@Setup
+	public void setUp() throws ParseException {
+		String consentString = BenchmarkConsentStrings.v2(500, false, false, 1);
+		if ("bytes".equals(source)) {
+			bits = new Bits(Base64.getUrlDecoder().decode(consentString));
+		} else {
+			bits = new Base64Bits(consentString);
+		}
+	}
+
+	@Benchmark
+	public int getInt() throws ParseException {
+		// cmp id
+		return bits.getInt(78, 12);
+	}
+
+	@Benchmark
+	public long getLong() throws ParseException {
+		// created timestamp
+		return bits.getLong(6, 36);
+	}
+
+	@Benchmark
+	public String getSixBitString() throws ParseException {
+		// consent language
+		return bits.getSixBitString(108, 12);
+	}
+}
@@ -0,0 +1,54 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filtering strings on their CMP and vendor list version: decoding the whole string, against its header only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentHeaderBenchmark {
+	@Param({ "50", "500" })
+	public int vendors;
+
+	private String consentString;
+
+	@Setup
+	public void setUp() {
+		consentString = BenchmarkConsentStrings.v2(vendors, false, true, 1);
+	}
+
+	@Benchmark
+	public int fullDecode() {
+		ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+		return consentInfo.getCmpId() + consentInfo.getVendorListVersion();
+	}
+
+	@Benchmark
+	public int lazyDecode() {
+		ConsentInfo consentInfo = ConsentInfoDecoder.decodeLazily(consentString);
+		return consentInfo.getCmpId() + consentInfo.getVendorListVersion();
+	}
+
+	@Benchmark
+	public int headerOnly() {
+		ConsentHeader header = ConsentInfoDecoder.decodeHeader(consentString);
+		return header.getCmpId() + header.getVendorListVersion();
+	}
+}
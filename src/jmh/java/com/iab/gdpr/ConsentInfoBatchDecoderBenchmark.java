@@ -0,0 +1,56 @@
+package com.iab.gdpr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Batch decode on the common pool against decoding the batch one string after the other on the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentInfoBatchDecoderBenchmark {
+	@Param({ "100", "10000" })
+	public int batchSize;
+
+	private List<String> consentStrings;
+
+	@Setup
+	public void setUp() {
+		consentStrings = new ArrayList<String>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			consentStrings.add(i % 2 == 0 ? BenchmarkConsentStrings.v1(500, i % 4 == 0, i)
+					: BenchmarkConsentStrings.v2(500, i % 3 == 0, true, i));
+		}
+	}
+
+	@Benchmark
+	public List<ConsentInfo> decodeOneByOne() {
+		List<ConsentInfo> decoded = new ArrayList<ConsentInfo>(consentStrings.size());
+		for (String consentString : consentStrings) {
+			decoded.add(ConsentInfoDecoder.decode(consentString));
+		}
+		return decoded;
+	}
+
+	@Benchmark
+	public List<ConsentInfo> decodeAll() {
+		return ConsentInfoDecoder.decodeAll(consentStrings);
+	}
+}
@@ -0,0 +1,60 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Version detection and version dispatching decode, into new parsers or into a reused instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentInfoDecoderBenchmark {
+	@Param({ "1", "2" })
+	public int version;
+
+	@Param({ "50", "500", "2000" })
+	public int vendors;
+
+	private String consentString;
+
+	@Setup
+	public void setUp() {
+		consentString = version == 1 ? BenchmarkConsentStrings.v1(vendors, false, 1)
+				: BenchmarkConsentStrings.v2(vendors, false, true, 1);
+	}
+
+	@Benchmark
+	public int getVersion() {
+		return ConsentInfoDecoder.getVersion(consentString);
+	}
+
+	@Benchmark
+	public ConsentInfo decode() {
+		return ConsentInfoDecoder.decode(consentString);
+	}
+
+	@Benchmark
+	public boolean decodeInto(Target target) {
+		return ConsentInfoDecoder.decodeInto(consentString, target.consentInfo);
+	}
+
+	@State(Scope.Thread)
+	public static class Target {
+		final MutableConsentInfo consentInfo = new MutableConsentInfo();
+	}
+}
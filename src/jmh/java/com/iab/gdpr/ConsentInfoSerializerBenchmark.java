@@ -0,0 +1,68 @@
+package com.iab.gdpr;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a stored consent back and looking a vendor up in it: decoding the base64 string again, against reading its
+ * binary form into a reused instance, or querying the binary form in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentInfoSerializerBenchmark {
+	@Param({ "500", "2000" })
+	public int vendors;
+
+	@Param({ "false", "true" })
+	public boolean rangeEncoding;
+
+	private String consentString;
+	private ByteBuffer serialized;
+	private int vendorId;
+
+	@Setup
+	public void setUp() {
+		consentString = BenchmarkConsentStrings.v2(vendors, rangeEncoding, true, 1);
+		serialized = ByteBuffer.wrap(new ConsentInfoSerializer().serialize(ConsentInfoDecoder.decode(consentString)));
+		vendorId = vendors / 3;
+	}
+
+	@Benchmark
+	public boolean parseString() throws ParseException {
+		return new ConsentStringParserV2(consentString).isVendorConsented(vendorId);
+	}
+
+	@Benchmark
+	public boolean deserializeInto(Target target) {
+		serialized.clear();
+		ConsentInfoSerializer.deserializeInto(serialized, target.consentInfo);
+		return target.consentInfo.isVendorConsented(vendorId);
+	}
+
+	@Benchmark
+	public boolean readInPlace() {
+		return new BinaryConsentInfo(serialized, 0).isVendorConsented(vendorId);
+	}
+
+	@State(Scope.Thread)
+	public static class Target {
+		final MutableConsentInfo consentInfo = new MutableConsentInfo();
+	}
+}
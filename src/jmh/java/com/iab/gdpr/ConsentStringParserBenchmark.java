@@ -0,0 +1,55 @@
+package com.iab.gdpr;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Version 1 construction and vendor lookups, with the vendors written as a bit field or as ranges.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentStringParserBenchmark {
+	@Param({ "50", "500", "2000" })
+	public int vendors;
+
+	@Param({ "false", "true" })
+	public boolean rangeEncoding;
+
+	private String consentString;
+	private ConsentStringParser parser;
+	private int[] vendorIds;
+	private int next;
+
+	@Setup
+	public void setUp() throws ParseException {
+		consentString = BenchmarkConsentStrings.v1(vendors, rangeEncoding, 1);
+		parser = new ConsentStringParser(consentString);
+		vendorIds = BenchmarkConsentStrings.vendorIds(1024, vendors, 2);
+	}
+
+	@Benchmark
+	public ConsentStringParser construct() throws ParseException {
+		return new ConsentStringParser(consentString);
+	}
+
+	@Benchmark
+	public boolean isVendorConsented() {
+		return parser.isVendorConsented(vendorIds[next++ & (vendorIds.length - 1)]);
+	}
+}
@@ -0,0 +1,83 @@
+package com.iab.gdpr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Version 2 construction and vendor lookups, with the vendor sections written as bit fields or as ranges, with and
+ * without the optional segments. A string held in a direct buffer is decoded in place, or copied into a string first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsentStringParserV2Benchmark {
+	@Param({ "50", "500", "2000" })
+	public int vendors;
+
+	@Param({ "false", "true" })
+	public boolean rangeEncoding;
+
+	@Param({ "false", "true" })
+	public boolean segments;
+
+	private String consentString;
+	private ByteBuffer buffer;
+	private ConsentStringParserV2 parser;
+	private int[] vendorIds;
+	private int next;
+
+	@Setup
+	public void setUp() throws ParseException {
+		consentString = BenchmarkConsentStrings.v2(vendors, rangeEncoding, segments, 1);
+		parser = new ConsentStringParserV2(consentString);
+		byte[] bytes = consentString.getBytes(StandardCharsets.US_ASCII);
+		buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		vendorIds = BenchmarkConsentStrings.vendorIds(1024, vendors, 2);
+	}
+
+	@Benchmark
+	public ConsentStringParserV2 construct() throws ParseException {
+		return new ConsentStringParserV2(consentString);
+	}
+
+	@Benchmark
+	public ConsentStringParserV2 constructFromBuffer() throws ParseException {
+		return new ConsentStringParserV2(AsciiChars.of(buffer));
+	}
+
+	@Benchmark
+	public ConsentStringParserV2 constructFromBufferCopy() throws ParseException {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new ConsentStringParserV2(new String(bytes, StandardCharsets.US_ASCII));
+	}
+
+	@Benchmark
+	public boolean constructLazilyAndQueryOneVendor() throws ParseException {
+		ConsentStringParserV2 lazy = new ConsentStringParserV2(consentString, true);
+		return lazy.isVendorConsented(vendorIds[next++ & (vendorIds.length - 1)]) && lazy.isPurposeConsented(1);
+	}
+
+	@Benchmark
+	public boolean isVendorConsented() {
+		return parser.isVendorConsented(vendorIds[next++ & (vendorIds.length - 1)]);
+	}
+}
@@ -0,0 +1,77 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vendor lookups in a range section, as a list of entries and as the coalesced set the parsers keep.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RangeLookupBenchmark {
+	@Param({ "1", "16", "256", "4095" })
+	public int rangeCount;
+
+	private List<RangeEntry> entries;
+	private RangeSet rangeSet;
+	private int[] vendorIds;
+	// an auction's worth of bidders, sorted as the batch lookups prefer
+	private int[] bidderIds;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		entries = Arrays.asList(BenchmarkConsentStrings.rangeEntries(rangeCount, 1));
+		rangeSet = RangeSet.of(entries);
+		vendorIds = BenchmarkConsentStrings.vendorIds(1024, 65535, 2);
+		bidderIds = Arrays.copyOf(vendorIds, 256);
+		Arrays.sort(bidderIds);
+	}
+
+	@Benchmark
+	public boolean isVendorIdInRange() {
+		return RangeEntry.isVendorIdInRange(nextVendorId(), entries);
+	}
+
+	@Benchmark
+	public boolean rangeSetContains() {
+		return rangeSet.contains(nextVendorId());
+	}
+
+	@Benchmark
+	public long[] rangeSetContainsEachSorted() {
+		return rangeSet.containsEach(bidderIds);
+	}
+
+	@Benchmark
+	public long[] rangeSetContainsOneByOne() {
+		long[] result = new long[bidderIds.length >>> 6];
+		for (int i = 0; i < bidderIds.length; i++) {
+			if (rangeSet.contains(bidderIds[i])) {
+				result[i >>> 6] |= 1L << i;
+			}
+		}
+		return result;
+	}
+
+	private int nextVendorId() {
+		return vendorIds[next++ & (vendorIds.length - 1)];
+	}
+}
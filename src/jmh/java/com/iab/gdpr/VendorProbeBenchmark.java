@@ -0,0 +1,55 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Answering for one vendor and the first purposes: decoding the string and querying it, against probing the string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VendorProbeBenchmark {
+	@Param({ "500", "2000" })
+	public int vendors;
+
+	@Param({ "false", "true" })
+	public boolean rangeEncoding;
+
+	private String consentString;
+	private int vendorId;
+
+	@Setup
+	public void setUp() {
+		consentString = BenchmarkConsentStrings.v2(vendors, rangeEncoding, true, 1);
+		vendorId = vendors / 3;
+	}
+
+	@Benchmark
+	public boolean decodeAndQuery() {
+		ConsentInfo consentInfo = ConsentInfoDecoder.decodeLazily(consentString);
+		return consentInfo.isVendorConsented(vendorId) && consentInfo.isVendorLegitInterestEstablished(vendorId)
+				&& consentInfo.isPurposeConsented(1);
+	}
+
+	@Benchmark
+	public boolean probe() {
+		int probe = ConsentInfoDecoder.probeVendor(consentString, vendorId);
+		return VendorProbe.isVendorConsented(probe) && VendorProbe.isVendorLegitInterestEstablished(probe)
+				&& VendorProbe.isPurposeConsented(probe, 1);
+	}
+}
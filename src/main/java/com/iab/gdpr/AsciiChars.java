@@ -0,0 +1,108 @@
+package com.iab.gdpr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ASCII bytes of a consent string seen as characters, so that a string held in a network buffer can be decoded
+ * where it is, without first being copied into a {@link String}. Every byte is one character; bytes outside ASCII
+ * read as characters outside the base64 alphabet.
+ *
+ * The bytes are read with absolute gets only, so the position and limit of a buffer may change afterwards. They are
+ * not copied: they must not change for as long as the characters, or a {@link ConsentInfo} decoded from them, are
+ * used. {@link #toString()} copies them into a new string.
+ */
+public final class AsciiChars implements CharSequence {
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	private AsciiChars(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @param buffer
+	 *      the buffer holding the characters between its position and its limit
+	 * @return the characters
+	 */
+	public static AsciiChars of(ByteBuffer buffer) {
+		return new AsciiChars(buffer, buffer.position(), buffer.remaining());
+	}
+
+	/**
+	 * @param bytes
+	 *      the array holding the characters
+	 * @param offset
+	 *      the index of the first character in the array
+	 * @param length
+	 *      the number of characters
+	 * @return the characters
+	 * @throws IndexOutOfBoundsException
+	 *      when the characters do not fit in the array
+	 */
+	public static AsciiChars of(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException(
+					"offset " + offset + " and length " + length + " do not fit in " + bytes.length + " bytes");
+		}
+		return new AsciiChars(ByteBuffer.wrap(bytes), offset, length);
+	}
+
+	/**
+	 * @param buffer
+	 *      the buffer holding the characters, whose position and limit are ignored
+	 * @param offset
+	 *      the index of the first character in the buffer
+	 * @param length
+	 *      the number of characters
+	 * @return the characters
+	 */
+	static AsciiChars of(ByteBuffer buffer, int offset, int length) {
+		return new AsciiChars(buffer, offset, length);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + " out of " + length + " characters");
+		}
+		return (char) (buffer.get(offset + index) & 0xFF);
+	}
+
+	/**
+	 * {@inheritDoc} The characters are not copied.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException("[" + start + ", " + end + ") out of " + length + " characters");
+		}
+		return new AsciiChars(buffer, offset + start, end - start);
+	}
+
+	/**
+	 * @return a new string of the characters
+	 */
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
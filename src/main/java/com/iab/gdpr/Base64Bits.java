@@ -0,0 +1,149 @@
+package com.iab.gdpr;
+
+import java.text.ParseException;
+
+/**
+ * A {@link Bits} that reads its fields straight out of a url and filename safe base64 string. Each character carries
+ * six bits, so a field is assembled from the few characters that cover it through a lookup table, without decoding
+ * the string into an intermediate byte array first.
+ *
+ * The length of the bit string is that of the bytes {@link java.util.Base64#getUrlDecoder()} would produce, so both
+ * interpret a string the same way. Padding and length are checked up front, and characters are checked against the
+ * alphabet as fields are read.
+ */
+public class Base64Bits extends Bits {
+	// a field wider than this can span more characters than a long holds
+	private static final int MAX_SINGLE_READ_SIZE = 58;
+
+	private final CharSequence chars;
+	private final int start;
+
+	/**
+	 * @param chars:
+	 *            a url safe base64 string, padded or not
+	 * @throws ParseException
+	 *             when the padding or the length of the string is invalid
+	 */
+	public Base64Bits(CharSequence chars) throws ParseException {
+		this(chars, 0, chars.length());
+	}
+
+	/**
+	 * @param chars:
+	 *            holds a url safe base64 segment, padded or not
+	 * @param start:
+	 *            the index of the first character of the segment
+	 * @param end:
+	 *            the index past the last character of the segment
+	 * @throws ParseException
+	 *             when the padding or the length of the segment is invalid
+	 */
+	public Base64Bits(CharSequence chars, int start, int end) throws ParseException {
+		this(chars, start, end, null);
+	}
+
+	/**
+	 * for decoders that do not throw, see {@link Bits#Bits(byte[], DecodeStatus)}. A segment whose padding or length
+	 * is invalid records the failure, at the bit of its first invalid character, and holds no bits.
+	 *
+	 * @param chars:
+	 *            holds a url safe base64 segment, padded or not
+	 * @param start:
+	 *            the index of the first character of the segment
+	 * @param end:
+	 *            the index past the last character of the segment
+	 * @param status:
+	 *            where failures are recorded, or null to throw them
+	 * @throws ParseException
+	 *             when the padding or the length of the segment is invalid, unless failures are recorded
+	 */
+	Base64Bits(CharSequence chars, int start, int end, DecodeStatus status) throws ParseException {
+		super(bitLength(chars, start, end, status), status);
+		this.chars = chars;
+		this.start = start;
+	}
+
+	private static int bitLength(CharSequence chars, int start, int end, DecodeStatus status)
+			throws ParseException {
+		int dataEnd = Base64Url.dataEnd(chars, start, end);
+		if (dataEnd != end && (end - start) % 4 != 0) {
+			return malformed("base64 padding does not complete the last unit", dataEnd, status);
+		}
+		int dataChars = dataEnd - start;
+		if (dataChars % 4 == 1) {
+			return malformed("last base64 unit does not have enough valid bits", dataEnd - 1, status);
+		}
+		// whole bytes only, like a decoded byte array
+		return (dataChars * 6) & ~7;
+	}
+
+	/**
+	 * @return an empty bit length, once the failure is recorded
+	 * @throws DecodeException
+	 *             carrying the index of the invalid character, unless failures are recorded
+	 */
+	private static int malformed(String message, int charIndex, DecodeStatus status) throws DecodeException {
+		if (status == null) {
+			throw new DecodeException(message, charIndex, DecodeFailureReason.MALFORMED_BASE64);
+		}
+		status.fail(DecodeFailureReason.MALFORMED_BASE64, charIndex * 6);
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	long read(int startInclusive, int size) throws ParseException {
+		if (size > MAX_SINGLE_READ_SIZE) {
+			int highSize = size - Integer.SIZE;
+			return (read(startInclusive, highSize) << Integer.SIZE) | read(startInclusive + highSize, Integer.SIZE);
+		}
+		long value = read(chars, start, startInclusive, size);
+		if (value < 0) {
+			fail("illegal base64 character", startInclusive, DecodeFailureReason.MALFORMED_BASE64);
+			return 0;
+		}
+		return value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	int stringOffset(int bit) {
+		return start * 6 + bit;
+	}
+
+	/**
+	 * reads a field of at most 58 bits out of a base64 segment, without bounds checking and without throwing, for
+	 * decoders that report errors themselves
+	 *
+	 * @param chars:
+	 *            holds the base64 segment
+	 * @param start:
+	 *            the index of the first character of the segment
+	 * @param startInclusive:
+	 *            the first bit of the field, relative to the segment
+	 * @param size:
+	 *            the number of bits in the field, between 1 and 58
+	 * @return the field as a big endian value, or -1 when one of its characters is not in the base64url alphabet
+	 */
+	static long read(CharSequence chars, int start, int startInclusive, int size) {
+		int endExclusive = startInclusive + size;
+		int firstChar = startInclusive / 6;
+		int lastChar = (endExclusive - 1) / 6;
+		long value = 0;
+		int check = 0;
+		for (int i = start + firstChar, ii = start + lastChar; i <= ii; i++) {
+			int sixBits = Base64Url.valueOf(chars.charAt(i));
+			check |= sixBits;
+			value = (value << 6) | sixBits;
+		}
+		if (check < 0) {
+			return -1;
+		}
+		int trailing = (lastChar + 1) * 6 - endExclusive;
+		return (value >>> trailing) & (-1L >>> (Long.SIZE - size));
+	}
+}
@@ -0,0 +1,85 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+
+/**
+ * The url and filename safe base64 alphabet that consent strings are encoded with. Every character carries six bits,
+ * so fields can be located in the encoded string without decoding it first.
+ */
+final class Base64Url {
+	static final char PADDING = '=';
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+	// maps a character to its six bit value, or -1 when it is not part of the alphabet
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		Arrays.fill(VALUES, (byte) -1);
+		for (int i = 0; i < ALPHABET.length; i++) {
+			VALUES[ALPHABET[i]] = (byte) i;
+		}
+	}
+
+	private Base64Url() {
+	}
+
+	/**
+	 * @return the six bit value of the character, or -1 when it is not part of the url safe alphabet
+	 */
+	static int valueOf(char c) {
+		return c < 128 ? VALUES[c] : -1;
+	}
+
+	/**
+	 * @return the character carrying the six bit value
+	 */
+	static char charOf(int value) {
+		return ALPHABET[value & 0x3F];
+	}
+
+	/**
+	 * @return the index of the first '.' at or after start, or end when the segment runs to the end
+	 */
+	static int segmentEnd(CharSequence s, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == '.') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return the end of the data characters of the segment [start, end), that is end less any padding
+	 */
+	static int dataEnd(CharSequence s, int start, int end) {
+		int dataEnd = end;
+		while (dataEnd > start && end - dataEnd < 2 && s.charAt(dataEnd - 1) == PADDING) {
+			dataEnd--;
+		}
+		return dataEnd;
+	}
+
+	/**
+	 * Checks a segment the way {@link java.util.Base64#getUrlDecoder()} would: every data character must be in the
+	 * alphabet, padding must complete the last four character unit, and the last unit must hold at least one byte.
+	 *
+	 * @return whether the segment [start, end) is well formed base64url
+	 */
+	static boolean isValid(CharSequence s, int start, int end) {
+		int dataEnd = dataEnd(s, start, end);
+		if (dataEnd != end && (end - start) % 4 != 0) {
+			return false;
+		}
+		if ((dataEnd - start) % 4 == 1) {
+			return false;
+		}
+		for (int i = start; i < dataEnd; i++) {
+			if (valueOf(s.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,613 @@
+package com.iab.gdpr;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ConsentInfo} answering its queries straight from the binary form written by a {@link ConsentInfoSerializer},
+ * without copying it: a vendor is looked up with one read of a bitmap word, or with a binary search of a run list.
+ * Only the offsets of the vendor sets are kept, which are found when the instance is created.
+ *
+ * The binary form is read with absolute gets only, so the position and limit of the buffer may change afterwards, and
+ * the instance may be shared between threads, for as long as the bytes themselves do not change.
+ */
+public final class BinaryConsentInfo implements ConsentInfo {
+	private static final int[] NO_OFFSETS = new int[0];
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+	private final int vendorConsentsOffset;
+	private final int vendorLegitInterestsOffset;
+	private final int disclosedVendorsOffset;
+	private final int allowedVendorsOffset;
+	// the offsets of the restrictions, each the purpose id byte, followed by the type byte and the vendors
+	private final int[] restrictionOffsets;
+
+	// created on first use
+	private volatile String consentString;
+
+	/**
+	 * @param buffer
+	 *      the buffer holding the binary form, at its position
+	 * @throws IllegalArgumentException
+	 *      when the binary form is malformed, or of a format version this class does not know
+	 */
+	public BinaryConsentInfo(ByteBuffer buffer) {
+		this(buffer, buffer.position());
+	}
+
+	/**
+	 * @param buffer
+	 *      the buffer holding the binary form
+	 * @param offset
+	 *      the offset of the binary form in the buffer
+	 * @throws IllegalArgumentException
+	 *      when the binary form is malformed, or of a format version this class does not know
+	 */
+	public BinaryConsentInfo(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = ConsentInfoSerializer.length(buffer, offset);
+		if (length < 0) {
+			throw new IllegalArgumentException("malformed binary consent at " + offset);
+		}
+		int end = offset + length;
+		vendorConsentsOffset = offset + ConsentInfoSerializer.HEADER_SIZE;
+		vendorLegitInterestsOffset = checkedIdSetEnd(vendorConsentsOffset, end);
+		disclosedVendorsOffset = checkedIdSetEnd(vendorLegitInterestsOffset, end);
+		allowedVendorsOffset = checkedIdSetEnd(disclosedVendorsOffset, end);
+		int position = checkedIdSetEnd(allowedVendorsOffset, end);
+		int restrictionCount = getUnsignedShort(ConsentInfoSerializer.RESTRICTION_COUNT_OFFSET);
+		restrictionOffsets = restrictionCount == 0 ? NO_OFFSETS : new int[restrictionCount];
+		for (int i = 0; i < restrictionCount; i++) {
+			restrictionOffsets[i] = position;
+			position = checkedIdSetEnd(position + 2, end);
+		}
+		if (position != end) {
+			throw new IllegalArgumentException("malformed binary consent at " + offset);
+		}
+	}
+
+	private int checkedIdSetEnd(int setOffset, int end) {
+		int setEnd = ConsentInfoSerializer.idSetEnd(buffer, setOffset, end);
+		if (setEnd < 0) {
+			throw new IllegalArgumentException("malformed binary consent at " + offset);
+		}
+		return setEnd;
+	}
+
+	/**
+	 * @return the length of the binary form, in bytes
+	 */
+	public int getSerializedLength() {
+		return length;
+	}
+
+	private int getUnsignedShort(int fieldOffset) {
+		return buffer.getShort(offset + fieldOffset) & 0xFFFF;
+	}
+
+	private int mask(int fieldOffset, int size) {
+		return (int) IdMasks.fromField(buffer.getInt(offset + fieldOffset), size);
+	}
+
+	private boolean isFlagSet(int flag) {
+		return (buffer.get(offset + ConsentInfoSerializer.FLAGS_OFFSET) & flag) != 0;
+	}
+
+	/**
+	 * {@inheritDoc} The binary form does not keep the string, which is encoded again on first use, see
+	 * {@link ConsentStringEncoder}.
+	 */
+	@Override
+	public String getConsentString() {
+		String s = consentString;
+		if (s == null) {
+			consentString = s = new ConsentStringEncoder().encode(this);
+		}
+		return s;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getVersion() {
+		return buffer.get(offset + ConsentInfoSerializer.VERSION_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Instant getConsentRecordCreated() {
+		return Instant.ofEpochMilli(getConsentRecordCreatedDeciseconds() * 100);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordCreatedDeciseconds() {
+		return buffer.getLong(offset + ConsentInfoSerializer.CREATED_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Instant getConsentRecordLastUpdated() {
+		return Instant.ofEpochMilli(getConsentRecordLastUpdatedDeciseconds() * 100);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordLastUpdatedDeciseconds() {
+		return buffer.getLong(offset + ConsentInfoSerializer.LAST_UPDATED_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCmpId() {
+		return getUnsignedShort(ConsentInfoSerializer.CMP_ID_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCmpVersion() {
+		return getUnsignedShort(ConsentInfoSerializer.CMP_VERSION_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentScreen() {
+		return buffer.get(offset + ConsentInfoSerializer.CONSENT_SCREEN_OFFSET) & 0xFF;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getConsentLanguage() {
+		return TwoLetterCodes.toString(getConsentLanguageCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentLanguageCode() {
+		return getUnsignedShort(ConsentInfoSerializer.CONSENT_LANGUAGE_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getVendorListVersion() {
+		return getUnsignedShort(ConsentInfoSerializer.VENDOR_LIST_VERSION_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeConsented(int purposeId) {
+		return MutableConsentInfo.isSet(buffer.getInt(offset + ConsentInfoSerializer.PURPOSE_CONSENTS_OFFSET),
+				ConsentStringParserV2.PURPOSES_CONSENT_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeConsented(Purpose purpose) {
+		if (purpose.getVersion() != getVersion()) {
+			return false;
+		}
+		return isPurposeConsented(purpose.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Purpose> getConsentedPurposes() {
+		return PurposeSets.list(getVersion(), getPurposeConsentsMask());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeConsentsMask() {
+		return mask(ConsentInfoSerializer.PURPOSE_CONSENTS_OFFSET, ConsentStringParserV2.PURPOSES_CONSENT_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeLegitInterestsMask() {
+		return mask(ConsentInfoSerializer.PURPOSE_LEGIT_INTERESTS_OFFSET,
+				ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSpecialFeatureOptInsMask() {
+		return (int) IdMasks.fromField(getUnsignedShort(ConsentInfoSerializer.FEATURE_OPT_INS_OFFSET),
+				ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeConsentsMask() {
+		return mask(ConsentInfoSerializer.PUB_PURPOSE_CONSENTS_OFFSET, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeLegitInterestsMask() {
+		return mask(ConsentInfoSerializer.PUB_PURPOSE_LEGIT_INTERESTS_OFFSET,
+				ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeConsentsMask() {
+		return IdMasks.fromField(buffer.getLong(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_CONSENTS_OFFSET),
+				buffer.get(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_COUNT_OFFSET));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeLegitInterestsMask() {
+		return IdMasks.fromField(
+				buffer.getLong(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_LEGIT_INTERESTS_OFFSET),
+				buffer.get(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_COUNT_OFFSET));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorConsented(int vendorId) {
+		return contains(vendorConsentsOffset, vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTcfPolicyVersion() {
+		return buffer.get(offset + ConsentInfoSerializer.TCF_POLICY_VERSION_OFFSET) & 0xFF;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isServiceSpecific() {
+		return isFlagSet(ConsentInfoSerializer.SERVICE_SPECIFIC);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean useNonStandardStacks() {
+		return isFlagSet(ConsentInfoSerializer.NON_STANDARD_STACKS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isFeatureOptioned(int featureId) {
+		return MutableConsentInfo.isSet(getUnsignedShort(ConsentInfoSerializer.FEATURE_OPT_INS_OFFSET),
+				ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE, featureId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isFeatureOptioned(SpecialFeature feature) {
+		if (feature.getVersion() != getVersion()) {
+			return false;
+		}
+		return isFeatureOptioned(feature.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeLegitInterestEstablished(int purposeId) {
+		return MutableConsentInfo.isSet(buffer.getInt(offset + ConsentInfoSerializer.PURPOSE_LEGIT_INTERESTS_OFFSET),
+				ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeLegitInterestEstablished(Purpose purpose) {
+		if (purpose.getVersion() != getVersion()) {
+			return false;
+		}
+		return isPurposeLegitInterestEstablished(purpose.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeOneDisclosed() {
+		return isFlagSet(ConsentInfoSerializer.PURPOSE_ONE_DISCLOSED);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getPublisherCc() {
+		return TwoLetterCodes.toString(getPublisherCcCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPublisherCcCode() {
+		if (getVersion() != 2) {
+			return TwoLetterCodes.NONE;
+		}
+		return getUnsignedShort(ConsentInfoSerializer.PUBLISHER_CC_OFFSET);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorLegitInterestEstablished(int vendorId) {
+		return contains(vendorLegitInterestsOffset, vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorDisclosed(int vendorId) {
+		return contains(disclosedVendorsOffset, vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorAllowed(int vendorId) {
+		return contains(allowedVendorsOffset, vendorId);
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of the binary form.
+	 */
+	@Override
+	public IdSet getVendorConsents() {
+		return new BinaryIdSet(vendorConsentsOffset);
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of the binary form.
+	 */
+	@Override
+	public IdSet getVendorLegitInterests() {
+		return new BinaryIdSet(vendorLegitInterestsOffset);
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of the binary form.
+	 */
+	@Override
+	public IdSet getDisclosedVendors() {
+		return new BinaryIdSet(disclosedVendorsOffset);
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of the binary form.
+	 */
+	@Override
+	public IdSet getAllowedVendors() {
+		return new BinaryIdSet(allowedVendorsOffset);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPubPurposesConsented(int purposeId) {
+		return MutableConsentInfo.isSet(buffer.getInt(offset + ConsentInfoSerializer.PUB_PURPOSE_CONSENTS_OFFSET),
+				ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPubPurposeLegitInterestEstablished(int purposeId) {
+		return MutableConsentInfo.isSet(
+				buffer.getInt(offset + ConsentInfoSerializer.PUB_PURPOSE_LEGIT_INTERESTS_OFFSET),
+				ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCustomPurposeConsented(int purposeId) {
+		return MutableConsentInfo.isSet(buffer.getLong(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_CONSENTS_OFFSET),
+				buffer.get(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_COUNT_OFFSET), purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCustomPurposeLegitInterestEstablished(int purposeId) {
+		return MutableConsentInfo.isSet(
+				buffer.getLong(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_LEGIT_INTERESTS_OFFSET),
+				buffer.get(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_COUNT_OFFSET), purposeId);
+	}
+
+	/**
+	 * {@inheritDoc} The entries are copied out of the binary form.
+	 */
+	@Override
+	public List<PubRestrictionEntry> getPublisherRestrictions() {
+		if (restrictionOffsets.length == 0) {
+			return Collections.emptyList();
+		}
+		List<PubRestrictionEntry> restrictions = new ArrayList<PubRestrictionEntry>(restrictionOffsets.length);
+		for (int restrictionOffset : restrictionOffsets) {
+			RangeSet.Builder vendorIds = new RangeSet.Builder(0);
+			addVendorIds(restrictionOffset + 2, vendorIds);
+			restrictions.add(new PubRestrictionEntry(buffer.get(restrictionOffset),
+					PubRestrictionEntry.RestrictionType.valueOf(buffer.get(restrictionOffset + 1)), vendorIds.build()));
+		}
+		return restrictions;
+	}
+
+	/**
+	 * {@inheritDoc} Only the restrictions of the purpose and type are read out of the binary form.
+	 */
+	@Override
+	public RangeSet getRestrictedVendors(int purposeId, PubRestrictionEntry.RestrictionType restrictionType) {
+		RangeSet.Builder vendorIds = null;
+		for (int restrictionOffset : restrictionOffsets) {
+			if (buffer.get(restrictionOffset) == purposeId
+					&& PubRestrictionEntry.RestrictionType.valueOf(buffer.get(restrictionOffset + 1)) == restrictionType) {
+				if (vendorIds == null) {
+					vendorIds = new RangeSet.Builder(0);
+				}
+				addVendorIds(restrictionOffset + 2, vendorIds);
+			}
+		}
+		return vendorIds == null ? RangeSet.EMPTY : vendorIds.build();
+	}
+
+	/**
+	 * Adds the set of vendors at the offset to the builder.
+	 */
+	private void addVendorIds(int setOffset, RangeSet.Builder vendorIds) {
+		if (buffer.get(setOffset) == ConsentInfoSerializer.RUNS) {
+			int position = setOffset + ConsentInfoSerializer.ID_SET_HEADER_SIZE;
+			for (int i = 0, ii = buffer.getShort(setOffset + 1) & 0xFFFF; i < ii; i++, position += 4) {
+				vendorIds.add(buffer.getShort(position) & 0xFFFF, buffer.getShort(position + 2) & 0xFFFF);
+			}
+		} else {
+			for (int id = 1, maxId = buffer.getShort(setOffset + 1) & 0xFFFF; id <= maxId; id++) {
+				if (contains(setOffset, id)) {
+					vendorIds.add(id, id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PubRestrictionEntry.RestrictionType getRestrictionType(int purposeId, int vendorId) {
+		PubRestrictionEntry.RestrictionType restrictionType = null;
+		for (int restrictionOffset : restrictionOffsets) {
+			if (buffer.get(restrictionOffset) == purposeId && contains(restrictionOffset + 2, vendorId)) {
+				PubRestrictionEntry.RestrictionType type = PubRestrictionEntry.RestrictionType
+						.valueOf(buffer.get(restrictionOffset + 1));
+				if (restrictionType == null || type.ordinal() < restrictionType.ordinal()) {
+					restrictionType = type;
+				}
+			}
+		}
+		return restrictionType;
+	}
+
+	/**
+	 * @return whether the set of vendors at the offset holds the id
+	 */
+	private boolean contains(int setOffset, int id) {
+		int count = buffer.getShort(setOffset + 1) & 0xFFFF;
+		int data = setOffset + ConsentInfoSerializer.ID_SET_HEADER_SIZE;
+		if (buffer.get(setOffset) == ConsentInfoSerializer.BITMAP) {
+			if (id < 1 || id > count) {
+				return false;
+			}
+			int bit = id - 1;
+			return buffer.getLong(data + ((bit >>> 6) << 3)) << (bit & 63) < 0;
+		}
+		// the last run starting at or before the id
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int start = buffer.getShort(data + (middle << 2)) & 0xFFFF;
+			if (start <= id) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high >= 0 && id <= (buffer.getShort(data + (high << 2) + 2) & 0xFFFF);
+	}
+
+	private final class BinaryIdSet implements IdSet {
+		private final int setOffset;
+
+		BinaryIdSet(int setOffset) {
+			this.setOffset = setOffset;
+		}
+
+		@Override
+		public boolean contains(int id) {
+			return BinaryConsentInfo.this.contains(setOffset, id);
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return getMaxId() == 0;
+		}
+
+		@Override
+		public int getMaxId() {
+			int count = buffer.getShort(setOffset + 1) & 0xFFFF;
+			if (buffer.get(setOffset) == ConsentInfoSerializer.BITMAP || count == 0) {
+				return count;
+			}
+			return buffer.getShort(setOffset + ConsentInfoSerializer.ID_SET_HEADER_SIZE + ((count - 1) << 2) + 2)
+					& 0xFFFF;
+		}
+	}
+}
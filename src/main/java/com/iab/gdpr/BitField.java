@@ -0,0 +1,111 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+
+/**
+ * An immutable bit field section of a consent string, where the nth bit of the section tells whether the id n is a
+ * member. The bits are kept in the big endian order of the consent string, packed into longs, so a section can be
+ * copied out of the payload a word at a time.
+ */
+public final class BitField implements IdSet {
+	public static final BitField EMPTY = new BitField(new long[0], 0);
+
+	private final long[] words;
+	private final int size;
+
+	/**
+	 * @param words:
+	 *            the bits of the section, big endian, with any bit past size cleared
+	 * @param size:
+	 *            the number of bits in the section
+	 */
+	BitField(long[] words, int size) {
+		this.words = words;
+		this.size = size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean contains(int id) {
+		int index = id - 1;
+		// the unsigned comparison rejects ids below 1 as well as ids past the end of the section
+		return Integer.compareUnsigned(index, size) < 0 && (words[index >>> 6] << (index & 63)) < 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] containsEach(int[] ids) {
+		long[] result = new long[(ids.length + 63) >>> 6];
+		for (int i = 0; i < ids.length; i++) {
+			int index = ids[i] - 1;
+			if (Integer.compareUnsigned(index, size) < 0 && (words[index >>> 6] << (index & 63)) < 0) {
+				result[i >>> 6] |= 1L << i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxId() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of bits in the section, which is also the largest id it can contain
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the ids up to 64 as a mask in which the id n is bit n - 1, see {@link IdMasks}
+	 */
+	long toMask() {
+		return words.length == 0 ? 0 : Long.reverse(words[0]);
+	}
+
+	/**
+	 * @return the number of ids in the set
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+		return cardinality;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof BitField)) {
+			return false;
+		}
+		BitField other = (BitField) o;
+		return size == other.size && Arrays.equals(words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * size + Arrays.hashCode(words);
+	}
+}
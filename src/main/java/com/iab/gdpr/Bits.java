@@ -7,13 +7,57 @@ import java.util.List;
 
 // since java.util.BitSet is inappropiate to use here--as it reversed the bit order of the consent string--we
 // implement our own bitwise operations here.
+//
+// the bytes are packed big endian into longs, so any field of up to 64 bits can be pulled out with at most two word
+// reads and a couple of shifts, and is bounds checked once per field rather than once per bit.
 public class Bits {
-	// big endian
-	private static final byte[] bytePows = { -128, 64, 32, 16, 8, 4, 2, 1 };
-	private final byte[] bytes;
+	private final long[] words;
+	private final int length;
+	// when not null, failures to read are recorded here rather than thrown, see Bits(byte[], DecodeStatus)
+	private final DecodeStatus status;
 
 	public Bits(byte[] b) {
-		this.bytes = b;
+		this(b, null);
+	}
+
+	/**
+	 * for decoders that do not throw: a field that cannot be read records the failure to the status and reads as 0,
+	 * and so does every field read after a failure
+	 *
+	 * @param b:
+	 *            the byte string
+	 * @param status:
+	 *            where failures are recorded, or null to throw them
+	 */
+	Bits(byte[] b, DecodeStatus status) {
+		this.status = status;
+		this.length = b.length * 8;
+		this.words = new long[(b.length + 7) >>> 3];
+		for (int i = 0; i < b.length; i++) {
+			words[i >>> 3] |= (b[i] & 0xFFL) << (56 - ((i & 7) << 3));
+		}
+	}
+
+	/**
+	 * for subclasses that keep the bits in another representation, and override {@link #read(int, int)}
+	 *
+	 * @param length:
+	 *            the number of bits in the bit string
+	 */
+	Bits(int length) {
+		this(length, null);
+	}
+
+	/**
+	 * @param length:
+	 *            the number of bits in the bit string
+	 * @param status:
+	 *            where failures are recorded, or null to throw them, see {@link #Bits(byte[], DecodeStatus)}
+	 */
+	Bits(int length, DecodeStatus status) {
+		this.length = length;
+		this.words = null;
+		this.status = status;
 	}
 
 	/**
@@ -24,13 +68,7 @@ public class Bits {
 	 * @throws ParseException
 	 */
 	public boolean getBit(int index) throws ParseException {
-		int byteIndex = index / 8;
-		int bitExact = index % 8;
-		if (byteIndex >= bytes.length) {
-			throw new ParseException("requesting bit beyond bit string length", index);
-		}
-		byte b = bytes[byteIndex];
-		return (b & bytePows[bitExact]) != 0;
+		return checkRange(index, 1) && read(index, 1) != 0;
 	}
 
 	/**
@@ -41,13 +79,45 @@ public class Bits {
 	 * @throws ParseException when requesting bit beyond bit string length
 	 */
 	public List<Boolean> getBitList(int startInclusive, int size) throws ParseException {
-		List<Boolean> bitList = new ArrayList<Boolean>();
+		List<Boolean> bitList = new ArrayList<Boolean>(Math.max(size, 0));
+		if (size <= 0) {
+			return bitList;
+		}
+		if (!checkRange(startInclusive, size)) {
+			return bitList;
+		}
 		for (int i = startInclusive, ii = startInclusive + size; i < ii; i++) {
-			bitList.add(getBit(i));
+			bitList.add(read(i, 1) != 0);
 		}
 		return bitList;
 	}
 
+	/**
+	 * copies a bit field section out of the bit string, a word at a time
+	 *
+	 * @param startInclusive:
+	 *            the nth bit in the bitstring at which the section begins
+	 * @param size:
+	 *            the number of bits in the section
+	 * @return the section as a {@link BitField}, where the first bit stands for id 1
+	 * @throws ParseException
+	 *             when requesting bit beyond bit string length
+	 */
+	public BitField getBitField(int startInclusive, int size) throws ParseException {
+		if (size <= 0) {
+			return BitField.EMPTY;
+		}
+		if (!checkRange(startInclusive, size)) {
+			return BitField.EMPTY;
+		}
+		long[] field = new long[(size + 63) >>> 6];
+		for (int i = 0, remaining = size; i < field.length; i++, remaining -= Long.SIZE) {
+			int chunk = Math.min(remaining, Long.SIZE);
+			field[i] = read(startInclusive + (i << 6), chunk) << (Long.SIZE - chunk);
+		}
+		return new BitField(field, size);
+	}
+
 	/**
 	 * interprets n number of bits as a big endiant int
 	 *
@@ -63,17 +133,7 @@ public class Bits {
 		if (size > Integer.SIZE) {
 			throw new ParseException("can't fit bit range in int.", startInclusive);
 		}
-		int val = 0;
-		int sigMask = 1;
-		int sigIndex = size - 1;
-
-		for (int i = 0; i < size; i++) {
-			if (getBit(startInclusive + i)) {
-				val += (sigMask << sigIndex);
-			}
-			sigIndex--;
-		}
-		return val;
+		return (int) getLong(startInclusive, size);
 	}
 
 	/**
@@ -91,17 +151,10 @@ public class Bits {
 		if (size > Long.SIZE) {
 			throw new ParseException("can't fit bit range in long.", startInclusive);
 		}
-		long val = 0;
-		long sigMask = 1;
-		int sigIndex = size - 1;
-
-		for (int i = 0; i < size; i++) {
-			if (getBit(startInclusive + i)) {
-				val += (sigMask << sigIndex);
-			}
-			sigIndex--;
+		if (size <= 0 || !checkRange(startInclusive, size)) {
+			return 0;
 		}
-		return val;
+		return read(startInclusive, size);
 	}
 
 	/**
@@ -126,7 +179,7 @@ public class Bits {
 	 *
 	 */
 	public int length() {
-		return bytes.length * 8;
+		return length;
 	}
 
 	/**
@@ -146,9 +199,12 @@ public class Bits {
 			throw new ParseException("string bit length must be multiple of six", startInclusive);
 		}
 		int charNum = size / 6;
-		StringBuilder val = new StringBuilder();
+		if (charNum > 0 && !checkRange(startInclusive, size)) {
+			return "";
+		}
+		StringBuilder val = new StringBuilder(charNum);
 		for (int i = 0; i < charNum; i++) {
-			int charCode = getInt(startInclusive + (i * 6), 6) + 65;
+			int charCode = (int) read(startInclusive + (i * 6), 6) + 65;
 			val.append((char) charCode);
 		}
 		return val.toString().toUpperCase();
@@ -161,16 +217,78 @@ public class Bits {
 	 *         yeilds a String of "0100"
 	 */
 	public String getBinaryString() throws ParseException {
-		StringBuilder s = new StringBuilder();
-		int i = 0;
-		int ii = length();
-		for (; i < ii; i++) {
-			if (getBit(i)) {
-				s.append("1");
-			} else {
-				s.append("0");
-			}
+		StringBuilder s = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			s.append(read(i, 1) != 0 ? '1' : '0');
 		}
 		return s.toString();
 	}
+
+	/**
+	 * makes sure the interval [startInclusive, startInclusive + size) lies within the bit string
+	 *
+	 * @return false when the interval should not be read, because it does not lie within the bit string or because a
+	 *         failure was recorded before
+	 * @throws ParseException
+	 *             carrying the first bit index that cannot be read, unless failures are recorded
+	 */
+	final boolean checkRange(int startInclusive, int size) throws ParseException {
+		if (startInclusive < 0 || startInclusive > length - size) {
+			fail("requesting bit beyond bit string length", Math.max(startInclusive, length),
+					DecodeFailureReason.TRUNCATED);
+			return false;
+		}
+		return status == null || !status.failed();
+	}
+
+	/**
+	 * @return where failures are recorded, or null when they are thrown
+	 */
+	final DecodeStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return whether a failure was recorded to the status of the bit string
+	 */
+	final boolean failed() {
+		return status != null && status.failed();
+	}
+
+	/**
+	 * throws a failure to read, or records it when failures are recorded
+	 *
+	 * @param errorOffset:
+	 *            the bit of the bit string at which reading failed
+	 */
+	final void fail(String message, int errorOffset, DecodeFailureReason reason) throws DecodeException {
+		if (status == null) {
+			throw new DecodeException(message, errorOffset, reason);
+		}
+		status.fail(reason, stringOffset(errorOffset));
+	}
+
+	/**
+	 * @return the offset within the whole string a failure at a bit of this bit string is recorded at
+	 */
+	int stringOffset(int bit) {
+		return bit;
+	}
+
+	/**
+	 * reads between 1 and 64 bits as a big endian value without any bounds checking; callers are expected to have
+	 * called {@link #checkRange(int, int)} first.
+	 *
+	 * @throws ParseException
+	 *             when the underlying representation turns out to be malformed
+	 */
+	long read(int startInclusive, int size) throws ParseException {
+		int wordIndex = startInclusive >>> 6;
+		int shift = startInclusive & 63;
+		long value = words[wordIndex] << shift;
+		if (shift + size > Long.SIZE) {
+			value |= words[wordIndex + 1] >>> (Long.SIZE - shift);
+		}
+		return value >>> (Long.SIZE - size);
+	}
 }
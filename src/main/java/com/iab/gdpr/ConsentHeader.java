@@ -0,0 +1,151 @@
+package com.iab.gdpr;
+
+import java.time.Instant;
+
+/**
+ * The header fields of a version 1 or version 2 consent string, for filtering strings on their age, CMP or vendor
+ * list before decoding them in full, see {@link ConsentInfoDecoder#decodeHeader(CharSequence)}.
+ *
+ * Only the fields up to the TCF policy version are read, straight from the first characters of the string: the vendor
+ * sections and the other segments are not looked at, so a string whose header decodes may still fail to decode in
+ * full. Every field is a primitive, and decoding allocates nothing but the header itself.
+ */
+public final class ConsentHeader {
+	// the characters holding the fields read, which end with the tcf policy version of version 2 strings
+	private static final int V1_CHARS = (ConsentStringParserV2.VENDOR_LIST_VERSION_OFFSET
+			+ ConsentStringParserV2.VENDOR_LIST_VERSION_SIZE + 5) / 6;
+	private static final int V2_CHARS = (ConsentStringParserV2.TCF_POLICY_VERSION_OFFSET
+			+ ConsentStringParserV2.TCF_POLICY_VERSION_SIZE + 5) / 6;
+
+	private final int version;
+	private final long consentRecordCreatedDeciseconds;
+	private final long consentRecordLastUpdatedDeciseconds;
+	private final int cmpId;
+	private final int cmpVersion;
+	private final int consentScreen;
+	private final int vendorListVersion;
+	private final int tcfPolicyVersion;
+
+	private ConsentHeader(int version, long consentRecordCreatedDeciseconds, long consentRecordLastUpdatedDeciseconds,
+			int cmpId, int cmpVersion, int consentScreen, int vendorListVersion, int tcfPolicyVersion) {
+		this.version = version;
+		this.consentRecordCreatedDeciseconds = consentRecordCreatedDeciseconds;
+		this.consentRecordLastUpdatedDeciseconds = consentRecordLastUpdatedDeciseconds;
+		this.cmpId = cmpId;
+		this.cmpVersion = cmpVersion;
+		this.consentScreen = consentScreen;
+		this.vendorListVersion = vendorListVersion;
+		this.tcfPolicyVersion = tcfPolicyVersion;
+	}
+
+	/**
+	 * @return the header, or null when the string is not a version 1 or version 2 string, or is too short to hold
+	 *      one, or has a character outside of the url and filename safe base64 alphabet among the header ones
+	 */
+	static ConsentHeader decode(CharSequence consentString) {
+		if (consentString == null || consentString.length() == 0) {
+			return null;
+		}
+		int version = Base64Url.valueOf(consentString.charAt(0));
+		if ((version != 1 && version != 2) || consentString.length() < (version == 1 ? V1_CHARS : V2_CHARS)) {
+			return null;
+		}
+		// the header is laid out the same way in both versions up to the vendor list version. A character outside of
+		// the alphabet makes its field negative, and so the or'ed fields.
+		long created = Base64Bits.read(consentString, 0, ConsentStringParserV2.CREATED_OFFSET,
+				ConsentStringParserV2.CREATED_SIZE);
+		long lastUpdated = Base64Bits.read(consentString, 0, ConsentStringParserV2.LAST_UPDATED_OFFSET,
+				ConsentStringParserV2.LAST_UPDATED_SIZE);
+		long cmpId = Base64Bits.read(consentString, 0, ConsentStringParserV2.CMP_ID_OFFSET,
+				ConsentStringParserV2.CMP_ID_SIZE);
+		long cmpVersion = Base64Bits.read(consentString, 0, ConsentStringParserV2.CMP_VERSION_OFFSET,
+				ConsentStringParserV2.CMP_VERSION_SIZE);
+		long consentScreen = Base64Bits.read(consentString, 0, ConsentStringParserV2.CONSENT_SCREEN_OFFSET,
+				ConsentStringParserV2.CONSENT_SCREEN_SIZE);
+		long vendorListVersion = Base64Bits.read(consentString, 0, ConsentStringParserV2.VENDOR_LIST_VERSION_OFFSET,
+				ConsentStringParserV2.VENDOR_LIST_VERSION_SIZE);
+		long tcfPolicyVersion = version == 1 ? 0
+				: Base64Bits.read(consentString, 0, ConsentStringParserV2.TCF_POLICY_VERSION_OFFSET,
+						ConsentStringParserV2.TCF_POLICY_VERSION_SIZE);
+		// the consent language lies between the consent screen and the vendor list version, and is checked too
+		long language = Base64Bits.read(consentString, 0, ConsentStringParserV2.CONSENT_LANGUAGE_OFFSET,
+				ConsentStringParserV2.CONSENT_LANGUAGE_SIZE);
+		if ((created | lastUpdated | cmpId | cmpVersion | consentScreen | vendorListVersion | tcfPolicyVersion
+				| language) < 0) {
+			return null;
+		}
+		return new ConsentHeader(version, created, lastUpdated, (int) cmpId, (int) cmpVersion, (int) consentScreen,
+				(int) vendorListVersion, (int) tcfPolicyVersion);
+	}
+
+	/**
+	 * @return the version of the string, 1 or 2
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return when the consent record was created, in tenths of a second since the epoch
+	 */
+	public long getConsentRecordCreatedDeciseconds() {
+		return consentRecordCreatedDeciseconds;
+	}
+
+	/**
+	 * @return when the consent record was last updated, in tenths of a second since the epoch
+	 */
+	public long getConsentRecordLastUpdatedDeciseconds() {
+		return consentRecordLastUpdatedDeciseconds;
+	}
+
+	/**
+	 * @return when the consent record was created, as {@link ConsentInfo#getConsentRecordCreated()} returns it
+	 */
+	public Instant getConsentRecordCreated() {
+		return Instant.ofEpochMilli(consentRecordCreatedDeciseconds * 100);
+	}
+
+	/**
+	 * @return when the consent record was last updated, as {@link ConsentInfo#getConsentRecordLastUpdated()} returns
+	 *      it
+	 */
+	public Instant getConsentRecordLastUpdated() {
+		return Instant.ofEpochMilli(consentRecordLastUpdatedDeciseconds * 100);
+	}
+
+	/**
+	 * @return the id of the CMP that last updated the string
+	 */
+	public int getCmpId() {
+		return cmpId;
+	}
+
+	/**
+	 * @return the version of the CMP that last updated the string
+	 */
+	public int getCmpVersion() {
+		return cmpVersion;
+	}
+
+	/**
+	 * @return the screen of the CMP the consent was last given on
+	 */
+	public int getConsentScreen() {
+		return consentScreen;
+	}
+
+	/**
+	 * @return the version of the global vendor list the string was last updated with
+	 */
+	public int getVendorListVersion() {
+		return vendorListVersion;
+	}
+
+	/**
+	 * @return the version of the TCF policy the string was last updated under, or 0 for a version 1 string
+	 */
+	public int getTcfPolicyVersion() {
+		return tcfPolicyVersion;
+	}
+}
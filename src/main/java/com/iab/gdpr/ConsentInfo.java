@@ -3,6 +3,7 @@ package com.iab.gdpr;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 public interface ConsentInfo {
 	/**
@@ -25,6 +26,24 @@ public interface ConsentInfo {
 	 */
 	Instant getConsentRecordLastUpdated();
 
+	/**
+	 * @return when the consent record was created, in tenths of a second since the epoch as the string holds it, or 0
+	 *      when there is no record
+	 */
+	default long getConsentRecordCreatedDeciseconds() {
+		Instant created = getConsentRecordCreated();
+		return created == null ? 0 : created.toEpochMilli() / 100;
+	}
+
+	/**
+	 * @return when the consent record was last updated, in tenths of a second since the epoch as the string holds it,
+	 *      or 0 when there is no record
+	 */
+	default long getConsentRecordLastUpdatedDeciseconds() {
+		Instant lastUpdated = getConsentRecordLastUpdated();
+		return lastUpdated == null ? 0 : lastUpdated.toEpochMilli() / 100;
+	}
+
 	/**
 	 * @return the id of the consent management partner that created this record
 	 */
@@ -45,6 +64,14 @@ public interface ConsentInfo {
 	 */
 	String getConsentLanguage();
 
+	/**
+	 * @return the language code in which the CMP asked for consent, as the string holds it: two six bit letters, 'A'
+	 *      being 0, with the first letter in the high bits of the 12 low bits. -1 when there is none.
+	 */
+	default int getConsentLanguageCode() {
+		return TwoLetterCodes.toCode(getConsentLanguage());
+	}
+
 	/**
 	 * @return the vendor list version which was used in creating this consent string
 	 */
@@ -67,10 +94,24 @@ public interface ConsentInfo {
 	boolean isPurposeConsented(Purpose purpose);
 
 	/**
-	 * @return list of all purposes that were consented to
+	 * @return list of all purposes that were consented to, which may be unmodifiable
 	 */
 	List<Purpose> getConsentedPurposes();
 
+	/**
+	 * @return the purposes consented to as a mask in which the purpose id n is bit n - 1, see {@link IdMasks}
+	 */
+	default int getPurposeConsentsMask() {
+		return IdMasks.of(this::isPurposeConsented, ConsentStringParserV2.PURPOSES_CONSENT_SIZE);
+	}
+
+	/**
+	 * @return an unmodifiable view of the defined purposes consented to, empty when the consent is not of version 2
+	 */
+	default Set<Purpose.PurposeV2> getConsentedPurposesV2() {
+		return PurposeSets.v2(getVersion() == 2 ? getPurposeConsentsMask() : 0);
+	}
+
 	/**
 	 * @param vendorId
 	 *      Id of the vendor to check consent info for
@@ -79,6 +120,20 @@ public interface ConsentInfo {
 	 */
 	boolean isVendorConsented(int vendorId);
 
+	/**
+	 * Looks up the consent of many vendors at once, which is cheaper than calling {@link #isVendorConsented(int)} for
+	 * each of them, the more so when the ids are sorted in ascending order.
+	 *
+	 * @param vendorIds
+	 *      Ids of the vendors to check consent info for
+	 * @return
+	 *      a bit set, laid out like {@link java.util.BitSet#toLongArray()}, in which bit i tells whether the vendor
+	 *      vendorIds[i] was consented to
+	 */
+	default long[] areVendorsConsented(int[] vendorIds) {
+		return IdLookups.containsEach(this::isVendorConsented, vendorIds);
+	}
+
 	// V2 ADDITIONS
 
 	/**
@@ -112,7 +167,6 @@ public interface ConsentInfo {
 		return false;
 	}
 
-
 	/**
 	 * @param feature
 	 *      SpecialFeature to check option status for
@@ -123,6 +177,13 @@ public interface ConsentInfo {
 		return false;
 	}
 
+	/**
+	 * @return the special features opted in as a mask in which the feature id n is bit n - 1, see {@link IdMasks}
+	 */
+	default int getSpecialFeatureOptInsMask() {
+		return IdMasks.of(this::isFeatureOptioned, ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE);
+	}
+
 	/**
 	 * @param purposeId
 	 *      Id of the purpose to check legitimate interest establishment for
@@ -143,6 +204,14 @@ public interface ConsentInfo {
 		return false;
 	}
 
+	/**
+	 * @return the purposes with legitimate interest established as a mask in which the purpose id n is bit n - 1, see
+	 *      {@link IdMasks}
+	 */
+	default int getPurposeLegitInterestsMask() {
+		return IdMasks.of(this::isPurposeLegitInterestEstablished, ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
 	/**
 	 * @return whether Purpose 1 was disclosed to the user
 	 */
@@ -157,6 +226,14 @@ public interface ConsentInfo {
 		return null;
 	}
 
+	/**
+	 * @return the country code of the publisher packed like {@link #getConsentLanguageCode()}, or -1 when there is
+	 *      none
+	 */
+	default int getPublisherCcCode() {
+		return TwoLetterCodes.toCode(getPublisherCc());
+	}
+
 	/**
 	 * @param vendorId
 	 *      Id of the vendor to check legitimate interest establishment for
@@ -187,6 +264,77 @@ public interface ConsentInfo {
 		return false;
 	}
 
+	/**
+	 * Batch form of {@link #isVendorLegitInterestEstablished(int)}.
+	 *
+	 * @param vendorIds
+	 *      Ids of the vendors to check
+	 * @return
+	 *      a bit set in which bit i tells whether the vendor vendorIds[i] has established legitimate interest
+	 */
+	default long[] areVendorsLegitInterestEstablished(int[] vendorIds) {
+		return IdLookups.containsEach(this::isVendorLegitInterestEstablished, vendorIds);
+	}
+
+	/**
+	 * Batch form of {@link #isVendorDisclosed(int)}.
+	 *
+	 * @param vendorIds
+	 *      Ids of the vendors to check
+	 * @return
+	 *      a bit set in which bit i tells whether the vendor vendorIds[i] has been disclosed to the user
+	 */
+	default long[] areVendorsDisclosed(int[] vendorIds) {
+		return IdLookups.containsEach(this::isVendorDisclosed, vendorIds);
+	}
+
+	/**
+	 * Batch form of {@link #isVendorAllowed(int)}.
+	 *
+	 * @param vendorIds
+	 *      Ids of the vendors to check
+	 * @return
+	 *      a bit set in which bit i tells whether the vendor vendorIds[i] is allowed to use OOB legal bases under
+	 *      this publisher
+	 */
+	default long[] areVendorsAllowed(int[] vendorIds) {
+		return IdLookups.containsEach(this::isVendorAllowed, vendorIds);
+	}
+
+	/**
+	 * The vendor sections as decoded, for instance to encode them again. A version 1 section listing the exceptions
+	 * to a default consent is answered as the set of vendors it consents to.
+	 *
+	 * @return the vendors that were consented to, whose {@link IdSet#getMaxId()} is the max vendor id of the section
+	 */
+	default IdSet getVendorConsents() {
+		return BitField.EMPTY;
+	}
+
+	/**
+	 * @return the vendors that established legitimate interest
+	 * @see #getVendorConsents()
+	 */
+	default IdSet getVendorLegitInterests() {
+		return BitField.EMPTY;
+	}
+
+	/**
+	 * @return the vendors disclosed to the user, empty when the string has no disclosed vendors segment
+	 * @see #getVendorConsents()
+	 */
+	default IdSet getDisclosedVendors() {
+		return BitField.EMPTY;
+	}
+
+	/**
+	 * @return the vendors allowed to use OOB legal bases, empty when the string has no allowed vendors segment
+	 * @see #getVendorConsents()
+	 */
+	default IdSet getAllowedVendors() {
+		return BitField.EMPTY;
+	}
+
 	/**
 	 * @param purposeId
 	 *      Id of the publisher purpose to check consent status for
@@ -207,6 +355,23 @@ public interface ConsentInfo {
 		return false;
 	}
 
+	/**
+	 * @return the publisher purposes consented to as a mask in which the purpose id n is bit n - 1, see
+	 *      {@link IdMasks}
+	 */
+	default int getPubPurposeConsentsMask() {
+		return IdMasks.of(this::isPubPurposesConsented, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE);
+	}
+
+	/**
+	 * @return the publisher purposes with legitimate interest established as a mask in which the purpose id n is bit
+	 *      n - 1, see {@link IdMasks}
+	 */
+	default int getPubPurposeLegitInterestsMask() {
+		return IdMasks.of(this::isPubPurposeLegitInterestEstablished,
+				ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
 	/**
 	 * @param purposeId
 	 *      Id of the custom purpose to check consent status for
@@ -228,11 +393,72 @@ public interface ConsentInfo {
 	}
 
 	/**
-	 * @return list of publisher restriction entries
+	 * @return the custom purposes consented to as a mask in which the purpose id n is bit n - 1; a long, as there may
+	 *      be up to 63 custom purposes
+	 */
+	default long getCustomPurposeConsentsMask() {
+		return IdMasks.ofLong(this::isCustomPurposeConsented,
+				(1 << ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE) - 1);
+	}
+
+	/**
+	 * @return the custom purposes with legitimate interest established as a mask in which the purpose id n is bit
+	 *      n - 1; a long, as there may be up to 63 custom purposes
+	 */
+	default long getCustomPurposeLegitInterestsMask() {
+		return IdMasks.ofLong(this::isCustomPurposeLegitInterestEstablished,
+				(1 << ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE) - 1);
+	}
+
+	/**
+	 * @return list of publisher restriction entries, which may be unmodifiable
 	 */
 	default List<PubRestrictionEntry> getPublisherRestrictions() {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * When the vendor is under several restrictions for the purpose, the most restrictive one applies, in the order
+	 * the {@link PubRestrictionEntry.RestrictionType}s are declared in.
+	 *
+	 * @param purposeId
+	 *      Id of the purpose to check publisher restrictions for
+	 * @param vendorId
+	 *      Id of the vendor to check publisher restrictions for
+	 * @return
+	 *      how the publisher restricts the vendor for the purpose, or null when it does not
+	 */
+	default PubRestrictionEntry.RestrictionType getRestrictionType(int purposeId, int vendorId) {
+		PubRestrictionEntry.RestrictionType restrictionType = null;
+		for (PubRestrictionEntry entry : getPublisherRestrictions()) {
+			if (entry.getPurposeId() == purposeId && entry.isVendorRestricted(vendorId)
+					&& (restrictionType == null || entry.getType().ordinal() < restrictionType.ordinal())) {
+				restrictionType = entry.getType();
+			}
+		}
+		return restrictionType;
+	}
+
+	/**
+	 * @param purposeId
+	 *      Id of the purpose to check publisher restrictions for
+	 * @param restrictionType
+	 *      the type of restriction
+	 * @return
+	 *      all the vendors the publisher restricts this way for the purpose, across restriction entries
+	 */
+	default RangeSet getRestrictedVendors(int purposeId, PubRestrictionEntry.RestrictionType restrictionType) {
+		RangeSet.Builder vendorIds = new RangeSet.Builder(0);
+		for (PubRestrictionEntry entry : getPublisherRestrictions()) {
+			if (entry.getPurposeId() == purposeId && entry.getType() == restrictionType) {
+				RangeSet restricted = entry.getVendorIds();
+				for (int i = 0, ii = restricted.getRangeCount(); i < ii; i++) {
+					vendorIds.add(restricted.getStart(i), restricted.getEnd(i));
+				}
+			}
+		}
+		return vendorIds.build();
+	}
+
 
 }
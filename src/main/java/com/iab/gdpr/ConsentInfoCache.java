@@ -0,0 +1,317 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded, thread safe cache of decoded consent strings, in front of {@link ConsentInfoDecoder#decode(CharSequence)}.
+ *
+ * Entries are weighed, by default with {@link #estimateRetainedSize(ConsentInfo)}, and evicted with a segmented LRU
+ * policy: a newly decoded string enters a probation segment and is promoted to a protected segment, which holds up to
+ * 80% of the weight, when it is requested again. Strings seen only once are therefore evicted before the strings that
+ * keep coming back. The cache is striped into independently locked segments. Lookups do not lock; recency is updated
+ * only when the stripe lock is free, and is skipped under contention.
+ *
+ * A small per thread memo in front of the shared table answers repeated lookups of the same strings from the calling
+ * thread without touching the shared structures. It keeps one table per thread, so it should be disabled when the
+ * cache is used from short lived virtual threads.
+ *
+ * Decoded instances are only ever read once cached, and are safely published through the underlying
+ * {@link ConcurrentHashMap}, so they can be shared across threads.
+ */
+public class ConsentInfoCache {
+	private static final int SEGMENT_COUNT = 16;
+	private static final int PROTECTED_PERCENT = 80;
+	private static final int DEFAULT_MEMO_SIZE = 8;
+
+	private final ConcurrentHashMap<String, Node> map = new ConcurrentHashMap<String, Node>();
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private final ToIntFunction<ConsentInfo> weigher;
+	private final long timeToLiveNanos;
+	private final boolean cacheStubs;
+	private final ThreadLocal<Node[]> memo;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * Creates a cache whose entries never expire, that also remembers strings which do not decode, and that keeps a
+	 * per thread memo.
+	 *
+	 * @param maximumWeight
+	 *      the total weight, an estimate of the retained bytes by default, above which entries are evicted
+	 */
+	public ConsentInfoCache(long maximumWeight) {
+		this(maximumWeight, 0, TimeUnit.NANOSECONDS, ConsentInfoCache::estimateRetainedSize, true, DEFAULT_MEMO_SIZE);
+	}
+
+	/**
+	 * @param maximumWeight
+	 *      the total weight above which entries are evicted
+	 * @param timeToLive
+	 *      how long an entry is served after it was decoded, or 0 for entries that never expire
+	 * @param unit
+	 *      the unit of timeToLive
+	 * @param weigher
+	 *      gives the weight of a decoded instance
+	 * @param cacheStubs
+	 *      whether strings which decode to a {@link ConsentInfoStub} are cached too, so that repeated malformed strings
+	 *      are not decoded over and over again
+	 * @param memoSize
+	 *      the number of entries of the per thread memo, rounded up to a power of two, or 0 to disable it
+	 */
+	public ConsentInfoCache(long maximumWeight, long timeToLive, TimeUnit unit, ToIntFunction<ConsentInfo> weigher,
+			boolean cacheStubs, int memoSize) {
+		if (maximumWeight < 0 || timeToLive < 0 || memoSize < 0) {
+			throw new IllegalArgumentException("cache bounds must not be negative");
+		}
+		this.weigher = weigher;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+		this.cacheStubs = cacheStubs;
+		long segmentWeight = (maximumWeight + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(segmentWeight);
+		}
+		if (memoSize > 0) {
+			int size = Integer.highestOneBit(memoSize - 1) << 1;
+			this.memo = ThreadLocal.withInitial(() -> new Node[Math.max(size, 1)]);
+		} else {
+			this.memo = null;
+		}
+	}
+
+	/**
+	 * A rough estimate of the heap retained by a decoded consent string: the parser with its fixed fields, plus the
+	 * source string and the decoded sections, which together take about three bytes per character of the string.
+	 *
+	 * @param consentInfo
+	 *      a decoded consent string
+	 * @return the estimated number of retained bytes
+	 */
+	public static int estimateRetainedSize(ConsentInfo consentInfo) {
+		String consentString = consentInfo.getConsentString();
+		return 256 + (consentString == null ? 0 : 3 * consentString.length());
+	}
+
+	/**
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return the version appropriate parser/consentInfo, from the cache when the string was decoded before
+	 */
+	public ConsentInfo decode(String consentString) {
+		if (consentString == null) {
+			return ConsentInfoDecoder.decode(null);
+		}
+		int hash = spread(consentString.hashCode());
+		long now = timeToLiveNanos > 0 ? System.nanoTime() : 0;
+		Node[] memoTable = memo != null ? memo.get() : null;
+		if (memoTable != null) {
+			Node memoized = memoTable[hash & (memoTable.length - 1)];
+			if (memoized != null && memoized.key.equals(consentString) && !memoized.isExpired(now)) {
+				hitCount.increment();
+				return memoized.value;
+			}
+		}
+
+		Segment segment = segments[hash & (SEGMENT_COUNT - 1)];
+		Node node = map.get(consentString);
+		if (node != null && !node.isExpired(now)) {
+			hitCount.increment();
+			segment.recordAccess(node);
+		} else {
+			missCount.increment();
+			ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+			if (!cacheStubs && consentInfo instanceof ConsentInfoStub) {
+				return consentInfo;
+			}
+			node = segment.insert(consentString, consentInfo, now);
+		}
+		if (memoTable != null) {
+			memoTable[hash & (memoTable.length - 1)] = node;
+		}
+		return node.value;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache, including the per thread memo
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return the number of lookups that had to decode the string
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return the number of entries evicted to stay within the maximum weight
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * @return the number of entries currently cached
+	 */
+	public int getSize() {
+		return map.size();
+	}
+
+	/**
+	 * @return the total weight of the entries currently cached
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : segments) {
+			segment.lock.lock();
+			try {
+				weight += segment.weight;
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		return weight;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static final class Node {
+		final String key;
+		final ConsentInfo value;
+		final int weight;
+		// System.nanoTime() after which the entry is stale, or 0 when it never expires
+		final long expiresAt;
+
+		// guarded by the segment lock
+		Node prev;
+		Node next;
+		boolean protectedEntry;
+		boolean linked;
+
+		// list sentinel
+		Node() {
+			this(null, null, 0, 0);
+			this.prev = this.next = this;
+		}
+
+		Node(String key, ConsentInfo value, int weight, long expiresAt) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return expiresAt != 0 && now - expiresAt >= 0;
+		}
+	}
+
+	/**
+	 * One stripe of the segmented LRU, with its probation and protected lists. Both lists have the most recently used
+	 * entry right after their sentinel.
+	 */
+	private final class Segment {
+		final ReentrantLock lock = new ReentrantLock();
+		final long maximumWeight;
+		final long maximumProtectedWeight;
+		final Node probation = new Node();
+		final Node protectedList = new Node();
+		long weight;
+		long protectedWeight;
+
+		Segment(long maximumWeight) {
+			this.maximumWeight = maximumWeight;
+			this.maximumProtectedWeight = maximumWeight * PROTECTED_PERCENT / 100;
+		}
+
+		void recordAccess(Node node) {
+			// recency is best effort, a busy stripe is not waited for
+			if (!lock.tryLock()) {
+				return;
+			}
+			try {
+				if (!node.linked) {
+					return;
+				}
+				unlink(node);
+				if (!node.protectedEntry) {
+					node.protectedEntry = true;
+					protectedWeight += node.weight;
+				}
+				linkFirst(protectedList, node);
+				while (protectedWeight > maximumProtectedWeight && protectedList.prev != protectedList) {
+					Node demoted = protectedList.prev;
+					unlink(demoted);
+					demoted.protectedEntry = false;
+					protectedWeight -= demoted.weight;
+					linkFirst(probation, demoted);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		Node insert(String key, ConsentInfo value, long now) {
+			lock.lock();
+			try {
+				Node existing = map.get(key);
+				if (existing != null) {
+					if (!existing.isExpired(now)) {
+						// decoded concurrently by another thread
+						return existing;
+					}
+					remove(existing);
+				}
+				long expiresAt = timeToLiveNanos > 0 ? (now + timeToLiveNanos) | 1 : 0;
+				Node node = new Node(key, value, Math.max(weigher.applyAsInt(value), 0), expiresAt);
+				map.put(key, node);
+				linkFirst(probation, node);
+				weight += node.weight;
+				while (weight > maximumWeight) {
+					Node victim = probation.prev != probation ? probation.prev : protectedList.prev;
+					if (victim == protectedList) {
+						break;
+					}
+					remove(victim);
+					evictionCount.increment();
+				}
+				return node;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void remove(Node node) {
+			unlink(node);
+			weight -= node.weight;
+			if (node.protectedEntry) {
+				protectedWeight -= node.weight;
+			}
+			map.remove(node.key, node);
+		}
+
+		private void linkFirst(Node sentinel, Node node) {
+			node.prev = sentinel;
+			node.next = sentinel.next;
+			sentinel.next.prev = node;
+			sentinel.next = node;
+			node.linked = true;
+		}
+
+		private void unlink(Node node) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = node.next = null;
+			node.linked = false;
+		}
+	}
+}
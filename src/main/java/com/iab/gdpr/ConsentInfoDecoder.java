@@ -1,12 +1,61 @@
 package com.iab.gdpr;
 
+import java.nio.ByteBuffer;
+import java.text.ParseException;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class ConsentInfoDecoder {
-	private static final int VERSION_OFFSET = 0;
-	private static final int VERSION_SIZE = 6;
+	// batches smaller than this are decoded on the calling thread, where handing them off would cost more than
+	// decoding them
+	static final int MIN_PARALLEL_BATCH_SIZE = 512;
+	// no chunk is smaller than this, and there are a few chunks per thread so that uneven strings even out
+	static final int MIN_CHUNK_SIZE = 128;
+	private static final int CHUNKS_PER_THREAD = 4;
+	// the range encoded sections of a segment are in the low bits of a section mask, and the bit field encoded ones
+	// in the bits above
+	private static final int SECTION_BITS = DecodeListener.Section.values().length;
+
+	// read once per decode; while it is null, decoding neither times nor inspects anything
+	private static volatile DecodeListener listener;
+
+	/**
+	 * Receives the decoded strings of a batch as its chunks complete, see
+	 * {@link ConsentInfoDecoder#decodeAll(List, Executor, ChunkListener)}.
+	 */
+	public interface ChunkListener {
+		/**
+		 * @param fromIndex
+		 *      the index in the batch of the first string of the chunk
+		 * @param decoded
+		 *      the decoded strings of the chunk, in batch order
+		 */
+		void onChunk(int fromIndex, List<ConsentInfo> decoded);
+	}
+
+	/**
+	 * Registers the listener told about every string decoded from now on, by any of the decode methods, replacing the
+	 * one registered before.
+	 *
+	 * @param listener
+	 *      the listener, or null to stop observing decodes
+	 */
+	public static void setListener(DecodeListener listener) {
+		ConsentInfoDecoder.listener = listener;
+	}
+
+	/**
+	 * @return the listener told about every decoded string, or null when there is none
+	 */
+	public static DecodeListener getListener() {
+		return listener;
+	}
 
 	/**
 	 *
@@ -15,35 +64,442 @@ public class ConsentInfoDecoder {
 	 * @return the version appropriate parser/consentInfo
 	 */
 	public static ConsentInfo decode(String consentString) {
+		return decode((CharSequence) consentString);
+	}
+
+	/**
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher. Characters other than a {@link String}, such as the
+	 *      {@link AsciiChars} of a network buffer, are read where they are, and must not change for as long as the
+	 *      consent is used.
+	 * @return the version appropriate parser/consentInfo
+	 */
+	public static ConsentInfo decode(CharSequence consentString) {
+		return decode(consentString, false, null);
+	}
+
+	/**
+	 * Like {@link #decode(CharSequence)}, but the vendor sections of a version 2 string are shared with the strings
+	 * decoded before with the same interner, which saves most of the heap of large sets of decoded strings coming from
+	 * the same CMPs. Version 1 strings are decoded as usual.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @param interner
+	 *      the pool of shared vendor sections
+	 * @return the version appropriate parser/consentInfo
+	 */
+	public static ConsentInfo decode(CharSequence consentString, IdSetInterner interner) {
+		return decode(consentString, false, interner);
+	}
+
+	/**
+	 * Like {@link #decode(CharSequence)}, for a consent string held as ASCII bytes, which are not copied, see
+	 * {@link AsciiChars#of(ByteBuffer)}.
+	 *
+	 * @param consentString
+	 *      the characters of the consent string between the position and the limit of the buffer
+	 * @return the version appropriate parser/consentInfo
+	 */
+	public static ConsentInfo decodeAscii(ByteBuffer consentString) {
+		return decode(AsciiChars.of(consentString), false, null);
+	}
+
+	/**
+	 * Like {@link #decode(CharSequence)}, for a consent string held as ASCII bytes, which are not copied, see
+	 * {@link AsciiChars#of(byte[], int, int)}.
+	 *
+	 * @param consentString
+	 *      the array holding the characters of the consent string
+	 * @param offset
+	 *      the index of the first character
+	 * @param length
+	 *      the number of characters
+	 * @return the version appropriate parser/consentInfo
+	 */
+	public static ConsentInfo decodeAscii(byte[] consentString, int offset, int length) {
+		return decode(AsciiChars.of(consentString, offset, length), false, null);
+	}
+
+	/**
+	 * Like {@link #decode(CharSequence)}, but tells why and where a string could not be decoded rather than handing out
+	 * a {@link ConsentInfoStub}. Malformed strings are decoded without throwing, so they cost about what valid ones do.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return the version appropriate parser/consentInfo, or the reason and the offset of the failure
+	 */
+	public static DecodeResult tryDecode(CharSequence consentString) {
+		DecodeStatus status = new DecodeStatus();
+		ConsentInfo decoded = decode(consentString, false, null, status);
+		return decoded != null ? DecodeResult.success(decoded) : DecodeResult.failure(status);
+	}
+
+	/**
+	 * Decodes the header fields of a version 1 or version 2 string only, for filtering strings before decoding them,
+	 * see {@link ConsentHeader}. Nothing past the TCF policy version is read, so this costs a small fraction of a full
+	 * decode, and never throws.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return the header, or null when the string does not start with a valid version 1 or version 2 header
+	 */
+	public static ConsentHeader decodeHeader(CharSequence consentString) {
+		return ConsentHeader.decode(consentString);
+	}
+
+	/**
+	 * Answers whether a single vendor is consented and has its legitimate interest established in a string, along with
+	 * the consent and legitimate interest of the first purposes, without decoding the string, see
+	 * {@link VendorProbe}. Never throws, and allocates nothing.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @param vendorId
+	 *      the vendor to answer for
+	 * @return the answers packed into an int, read with the static accessors of {@link VendorProbe}, or
+	 *      {@link VendorProbe#INVALID}
+	 */
+	public static int probeVendor(CharSequence consentString, int vendorId) {
+		return VendorProbe.probe(consentString, vendorId);
+	}
+
+	/**
+	 * Like {@link #decode(CharSequence)}, but a version 2 string only has its core header decoded up front, see
+	 * {@link ConsentStringParserV2#ConsentStringParserV2(CharSequence, boolean)}.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return the version appropriate parser/consentInfo
+	 */
+	public static ConsentInfo decodeLazily(CharSequence consentString) {
+		return decode(consentString, true, null);
+	}
+
+	/**
+	 * Decodes a version 1 or version 2 consent string into a reusable instance rather than into a new parser, so that
+	 * decoding allocates nothing once the instance has grown to the size of the strings it sees.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @param target
+	 *      the instance to decode into, replacing whatever it held before
+	 * @return whether the string could be decoded; when it could not, the target reads like a {@link ConsentInfoStub}
+	 */
+	public static boolean decodeInto(CharSequence consentString, MutableConsentInfo target) {
+		DecodeListener listener = ConsentInfoDecoder.listener;
+		if (listener == null) {
+			return target.decode(consentString);
+		}
+		long startNanos = System.nanoTime();
+		boolean decoded = target.decode(consentString);
+		long nanos = System.nanoTime() - startNanos;
+		if (decoded) {
+			reportDecoded(listener, consentString, target.getVersion(), nanos);
+		} else {
+			listener.onFailed(target.getFailureReason(), nanos);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes a batch of strings on the common {@link ForkJoinPool}, see {@link #decodeAll(List, Executor)}.
+	 *
+	 * @param consentStrings
+	 *      Consent Strings passed in from publishers
+	 * @return the version appropriate parser/consentInfo of every string, in the order of the batch
+	 */
+	public static List<ConsentInfo> decodeAll(List<? extends CharSequence> consentStrings) {
+		return decodeAll(consentStrings, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decodes a batch of strings like {@link #decode(CharSequence)} does one. A small batch is decoded on the calling
+	 * thread; a larger one is split into chunks of at least {@value #MIN_CHUNK_SIZE} strings, a few per thread of the
+	 * executor, which are decoded on the executor while the calling thread waits for them.
+	 *
+	 * @param consentStrings
+	 *      Consent Strings passed in from publishers
+	 * @param executor
+	 *      the executor the chunks are decoded on
+	 * @return the version appropriate parser/consentInfo of every string, in the order of the batch
+	 */
+	public static List<ConsentInfo> decodeAll(List<? extends CharSequence> consentStrings, Executor executor) {
+		return Arrays.asList(decodeAll(consentStrings.toArray(new CharSequence[0]), executor));
+	}
+
+	/**
+	 * @see #decodeAll(List, Executor)
+	 * @param consentStrings
+	 *      Consent Strings passed in from publishers
+	 * @param executor
+	 *      the executor the chunks are decoded on
+	 * @return the version appropriate parser/consentInfo of every string, in the order of the batch
+	 */
+	public static ConsentInfo[] decodeAll(CharSequence[] consentStrings, Executor executor) {
+		ConsentInfo[] decoded = new ConsentInfo[consentStrings.length];
+		join(decodeChunks(consentStrings, decoded, executor, parallelism(executor), null));
+		return decoded;
+	}
+
+	/**
+	 * Like {@link #decodeAll(List, Executor)}, on virtual threads when the runtime has them, which keeps the decoding
+	 * off the platform threads of the caller's pools. On runtimes without virtual threads the common
+	 * {@link ForkJoinPool} is used instead.
+	 *
+	 * @param consentStrings
+	 *      Consent Strings passed in from publishers
+	 * @return the version appropriate parser/consentInfo of every string, in the order of the batch
+	 */
+	public static List<ConsentInfo> decodeAllOnVirtualThreads(List<? extends CharSequence> consentStrings) {
+		Executor executor = VirtualThreads.EXECUTOR;
+		return decodeAll(consentStrings, executor == null ? ForkJoinPool.commonPool() : executor);
+	}
+
+	/**
+	 * Decodes a batch of strings chunk by chunk like {@link #decodeAll(List, Executor)}, without waiting for them:
+	 * every chunk is handed to the listener as soon as it is decoded, on the thread that decoded it. Chunks complete
+	 * in no particular order, and the listener may be called for several of them at once.
+	 *
+	 * @param consentStrings
+	 *      Consent Strings passed in from publishers
+	 * @param executor
+	 *      the executor the chunks are decoded on
+	 * @param listener
+	 *      receives the decoded chunks
+	 * @return a future completing once every chunk has been handed to the listener, or exceptionally with what the
+	 *      listener threw
+	 */
+	public static CompletableFuture<Void> decodeAll(List<? extends CharSequence> consentStrings, Executor executor,
+			ChunkListener listener) {
+		CharSequence[] strings = consentStrings.toArray(new CharSequence[0]);
+		return decodeChunks(strings, new ConsentInfo[strings.length], executor, parallelism(executor), listener);
+	}
+
+	private static CompletableFuture<Void> decodeChunks(CharSequence[] consentStrings, ConsentInfo[] decoded,
+			Executor executor, int parallelism, ChunkListener listener) {
+		int count = consentStrings.length;
+		int chunkCount = Math.min(parallelism * CHUNKS_PER_THREAD, count / MIN_CHUNK_SIZE);
+		if (count < MIN_PARALLEL_BATCH_SIZE || chunkCount <= 1) {
+			try {
+				decodeChunk(consentStrings, decoded, 0, count, listener);
+				return CompletableFuture.completedFuture(null);
+			} catch (RuntimeException e) {
+				CompletableFuture<Void> failed = new CompletableFuture<Void>();
+				failed.completeExceptionally(e);
+				return failed;
+			}
+		}
+		CompletableFuture<?>[] chunks = new CompletableFuture<?>[chunkCount];
+		for (int i = 0; i < chunkCount; i++) {
+			int from = (int) ((long) count * i / chunkCount);
+			int to = (int) ((long) count * (i + 1) / chunkCount);
+			chunks[i] = CompletableFuture.runAsync(() -> decodeChunk(consentStrings, decoded, from, to, listener),
+					executor);
+		}
+		return CompletableFuture.allOf(chunks);
+	}
+
+	private static void decodeChunk(CharSequence[] consentStrings, ConsentInfo[] decoded, int from, int to,
+			ChunkListener listener) {
+		for (int i = from; i < to; i++) {
+			decoded[i] = decode(consentStrings[i]);
+		}
+		if (listener != null) {
+			listener.onChunk(from, Collections.unmodifiableList(Arrays.asList(decoded).subList(from, to)));
+		}
+	}
+
+	private static int parallelism(Executor executor) {
+		if (executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getParallelism();
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static void join(CompletableFuture<Void> future) {
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static ConsentInfo decode(CharSequence consentString, boolean lazy, IdSetInterner interner) {
+		ConsentInfo decoded = decode(consentString, lazy, interner, new DecodeStatus());
+		return decoded != null ? decoded : new ConsentInfoStub();
+	}
+
+	/**
+	 * @return the version appropriate parser, or null once the failure is recorded to the status
+	 */
+	private static ConsentInfo decode(CharSequence consentString, boolean lazy, IdSetInterner interner,
+			DecodeStatus status) {
+		DecodeListener listener = ConsentInfoDecoder.listener;
+		long startNanos = listener == null ? 0 : System.nanoTime();
+		ConsentInfo decoded = null;
 		try {
-			switch (getVersion(consentString)) {
+			// the version is the first six bits, which is exactly the first base64 character. The chosen parser
+			// validates the rest of the string as it decodes it, so nothing is decoded twice. Parsers record the
+			// failures of malformed strings to the status rather than throw them.
+			switch (firstCharValue(consentString)) {
 			case 1:
-				return new ConsentStringParser(consentString);
+				decoded = new ConsentStringParser(consentString, status);
+				break;
 			case 2:
-				return new ConsentStringParserV2(consentString);
+				decoded = new ConsentStringParserV2(consentString, lazy, interner, status);
+				break;
 			default:
-				return new ConsentInfoStub();
+				status.fail(versionFailure(consentString), 0);
 			}
 		} catch (Exception e) {
-			return new ConsentInfoStub();
+			status.fail(DecodeFailureReason.UNEXPECTED_ERROR, 0);
 		}
+		if (status.failed()) {
+			decoded = null;
+		}
+		if (listener != null) {
+			long nanos = System.nanoTime() - startNanos;
+			if (decoded != null) {
+				reportDecoded(listener, consentString, decoded.getVersion(), nanos);
+			} else {
+				listener.onFailed(status.getFailureReason(), nanos);
+			}
+		}
+		return decoded;
+	}
+
+	/**
+	 * @return why a string that did not get to a parser could not be decoded
+	 */
+	private static DecodeFailureReason versionFailure(CharSequence consentString) {
+		if (consentString == null || consentString.length() == 0) {
+			return DecodeFailureReason.EMPTY;
+		}
+		return Base64Url.valueOf(consentString.charAt(0)) < 0 ? DecodeFailureReason.MALFORMED_BASE64
+				: DecodeFailureReason.UNSUPPORTED_VERSION;
+	}
+
+	/**
+	 * tells the listener about a decoded string, reading the segments and the encoding of the vendor sections straight
+	 * from the string, so that the sections a lazy decode deferred stay undecoded
+	 */
+	private static void reportDecoded(DecodeListener listener, CharSequence consentString, int version,
+			long nanos) {
+		int segmentCount = 0;
+		int payloadBits = 0;
+		int rangeSections = 0;
+		int bitFieldSections = 0;
+		int length = consentString.length();
+		for (int start = 0; start <= length;) {
+			int end = version == 1 ? length : Base64Url.segmentEnd(consentString, start, length);
+			if (end > start) {
+				try {
+					Bits bits = new Base64Bits(consentString, start, end);
+					segmentCount++;
+					payloadBits += bits.length();
+					int sections = sectionEncodings(bits, version, start == 0);
+					rangeSections |= sections;
+					bitFieldSections |= sections >>> SECTION_BITS;
+				} catch (ParseException e) {
+					// only a deferred section can be malformed here, and it will read as empty
+				}
+			}
+			start = end + 1;
+		}
+		rangeSections &= (1 << SECTION_BITS) - 1;
+		listener.onDecoded(version, segmentCount, payloadBits, rangeSections, bitFieldSections & ~rangeSections,
+				nanos);
+	}
+
+	/**
+	 * @return the mask of the range encoded sections of the segment, or'ed with the mask of its bit field encoded
+	 *      sections shifted left by {@link #SECTION_BITS}
+	 */
+	private static int sectionEncodings(Bits bits, int version, boolean core) throws ParseException {
+		if (version == 1) {
+			return encoding(bits, ConsentStringParser.ENCODING_TYPE_OFFSET, DecodeListener.Section.VENDOR_CONSENTS);
+		}
+		if (core) {
+			int offset = ConsentStringParserV2.VENDOR_CONSENTS_OFFSET;
+			int sections = encoding(bits, offset + ConsentStringParserV2.VENDOR_ID_SIZE,
+					DecodeListener.Section.VENDOR_CONSENTS);
+			offset = ConsentStringParserV2.skipRangeOrBitField(bits, offset);
+			return sections | encoding(bits, offset + ConsentStringParserV2.VENDOR_ID_SIZE,
+					DecodeListener.Section.VENDOR_LEGIT_INTERESTS);
+		}
+		int encodingOffset = ConsentStringParserV2.SEGMENT_TYPE_SIZE + ConsentStringParserV2.VENDOR_ID_SIZE;
+		switch (bits.getInt(ConsentStringParserV2.SEGMENT_TYPE_OFFSET, ConsentStringParserV2.SEGMENT_TYPE_SIZE)) {
+		case 1:
+			return encoding(bits, encodingOffset, DecodeListener.Section.DISCLOSED_VENDORS);
+		case 2:
+			return encoding(bits, encodingOffset, DecodeListener.Section.ALLOWED_VENDORS);
+		default:
+			return 0;
+		}
+	}
+
+	private static int encoding(Bits bits, int encodingOffset, DecodeListener.Section section) throws ParseException {
+		return bits.getBit(encodingOffset) ? section.mask() : section.mask() << SECTION_BITS;
 	}
 
 	/**
 	 *
 	 * @param consentString
 	 *      Consent String passed in from the publisher
-	 * @return the perceived version number of the Consent String
+	 * @return the perceived version number of the Consent String, or 0 when its core segment is not valid url safe
+	 *      base64
 	 */
 	public static int getVersion(String consentString) {
+		return getVersion((CharSequence) consentString);
+	}
+
+	/**
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher, read where it is
+	 * @return the perceived version number of the Consent String, or 0 when its core segment is not valid url safe
+	 *      base64
+	 */
+	public static int getVersion(CharSequence consentString) {
+		if (consentString == null) {
+			return 0;
+		}
 		// for v2+ we need to consider segmented consentStrings
-		try {
-			List<String> segments = Arrays.asList(consentString.split("\\."));
-			String coreString = segments.get(0);
-			Bits bits = new Bits(Base64.getDecoder().decode(coreString));
-			return bits.getInt(VERSION_OFFSET, VERSION_SIZE);
-		} catch (Exception e) {
+		int coreEnd = Base64Url.segmentEnd(consentString, 0, consentString.length());
+		if (!Base64Url.isValid(consentString, 0, coreEnd)) {
 			return 0;
 		}
+		return firstCharValue(consentString);
+	}
+
+	private static int firstCharValue(CharSequence consentString) {
+		if (consentString == null || consentString.length() == 0) {
+			return 0;
+		}
+		return Math.max(Base64Url.valueOf(consentString.charAt(0)), 0);
+	}
+
+	/**
+	 * Holds the virtual thread executor of runtimes that have one, looked up reflectively since the parser targets
+	 * runtimes that do not, and only when it is first asked for.
+	 */
+	private static final class VirtualThreads {
+		static final Executor EXECUTOR = lookUp();
+
+		private static Executor lookUp() {
+			try {
+				return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				return null;
+			}
+		}
 	}
 }
@@ -0,0 +1,334 @@
+package com.iab.gdpr;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a decoded {@link ConsentInfo} in a compact, versioned binary form, to be stored or sent to another service
+ * and read back without decoding the consent string again: either copied into a reusable {@link MutableConsentInfo}
+ * in a single pass, see {@link #deserializeInto(ByteBuffer, MutableConsentInfo)}, or queried in place through a
+ * {@link BinaryConsentInfo}.
+ *
+ * The form starts with a fixed header, all big endian like {@link ByteBuffer}s read by default:
+ *
+ * <pre>
+ *  0  format version      u8     34  consent screen          u8
+ *  1  version             u8     35  TCF policy version      u8
+ *  2  flags               u8     36  special feature opt-ins u16
+ *  3  custom purposes     u8     38  publisher restrictions  u16
+ *  4  length, in bytes    i32    40  purpose consents        i32
+ *  8  created, in ds      i64    44  purpose LIs             i32
+ * 16  last updated, in ds i64    48  publisher consents      i32
+ * 24  CMP id              u16    52  publisher LIs           i32
+ * 26  CMP version         u16    56  custom purpose consents i64
+ * 28  vendor list version u16    64  custom purpose LIs      i64
+ * 30  consent language    u16
+ * 32  publisher CC        u16
+ * </pre>
+ *
+ * The purpose and feature fields are bit fields laid out as in the consent string, the bit for id 1 being the most
+ * significant of the field, and the language and country codes are their two six bit letters. The header is followed
+ * by the vendor consents, the vendor legitimate interests, the disclosed vendors and the allowed vendors, then by every
+ * publisher restriction: its purpose id and restriction type as two u8, and its vendors.
+ *
+ * A set of vendors is a kind byte followed by either a bitmap, the max vendor id as a u16 and then the bits in 64 bit
+ * words, the bit for vendor 1 being the most significant of the first word; or by a run list, the number of runs as a
+ * u16 and then the first and last vendor of every run as two u16. Whichever is shorter is written, the bitmap on a
+ * tie. A version 1 range section listing the exceptions to a default consent is written as the vendors it consents
+ * to.
+ *
+ * A serializer reuses its buffers from one consent to the next, so it is not thread safe; use one per thread.
+ */
+public final class ConsentInfoSerializer {
+	static final int FORMAT_VERSION = 1;
+
+	static final int FORMAT_VERSION_OFFSET = 0;
+	static final int VERSION_OFFSET = 1;
+	static final int FLAGS_OFFSET = 2;
+	static final int CUSTOM_PURPOSE_COUNT_OFFSET = 3;
+	static final int LENGTH_OFFSET = 4;
+	static final int CREATED_OFFSET = 8;
+	static final int LAST_UPDATED_OFFSET = 16;
+	static final int CMP_ID_OFFSET = 24;
+	static final int CMP_VERSION_OFFSET = 26;
+	static final int VENDOR_LIST_VERSION_OFFSET = 28;
+	static final int CONSENT_LANGUAGE_OFFSET = 30;
+	static final int PUBLISHER_CC_OFFSET = 32;
+	static final int CONSENT_SCREEN_OFFSET = 34;
+	static final int TCF_POLICY_VERSION_OFFSET = 35;
+	static final int FEATURE_OPT_INS_OFFSET = 36;
+	static final int RESTRICTION_COUNT_OFFSET = 38;
+	static final int PURPOSE_CONSENTS_OFFSET = 40;
+	static final int PURPOSE_LEGIT_INTERESTS_OFFSET = 44;
+	static final int PUB_PURPOSE_CONSENTS_OFFSET = 48;
+	static final int PUB_PURPOSE_LEGIT_INTERESTS_OFFSET = 52;
+	static final int CUSTOM_PURPOSE_CONSENTS_OFFSET = 56;
+	static final int CUSTOM_PURPOSE_LEGIT_INTERESTS_OFFSET = 64;
+	static final int HEADER_SIZE = 72;
+
+	static final int SERVICE_SPECIFIC = 1;
+	static final int NON_STANDARD_STACKS = 2;
+	static final int PURPOSE_ONE_DISCLOSED = 4;
+
+	static final int BITMAP = 0;
+	static final int RUNS = 1;
+	// the kind byte and the max vendor id or number of runs
+	static final int ID_SET_HEADER_SIZE = 3;
+
+	private final IdRuns runs = new IdRuns();
+	private long[] words = new long[16];
+	private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+	/**
+	 * @param consentInfo
+	 *      the consent information to serialize, of version 1 or 2
+	 * @return its binary form
+	 * @throws IllegalArgumentException
+	 *      when the version cannot be serialized, or a field does not fit the form
+	 */
+	public byte[] serialize(ConsentInfo consentInfo) {
+		while (true) {
+			scratch.clear();
+			try {
+				int length = serialize(consentInfo, scratch);
+				return Arrays.copyOf(scratch.array(), length);
+			} catch (BufferOverflowException e) {
+				scratch = ByteBuffer.allocate(scratch.capacity() << 1);
+			}
+		}
+	}
+
+	/**
+	 * Writes the binary form at the position of the buffer, and moves the position past it.
+	 *
+	 * @param consentInfo
+	 *      the consent information to serialize, of version 1 or 2
+	 * @param out
+	 *      the buffer to write to
+	 * @return the length of the binary form
+	 * @throws IllegalArgumentException
+	 *      when the version cannot be serialized, or a field does not fit the form
+	 * @throws BufferOverflowException
+	 *      when the form does not fit the remaining bytes of the buffer, in which case their content is undefined
+	 */
+	public int serialize(ConsentInfo consentInfo, ByteBuffer out) {
+		int version = consentInfo.getVersion();
+		if (version != 1 && version != 2) {
+			throw new IllegalArgumentException("cannot serialize version " + version);
+		}
+		int start = out.position();
+		out.put((byte) FORMAT_VERSION);
+		out.put((byte) version);
+		out.put((byte) ((consentInfo.isServiceSpecific() ? SERVICE_SPECIFIC : 0)
+				| (consentInfo.useNonStandardStacks() ? NON_STANDARD_STACKS : 0)
+				| (consentInfo.isPurposeOneDisclosed() ? PURPOSE_ONE_DISCLOSED : 0)));
+		int customPurposeCount = customPurposeCount(consentInfo);
+		out.put((byte) customPurposeCount);
+		// the length is only known at the end
+		out.putInt(0);
+		out.putLong(consentInfo.getConsentRecordCreatedDeciseconds());
+		out.putLong(consentInfo.getConsentRecordLastUpdatedDeciseconds());
+		out.putShort(unsignedShort(consentInfo.getCmpId()));
+		out.putShort(unsignedShort(consentInfo.getCmpVersion()));
+		out.putShort(unsignedShort(consentInfo.getVendorListVersion()));
+		out.putShort(twoLetterCode(consentInfo.getConsentLanguageCode()));
+		out.putShort(twoLetterCode(version == 2 ? consentInfo.getPublisherCcCode() : TwoLetterCodes.NONE));
+		out.put((byte) consentInfo.getConsentScreen());
+		out.put((byte) consentInfo.getTcfPolicyVersion());
+		out.putShort((short) flags(consentInfo::isFeatureOptioned, ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE));
+		List<PubRestrictionEntry> restrictions = consentInfo.getPublisherRestrictions();
+		out.putShort(unsignedShort(restrictions.size()));
+		out.putInt((int) flags(consentInfo::isPurposeConsented, ConsentStringParserV2.PURPOSES_CONSENT_SIZE));
+		out.putInt((int) flags(consentInfo::isPurposeLegitInterestEstablished,
+				ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE));
+		out.putInt((int) flags(consentInfo::isPubPurposesConsented, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE));
+		out.putInt((int) flags(consentInfo::isPubPurposeLegitInterestEstablished,
+				ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE));
+		out.putLong(flags(consentInfo::isCustomPurposeConsented, customPurposeCount));
+		out.putLong(flags(consentInfo::isCustomPurposeLegitInterestEstablished, customPurposeCount));
+
+		writeIdSet(out, consentInfo.getVendorConsents());
+		writeIdSet(out, consentInfo.getVendorLegitInterests());
+		writeIdSet(out, consentInfo.getDisclosedVendors());
+		writeIdSet(out, consentInfo.getAllowedVendors());
+		for (PubRestrictionEntry restriction : restrictions) {
+			if (restriction.getType().getValue() < 0) {
+				throw new IllegalArgumentException("cannot serialize restriction type " + restriction.getType());
+			}
+			out.put((byte) restriction.getPurposeId());
+			out.put((byte) restriction.getType().getValue());
+			writeIdSet(out, restriction.getVendorIds());
+		}
+		int length = out.position() - start;
+		out.putInt(start + LENGTH_OFFSET, length);
+		return length;
+	}
+
+	/**
+	 * Reads a binary form into a new {@link MutableConsentInfo}, in a single pass.
+	 *
+	 * @param in
+	 *      the buffer to read from, at its position, which is moved past the binary form
+	 * @return the consent information
+	 * @throws IllegalArgumentException
+	 *      when the binary form is malformed, or of a format version this class does not know
+	 */
+	public static ConsentInfo deserialize(ByteBuffer in) {
+		MutableConsentInfo consentInfo = new MutableConsentInfo();
+		if (!deserializeInto(in, consentInfo)) {
+			throw new IllegalArgumentException("malformed binary consent at " + in.position());
+		}
+		return consentInfo;
+	}
+
+	/**
+	 * Reads a binary form into a reusable instance, which allocates nothing once the instance has grown to the size of
+	 * the consents it sees.
+	 *
+	 * @param in
+	 *      the buffer to read from, at its position, which is moved past the binary form when it could be read
+	 * @param target
+	 *      the instance to read into, replacing whatever it held before
+	 * @return whether the binary form could be read; when it could not, the target reads like a
+	 *      {@link ConsentInfoStub}
+	 */
+	public static boolean deserializeInto(ByteBuffer in, MutableConsentInfo target) {
+		int length = target.decode(in, in.position());
+		if (length < 0) {
+			return false;
+		}
+		in.position(in.position() + length);
+		return true;
+	}
+
+	/**
+	 * @param buffer
+	 *      the buffer holding a binary form
+	 * @param offset
+	 *      the offset of the binary form in the buffer
+	 * @return the length of the binary form, or -1 when its header is malformed or does not fit the buffer
+	 */
+	static int length(ByteBuffer buffer, int offset) {
+		if (offset < 0 || buffer.limit() - offset < HEADER_SIZE
+				|| buffer.get(offset + FORMAT_VERSION_OFFSET) != FORMAT_VERSION) {
+			return -1;
+		}
+		int version = buffer.get(offset + VERSION_OFFSET);
+		int length = buffer.getInt(offset + LENGTH_OFFSET);
+		if ((version != 1 && version != 2) || length < HEADER_SIZE || length > buffer.limit() - offset) {
+			return -1;
+		}
+		return length;
+	}
+
+	/**
+	 * @param buffer
+	 *      the buffer holding a set of vendors
+	 * @param offset
+	 *      the offset of the set in the buffer
+	 * @param end
+	 *      the end of the binary form holding the set
+	 * @return the offset right past the set, or -1 when it is malformed
+	 */
+	static int idSetEnd(ByteBuffer buffer, int offset, int end) {
+		if (offset > end - ID_SET_HEADER_SIZE) {
+			return -1;
+		}
+		int count = buffer.getShort(offset + 1) & 0xFFFF;
+		int size;
+		switch (buffer.get(offset)) {
+		case BITMAP:
+			size = ((count + 63) >>> 6) << 3;
+			break;
+		case RUNS:
+			size = count << 2;
+			break;
+		default:
+			return -1;
+		}
+		return offset + ID_SET_HEADER_SIZE + size > end ? -1 : offset + ID_SET_HEADER_SIZE + size;
+	}
+
+	private void writeIdSet(ByteBuffer out, IdSet ids) {
+		runs.collect(ids);
+		int maxId = runs.getMaxId();
+		int runCount = runs.getCount();
+		int wordCount = (maxId + 63) >>> 6;
+		if (runCount << 2 < wordCount << 3) {
+			out.put((byte) RUNS);
+			out.putShort(unsignedShort(runCount));
+			for (int i = 0; i < runCount; i++) {
+				out.putShort(unsignedShort(runs.getStart(i)));
+				out.putShort(unsignedShort(runs.getEnd(i)));
+			}
+			return;
+		}
+		out.put((byte) BITMAP);
+		out.putShort(unsignedShort(maxId));
+		if (words.length < wordCount) {
+			words = new long[Math.max(wordCount, words.length << 1)];
+		} else {
+			Arrays.fill(words, 0, wordCount, 0L);
+		}
+		for (int i = 0; i < runCount; i++) {
+			setBits(words, runs.getStart(i) - 1, runs.getEnd(i));
+		}
+		for (int i = 0; i < wordCount; i++) {
+			out.putLong(words[i]);
+		}
+	}
+
+	/**
+	 * sets the bits [from, to) of big endian words
+	 */
+	private static void setBits(long[] words, int from, int to) {
+		for (int bit = from; bit < to;) {
+			int wordIndex = bit >>> 6;
+			int shift = bit & 63;
+			int count = Math.min(to - bit, Long.SIZE - shift);
+			long mask = count == Long.SIZE ? -1L : ((1L << count) - 1) << (Long.SIZE - shift - count);
+			words[wordIndex] |= mask;
+			bit += count;
+		}
+	}
+
+	private interface Flags {
+		boolean isSet(int id);
+	}
+
+	/**
+	 * @return a bit field of ids 1 to size, laid out as in the consent string, the bit for id 1 being the most
+	 *      significant of the field
+	 */
+	private static long flags(Flags flags, int size) {
+		long field = 0;
+		for (int id = 1; id <= size; id++) {
+			field = (field << 1) | (flags.isSet(id) ? 1 : 0);
+		}
+		return field;
+	}
+
+	private static int customPurposeCount(ConsentInfo consentInfo) {
+		for (int purposeId = (1 << ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE) - 1; purposeId > 0; purposeId--) {
+			if (consentInfo.isCustomPurposeConsented(purposeId)
+					|| consentInfo.isCustomPurposeLegitInterestEstablished(purposeId)) {
+				return purposeId;
+			}
+		}
+		return 0;
+	}
+
+	// codes are stored as the string held them, letters past 'Z' included
+	private static short twoLetterCode(int code) {
+		return (short) (code == TwoLetterCodes.NONE ? 0 : code);
+	}
+
+	private static short unsignedShort(int value) {
+		if (value < 0 || value > 0xFFFF) {
+			throw new IllegalArgumentException(value + " does not fit in 16 bits");
+		}
+		return (short) value;
+	}
+}
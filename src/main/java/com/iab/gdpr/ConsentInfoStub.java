@@ -1,7 +1,7 @@
 package com.iab.gdpr;
 
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class ConsentInfoStub implements ConsentInfo {
@@ -105,7 +105,7 @@ public class ConsentInfoStub implements ConsentInfo {
 	 */
 	@Override
 	public List<Purpose> getConsentedPurposes() {
-		return new ArrayList<Purpose>();
+		return Collections.emptyList();
 	}
 
 	/**
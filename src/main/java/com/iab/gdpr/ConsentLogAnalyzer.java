@@ -0,0 +1,412 @@
+package com.iab.gdpr;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates newline delimited files of consent strings, such as the ones pulled from bid logs, into a {@link Report}.
+ *
+ * A file is memory mapped a chunk at a time, the chunks being cut on line boundaries, and the chunks are decoded in
+ * parallel on a {@link ForkJoinPool}. Every task decodes its lines into a single {@link MutableConsentInfo} and only
+ * keeps counters, so neither the file nor the decoded strings are ever held on the heap. Blank lines are skipped and
+ * surrounding whitespace is ignored.
+ *
+ * From the command line:
+ *
+ * <pre>
+ * java com.iab.gdpr.ConsentLogAnalyzer [-p parallelism] [-v maxVendorId] [-c chunkMegabytes] file...
+ * </pre>
+ */
+public final class ConsentLogAnalyzer {
+	/**
+	 * the vendor ids consent rates are reported for by default, which covers every registered TCF vendor
+	 */
+	public static final int DEFAULT_MAX_VENDOR_ID = 2048;
+	/**
+	 * the default size of the chunks a file is mapped and decoded by
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+
+	// both versions have 24 purpose consent bits
+	private static final int PURPOSE_COUNT = ConsentStringParserV2.PURPOSES_CONSENT_SIZE;
+	private static final int VERSION_COUNT = 1 << ConsentStringParser.VERSION_BIT_SIZE;
+	private static final int CMP_ID_COUNT = 1 << ConsentStringParser.CMP_ID_SIZE;
+	private static final int VENDOR_LIST_VERSION_COUNT = 1 << ConsentStringParser.VENDOR_LIST_VERSION_SIZE;
+	// how much is mapped at once while looking for the end of the line a chunk boundary falls in
+	private static final int BOUNDARY_WINDOW = 64 << 10;
+
+	private final ForkJoinPool pool;
+	private final int[] vendorIds;
+	private final int chunkSize;
+
+	/**
+	 * Creates an analyzer running on the common pool with the default settings.
+	 */
+	public ConsentLogAnalyzer() {
+		this(ForkJoinPool.commonPool(), DEFAULT_MAX_VENDOR_ID, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param pool
+	 *      the pool the chunks are decoded on
+	 * @param maxVendorId
+	 *      the highest vendor id consent rates are reported for
+	 * @param chunkSize
+	 *      the size in bytes of the chunks a file is mapped and decoded by
+	 */
+	public ConsentLogAnalyzer(ForkJoinPool pool, int maxVendorId, int chunkSize) {
+		if (maxVendorId < 0 || chunkSize <= 0) {
+			throw new IllegalArgumentException("maxVendorId must not be negative and chunkSize must be positive");
+		}
+		this.pool = pool;
+		this.vendorIds = new int[maxVendorId];
+		for (int i = 0; i < maxVendorId; i++) {
+			vendorIds[i] = i + 1;
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param file
+	 *      a file with one consent string per line
+	 * @return the aggregated counts of the file
+	 * @throws IOException
+	 *      when the file cannot be read
+	 */
+	public Report analyze(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long[] bounds = chunkBounds(channel);
+			try {
+				return pool.invoke(new ChunkTask(channel, bounds, 0, bounds.length - 1));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Analyzes the files given on the command line and prints one report over all of them to standard output.
+	 *
+	 * @param args
+	 *      the options followed by the files
+	 * @throws IOException
+	 *      when a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		int maxVendorId = DEFAULT_MAX_VENDOR_ID;
+		int chunkSize = DEFAULT_CHUNK_SIZE;
+		List<Path> files = new ArrayList<Path>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if ("-p".equals(args[i])) {
+					parallelism = Integer.parseInt(args[++i]);
+				} else if ("-v".equals(args[i])) {
+					maxVendorId = Integer.parseInt(args[++i]);
+				} else if ("-c".equals(args[i])) {
+					chunkSize = Math.multiplyExact(Integer.parseInt(args[++i]), 1 << 20);
+				} else {
+					files.add(Paths.get(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			files.clear();
+		}
+		if (files.isEmpty() || parallelism <= 0 || maxVendorId < 0 || chunkSize <= 0) {
+			System.err.println("usage: ConsentLogAnalyzer [-p parallelism] [-v maxVendorId] [-c chunkMegabytes] file...");
+			System.exit(2);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			ConsentLogAnalyzer analyzer = new ConsentLogAnalyzer(pool, maxVendorId, chunkSize);
+			Report report = null;
+			for (Path file : files) {
+				Report fileReport = analyzer.analyze(file);
+				if (report == null) {
+					report = fileReport;
+				} else {
+					report.merge(fileReport);
+				}
+			}
+			report.print(System.out);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return the offsets the chunks start at, followed by the size of the file. Every offset but the first is the
+	 *      start of a line.
+	 */
+	private long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		long position = 0;
+		while (size - position > chunkSize) {
+			position = lineEnd(channel, position + chunkSize, size);
+			if (position >= size) {
+				break;
+			}
+			bounds.add(position);
+		}
+		bounds.add(size);
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the offset following the first line feed at or after position, or size when there is none
+	 */
+	private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+		while (position < size) {
+			int length = (int) Math.min(BOUNDARY_WINDOW, size - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			for (int i = 0; i < length; i++) {
+				if (window.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += length;
+		}
+		return size;
+	}
+
+	/**
+	 * Splits the chunks [from, to) in halves until a single one is left, which is mapped and decoded.
+	 */
+	private final class ChunkTask extends RecursiveTask<Report> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] bounds;
+		private final int from;
+		private final int to;
+
+		ChunkTask(FileChannel channel, long[] bounds, int from, int to) {
+			this.channel = channel;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Report compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				ChunkTask right = new ChunkTask(channel, bounds, middle, to);
+				right.fork();
+				Report report = new ChunkTask(channel, bounds, from, middle).compute();
+				report.merge(right.join());
+				return report;
+			}
+			Report report = new Report(vendorIds.length);
+			try {
+				decodeChunk(channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[to] - bounds[from]), report);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return report;
+		}
+	}
+
+	private void decodeChunk(MappedByteBuffer chunk, Report report) {
+		MutableConsentInfo consentInfo = new MutableConsentInfo();
+		int limit = chunk.limit();
+		int position = 0;
+		while (position < limit) {
+			int start = position;
+			while (position < limit && chunk.get(position) != '\n') {
+				position++;
+			}
+			int end = position++;
+			while (start < end && chunk.get(start) <= ' ') {
+				start++;
+			}
+			while (end > start && chunk.get(end - 1) <= ' ') {
+				end--;
+			}
+			if (start == end) {
+				continue;
+			}
+			// the line is decoded where it is mapped
+			AsciiChars consentString = AsciiChars.of(chunk, start, end - start);
+			if (ConsentInfoDecoder.decodeInto(consentString, consentInfo)) {
+				report.add(consentInfo, vendorIds);
+			} else {
+				report.addFailure(ConsentInfoDecoder.getVersion(consentString));
+			}
+		}
+	}
+
+	/**
+	 * The counts aggregated over the lines of one or more files. Rates are the counts over
+	 * {@link #getDecodedCount()}.
+	 */
+	public static final class Report {
+		private long lineCount;
+		private long decodedCount;
+		private final long[] versionCounts = new long[VERSION_COUNT];
+		private final long[] failureCounts = new long[VERSION_COUNT];
+		private final long[] cmpIdCounts = new long[CMP_ID_COUNT];
+		private final long[] vendorListVersionCounts = new long[VENDOR_LIST_VERSION_COUNT];
+		private final long[] purposeConsentCounts = new long[PURPOSE_COUNT + 1];
+		private final long[] vendorConsentCounts;
+
+		Report(int maxVendorId) {
+			this.vendorConsentCounts = new long[maxVendorId + 1];
+		}
+
+		/**
+		 * @return the number of non blank lines
+		 */
+		public long getLineCount() {
+			return lineCount;
+		}
+
+		/**
+		 * @return the number of lines that decoded
+		 */
+		public long getDecodedCount() {
+			return decodedCount;
+		}
+
+		/**
+		 * @return the number of lines that did not decode
+		 */
+		public long getFailureCount() {
+			return lineCount - decodedCount;
+		}
+
+		/**
+		 * @param version
+		 *      a perceived version, as told by {@link ConsentInfoDecoder#getVersion(String)}, where 0 stands for lines
+		 *      that are not base64 at all
+		 * @return the number of lines of the version that did not decode
+		 */
+		public long getFailureCount(int version) {
+			return count(failureCounts, version);
+		}
+
+		/**
+		 * @return the number of decoded strings of the version
+		 */
+		public long getVersionCount(int version) {
+			return count(versionCounts, version);
+		}
+
+		/**
+		 * @return the number of decoded strings created by the CMP
+		 */
+		public long getCmpIdCount(int cmpId) {
+			return count(cmpIdCounts, cmpId);
+		}
+
+		/**
+		 * @return the number of decoded strings of the vendor list version
+		 */
+		public long getVendorListVersionCount(int vendorListVersion) {
+			return count(vendorListVersionCounts, vendorListVersion);
+		}
+
+		/**
+		 * @return the number of decoded strings consenting to the purpose
+		 */
+		public long getPurposeConsentCount(int purposeId) {
+			return count(purposeConsentCounts, purposeId);
+		}
+
+		/**
+		 * @return the number of decoded strings consenting to the vendor, or 0 for a vendor above the maximum vendor
+		 *      id of the analyzer
+		 */
+		public long getVendorConsentCount(int vendorId) {
+			return count(vendorConsentCounts, vendorId);
+		}
+
+		/**
+		 * Prints the version mix, the CMP and vendor list version distributions, the purpose and vendor consent rates
+		 * and the failure counts, leaving out whatever was never seen.
+		 *
+		 * @param out
+		 *      the stream to print to
+		 */
+		public void print(PrintStream out) {
+			out.printf("lines: %d, decoded: %d, failed: %d%n", lineCount, decodedCount, getFailureCount());
+			printCounts(out, "versions", versionCounts, lineCount);
+			printCounts(out, "failures by version", failureCounts, lineCount);
+			printCounts(out, "cmp ids", cmpIdCounts, decodedCount);
+			printCounts(out, "vendor list versions", vendorListVersionCounts, decodedCount);
+			printCounts(out, "purpose consents", purposeConsentCounts, decodedCount);
+			printCounts(out, "vendor consents", vendorConsentCounts, decodedCount);
+		}
+
+		private static void printCounts(PrintStream out, String title, long[] counts, long total) {
+			out.println(title + ":");
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] != 0) {
+					out.printf("  %6d %12d %7.3f%%%n", i, counts[i], 100.0 * counts[i] / total);
+				}
+			}
+		}
+
+		void add(ConsentInfo consentInfo, int[] vendorIds) {
+			lineCount++;
+			decodedCount++;
+			versionCounts[consentInfo.getVersion()]++;
+			cmpIdCounts[consentInfo.getCmpId()]++;
+			vendorListVersionCounts[consentInfo.getVendorListVersion()]++;
+			for (int purposeId = 1; purposeId <= PURPOSE_COUNT; purposeId++) {
+				if (consentInfo.isPurposeConsented(purposeId)) {
+					purposeConsentCounts[purposeId]++;
+				}
+			}
+			long[] consented = consentInfo.areVendorsConsented(vendorIds);
+			for (int w = 0; w < consented.length; w++) {
+				for (long word = consented[w]; word != 0; word &= word - 1) {
+					vendorConsentCounts[vendorIds[(w << 6) + Long.numberOfTrailingZeros(word)]]++;
+				}
+			}
+		}
+
+		void addFailure(int version) {
+			lineCount++;
+			failureCounts[version]++;
+		}
+
+		void merge(Report other) {
+			lineCount += other.lineCount;
+			decodedCount += other.decodedCount;
+			add(versionCounts, other.versionCounts);
+			add(failureCounts, other.failureCounts);
+			add(cmpIdCounts, other.cmpIdCounts);
+			add(vendorListVersionCounts, other.vendorListVersionCounts);
+			add(purposeConsentCounts, other.purposeConsentCounts);
+			add(vendorConsentCounts, other.vendorConsentCounts);
+		}
+
+		private static void add(long[] counts, long[] other) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other[i];
+			}
+		}
+
+		private static long count(long[] counts, int index) {
+			return index >= 0 && index < counts.length ? counts[index] : 0;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes a {@link ConsentInfo} into a version 1 or version 2 consent string: for version 2, the core segment followed
+ * by the disclosed vendors, allowed vendors and publisher TC segments the consent information has.
+ *
+ * Every vendor section is written with whichever of the bit field and the range encodings is shorter, and a version 1
+ * range section also lists either the consented vendors or the others, whichever is shorter. The maximum vendor
+ * id of a section is the highest vendor it lists, since the ones above it are not consented to either way.
+ *
+ * Decoding a string this encoder wrote and encoding it again gives back the very same string. A string written by
+ * another encoder decodes to the same consent information as its encoding here, which is never longer.
+ *
+ * The bits are written into a buffer that is reused from one string to the next, then converted straight to url safe
+ * base64, without padding. An encoder is therefore not thread safe; use one per thread.
+ */
+public final class ConsentStringEncoder {
+	// a range entry is a single vendor id, or a start and an end id, after a bit telling which
+	private static final int SINGLE_ENTRY_SIZE = 1 + ConsentStringParserV2.VENDOR_ID_SIZE;
+	private static final int RANGE_ENTRY_SIZE = 1 + 2 * ConsentStringParserV2.VENDOR_ID_SIZE;
+	private static final int MAX_ENTRIES = (1 << ConsentStringParserV2.NUM_ENTRIES_SIZE) - 1;
+	private static final int MAX_CUSTOM_PURPOSES = (1 << ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE) - 1;
+	private static final int DISCLOSED_VENDORS = 1;
+	private static final int ALLOWED_VENDORS = 2;
+	private static final int PUBLISHER_TC = 3;
+
+	private long[] words = new long[16];
+	private int bitLength;
+	// the runs of the section being written, and for a version 1 section, the runs of the vendors it refuses
+	private final IdRuns runs = new IdRuns();
+	private final IdRuns refusedRuns = new IdRuns();
+
+	/**
+	 * @param consentInfo
+	 *      the consent information to encode, of version 1 or 2
+	 * @return the consent string
+	 * @throws IllegalArgumentException
+	 *      when the version cannot be encoded, or a field does not fit the string
+	 */
+	public String encode(ConsentInfo consentInfo) {
+		StringBuilder out = new StringBuilder(64);
+		encode(consentInfo, out);
+		return out.toString();
+	}
+
+	/**
+	 * @param consentInfo
+	 *      the consent information to encode, of version 1 or 2
+	 * @param out
+	 *      what the consent string is appended to
+	 * @throws IllegalArgumentException
+	 *      when the version cannot be encoded, or a field does not fit the string
+	 */
+	public void encode(ConsentInfo consentInfo, StringBuilder out) {
+		switch (consentInfo.getVersion()) {
+		case 1:
+			encodeV1(consentInfo, out);
+			break;
+		case 2:
+			encodeV2(consentInfo, out);
+			break;
+		default:
+			throw new IllegalArgumentException("cannot encode version " + consentInfo.getVersion());
+		}
+	}
+
+	private void encodeV1(ConsentInfo consentInfo, StringBuilder out) {
+		clear();
+		writeHeader(consentInfo);
+		writeFlags(consentInfo::isPurposeConsented, ConsentStringParser.PURPOSES_SIZE);
+
+		runs.collect(consentInfo.getVendorConsents());
+		int maxVendorId = runs.getMaxId();
+		write(maxVendorId, ConsentStringParser.MAX_VENDOR_ID_SIZE);
+		// the vendors that are not consented to, as the exceptions to a default consent
+		refusedRuns.collectComplement(runs, maxVendorId);
+		int consentedSize = rangeSize(runs);
+		int refusedSize = rangeSize(refusedRuns);
+
+		int rangeHeaderSize = 1 + ConsentStringParser.NUM_ENTRIES_SIZE;
+		boolean refusedFits = refusedRuns.getCount() <= MAX_ENTRIES && rangeHeaderSize + refusedSize < maxVendorId;
+		boolean consentedFits = runs.getCount() <= MAX_ENTRIES && rangeHeaderSize + consentedSize < maxVendorId;
+		if (refusedFits && (!consentedFits || refusedSize < consentedSize)) {
+			write(ConsentStringParser.VENDOR_ENCODING_RANGE, ConsentStringParser.ENCODING_TYPE_SIZE);
+			write(1, 1);
+			writeRanges(refusedRuns);
+		} else if (consentedFits) {
+			write(ConsentStringParser.VENDOR_ENCODING_RANGE, ConsentStringParser.ENCODING_TYPE_SIZE);
+			write(0, 1);
+			writeRanges(runs);
+		} else {
+			write(0, ConsentStringParser.ENCODING_TYPE_SIZE);
+			writeBitField(maxVendorId);
+		}
+		appendBase64(out);
+	}
+
+	private void encodeV2(ConsentInfo consentInfo, StringBuilder out) {
+		clear();
+		writeHeader(consentInfo);
+		write(consentInfo.getTcfPolicyVersion(), ConsentStringParserV2.TCF_POLICY_VERSION_SIZE);
+		write(consentInfo.isServiceSpecific() ? 1 : 0, 1);
+		write(consentInfo.useNonStandardStacks() ? 1 : 0, 1);
+		writeFlags(consentInfo::isFeatureOptioned, ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE);
+		writeFlags(consentInfo::isPurposeConsented, ConsentStringParserV2.PURPOSES_CONSENT_SIZE);
+		writeFlags(consentInfo::isPurposeLegitInterestEstablished,
+				ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE);
+		write(consentInfo.isPurposeOneDisclosed() ? 0 : 1, 1);
+		writeTwoLetterCode(consentInfo.getPublisherCcCode(), ConsentStringParserV2.PUBLISHER_CC_SIZE);
+		writeRangeOrBitField(consentInfo.getVendorConsents());
+		writeRangeOrBitField(consentInfo.getVendorLegitInterests());
+
+		List<PubRestrictionEntry> restrictions = consentInfo.getPublisherRestrictions();
+		write(restrictions.size(), ConsentStringParserV2.NUM_PUB_RESTRICTIONS_SIZE);
+		for (PubRestrictionEntry restriction : restrictions) {
+			if (restriction.getType().getValue() < 0) {
+				throw new IllegalArgumentException("cannot encode restriction type " + restriction.getType());
+			}
+			write(restriction.getPurposeId(), ConsentStringParserV2.PURPOSE_ID_SIZE);
+			write(restriction.getType().getValue(), ConsentStringParserV2.RESTRICTION_TYPE_SIZE);
+			runs.collect(restriction.getVendorIds());
+			writeRanges(runs);
+		}
+		appendBase64(out);
+
+		IdSet disclosedVendors = consentInfo.getDisclosedVendors();
+		if (!disclosedVendors.isEmpty()) {
+			startSegment(out, DISCLOSED_VENDORS);
+			writeRangeOrBitField(disclosedVendors);
+			appendBase64(out);
+		}
+		IdSet allowedVendors = consentInfo.getAllowedVendors();
+		if (!allowedVendors.isEmpty()) {
+			startSegment(out, ALLOWED_VENDORS);
+			writeRangeOrBitField(allowedVendors);
+			appendBase64(out);
+		}
+		int customPurposeCount = 0;
+		for (int purposeId = MAX_CUSTOM_PURPOSES; purposeId > 0 && customPurposeCount == 0; purposeId--) {
+			if (consentInfo.isCustomPurposeConsented(purposeId)
+					|| consentInfo.isCustomPurposeLegitInterestEstablished(purposeId)) {
+				customPurposeCount = purposeId;
+			}
+		}
+		if (customPurposeCount > 0 || hasPubPurposes(consentInfo)) {
+			startSegment(out, PUBLISHER_TC);
+			writeFlags(consentInfo::isPubPurposesConsented, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE);
+			writeFlags(consentInfo::isPubPurposeLegitInterestEstablished,
+					ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+			write(customPurposeCount, ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE);
+			writeFlags(consentInfo::isCustomPurposeConsented, customPurposeCount);
+			writeFlags(consentInfo::isCustomPurposeLegitInterestEstablished, customPurposeCount);
+			appendBase64(out);
+		}
+	}
+
+	private static boolean hasPubPurposes(ConsentInfo consentInfo) {
+		for (int purposeId = 1; purposeId <= ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE; purposeId++) {
+			if (consentInfo.isPubPurposesConsented(purposeId)
+					|| consentInfo.isPubPurposeLegitInterestEstablished(purposeId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the header fields up to the vendor list version are laid out the same way in both versions
+	private void writeHeader(ConsentInfo consentInfo) {
+		write(consentInfo.getVersion(), ConsentStringParserV2.VERSION_SIZE);
+		write(consentInfo.getConsentRecordCreatedDeciseconds(), ConsentStringParserV2.CREATED_SIZE);
+		write(consentInfo.getConsentRecordLastUpdatedDeciseconds(), ConsentStringParserV2.LAST_UPDATED_SIZE);
+		write(consentInfo.getCmpId(), ConsentStringParserV2.CMP_ID_SIZE);
+		write(consentInfo.getCmpVersion(), ConsentStringParserV2.CMP_VERSION_SIZE);
+		write(consentInfo.getConsentScreen(), ConsentStringParserV2.CONSENT_SCREEN_SIZE);
+		writeTwoLetterCode(consentInfo.getConsentLanguageCode(), ConsentStringParserV2.CONSENT_LANGUAGE_SIZE);
+		write(consentInfo.getVendorListVersion(), ConsentStringParserV2.VENDOR_LIST_VERSION_SIZE);
+	}
+
+	private void startSegment(StringBuilder out, int segmentType) {
+		out.append('.');
+		clear();
+		write(segmentType, ConsentStringParserV2.SEGMENT_TYPE_SIZE);
+	}
+
+	/**
+	 * writes a version 2 vendor section, as a bit field or as a range section, whichever is shorter
+	 */
+	private void writeRangeOrBitField(IdSet ids) {
+		runs.collect(ids);
+		int maxVendorId = runs.getMaxId();
+		write(maxVendorId, ConsentStringParserV2.VENDOR_ID_SIZE);
+		if (runs.getCount() <= MAX_ENTRIES && ConsentStringParserV2.NUM_ENTRIES_SIZE + rangeSize(runs) < maxVendorId) {
+			write(1, 1);
+			writeRanges(runs);
+		} else {
+			write(0, 1);
+			writeBitField(maxVendorId);
+		}
+	}
+
+	/**
+	 * @return the size of the entries of a range section made of the runs
+	 */
+	private static int rangeSize(IdRuns runs) {
+		int size = 0;
+		for (int i = 0, ii = runs.getCount(); i < ii; i++) {
+			size += runs.getStart(i) == runs.getEnd(i) ? SINGLE_ENTRY_SIZE : RANGE_ENTRY_SIZE;
+		}
+		return size;
+	}
+
+	private void writeRanges(IdRuns ranges) {
+		int entryCount = ranges.getCount();
+		if (entryCount > MAX_ENTRIES) {
+			throw new IllegalArgumentException("a range section cannot hold " + entryCount + " entries");
+		}
+		write(entryCount, ConsentStringParserV2.NUM_ENTRIES_SIZE);
+		for (int i = 0; i < entryCount; i++) {
+			if (ranges.getStart(i) == ranges.getEnd(i)) {
+				write(0, 1);
+				write(ranges.getStart(i), ConsentStringParserV2.VENDOR_ID_SIZE);
+			} else {
+				write(1, 1);
+				write(ranges.getStart(i), ConsentStringParserV2.VENDOR_ID_SIZE);
+				write(ranges.getEnd(i), ConsentStringParserV2.VENDOR_ID_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * writes the collected runs as a bit field of the given size
+	 */
+	private void writeBitField(int size) {
+		int next = 1;
+		for (int i = 0, ii = runs.getCount(); i < ii; i++) {
+			writeRun(false, runs.getStart(i) - next);
+			writeRun(true, runs.getEnd(i) - runs.getStart(i) + 1);
+			next = runs.getEnd(i) + 1;
+		}
+		writeRun(false, size + 1 - next);
+	}
+
+	private interface Flags {
+		boolean isSet(int id);
+	}
+
+	/**
+	 * writes a bit field of ids 1 to size, the first bit standing for id 1
+	 */
+	private void writeFlags(Flags flags, int size) {
+		for (int id = 1; id <= size; id++) {
+			write(flags.isSet(id) ? 1 : 0, 1);
+		}
+	}
+
+	/**
+	 * writes a language or country code as the string held it, letters past 'Z' included, and a missing one as "AA"
+	 */
+	private void writeTwoLetterCode(int code, int size) {
+		write(code == TwoLetterCodes.NONE ? 0 : code, size);
+	}
+
+	private void clear() {
+		Arrays.fill(words, 0, Math.min((bitLength + 63) >>> 6, words.length), 0L);
+		bitLength = 0;
+	}
+
+	private void writeRun(boolean set, int count) {
+		for (; count >= Long.SIZE; count -= Long.SIZE) {
+			write(set ? -1L : 0L, Long.SIZE);
+		}
+		if (count > 0) {
+			write(set ? -1L : 0L, count);
+		}
+	}
+
+	/**
+	 * appends the low size bits of value, big endian
+	 *
+	 * @throws IllegalArgumentException
+	 *             when the value does not fit in size bits
+	 */
+	private void write(long value, int size) {
+		if (size < Long.SIZE && (value >>> size) != 0 && value != -1L) {
+			throw new IllegalArgumentException(value + " does not fit in " + size + " bits");
+		}
+		if (size == 0) {
+			return;
+		}
+		int end = bitLength + size;
+		if (((end + 63) >>> 6) > words.length) {
+			words = Arrays.copyOf(words, Math.max(words.length << 1, (end + 63) >>> 6));
+		}
+		long bits = size == Long.SIZE ? value : value & ((1L << size) - 1);
+		int wordIndex = bitLength >>> 6;
+		int shift = bitLength & 63;
+		// the bits go right after the shift bits already written to the word
+		int free = Long.SIZE - shift;
+		if (size <= free) {
+			words[wordIndex] |= bits << (free - size);
+		} else {
+			words[wordIndex] |= bits >>> (size - free);
+			words[wordIndex + 1] |= bits << (Long.SIZE - (size - free));
+		}
+		bitLength = end;
+	}
+
+	/**
+	 * appends the written bits as url safe base64, padded with zero bits to whole bytes
+	 */
+	private void appendBase64(StringBuilder out) {
+		int byteCount = (bitLength + 7) >>> 3;
+		int charCount = (byteCount * 8 + 5) / 6;
+		for (int i = 0; i < charCount; i++) {
+			int offset = i * 6;
+			int wordIndex = offset >>> 6;
+			int shift = offset & 63;
+			long value = words[wordIndex] << shift;
+			if (shift > Long.SIZE - 6 && wordIndex + 1 < words.length) {
+				value |= words[wordIndex + 1] >>> (Long.SIZE - shift);
+			}
+			out.append(Base64Url.charOf((int) (value >>> (Long.SIZE - 6))));
+		}
+	}
+}
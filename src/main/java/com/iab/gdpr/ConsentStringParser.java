@@ -2,10 +2,6 @@ package com.iab.gdpr;
 
 import java.text.ParseException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.Base64.Decoder;
-
 import java.util.List;
 
 /**
@@ -15,58 +11,60 @@ import java.util.List;
 
 public class ConsentStringParser implements ConsentInfo {
 
-	private static final int VENDOR_ENCODING_RANGE = 1;
-
-	private static final int VERSION_BIT_OFFSET = 0;
-	private static final int VERSION_BIT_SIZE = 6;
-	private static final int CREATED_BIT_OFFSET = 6;
-	private static final int CREATED_BIT_SIZE = 36;
-	private static final int UPDATED_BIT_OFFSET = 42;
-	private static final int UPDATED_BIT_SIZE = 36;
-	private static final int CMP_ID_OFFSET = 78;
-	private static final int CMP_ID_SIZE = 12;
-	private static final int CMP_VERSION_OFFSET = 90;
-	private static final int CMP_VERSION_SIZE = 12;
-	private static final int CONSENT_SCREEN_SIZE_OFFSET = 102;
-	private static final int CONSENT_SCREEN_SIZE = 6;
-	private static final int CONSENT_LANGUAGE_OFFSET = 108;
-	private static final int CONSENT_LANGUAGE_SIZE = 12;
-	private static final int VENDOR_LIST_VERSION_OFFSET = 120;
-	private static final int VENDOR_LIST_VERSION_SIZE = 12;
-	private static final int PURPOSES_OFFSET = 132;
-	private static final int PURPOSES_SIZE = 24;
-	private static final int MAX_VENDOR_ID_OFFSET = 156;
-	private static final int MAX_VENDOR_ID_SIZE = 16;
-	private static final int ENCODING_TYPE_OFFSET = 172;
-	private static final int ENCODING_TYPE_SIZE = 1;
-	private static final int VENDOR_BITFIELD_OFFSET = 173;
-	private static final int DEFAULT_CONSENT_OFFSET = 173;
-	private static final int NUM_ENTRIES_OFFSET = 174;
-	private static final int NUM_ENTRIES_SIZE = 12;
-	private static final int RANGE_ENTRY_OFFSET = 186;
-	private static final int VENDOR_ID_SIZE = 16;
+	static final int VENDOR_ENCODING_RANGE = 1;
 
-	private String consentString;
-	private final Bits bits;
+	static final int VERSION_BIT_OFFSET = 0;
+	static final int VERSION_BIT_SIZE = 6;
+	static final int CREATED_BIT_OFFSET = 6;
+	static final int CREATED_BIT_SIZE = 36;
+	static final int UPDATED_BIT_OFFSET = 42;
+	static final int UPDATED_BIT_SIZE = 36;
+	static final int CMP_ID_OFFSET = 78;
+	static final int CMP_ID_SIZE = 12;
+	static final int CMP_VERSION_OFFSET = 90;
+	static final int CMP_VERSION_SIZE = 12;
+	static final int CONSENT_SCREEN_SIZE_OFFSET = 102;
+	static final int CONSENT_SCREEN_SIZE = 6;
+	static final int CONSENT_LANGUAGE_OFFSET = 108;
+	static final int CONSENT_LANGUAGE_SIZE = 12;
+	static final int VENDOR_LIST_VERSION_OFFSET = 120;
+	static final int VENDOR_LIST_VERSION_SIZE = 12;
+	static final int PURPOSES_OFFSET = 132;
+	static final int PURPOSES_SIZE = 24;
+	static final int MAX_VENDOR_ID_OFFSET = 156;
+	static final int MAX_VENDOR_ID_SIZE = 16;
+	static final int ENCODING_TYPE_OFFSET = 172;
+	static final int ENCODING_TYPE_SIZE = 1;
+	static final int VENDOR_BITFIELD_OFFSET = 173;
+	static final int DEFAULT_CONSENT_OFFSET = 173;
+	static final int NUM_ENTRIES_OFFSET = 174;
+	static final int NUM_ENTRIES_SIZE = 12;
+	static final int RANGE_ENTRY_OFFSET = 186;
+	static final int VENDOR_ID_SIZE = 16;
+
+	private final CharSequence consentChars;
 	// fields contained in the consent string
 	private final int version;
-	private final Instant consentRecordCreated;
-	private final Instant consentRecordLastUpdated;
+	private final long consentRecordCreatedDeciseconds;
+	private final long consentRecordLastUpdatedDeciseconds;
 	private final int cmpID;
 	private final int cmpVersion;
 	private final int consentScreenID;
-	private final String consentLanguage;
+	private final int consentLanguageCode;
 	private final int vendorListVersion;
 	private final int maxVendorSize;
 	private final int vendorEncodingType;
-	private final List<Boolean> purposeConsents = new ArrayList<Boolean>();
+	private final BitField purposeConsents;
 	// only used when range entry is enabled
-	private List<RangeEntry> rangeEntries;
+	private RangeSet rangeEntries;
+	// only used when bit field encoding is enabled
+	private BitField vendorBitField;
+	// created on first use, racing threads creating equal instances
+	private Instant consentRecordCreated;
+	private Instant consentRecordLastUpdated;
+	private String consentString;
 	private boolean defaultConsent;
 
-	private final List<Purpose.PurposeV1> consentedPurposes;
-
-	private static Decoder decoder = Base64.getUrlDecoder();
 
 	/**
 	 * Constructor.
@@ -78,8 +76,39 @@ public class ConsentStringParser implements ConsentInfo {
 	 *             if the consent string cannot be parsed
 	 */
 	public ConsentStringParser(String consentString) throws ParseException {
-		this(decoder.decode(consentString));
-		this.consentString = consentString;
+		this((CharSequence) consentString);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consentString
+	 *            (required). The binary user consent data encoded as url and filename safe base64 characters, such as
+	 *            the {@link AsciiChars} of a network buffer, which are read where they are; they must not change for
+	 *            as long as this instance is used
+	 *
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParser(CharSequence consentString) throws ParseException {
+		this(new Base64Bits(consentString, 0, consentString.length(), new DecodeStatus()), consentString, true);
+	}
+
+	/**
+	 * Constructor. Unlike {@link #ConsentStringParser(byte[])}, the bytes are the characters of the consent string.
+	 *
+	 * @param consentString:
+	 *            the array holding the ASCII characters of the consent string, see {@link AsciiChars#of(byte[], int,
+	 *            int)}
+	 * @param offset:
+	 *            the index of the first character
+	 * @param length:
+	 *            the number of characters
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParser(byte[] consentString, int offset, int length) throws ParseException {
+		this(AsciiChars.of(consentString, offset, length));
 	}
 
 	/**
@@ -91,33 +120,46 @@ public class ConsentStringParser implements ConsentInfo {
 	 *             when the consent string cannot be parsed
 	 */
 	public ConsentStringParser(byte[] bytes) throws ParseException {
-		this.bits = new Bits(bytes);
+		this(new Bits(bytes, new DecodeStatus()), null, true);
+	}
+
+	/**
+	 * Decodes without throwing: when the consent string cannot be parsed, the failure is recorded to the status and
+	 * the instance is to be dropped.
+	 *
+	 * @param consentString
+	 *            (required). The binary user consent data encoded as url and filename safe base64 string
+	 * @param status
+	 *            where the failure is recorded
+	 * @throws ParseException
+	 *             only for failures that are not about the consent string
+	 */
+	ConsentStringParser(CharSequence consentString, DecodeStatus status) throws ParseException {
+		this(new Base64Bits(consentString, 0, consentString.length(), status), consentString, false);
+	}
+
+	/**
+	 * parses bits that record their failures, which are thrown at the end when asked to
+	 */
+	private ConsentStringParser(Bits bits, CharSequence consentString, boolean throwFailure) throws ParseException {
+		this.consentChars = consentString;
 		// begin parsing
 
 		this.version = bits.getInt(VERSION_BIT_OFFSET, VERSION_BIT_SIZE);
-		this.consentRecordCreated = bits.getInstantFromEpochDemiseconds(CREATED_BIT_OFFSET, CREATED_BIT_SIZE);
-		this.consentRecordLastUpdated = bits.getInstantFromEpochDemiseconds(UPDATED_BIT_OFFSET, UPDATED_BIT_SIZE);
+		this.consentRecordCreatedDeciseconds = bits.getLong(CREATED_BIT_OFFSET, CREATED_BIT_SIZE);
+		this.consentRecordLastUpdatedDeciseconds = bits.getLong(UPDATED_BIT_OFFSET, UPDATED_BIT_SIZE);
 		this.cmpID = bits.getInt(CMP_ID_OFFSET, CMP_ID_SIZE);
 		this.cmpVersion = bits.getInt(CMP_VERSION_OFFSET, CMP_VERSION_SIZE);
 		this.consentScreenID = bits.getInt(CONSENT_SCREEN_SIZE_OFFSET, CONSENT_SCREEN_SIZE);
-		this.consentLanguage = bits.getSixBitString(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE);
+		this.consentLanguageCode = bits.getInt(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE);
 		this.vendorListVersion = bits.getInt(VENDOR_LIST_VERSION_OFFSET, VENDOR_LIST_VERSION_SIZE);
 		this.maxVendorSize = bits.getInt(MAX_VENDOR_ID_OFFSET, MAX_VENDOR_ID_SIZE);
 		this.vendorEncodingType = bits.getInt(ENCODING_TYPE_OFFSET, ENCODING_TYPE_SIZE);
-		for (int i = PURPOSES_OFFSET, ii = PURPOSES_OFFSET + PURPOSES_SIZE; i < ii; i++) {
-			purposeConsents.add(bits.getBit(i));
-		}
-		List<Purpose.PurposeV1> purposes = new ArrayList<Purpose.PurposeV1>();
-		for (int i = 1, ii = purposeConsents.size(); i <= ii; i++) {
-			if (isPurposeConsented(i)) {
-				purposes.add(Purpose.PurposeV1.valueOf(i));
-			}
-		}
-		this.consentedPurposes = purposes;
+		this.purposeConsents = bits.getBitField(PURPOSES_OFFSET, PURPOSES_SIZE);
 		if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
-			this.rangeEntries = new ArrayList<RangeEntry>();
 			this.defaultConsent = bits.getBit(DEFAULT_CONSENT_OFFSET);
 			int numEntries = bits.getInt(NUM_ENTRIES_OFFSET, NUM_ENTRIES_SIZE);
+			RangeSet.Builder ranges = new RangeSet.Builder(numEntries);
 			int currentOffset = RANGE_ENTRY_OFFSET;
 			for (int i = 0; i < numEntries; i++) {
 				boolean range = bits.getBit(currentOffset);
@@ -127,23 +169,35 @@ public class ConsentStringParser implements ConsentInfo {
 					currentOffset += VENDOR_ID_SIZE;
 					int endVendorId = bits.getInt(currentOffset, VENDOR_ID_SIZE);
 					currentOffset += VENDOR_ID_SIZE;
-					rangeEntries.add(new RangeEntry(startVendorId, endVendorId));
+					ranges.add(startVendorId, endVendorId);
 				} else {
 					int vendorId = bits.getInt(currentOffset, VENDOR_ID_SIZE);
 					currentOffset += VENDOR_ID_SIZE;
-					rangeEntries.add(new RangeEntry(vendorId));
+					ranges.add(vendorId, vendorId);
 				}
 			}
+			this.rangeEntries = ranges.build();
+		} else {
+			// ids past the end of a truncated bit field are treated as not consented, rather than failing the parse
+			int available = Math.max(bits.length() - VENDOR_BITFIELD_OFFSET, 0);
+			this.vendorBitField = bits.getBitField(VENDOR_BITFIELD_OFFSET, Math.min(maxVendorSize, available));
+		}
+		if (throwFailure && bits.failed()) {
+			throw bits.getStatus().toException();
 		}
 
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * {@inheritDoc} A consent string given as other characters than a {@link String} becomes one on first use.
 	 */
 	@Override
 	public String getConsentString() {
-		return consentString;
+		String s = consentString;
+		if (s == null && consentChars != null) {
+			consentString = s = consentChars.toString();
+		}
+		return s;
 	}
 
 	/**
@@ -151,7 +205,19 @@ public class ConsentStringParser implements ConsentInfo {
 	 */
 	@Override
 	public Instant getConsentRecordCreated() {
-		return consentRecordCreated;
+		Instant created = consentRecordCreated;
+		if (created == null) {
+			consentRecordCreated = created = Instant.ofEpochMilli(consentRecordCreatedDeciseconds * 100);
+		}
+		return created;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordCreatedDeciseconds() {
+		return consentRecordCreatedDeciseconds;
 	}
 
 	/**
@@ -159,7 +225,19 @@ public class ConsentStringParser implements ConsentInfo {
 	 */
 	@Override
 	public Instant getConsentRecordLastUpdated() {
-		return consentRecordLastUpdated;
+		Instant lastUpdated = consentRecordLastUpdated;
+		if (lastUpdated == null) {
+			consentRecordLastUpdated = lastUpdated = Instant.ofEpochMilli(consentRecordLastUpdatedDeciseconds * 100);
+		}
+		return lastUpdated;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordLastUpdatedDeciseconds() {
+		return consentRecordLastUpdatedDeciseconds;
 	}
 
 	/**
@@ -199,7 +277,15 @@ public class ConsentStringParser implements ConsentInfo {
 	 */
 	@Override
 	public String getConsentLanguage() {
-		return consentLanguage;
+		return TwoLetterCodes.toString(consentLanguageCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentLanguageCode() {
+		return consentLanguageCode;
 	}
 
 	/**
@@ -207,7 +293,15 @@ public class ConsentStringParser implements ConsentInfo {
 	 */
 	@Override
 	public List<Purpose> getConsentedPurposes() {
-		return new ArrayList<Purpose>(consentedPurposes);
+		return PurposeSets.list(version, getPurposeConsentsMask());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeConsentsMask() {
+		return (int) purposeConsents.toMask();
 	}
 
 	/**
@@ -223,10 +317,7 @@ public class ConsentStringParser implements ConsentInfo {
 	 */
 	@Override
 	public boolean isPurposeConsented(int purposeId) {
-		if (purposeId < 1 || purposeId > purposeConsents.size()) {
-			return false;
-		}
-		return purposeConsents.get(purposeId - 1);
+		return purposeConsents.contains(purposeId);
 	}
 
 	/**
@@ -246,18 +337,36 @@ public class ConsentStringParser implements ConsentInfo {
 	@Override
 	public boolean isVendorConsented(int vendorId) {
 		if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
-			boolean present = RangeEntry.isVendorIdInRange(vendorId, rangeEntries);
-			return present != defaultConsent;
+			boolean present = rangeEntries.contains(vendorId);
+			// the default only applies to the vendors of the section
+			return defaultConsent ? !present && vendorId >= 1 && vendorId <= maxVendorSize : present;
 		} else {
-			boolean allowed;
-			try {
-				allowed = bits.getBit(VENDOR_BITFIELD_OFFSET + vendorId - 1);
-			} catch (ParseException e) {
-				// index of out bounds
-				allowed = false;
-			}
-			return allowed;
+			return vendorBitField.contains(vendorId);
 		}
 
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsConsented(int[] vendorIds) {
+		if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
+			long[] present = rangeEntries.containsEach(vendorIds);
+			return defaultConsent ? RangeSet.complement(present, vendorIds, maxVendorSize) : present;
+		} else {
+			return vendorBitField.containsEach(vendorIds);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public IdSet getVendorConsents() {
+		if (vendorEncodingType != VENDOR_ENCODING_RANGE) {
+			return vendorBitField;
+		}
+		return defaultConsent ? rangeEntries.complement(maxVendorSize) : rangeEntries;
+	}
 }
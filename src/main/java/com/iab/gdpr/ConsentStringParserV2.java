@@ -3,8 +3,6 @@ package com.iab.gdpr;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Base64;
 import java.util.List;
 
 /**
@@ -13,95 +11,225 @@ import java.util.List;
  */
 
 public class ConsentStringParserV2 implements ConsentInfo {
-	private static final int SEGMENT_TYPE_OFFSET = 0;
-	private static final int SEGMENT_TYPE_SIZE = 3;
-	private static final int VENDOR_ID_SIZE = 16;
-	private static final int VERSION_OFFSET = 0;
-	private static final int VERSION_SIZE = 6;
-	private static final int CREATED_OFFSET = 6;
-	private static final int CREATED_SIZE = 36;
-	private static final int LAST_UPDATED_OFFSET = 42;
-	private static final int LAST_UPDATED_SIZE = 36;
-	private static final int CMP_ID_OFFSET = 78;
-	private static final int CMP_ID_SIZE = 12;
-	private static final int CMP_VERSION_OFFSET = 90;
-	private static final int CMP_VERSION_SIZE = 12;
-	private static final int CONSENT_SCREEN_OFFSET = 102;
-	private static final int CONSENT_SCREEN_SIZE = 6;
-	private static final int CONSENT_LANGUAGE_OFFSET = 108;
-	private static final int CONSENT_LANGUAGE_SIZE = 12;
-	private static final int VENDOR_LIST_VERSION_OFFSET = 120;
-	private static final int VENDOR_LIST_VERSION_SIZE = 12;
-	private static final int TCF_POLICY_VERSION_OFFSET = 132;
-	private static final int TCF_POLICY_VERSION_SIZE = 6;
-	private static final int IS_SERVICE_SPECIFIC_OFFSET = 138;
-	private static final int USE_NON_STANDARD_STACKS_OFFSET = 139;
-	private static final int SPECIAL_FEATURE_OPT_INS_OFFSET = 140;
-	private static final int SPECIAL_FEATURE_OPT_INS_SIZE = 12;
-	private static final int PURPOSES_CONSENT_OFFSET = 152;
-	private static final int PURPOSES_CONSENT_SIZE = 24;
-	private static final int PURPOSES_LI_TRANSPARENCY_OFFSET = 176;
-	private static final int PURPOSES_LI_TRANSPARENCY_SIZE = 24;
-	private static final int PURPOSE_ONE_TREATMENT_OFFSET = 200;
-	private static final int PUBLISHER_CC_OFFSET = 201;
-	private static final int PUBLISHER_CC_SIZE = 12;
-	private static final int NUM_ENTRIES_SIZE = 12;
-	private static final int NUM_PUB_RESTRICTIONS_SIZE = 12;
-	private static final int PURPOSE_ID_SIZE = 6;
-	private static final int RESTRICTION_TYPE_SIZE = 2;
-	private static final int PUB_PURPOSES_CONTENT_SIZE = 24;
-	private static final int PUB_PURPOSES_LI_TRANSPARENCY_SIZE = 24;
-	private static final int NUM_CUSTOM_PURPOSES_SIZE = 6;
-
-	private static Base64.Decoder decoder = Base64.getUrlDecoder();
-
-	private String consentString;
+	static final int SEGMENT_TYPE_OFFSET = 0;
+	static final int SEGMENT_TYPE_SIZE = 3;
+	static final int VENDOR_ID_SIZE = 16;
+	static final int VERSION_OFFSET = 0;
+	static final int VERSION_SIZE = 6;
+	static final int CREATED_OFFSET = 6;
+	static final int CREATED_SIZE = 36;
+	static final int LAST_UPDATED_OFFSET = 42;
+	static final int LAST_UPDATED_SIZE = 36;
+	static final int CMP_ID_OFFSET = 78;
+	static final int CMP_ID_SIZE = 12;
+	static final int CMP_VERSION_OFFSET = 90;
+	static final int CMP_VERSION_SIZE = 12;
+	static final int CONSENT_SCREEN_OFFSET = 102;
+	static final int CONSENT_SCREEN_SIZE = 6;
+	static final int CONSENT_LANGUAGE_OFFSET = 108;
+	static final int CONSENT_LANGUAGE_SIZE = 12;
+	static final int VENDOR_LIST_VERSION_OFFSET = 120;
+	static final int VENDOR_LIST_VERSION_SIZE = 12;
+	static final int TCF_POLICY_VERSION_OFFSET = 132;
+	static final int TCF_POLICY_VERSION_SIZE = 6;
+	static final int IS_SERVICE_SPECIFIC_OFFSET = 138;
+	static final int USE_NON_STANDARD_STACKS_OFFSET = 139;
+	static final int SPECIAL_FEATURE_OPT_INS_OFFSET = 140;
+	static final int SPECIAL_FEATURE_OPT_INS_SIZE = 12;
+	static final int PURPOSES_CONSENT_OFFSET = 152;
+	static final int PURPOSES_CONSENT_SIZE = 24;
+	static final int PURPOSES_LI_TRANSPARENCY_OFFSET = 176;
+	static final int PURPOSES_LI_TRANSPARENCY_SIZE = 24;
+	static final int PURPOSE_ONE_TREATMENT_OFFSET = 200;
+	static final int PUBLISHER_CC_OFFSET = 201;
+	static final int PUBLISHER_CC_SIZE = 12;
+	static final int NUM_ENTRIES_SIZE = 12;
+	static final int NUM_PUB_RESTRICTIONS_SIZE = 12;
+	static final int PURPOSE_ID_SIZE = 6;
+	static final int RESTRICTION_TYPE_SIZE = 2;
+	static final int PUB_PURPOSES_CONTENT_SIZE = 24;
+	static final int PUB_PURPOSES_LI_TRANSPARENCY_SIZE = 24;
+	static final int NUM_CUSTOM_PURPOSES_SIZE = 6;
+
+	static final int VENDOR_CONSENTS_OFFSET = PUBLISHER_CC_OFFSET + PUBLISHER_CC_SIZE;
+
+	private final CharSequence consentChars;
 	private int version;
-	private Instant consentRecordCreated;
-	private Instant consentRecordLastUpdated;
+	private long consentRecordCreatedDeciseconds;
+	private long consentRecordLastUpdatedDeciseconds;
 	private int cmpId;
 	private int cmpVersion;
 	private int consentScreen;
-	private String consentLanguage;
+	private int consentLanguageCode;
 	private int vendorListVersion;
 	private int tcfPolicyVersion;
 	private boolean serviceSpecific;
 	private boolean nonStandardStacks;
-	private List<Boolean> featureOptins;
-	private List<Boolean> purposeConsents;
-	private List<Purpose.PurposeV2> consentedPurposes;
-	private List<Boolean> purposeLegitInterests;
+	private BitField featureOptins;
+	private BitField purposeConsents;
+	private BitField purposeLegitInterests;
 	private boolean purposeOneDisclosed;
-	private String publisherCc;
-	private List<Boolean> vendorConsentsBitField;
-	private List<RangeEntry> vendorConsentsRanges;
-	private List<Boolean> vendorLegitInterestsBitField;
-	private List<RangeEntry> vendorLegitInterestRanges;
-	private List<PubRestrictionEntry> publisherRestrictions;
-	private List<Boolean> vendorDisclosureBitField;
-	private List<RangeEntry> vendorDisclosureRanges;
-	private List<Boolean> vendorAllowancesBitField;
-	private List<RangeEntry> vendorAllowancesRanges;
-	private List<Boolean> pubPurposeConsents;
-	private List<Boolean> pubPurposeLegitInterests;
-	private List<Boolean> customPurposeConsents;
-	private List<Boolean> customPurposeLegitInterests;
+	private int publisherCcCode;
+	private volatile IdSet vendorConsents;
+	private volatile IdSet vendorLegitInterests;
+	private volatile PubRestrictionIndex publisherRestrictions;
+	private IdSet vendorDisclosures = BitField.EMPTY;
+	private IdSet vendorAllowances = BitField.EMPTY;
+	private BitField pubPurposeConsents = BitField.EMPTY;
+	private BitField pubPurposeLegitInterests = BitField.EMPTY;
+	// created on first use, racing threads creating equal instances
+	private Instant consentRecordCreated;
+	private Instant consentRecordLastUpdated;
+	private String consentString;
+	private BitField customPurposeConsents = BitField.EMPTY;
+	private BitField customPurposeLegitInterests = BitField.EMPTY;
+
+	// the index of the '.' ending the core segment, or the length of the string when there are no other segments
+	private final int coreEnd;
+	// only kept when decoding lazily, to decode the deferred sections from
+	private final Bits coreBits;
+	// shares the vendor sections with other strings, or null
+	private final IdSetInterner interner;
+	private volatile boolean segmentsDecoded;
 
 	public ConsentStringParserV2(String consentString) throws ParseException {
-		this.consentString = consentString;
-		List<String> segments = Arrays.asList(consentString.split("\\."));
-		for (int i = 0; i < segments.size(); i++) {
-			if (i == 0) {
-				// the core segment is required and should always be in the first slot
-				parseCore(new Bits(decoder.decode(segments.get(i))));
-			} else {
-				parseSegment(decoder.decode(segments.get(i)));
+		this((CharSequence) consentString, false);
+	}
+
+	public ConsentStringParserV2(CharSequence consentString) throws ParseException {
+		this(consentString, false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consentString
+	 *            the array holding the ASCII characters of the TC string, see
+	 *            {@link AsciiChars#of(byte[], int, int)}
+	 * @param offset
+	 *            the index of the first character
+	 * @param length
+	 *            the number of characters
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParserV2(byte[] consentString, int offset, int length) throws ParseException {
+		this(AsciiChars.of(consentString, offset, length), false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consentString
+	 *            (required). The TC string, made of dot separated url and filename safe base64 segments. It is read
+	 *            where it is, so it must not change for as long as this instance is used; it only becomes a
+	 *            {@link String} when {@link #getConsentString()} is called.
+	 * @param lazy
+	 *            when true, only the header fields of the core segment are decoded up front. The vendor sections,
+	 *            the publisher restrictions and the optional segments are each decoded the first time one of their
+	 *            accessors is called, so their encoding errors do not fail the construction: a deferred section that
+	 *            turns out to be malformed reads as empty. Deferred decoding is thread safe.
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParserV2(String consentString, boolean lazy) throws ParseException {
+		this((CharSequence) consentString, lazy);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consentString
+	 *            (required). The TC string, such as the {@link AsciiChars} of a network buffer, read where it is
+	 * @param lazy
+	 *            when true, only the header fields of the core segment are decoded up front, see
+	 *            {@link #ConsentStringParserV2(String, boolean)}
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParserV2(CharSequence consentString, boolean lazy) throws ParseException {
+		this(consentString, lazy, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param consentString
+	 *            (required). The TC string, made of dot separated url and filename safe base64 segments
+	 * @param lazy
+	 *            when true, only the header fields of the core segment are decoded up front, see
+	 *            {@link #ConsentStringParserV2(String, boolean)}
+	 * @param interner
+	 *            when not null, the vendor consent, legitimate interest, disclosed and allowed vendor sections are
+	 *            shared with the strings decoded before with the same interner, see {@link IdSetInterner}
+	 * @throws ParseException
+	 *             if the consent string cannot be parsed
+	 */
+	public ConsentStringParserV2(CharSequence consentString, boolean lazy, IdSetInterner interner)
+			throws ParseException {
+		this(consentString, lazy, interner, new DecodeStatus(), true);
+	}
+
+	/**
+	 * Decodes without throwing: when the consent string cannot be parsed, the failure is recorded to the status and
+	 * the instance is to be dropped.
+	 *
+	 * @param consentString
+	 *            (required). The TC string, made of dot separated url and filename safe base64 segments
+	 * @param lazy
+	 *            when true, only the header fields of the core segment are decoded up front, see
+	 *            {@link #ConsentStringParserV2(String, boolean)}
+	 * @param interner
+	 *            shares the vendor sections with other strings, or null
+	 * @param status
+	 *            where the failure is recorded
+	 * @throws ParseException
+	 *             only for failures that are not about the consent string
+	 */
+	ConsentStringParserV2(CharSequence consentString, boolean lazy, IdSetInterner interner, DecodeStatus status)
+			throws ParseException {
+		this(consentString, lazy, interner, status, false);
+	}
+
+	private ConsentStringParserV2(CharSequence consentString, boolean lazy, IdSetInterner interner,
+			DecodeStatus status, boolean throwFailure) throws ParseException {
+		this.consentChars = consentString;
+		this.interner = interner;
+		// the core segment is required and should always be in the first slot
+		this.coreEnd = Base64Url.segmentEnd(consentString, 0, consentString.length());
+		Bits bits = new Base64Bits(consentString, 0, coreEnd, status);
+		parseCoreHeader(bits);
+		if (lazy) {
+			// the deferred sections are decoded later on, where failures are thrown and caught
+			this.coreBits = status.failed() ? null : new Base64Bits(consentString, 0, coreEnd);
+		} else {
+			this.coreBits = null;
+			parseCoreSections(bits);
+			parseSegments(status);
+			this.segmentsDecoded = true;
+		}
+		if (throwFailure && status.failed()) {
+			throw status.toException();
+		}
+	}
+
+	/**
+	 * parses the optional segments following the core segment, each read in place from the consent string. Whatever
+	 * made a segment fail is recorded as {@link DecodeFailureReason#MALFORMED_SEGMENT}.
+	 */
+	private void parseSegments(DecodeStatus status) throws ParseException {
+		int length = consentChars.length();
+		for (int start = coreEnd + 1; start < length && !status.failed();) {
+			int end = Base64Url.segmentEnd(consentChars, start, length);
+			if (end > start) {
+				parseSegment(new Base64Bits(consentChars, start, end, status));
+				status.reclassify(DecodeFailureReason.MALFORMED_SEGMENT);
 			}
+			start = end + 1;
 		}
 	}
 
-	private void parseSegment(byte[] bytes) throws ParseException {
-		Bits bits = new Bits(bytes);
+	private void parseSegment(Bits bits) throws ParseException {
 		switch (SegmentType.valueOf(bits.getInt(SEGMENT_TYPE_OFFSET, SEGMENT_TYPE_SIZE))) {
 		case DISCLOSED_VENDORS:
 			parseDisclosedVendors(bits);
@@ -116,47 +244,44 @@ public class ConsentStringParserV2 implements ConsentInfo {
 		}
 	}
 
-	private void parseCore(Bits bits) throws ParseException {
+	private void parseCoreHeader(Bits bits) throws ParseException {
 		this.version = bits.getInt(VERSION_OFFSET, VERSION_SIZE);
-		this.consentRecordCreated = bits.getInstantFromEpochDemiseconds(CREATED_OFFSET, CREATED_SIZE);
-		this.consentRecordLastUpdated = bits.getInstantFromEpochDemiseconds(LAST_UPDATED_OFFSET, LAST_UPDATED_SIZE);
+		this.consentRecordCreatedDeciseconds = bits.getLong(CREATED_OFFSET, CREATED_SIZE);
+		this.consentRecordLastUpdatedDeciseconds = bits.getLong(LAST_UPDATED_OFFSET, LAST_UPDATED_SIZE);
 		this.cmpId = bits.getInt(CMP_ID_OFFSET, CMP_ID_SIZE);
 		this.cmpVersion = bits.getInt(CMP_VERSION_OFFSET, CMP_VERSION_SIZE);
 		this.consentScreen = bits.getInt(CONSENT_SCREEN_OFFSET, CONSENT_SCREEN_SIZE);
-		this.consentLanguage = bits.getSixBitString(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE);
+		this.consentLanguageCode = bits.getInt(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE);
 		this.vendorListVersion = bits.getInt(VENDOR_LIST_VERSION_OFFSET, VENDOR_LIST_VERSION_SIZE);
 		this.tcfPolicyVersion = bits.getInt(TCF_POLICY_VERSION_OFFSET, TCF_POLICY_VERSION_SIZE);
 		this.serviceSpecific = bits.getBit(IS_SERVICE_SPECIFIC_OFFSET);
 		this.nonStandardStacks = bits.getBit(USE_NON_STANDARD_STACKS_OFFSET);
-		this.featureOptins = bits.getBitList(SPECIAL_FEATURE_OPT_INS_OFFSET, SPECIAL_FEATURE_OPT_INS_SIZE);
-		this.purposeConsents = bits.getBitList(PURPOSES_CONSENT_OFFSET, PURPOSES_CONSENT_SIZE);
-		this.consentedPurposes = new ArrayList<Purpose.PurposeV2>();
-		for (int i = 1; i <= this.purposeConsents.size(); i++) {
-			if (isPurposeConsented(i)) {
-				this.consentedPurposes.add(Purpose.PurposeV2.valueOf(i));
-			}
-		}
-		this.purposeLegitInterests = bits.getBitList(PURPOSES_LI_TRANSPARENCY_OFFSET, PURPOSES_LI_TRANSPARENCY_SIZE);
+		this.featureOptins = bits.getBitField(SPECIAL_FEATURE_OPT_INS_OFFSET, SPECIAL_FEATURE_OPT_INS_SIZE);
+		this.purposeConsents = bits.getBitField(PURPOSES_CONSENT_OFFSET, PURPOSES_CONSENT_SIZE);
+		this.purposeLegitInterests = bits.getBitField(PURPOSES_LI_TRANSPARENCY_OFFSET, PURPOSES_LI_TRANSPARENCY_SIZE);
 		this.purposeOneDisclosed = !bits.getBit(PURPOSE_ONE_TREATMENT_OFFSET);
-		this.publisherCc = bits.getSixBitString(PUBLISHER_CC_OFFSET, PUBLISHER_CC_SIZE);
+		this.publisherCcCode = bits.getInt(PUBLISHER_CC_OFFSET, PUBLISHER_CC_SIZE);
+	}
 
+	private void parseCoreSections(Bits bits) throws ParseException {
 		// parse Consented Vendor Range section or BitField section
-		int variableOffset = PUBLISHER_CC_OFFSET + PUBLISHER_CC_SIZE;
-		RangeOrBitFieldParser rangeOrBitFieldParser = new RangeOrBitFieldParser(bits, variableOffset);
-		this.vendorConsentsRanges = rangeOrBitFieldParser.getRangeEntries();
-		this.vendorConsentsBitField = rangeOrBitFieldParser.getBitField();
-		variableOffset = rangeOrBitFieldParser.getOffset();
+		RangeOrBitFieldParser rangeOrBitFieldParser = new RangeOrBitFieldParser(bits, VENDOR_CONSENTS_OFFSET,
+				interner);
+		this.vendorConsents = rangeOrBitFieldParser.getVendorIds();
 
 		// parse Vendor Legitimate Interest Range section or BitField section
-		rangeOrBitFieldParser = new RangeOrBitFieldParser(bits, variableOffset);
-		this.vendorLegitInterestRanges = rangeOrBitFieldParser.getRangeEntries();
-		this.vendorLegitInterestsBitField = rangeOrBitFieldParser.getBitField();
-		variableOffset = rangeOrBitFieldParser.getOffset();
+		rangeOrBitFieldParser = new RangeOrBitFieldParser(bits, rangeOrBitFieldParser.getOffset(), interner);
+		this.vendorLegitInterests = rangeOrBitFieldParser.getVendorIds();
 
-		// parse Publisher Restrictions
+		this.publisherRestrictions = new PubRestrictionIndex(
+				parsePublisherRestrictions(bits, rangeOrBitFieldParser.getOffset()));
+	}
+
+	private static List<PubRestrictionEntry> parsePublisherRestrictions(Bits bits, int offset) throws ParseException {
+		int variableOffset = offset;
 		int numPubRestrictions = bits.getInt(variableOffset, NUM_PUB_RESTRICTIONS_SIZE);
 		variableOffset += NUM_PUB_RESTRICTIONS_SIZE;
-		this.publisherRestrictions = new ArrayList<PubRestrictionEntry>();
+		List<PubRestrictionEntry> publisherRestrictions = new ArrayList<PubRestrictionEntry>(numPubRestrictions);
 		for (int i = 0; i < numPubRestrictions; i++) {
 			int purposeId = bits.getInt(variableOffset, PURPOSE_ID_SIZE);
 			variableOffset += PURPOSE_ID_SIZE;
@@ -165,49 +290,144 @@ public class ConsentStringParserV2 implements ConsentInfo {
 			variableOffset += RESTRICTION_TYPE_SIZE;
 			RangeSectionParser rangeSectionParser = new RangeSectionParser(bits, variableOffset);
 			variableOffset = rangeSectionParser.getOffset();
-			this.publisherRestrictions
+			publisherRestrictions
 					.add(new PubRestrictionEntry(purposeId, restrictionType, rangeSectionParser.getEntries()));
 		}
+		return publisherRestrictions;
 	}
 
 	private void parseDisclosedVendors(Bits bits) throws ParseException {
-		RangeOrBitFieldParser parser = new RangeOrBitFieldParser(bits, SEGMENT_TYPE_SIZE);
-		this.vendorDisclosureRanges = parser.getRangeEntries();
-		this.vendorDisclosureBitField = parser.getBitField();
+		RangeOrBitFieldParser parser = new RangeOrBitFieldParser(bits, SEGMENT_TYPE_SIZE, interner);
+		this.vendorDisclosures = parser.getVendorIds();
 	}
 
 	private void parseAllowedVendors(Bits bits) throws ParseException {
-		RangeOrBitFieldParser parser = new RangeOrBitFieldParser(bits, SEGMENT_TYPE_SIZE);
-		this.vendorAllowancesRanges = parser.getRangeEntries();
-		this.vendorAllowancesBitField = parser.getBitField();
+		RangeOrBitFieldParser parser = new RangeOrBitFieldParser(bits, SEGMENT_TYPE_SIZE, interner);
+		this.vendorAllowances = parser.getVendorIds();
 	}
 
 	private void parsePublisherTc(Bits bits) throws ParseException {
 		int offset = SEGMENT_TYPE_SIZE;
-		this.pubPurposeConsents = bits.getBitList(offset, PUB_PURPOSES_CONTENT_SIZE);
+		this.pubPurposeConsents = bits.getBitField(offset, PUB_PURPOSES_CONTENT_SIZE);
 		offset += PUB_PURPOSES_CONTENT_SIZE;
-		this.pubPurposeLegitInterests = bits.getBitList(offset, PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+		this.pubPurposeLegitInterests = bits.getBitField(offset, PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
 		offset += PUB_PURPOSES_CONTENT_SIZE;
 		int numCustomPurposes = bits.getInt(offset, NUM_CUSTOM_PURPOSES_SIZE);
 		offset += NUM_CUSTOM_PURPOSES_SIZE;
-		this.customPurposeConsents = bits.getBitList(offset, numCustomPurposes);
+		this.customPurposeConsents = bits.getBitField(offset, numCustomPurposes);
 		offset += numCustomPurposes;
-		this.customPurposeLegitInterests = bits.getBitList(offset, numCustomPurposes);
+		this.customPurposeLegitInterests = bits.getBitField(offset, numCustomPurposes);
 	}
 
-	private boolean findIdInBitField(int index, List<Boolean> bitField) {
-		if (index < 1 || index > bitField.size()) {
-			return false;
+	// the accessors below decode the deferred sections of a lazy instance on first use. Each section is decoded at
+	// most once, under the instance lock, and published through a volatile field so that later reads take no lock.
+
+	private IdSet vendorConsents() {
+		IdSet ids = vendorConsents;
+		return ids != null ? ids : decodeVendorConsents();
+	}
+
+	private synchronized IdSet decodeVendorConsents() {
+		if (vendorConsents == null) {
+			try {
+				vendorConsents = new RangeOrBitFieldParser(coreBits, VENDOR_CONSENTS_OFFSET, interner).getVendorIds();
+			} catch (ParseException e) {
+				vendorConsents = BitField.EMPTY;
+			}
 		}
-		return bitField.get(index - 1);
+		return vendorConsents;
+	}
+
+	private IdSet vendorLegitInterests() {
+		IdSet ids = vendorLegitInterests;
+		return ids != null ? ids : decodeVendorLegitInterests();
+	}
+
+	private synchronized IdSet decodeVendorLegitInterests() {
+		if (vendorLegitInterests == null) {
+			try {
+				int offset = skipRangeOrBitField(coreBits, VENDOR_CONSENTS_OFFSET);
+				vendorLegitInterests = new RangeOrBitFieldParser(coreBits, offset, interner).getVendorIds();
+			} catch (ParseException e) {
+				vendorLegitInterests = BitField.EMPTY;
+			}
+		}
+		return vendorLegitInterests;
+	}
+
+	private PubRestrictionIndex publisherRestrictions() {
+		PubRestrictionIndex restrictions = publisherRestrictions;
+		return restrictions != null ? restrictions : decodePublisherRestrictions();
+	}
+
+	private synchronized PubRestrictionIndex decodePublisherRestrictions() {
+		if (publisherRestrictions == null) {
+			try {
+				int offset = skipRangeOrBitField(coreBits, VENDOR_CONSENTS_OFFSET);
+				offset = skipRangeOrBitField(coreBits, offset);
+				publisherRestrictions = new PubRestrictionIndex(parsePublisherRestrictions(coreBits, offset));
+			} catch (ParseException e) {
+				publisherRestrictions = PubRestrictionIndex.EMPTY;
+			}
+		}
+		return publisherRestrictions;
+	}
+
+	private void ensureSegmentsDecoded() {
+		if (!segmentsDecoded) {
+			decodeSegments();
+		}
+	}
+
+	private synchronized void decodeSegments() {
+		if (segmentsDecoded) {
+			return;
+		}
+		int length = consentChars.length();
+		for (int start = coreEnd + 1; start < length;) {
+			int end = Base64Url.segmentEnd(consentChars, start, length);
+			try {
+				if (end > start) {
+					parseSegment(new Base64Bits(consentChars, start, end));
+				}
+			} catch (ParseException e) {
+				// a malformed segment leaves its sections empty
+			}
+			start = end + 1;
+		}
+		segmentsDecoded = true;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * @return the offset right past a Range or BitField section, walking range entries without collecting them
+	 */
+	static int skipRangeOrBitField(Bits bits, int offset) throws ParseException {
+		int maxVendorId = bits.getInt(offset, VENDOR_ID_SIZE);
+		offset += VENDOR_ID_SIZE;
+		boolean rangeEncoding = bits.getBit(offset);
+		offset++;
+		if (!rangeEncoding) {
+			return offset + maxVendorId;
+		}
+		int numEntries = bits.getInt(offset, NUM_ENTRIES_SIZE);
+		offset += NUM_ENTRIES_SIZE;
+		for (int i = 0; i < numEntries; i++) {
+			boolean range = bits.getBit(offset);
+			offset += range ? 1 + 2 * VENDOR_ID_SIZE : 1 + VENDOR_ID_SIZE;
+		}
+		return offset;
+	}
+
+	/**
+	 * {@inheritDoc} A consent string given as other characters than a {@link String} becomes one on first use.
 	 */
 	@Override
 	public String getConsentString() {
-		return consentString;
+		String s = consentString;
+		if (s == null) {
+			consentString = s = consentChars.toString();
+		}
+		return s;
 	}
 
 	/**
@@ -223,7 +443,19 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public Instant getConsentRecordCreated() {
-		return consentRecordCreated;
+		Instant created = consentRecordCreated;
+		if (created == null) {
+			consentRecordCreated = created = Instant.ofEpochMilli(consentRecordCreatedDeciseconds * 100);
+		}
+		return created;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordCreatedDeciseconds() {
+		return consentRecordCreatedDeciseconds;
 	}
 
 	/**
@@ -231,7 +463,19 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public Instant getConsentRecordLastUpdated() {
-		return consentRecordLastUpdated;
+		Instant lastUpdated = consentRecordLastUpdated;
+		if (lastUpdated == null) {
+			consentRecordLastUpdated = lastUpdated = Instant.ofEpochMilli(consentRecordLastUpdatedDeciseconds * 100);
+		}
+		return lastUpdated;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordLastUpdatedDeciseconds() {
+		return consentRecordLastUpdatedDeciseconds;
 	}
 
 	/**
@@ -263,7 +507,15 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public String getConsentLanguage() {
-		return consentLanguage;
+		return TwoLetterCodes.toString(consentLanguageCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentLanguageCode() {
+		return consentLanguageCode;
 	}
 
 	/**
@@ -279,7 +531,7 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isPurposeConsented(int purposeId) {
-		return findIdInBitField(purposeId, purposeConsents);
+		return purposeConsents.contains(purposeId);
 	}
 
 	/**
@@ -298,7 +550,63 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public List<Purpose> getConsentedPurposes() {
-		return new ArrayList<Purpose>(consentedPurposes);
+		return PurposeSets.list(version, getPurposeConsentsMask());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeConsentsMask() {
+		return (int) purposeConsents.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeLegitInterestsMask() {
+		return (int) purposeLegitInterests.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSpecialFeatureOptInsMask() {
+		return (int) featureOptins.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeConsentsMask() {
+		return (int) pubPurposeConsents.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeLegitInterestsMask() {
+		return (int) pubPurposeLegitInterests.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeConsentsMask() {
+		return customPurposeConsents.toMask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeLegitInterestsMask() {
+		return customPurposeLegitInterests.toMask();
 	}
 
 	/**
@@ -306,11 +614,15 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isVendorConsented(int vendorId) {
-		if (vendorConsentsBitField != null) {
-			return findIdInBitField(vendorId, vendorConsentsBitField);
-		} else {
-			return  RangeEntry.isVendorIdInRange(vendorId, vendorConsentsRanges);
-		}
+		return vendorConsents().contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsConsented(int[] vendorIds) {
+		return vendorConsents().containsEach(vendorIds);
 	}
 
 	/**
@@ -342,7 +654,7 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isFeatureOptioned(int featureId) {
-		return findIdInBitField(featureId, featureOptins);
+		return featureOptins.contains(featureId);
 	}
 
 	/**
@@ -361,7 +673,7 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isPurposeLegitInterestEstablished(int purposeId) {
-		return findIdInBitField(purposeId, purposeLegitInterests);
+		return purposeLegitInterests.contains(purposeId);
 	}
 
 	/**
@@ -388,7 +700,15 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public String getPublisherCc() {
-		return publisherCc;
+		return TwoLetterCodes.toString(publisherCcCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPublisherCcCode() {
+		return publisherCcCode;
 	}
 
 	/**
@@ -396,11 +716,15 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isVendorLegitInterestEstablished(int vendorId) {
-		if (vendorLegitInterestsBitField != null) {
-			return findIdInBitField(vendorId, vendorLegitInterestsBitField);
-		} else {
-			return RangeEntry.isVendorIdInRange(vendorId, vendorLegitInterestRanges);
-		}
+		return vendorLegitInterests().contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsLegitInterestEstablished(int[] vendorIds) {
+		return vendorLegitInterests().containsEach(vendorIds);
 	}
 
 	/**
@@ -408,11 +732,17 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isVendorDisclosed(int vendorId) {
-		if (vendorDisclosureBitField != null) {
-			return findIdInBitField(vendorId, vendorDisclosureBitField);
-		} else {
-			return RangeEntry.isVendorIdInRange(vendorId, vendorDisclosureRanges);
-		}
+		ensureSegmentsDecoded();
+		return vendorDisclosures.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsDisclosed(int[] vendorIds) {
+		ensureSegmentsDecoded();
+		return vendorDisclosures.containsEach(vendorIds);
 	}
 
 	/**
@@ -420,11 +750,51 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isVendorAllowed(int vendorId) {
-		if (vendorAllowancesBitField != null) {
-			return findIdInBitField(vendorId, vendorAllowancesBitField);
-		} else {
-			return RangeEntry.isVendorIdInRange(vendorId, vendorAllowancesRanges);
-		}
+		ensureSegmentsDecoded();
+		return vendorAllowances.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsAllowed(int[] vendorIds) {
+		ensureSegmentsDecoded();
+		return vendorAllowances.containsEach(vendorIds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public IdSet getVendorConsents() {
+		return vendorConsents();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public IdSet getVendorLegitInterests() {
+		return vendorLegitInterests();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public IdSet getDisclosedVendors() {
+		ensureSegmentsDecoded();
+		return vendorDisclosures;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public IdSet getAllowedVendors() {
+		ensureSegmentsDecoded();
+		return vendorAllowances;
 	}
 
 	/**
@@ -432,7 +802,8 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isPubPurposesConsented(int purposeId) {
-		return findIdInBitField(purposeId, pubPurposeConsents);
+		ensureSegmentsDecoded();
+		return pubPurposeConsents.contains(purposeId);
 	}
 
 	/**
@@ -440,7 +811,8 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isPubPurposeLegitInterestEstablished(int purposeId) {
-		return findIdInBitField(purposeId, pubPurposeLegitInterests);
+		ensureSegmentsDecoded();
+		return pubPurposeLegitInterests.contains(purposeId);
 	}
 
 	/**
@@ -448,7 +820,8 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isCustomPurposeConsented(int purposeId) {
-		return findIdInBitField(purposeId, customPurposeConsents);
+		ensureSegmentsDecoded();
+		return customPurposeConsents.contains(purposeId);
 	}
 
 	/**
@@ -456,7 +829,8 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public boolean isCustomPurposeLegitInterestEstablished(int purposeId) {
-		return findIdInBitField(purposeId, customPurposeLegitInterests);
+		ensureSegmentsDecoded();
+		return customPurposeLegitInterests.contains(purposeId);
 	}
 
 	/**
@@ -464,16 +838,45 @@ public class ConsentStringParserV2 implements ConsentInfo {
 	 */
 	@Override
 	public List<PubRestrictionEntry> getPublisherRestrictions() {
-		return new ArrayList<>(publisherRestrictions);
+		return publisherRestrictions().entries();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PubRestrictionEntry.RestrictionType getRestrictionType(int purposeId, int vendorId) {
+		return publisherRestrictions().getRestrictionType(purposeId, vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public RangeSet getRestrictedVendors(int purposeId, PubRestrictionEntry.RestrictionType restrictionType) {
+		return publisherRestrictions().getRestrictedVendors(purposeId, restrictionType);
 	}
 
 	private static class RangeOrBitFieldParser {
 		private int offset;
 		private boolean rangeEncoding;
-		private List<RangeEntry> rangeEntries;
-		private List<Boolean> bitField;
-
-		public RangeOrBitFieldParser(Bits bits, int offset) throws ParseException {
+		private IdSet vendorIds;
+
+		public RangeOrBitFieldParser(Bits bits, int offset, IdSetInterner interner) throws ParseException {
+			// with an interner, the raw bits of the section are looked up before anything is decoded
+			BitField section = null;
+			if (interner != null) {
+				int end = skipRangeOrBitField(bits, offset);
+				section = bits.getBitField(offset, end - offset);
+				// a section that could not be read is neither looked up nor interned
+				IdSet shared = bits.failed() ? null : interner.get(section);
+				if (shared != null) {
+					this.offset = end;
+					this.rangeEncoding = bits.getBit(offset + VENDOR_ID_SIZE);
+					this.vendorIds = shared;
+					return;
+				}
+			}
 			this.offset = offset;
 			int maxVendorId = bits.getInt(this.offset, VENDOR_ID_SIZE);
 			this.offset += VENDOR_ID_SIZE;
@@ -481,12 +884,15 @@ public class ConsentStringParserV2 implements ConsentInfo {
 			this.offset++;
 			if (this.rangeEncoding) {
 				RangeSectionParser rangeSectionParser = new RangeSectionParser(bits, this.offset);
-				this.rangeEntries = rangeSectionParser.getEntries();
+				this.vendorIds = rangeSectionParser.getEntries();
 				this.offset = rangeSectionParser.getOffset();
 			} else {
-				this.bitField = bits.getBitList(this.offset, maxVendorId);
+				this.vendorIds = bits.getBitField(this.offset, maxVendorId);
 				this.offset += maxVendorId;
 			}
+			if (section != null && !bits.failed()) {
+				this.vendorIds = interner.intern(section, this.vendorIds);
+			}
 		}
 
 		public int getOffset() {
@@ -497,24 +903,20 @@ public class ConsentStringParserV2 implements ConsentInfo {
 			return rangeEncoding;
 		}
 
-		public List<RangeEntry> getRangeEntries() {
-			return rangeEntries;
-		}
-
-		public List<Boolean> getBitField() {
-			return bitField;
+		public IdSet getVendorIds() {
+			return vendorIds;
 		}
 	}
 
 	private static class RangeSectionParser {
 		private int offset;
-		private List<RangeEntry> entries;
+		private RangeSet entries;
 
 		public RangeSectionParser(Bits bits, int offset) throws ParseException {
 			this.offset = offset;
-			this.entries = new ArrayList<RangeEntry>();
 			int numEntries = bits.getInt(this.offset, NUM_ENTRIES_SIZE);
 			this.offset += NUM_ENTRIES_SIZE;
+			RangeSet.Builder ranges = new RangeSet.Builder(numEntries);
 
 			for (int i = 0; i < numEntries; i++) {
 				boolean range = bits.getBit(this.offset);
@@ -524,20 +926,21 @@ public class ConsentStringParserV2 implements ConsentInfo {
 					this.offset += VENDOR_ID_SIZE;
 					int endVendorId = bits.getInt(this.offset, VENDOR_ID_SIZE);
 					this.offset += VENDOR_ID_SIZE;
-					this.entries.add(new RangeEntry(startVendorId, endVendorId));
+					ranges.add(startVendorId, endVendorId);
 				} else {
 					int vendorId = bits.getInt(this.offset, VENDOR_ID_SIZE);
 					this.offset += VENDOR_ID_SIZE;
-					this.entries.add(new RangeEntry(vendorId));
+					ranges.add(vendorId, vendorId);
 				}
 			}
+			this.entries = ranges.build();
 		}
 
 		public int getOffset() {
 			return offset;
 		}
 
-		public List<RangeEntry> getEntries() {
+		public RangeSet getEntries() {
 			return entries;
 		}
 	}
@@ -0,0 +1,33 @@
+package com.iab.gdpr;
+
+import java.text.ParseException;
+
+/**
+ * A {@link ParseException} telling why a consent string could not be decoded. Its error offset is the bit, within the
+ * segment being read, at which decoding failed, or the character of the segment at which its padding is invalid.
+ */
+public class DecodeException extends ParseException {
+	private static final long serialVersionUID = 1L;
+
+	private final DecodeFailureReason reason;
+
+	/**
+	 * @param message:
+	 *            the detail message
+	 * @param errorOffset:
+	 *            the offset at which decoding failed
+	 * @param reason:
+	 *            why decoding failed
+	 */
+	public DecodeException(String message, int errorOffset, DecodeFailureReason reason) {
+		super(message, errorOffset);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return why decoding failed
+	 */
+	public DecodeFailureReason getReason() {
+		return reason;
+	}
+}
@@ -0,0 +1,37 @@
+package com.iab.gdpr;
+
+/**
+ * Why a consent string could not be decoded, see {@link DecodeListener} and {@link DecodeException}.
+ */
+public enum DecodeFailureReason {
+	/**
+	 * The string is null or empty.
+	 */
+	EMPTY,
+
+	/**
+	 * The version carried by the first character is neither 1 nor 2.
+	 */
+	UNSUPPORTED_VERSION,
+
+	/**
+	 * A segment holds a character outside of the url and filename safe base64 alphabet, or its padding or length is
+	 * invalid.
+	 */
+	MALFORMED_BASE64,
+
+	/**
+	 * A field of the core segment, or of a version 1 string, lies past the end of its bits.
+	 */
+	TRUNCATED,
+
+	/**
+	 * One of the optional segments following the core segment of a version 2 string cannot be decoded.
+	 */
+	MALFORMED_SEGMENT,
+
+	/**
+	 * The decoder failed in a way none of the other reasons describes.
+	 */
+	UNEXPECTED_ERROR
+}
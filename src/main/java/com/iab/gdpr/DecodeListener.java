@@ -0,0 +1,67 @@
+package com.iab.gdpr;
+
+/**
+ * Observes the consent strings decoded by {@link ConsentInfoDecoder}, once registered with
+ * {@link ConsentInfoDecoder#setListener(DecodeListener)}. Strings are decoded on many threads at once, so a listener
+ * must be thread safe, and should be quick since it runs on the decoding thread. {@link DecodeMetrics} counts what it
+ * is told without locking.
+ *
+ * The latency of a lazy decode only covers the part of the string decoded up front, and a deferred section that turns
+ * out to be malformed later on is not reported.
+ */
+public interface DecodeListener {
+	/**
+	 * The vendor sections that are either range or bit field encoded, each standing for a bit of the section masks
+	 * handed to {@link DecodeListener#onDecoded(int, int, int, int, int, long)}.
+	 */
+	enum Section {
+		VENDOR_CONSENTS, VENDOR_LEGIT_INTERESTS, DISCLOSED_VENDORS, ALLOWED_VENDORS;
+
+		/**
+		 * @return the bit standing for this section in a section mask
+		 */
+		public int mask() {
+			return 1 << ordinal();
+		}
+
+		/**
+		 * @param sections
+		 *      a section mask
+		 * @return whether the mask holds this section
+		 */
+		public boolean isIn(int sections) {
+			return (sections & mask()) != 0;
+		}
+	}
+
+	/**
+	 * Called once a string has been decoded.
+	 *
+	 * @param version
+	 *      the version of the string
+	 * @param segmentCount
+	 *      the number of non empty segments of the string, the core segment included
+	 * @param payloadBits
+	 *      the number of bits the segments carry, padding excluded
+	 * @param rangeSections
+	 *      the mask of the {@link Section}s of the string that are range encoded
+	 * @param bitFieldSections
+	 *      the mask of the {@link Section}s of the string that are bit field encoded. Sections that are in neither
+	 *      mask are missing from the string.
+	 * @param nanos
+	 *      how long decoding took
+	 */
+	void onDecoded(int version, int segmentCount, int payloadBits, int rangeSections, int bitFieldSections,
+			long nanos);
+
+	/**
+	 * Called once a string has failed to decode, in which case the decoder handed out a {@link ConsentInfoStub}, or
+	 * left a target reading like one.
+	 *
+	 * @param reason
+	 *      why the string could not be decoded
+	 * @param nanos
+	 *      how long it took to fail
+	 */
+	void onFailed(DecodeFailureReason reason, long nanos);
+}
@@ -0,0 +1,199 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link DecodeListener} counting decodes, their failures by reason, their sections by encoding and their latency.
+ * Every count is a {@link LongAdder}, which stripes its updates over per thread cells once threads contend for it, so
+ * recording never locks and scales with the decoding threads. Reads sum the cells, and are only consistent with each
+ * other when nothing is decoded concurrently.
+ *
+ * Latencies are kept in a histogram of power of two buckets: bucket {@code i} counts the decodes that took from
+ * {@code 2^(i-1)} up to {@code 2^i - 1} nanoseconds, and bucket 0 those that took no measurable time.
+ */
+public final class DecodeMetrics implements DecodeListener {
+	private static final int MAX_VERSION = 2;
+	private static final int BUCKET_COUNT = Long.SIZE;
+
+	// indexed by version, with index 0 for versions the decoder does not know
+	private final LongAdder[] decodedCounts = adders(MAX_VERSION + 1);
+	private final LongAdder[] failureCounts = adders(DecodeFailureReason.values().length);
+	private final LongAdder[] rangeCounts = adders(Section.values().length);
+	private final LongAdder[] bitFieldCounts = adders(Section.values().length);
+	private final LongAdder segmentCount = new LongAdder();
+	private final LongAdder payloadBits = new LongAdder();
+	private final LongAdder[] latencyBuckets = adders(BUCKET_COUNT);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onDecoded(int version, int segmentCount, int payloadBits, int rangeSections, int bitFieldSections,
+			long nanos) {
+		decodedCounts[version > 0 && version <= MAX_VERSION ? version : 0].increment();
+		this.segmentCount.add(segmentCount);
+		this.payloadBits.add(payloadBits);
+		for (int i = 0; i < rangeCounts.length; i++) {
+			if ((rangeSections & (1 << i)) != 0) {
+				rangeCounts[i].increment();
+			} else if ((bitFieldSections & (1 << i)) != 0) {
+				bitFieldCounts[i].increment();
+			}
+		}
+		latencyBuckets[bucket(nanos)].increment();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onFailed(DecodeFailureReason reason, long nanos) {
+		failureCounts[reason.ordinal()].increment();
+		latencyBuckets[bucket(nanos)].increment();
+	}
+
+	/**
+	 * @return the number of strings decoded
+	 */
+	public long getDecodedCount() {
+		return sum(decodedCounts);
+	}
+
+	/**
+	 * @param version
+	 *      a consent string version
+	 * @return the number of strings of that version decoded
+	 */
+	public long getDecodedCount(int version) {
+		return version > 0 && version <= MAX_VERSION ? decodedCounts[version].sum() : 0;
+	}
+
+	/**
+	 * @return the number of strings that failed to decode
+	 */
+	public long getFailedCount() {
+		return sum(failureCounts);
+	}
+
+	/**
+	 * @param reason
+	 *      why a string failed to decode
+	 * @return the number of strings that failed to decode for that reason
+	 */
+	public long getFailedCount(DecodeFailureReason reason) {
+		return failureCounts[reason.ordinal()].sum();
+	}
+
+	/**
+	 * @param section
+	 *      a vendor section
+	 * @return the number of decoded strings in which that section is range encoded
+	 */
+	public long getRangeCount(Section section) {
+		return rangeCounts[section.ordinal()].sum();
+	}
+
+	/**
+	 * @param section
+	 *      a vendor section
+	 * @return the number of decoded strings in which that section is bit field encoded
+	 */
+	public long getBitFieldCount(Section section) {
+		return bitFieldCounts[section.ordinal()].sum();
+	}
+
+	/**
+	 * @return the number of segments of the decoded strings
+	 */
+	public long getSegmentCount() {
+		return segmentCount.sum();
+	}
+
+	/**
+	 * @return the number of bits carried by the decoded strings
+	 */
+	public long getPayloadBits() {
+		return payloadBits.sum();
+	}
+
+	/**
+	 * @return a copy of the latency histogram, indexed by bucket
+	 */
+	public long[] getLatencyHistogram() {
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = latencyBuckets[i].sum();
+		}
+		return counts;
+	}
+
+	/**
+	 * @param quantile
+	 *      between 0 and 1, e.g. 0.99 for the 99th percentile
+	 * @return an upper bound of the latency, in nanoseconds, under which that share of the decodes and failures
+	 *      completed: the highest latency of the bucket the quantile falls in. 0 when nothing was recorded.
+	 */
+	public long getLatencyQuantile(double quantile) {
+		if (quantile < 0 || quantile > 1) {
+			throw new IllegalArgumentException("quantile must be between 0 and 1");
+		}
+		long[] counts = getLatencyHistogram();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(quantile * total), 1);
+		long seen = 0;
+		int i = 0;
+		while (i < BUCKET_COUNT - 1 && (seen += counts[i]) < rank) {
+			i++;
+		}
+		// 2^63 - 1 for the last bucket, where the shift wraps around
+		return (1L << i) - 1;
+	}
+
+	/**
+	 * Sets every count back to 0. Decodes recorded concurrently may be partly kept.
+	 */
+	public void reset() {
+		reset(decodedCounts);
+		reset(failureCounts);
+		reset(rangeCounts);
+		reset(bitFieldCounts);
+		segmentCount.reset();
+		payloadBits.reset();
+		reset(latencyBuckets);
+	}
+
+	/**
+	 * @return the histogram bucket of a latency
+	 */
+	static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(nanos);
+	}
+
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	private static long sum(LongAdder[] adders) {
+		long sum = 0;
+		for (LongAdder adder : adders) {
+			sum += adder.sum();
+		}
+		return sum;
+	}
+
+	private static void reset(LongAdder[] adders) {
+		for (LongAdder adder : adders) {
+			adder.reset();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.iab.gdpr;
+
+/**
+ * What {@link ConsentInfoDecoder#tryDecode(CharSequence)} made of a consent string: either the decoded consent, or why
+ * and where decoding failed. Invalid strings are reported without any exception being thrown.
+ */
+public final class DecodeResult {
+	private final ConsentInfo consentInfo;
+	private final DecodeFailureReason failureReason;
+	private final int errorOffset;
+
+	private DecodeResult(ConsentInfo consentInfo, DecodeFailureReason failureReason, int errorOffset) {
+		this.consentInfo = consentInfo;
+		this.failureReason = failureReason;
+		this.errorOffset = errorOffset;
+	}
+
+	static DecodeResult success(ConsentInfo consentInfo) {
+		return new DecodeResult(consentInfo, null, -1);
+	}
+
+	static DecodeResult failure(DecodeStatus status) {
+		return new DecodeResult(null, status.getFailureReason(), status.getErrorOffset());
+	}
+
+	/**
+	 * @return whether the string could be decoded
+	 */
+	public boolean isSuccess() {
+		return consentInfo != null;
+	}
+
+	/**
+	 * @return the decoded consent, or null when the string could not be decoded
+	 */
+	public ConsentInfo getConsentInfo() {
+		return consentInfo;
+	}
+
+	/**
+	 * @return the decoded consent, or a {@link ConsentInfoStub} when the string could not be decoded, like
+	 *      {@link ConsentInfoDecoder#decode(CharSequence)} returns
+	 */
+	public ConsentInfo getConsentInfoOrStub() {
+		return consentInfo != null ? consentInfo : new ConsentInfoStub();
+	}
+
+	/**
+	 * @return why the string could not be decoded, or null when it could
+	 */
+	public DecodeFailureReason getFailureReason() {
+		return failureReason;
+	}
+
+	/**
+	 * @return the bit of the string at which decoding failed, counting six bits per character from the start of the
+	 *      string, dots included, so that the failing character is at {@code errorOffset / 6}. 0 for a string that
+	 *      failed as a whole, such as an empty one or one of an unsupported version, and -1 when decoding did not fail.
+	 */
+	public int getErrorOffset() {
+		return errorOffset;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.iab.gdpr;
+
+/**
+ * Where a decode that does not throw records why, and where, it failed. Only the first failure is kept: the
+ * {@link Bits} recording to a status read every field as 0 once it has failed.
+ */
+final class DecodeStatus {
+	private DecodeFailureReason failureReason;
+	private int errorOffset = -1;
+
+	boolean failed() {
+		return failureReason != null;
+	}
+
+	/**
+	 * @return why decoding failed, or null when it did not
+	 */
+	DecodeFailureReason getFailureReason() {
+		return failureReason;
+	}
+
+	/**
+	 * @return the bit of the string at which decoding failed, counting six bits per character from the start of the
+	 *      string, or -1 when it did not fail
+	 */
+	int getErrorOffset() {
+		return errorOffset;
+	}
+
+	/**
+	 * records a failure, unless one was recorded before
+	 */
+	void fail(DecodeFailureReason reason, int errorOffset) {
+		if (failureReason == null) {
+			this.failureReason = reason;
+			this.errorOffset = errorOffset;
+		}
+	}
+
+	/**
+	 * replaces the reason of the recorded failure, keeping its offset, once the caller knows better what failed
+	 */
+	void reclassify(DecodeFailureReason reason) {
+		if (failureReason != null) {
+			failureReason = reason;
+		}
+	}
+
+	/**
+	 * @return the exception a throwing decoder reports the recorded failure with
+	 */
+	DecodeException toException() {
+		return new DecodeException(failureReason.name().toLowerCase().replace('_', ' ') + " at bit " + errorOffset,
+				errorOffset, failureReason);
+	}
+}
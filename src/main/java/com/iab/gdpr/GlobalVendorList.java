@@ -0,0 +1,269 @@
+package com.iab.gdpr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TCF v2 Global Vendor List, as specified in
+ * https://github.com/InteractiveAdvertisingBureau/GDPR-Transparency-and-Consent-Framework/blob/master/TCFv2/IAB%20Tech%20Lab%20-%20Consent%20string%20and%20vendor%20list%20formats%20v2.md#the-global-vendor-list
+ *
+ * Only what the legal basis rules need is kept, compiled into primitive masks: for every vendor, the purposes it
+ * declares under consent, under legitimate interest and as flexible, and its special features, where bit n - 1 of a
+ * mask stands for purpose or feature n. The same declarations are also kept per purpose, as bit sets over the
+ * vendors, so that all vendors can be evaluated a word at a time. Deleted vendors are left out.
+ */
+public final class GlobalVendorList {
+	// the masks have one bit per purpose
+	static final int MAX_PURPOSE_ID = Integer.SIZE;
+
+	private final int vendorListVersion;
+	private final int tcfPolicyVersion;
+	// the ids of the listed vendors, ascending. The arrays below are indexed the same way.
+	private final int[] vendorIds;
+	private final int[] purposes;
+	private final int[] legIntPurposes;
+	private final int[] flexiblePurposes;
+	private final int[] specialFeatures;
+	// indexed by purpose id - 1, bit i of a set stands for the vendor vendorIds[i]
+	private final long[][] consentVendors;
+	private final long[][] legIntVendors;
+
+	private GlobalVendorList(int vendorListVersion, int tcfPolicyVersion, int[] vendorIds, int[] purposes,
+			int[] legIntPurposes, int[] flexiblePurposes, int[] specialFeatures) {
+		this.vendorListVersion = vendorListVersion;
+		this.tcfPolicyVersion = tcfPolicyVersion;
+		this.vendorIds = vendorIds;
+		this.purposes = purposes;
+		this.legIntPurposes = legIntPurposes;
+		this.flexiblePurposes = flexiblePurposes;
+		this.specialFeatures = specialFeatures;
+		this.consentVendors = byPurpose(purposes);
+		this.legIntVendors = byPurpose(legIntPurposes);
+	}
+
+	/**
+	 * @param file:
+	 *            a vendor-list.json file
+	 * @return the compiled vendor list
+	 * @throws IOException
+	 *             when the file cannot be read
+	 * @throws ParseException
+	 *             when the file is not a vendor list
+	 */
+	public static GlobalVendorList load(Path file) throws IOException, ParseException {
+		return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param json:
+	 *            the content of a vendor-list.json file
+	 * @return the compiled vendor list
+	 * @throws ParseException
+	 *             when the content is not a vendor list
+	 */
+	public static GlobalVendorList parse(CharSequence json) throws ParseException {
+		Map<?, ?> root = asObject(Json.parse(json), "vendor list");
+		int vendorListVersion = asInt(root.get("vendorListVersion"), "vendorListVersion");
+		Object policyVersion = root.get("tcfPolicyVersion");
+		int tcfPolicyVersion = policyVersion == null ? 0 : asInt(policyVersion, "tcfPolicyVersion");
+		Object vendorsValue = root.get("vendors");
+		Map<?, ?> vendors = vendorsValue == null ? Collections.emptyMap() : asObject(vendorsValue, "vendors");
+
+		// vendor id, purposes, legIntPurposes, flexiblePurposes, specialFeatures
+		long[][] rows = new long[vendors.size()][];
+		int count = 0;
+		for (Object value : vendors.values()) {
+			Map<?, ?> vendor = asObject(value, "vendor");
+			if (vendor.get("deletedDate") != null) {
+				continue;
+			}
+			rows[count++] = new long[] { asInt(vendor.get("id"), "vendor id"), mask(vendor.get("purposes")),
+					mask(vendor.get("legIntPurposes")), mask(vendor.get("flexiblePurposes")),
+					mask(vendor.get("specialFeatures")) };
+		}
+		rows = Arrays.copyOf(rows, count);
+		Arrays.sort(rows, (a, b) -> Long.compare(a[0], b[0]));
+
+		int[] vendorIds = new int[count];
+		int[][] masks = new int[4][count];
+		for (int i = 0; i < count; i++) {
+			vendorIds[i] = (int) rows[i][0];
+			if (i > 0 && vendorIds[i] == vendorIds[i - 1]) {
+				throw new ParseException("vendor " + vendorIds[i] + " is listed twice", 0);
+			}
+			for (int m = 0; m < masks.length; m++) {
+				masks[m][i] = (int) rows[i][m + 1];
+			}
+		}
+		return new GlobalVendorList(vendorListVersion, tcfPolicyVersion, vendorIds, masks[0], masks[1], masks[2],
+				masks[3]);
+	}
+
+	/**
+	 * @return the version of the vendor list
+	 */
+	public int getVendorListVersion() {
+		return vendorListVersion;
+	}
+
+	/**
+	 * @return the version of the policy the vendor list was published under
+	 */
+	public int getTcfPolicyVersion() {
+		return tcfPolicyVersion;
+	}
+
+	/**
+	 * @return the ids of the vendors in the list, ascending
+	 */
+	public int[] getVendorIds() {
+		return vendorIds.clone();
+	}
+
+	/**
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @return whether the vendor is listed, and not deleted
+	 */
+	public boolean hasVendor(int vendorId) {
+		return indexOf(vendorId) >= 0;
+	}
+
+	/**
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @return the purposes the vendor declares under consent, where bit n - 1 stands for purpose n
+	 */
+	public int getPurposes(int vendorId) {
+		int index = indexOf(vendorId);
+		return index < 0 ? 0 : purposes[index];
+	}
+
+	/**
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @return the purposes the vendor declares under legitimate interest, where bit n - 1 stands for purpose n
+	 */
+	public int getLegIntPurposes(int vendorId) {
+		int index = indexOf(vendorId);
+		return index < 0 ? 0 : legIntPurposes[index];
+	}
+
+	/**
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @return the purposes whose legal basis the publisher may change, where bit n - 1 stands for purpose n
+	 */
+	public int getFlexiblePurposes(int vendorId) {
+		int index = indexOf(vendorId);
+		return index < 0 ? 0 : flexiblePurposes[index];
+	}
+
+	/**
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @return the special features the vendor uses, where bit n - 1 stands for special feature n
+	 */
+	public int getSpecialFeatures(int vendorId) {
+		int index = indexOf(vendorId);
+		return index < 0 ? 0 : specialFeatures[index];
+	}
+
+	int indexOf(int vendorId) {
+		return Arrays.binarySearch(vendorIds, vendorId);
+	}
+
+	/**
+	 * @return the ids of the listed vendors, ascending; not a copy
+	 */
+	int[] vendorIds() {
+		return vendorIds;
+	}
+
+	int purposes(int index) {
+		return purposes[index];
+	}
+
+	int legIntPurposes(int index) {
+		return legIntPurposes[index];
+	}
+
+	int flexiblePurposes(int index) {
+		return flexiblePurposes[index];
+	}
+
+	int specialFeatures(int index) {
+		return specialFeatures[index];
+	}
+
+	/**
+	 * @return the vendors declaring the purpose under consent, bit i standing for the vendor at index i; not a copy
+	 */
+	long[] consentVendors(int purposeId) {
+		return consentVendors[purposeId - 1];
+	}
+
+	/**
+	 * @return the vendors declaring the purpose under legitimate interest; not a copy
+	 */
+	long[] legIntVendors(int purposeId) {
+		return legIntVendors[purposeId - 1];
+	}
+
+	/**
+	 * @return the index of the first listed vendor whose id is at least vendorId
+	 */
+	int lowerBound(int vendorId) {
+		int index = indexOf(vendorId);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	// the sets line up with what ConsentInfo#areVendorsConsented answers for the vendor ids
+	private static long[][] byPurpose(int[] masks) {
+		long[][] vendors = new long[MAX_PURPOSE_ID][(masks.length + 63) >>> 6];
+		for (int i = 0; i < masks.length; i++) {
+			for (int mask = masks[i]; mask != 0; mask &= mask - 1) {
+				vendors[Integer.numberOfTrailingZeros(mask)][i >>> 6] |= 1L << i;
+			}
+		}
+		return vendors;
+	}
+
+	private static int mask(Object ids) throws ParseException {
+		if (ids == null) {
+			return 0;
+		}
+		if (!(ids instanceof List)) {
+			throw new ParseException("expected an array of ids", 0);
+		}
+		int mask = 0;
+		for (Object id : (List<?>) ids) {
+			int value = asInt(id, "id");
+			if (value >= 1 && value <= MAX_PURPOSE_ID) {
+				mask |= 1 << (value - 1);
+			}
+		}
+		return mask;
+	}
+
+	private static Map<?, ?> asObject(Object value, String name) throws ParseException {
+		if (!(value instanceof Map)) {
+			throw new ParseException(name + " is not an object", 0);
+		}
+		return (Map<?, ?>) value;
+	}
+
+	private static int asInt(Object value, String name) throws ParseException {
+		if (!(value instanceof Long)) {
+			throw new ParseException(name + " is not an integer", 0);
+		}
+		return ((Long) value).intValue();
+	}
+}
@@ -0,0 +1,29 @@
+package com.iab.gdpr;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The batch lookups of {@link ConsentInfo} and {@link IdSet} for implementations that only answer one id at a time.
+ */
+final class IdLookups {
+	private IdLookups() {
+	}
+
+	/**
+	 * @param member
+	 *      tells whether an id is a member
+	 * @param ids
+	 *      Ids to look up, in any order
+	 * @return a bit set, laid out like {@link java.util.BitSet#toLongArray()}, in which bit i tells whether ids[i] is
+	 *      a member
+	 */
+	static long[] containsEach(IntPredicate member, int[] ids) {
+		long[] result = new long[(ids.length + 63) >>> 6];
+		for (int i = 0; i < ids.length; i++) {
+			if (member.test(ids[i])) {
+				result[i >>> 6] |= 1L << i;
+			}
+		}
+		return result;
+	}
+}
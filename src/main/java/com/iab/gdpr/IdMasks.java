@@ -0,0 +1,94 @@
+package com.iab.gdpr;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Builds and compares the id masks of {@link ConsentInfo}, in which the id n is bit n - 1. A policy such as "purposes
+ * 1, 3 and 4 are consented" is one mask built up front, and one comparison per consent:
+ *
+ * <pre>
+ * static final int REQUIRED = IdMasks.of(1, 3, 4);
+ * ...
+ * if (IdMasks.containsAll(consentInfo.getPurposeConsentsMask(), REQUIRED)) {
+ * </pre>
+ */
+public final class IdMasks {
+	private IdMasks() {
+	}
+
+	/**
+	 * @param ids
+	 *      the ids to set, from 1 to 32
+	 * @return the mask of the ids
+	 * @throws IllegalArgumentException
+	 *      when an id does not fit in an int mask
+	 */
+	public static int of(int... ids) {
+		int mask = 0;
+		for (int id : ids) {
+			if (id < 1 || id > Integer.SIZE) {
+				throw new IllegalArgumentException("id " + id + " does not fit in an int mask");
+			}
+			mask |= 1 << (id - 1);
+		}
+		return mask;
+	}
+
+	/**
+	 * @param purposes
+	 *      the purposes to set, of the same version
+	 * @return the mask of the purpose ids
+	 * @throws IllegalArgumentException
+	 *      when a purpose is undefined
+	 */
+	public static int of(Purpose... purposes) {
+		int mask = 0;
+		for (Purpose purpose : purposes) {
+			mask |= of(purpose.getValue());
+		}
+		return mask;
+	}
+
+	/**
+	 * @return whether every id of the required mask is in the mask
+	 */
+	public static boolean containsAll(int mask, int required) {
+		return (mask & required) == required;
+	}
+
+	/**
+	 * @return whether any id of the candidate mask is in the mask
+	 */
+	public static boolean containsAny(int mask, int candidates) {
+		return (mask & candidates) != 0;
+	}
+
+	/**
+	 * @return the mask of the ids from 1 to size, at most 32, for which the predicate holds
+	 */
+	static int of(IntPredicate isSet, int size) {
+		int mask = 0;
+		for (int id = size; id >= 1; id--) {
+			mask = (mask << 1) | (isSet.test(id) ? 1 : 0);
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the mask of the ids from 1 to size, at most 64, for which the predicate holds
+	 */
+	static long ofLong(IntPredicate isSet, int size) {
+		long mask = 0;
+		for (int id = size; id >= 1; id--) {
+			mask = (mask << 1) | (isSet.test(id) ? 1 : 0);
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the mask of a field of size bits, at most 64, holding the id 1 in its highest bit as consent strings do
+	 */
+	static long fromField(long field, int size) {
+		return size == 0 ? 0 : Long.reverse(field) >>> (Long.SIZE - size);
+	}
+}
@@ -0,0 +1,85 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+
+/**
+ * The runs of consecutive ids of an {@link IdSet}, from id 1 on, collected into a buffer that is reused from one set
+ * to the next, for writing the set out in another form.
+ */
+final class IdRuns {
+	// start0, end0, start1, end1, ...
+	private int[] bounds = new int[64];
+	private int boundCount;
+
+	/**
+	 * replaces the runs by those of the set
+	 */
+	void collect(IdSet ids) {
+		int maxId = ids.getMaxId();
+		boundCount = 0;
+		if (ids instanceof RangeSet) {
+			RangeSet ranges = (RangeSet) ids;
+			for (int i = 0, ii = ranges.getRangeCount(); i < ii; i++) {
+				int start = Math.max(ranges.getStart(i), 1);
+				int end = Math.min(ranges.getEnd(i), maxId);
+				if (start <= end) {
+					add(start, end);
+				}
+			}
+			return;
+		}
+		for (int id = 1; id <= maxId; id++) {
+			if (ids.contains(id)) {
+				int start = id;
+				while (id < maxId && ids.contains(id + 1)) {
+					id++;
+				}
+				add(start, id);
+			}
+		}
+	}
+
+	/**
+	 * replaces the runs by those of the ids from 1 to maxId that the other runs do not cover
+	 */
+	void collectComplement(IdRuns runs, int maxId) {
+		boundCount = 0;
+		int next = 1;
+		for (int i = 0; i < runs.boundCount; i += 2) {
+			if (runs.bounds[i] > next) {
+				add(next, runs.bounds[i] - 1);
+			}
+			next = runs.bounds[i + 1] + 1;
+		}
+		if (next <= maxId) {
+			add(next, maxId);
+		}
+	}
+
+	int getCount() {
+		return boundCount >>> 1;
+	}
+
+	int getStart(int index) {
+		return bounds[index << 1];
+	}
+
+	int getEnd(int index) {
+		return bounds[(index << 1) + 1];
+	}
+
+	/**
+	 * @return the highest id of the runs, or 0 when there are none
+	 */
+	int getMaxId() {
+		return boundCount == 0 ? 0 : bounds[boundCount - 1];
+	}
+
+	private void add(int start, int end) {
+		if (boundCount + 2 > bounds.length) {
+			bounds = Arrays.copyOf(bounds, bounds.length << 1);
+		}
+		bounds[boundCount++] = start;
+		bounds[boundCount++] = end;
+	}
+}
@@ -0,0 +1,37 @@
+package com.iab.gdpr;
+
+/**
+ * An immutable set of vendor, purpose or feature ids as encoded in a consent string section, either as a bit field or
+ * as a range section.
+ */
+public interface IdSet {
+	/**
+	 * @param id
+	 *      Id to look up
+	 * @return whether the id is a member of the set; ids outside of the encoded section are never members
+	 */
+	boolean contains(int id);
+
+	/**
+	 * @return whether no id is a member of the set
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return the highest id the set covers: the size of a bit field, or the end of the last interval of a range
+	 *      section, or 0 when it covers none
+	 */
+	int getMaxId();
+
+	/**
+	 * Looks up many ids at once. Implementations answer an ascending array in a single pass over their data.
+	 *
+	 * @param ids
+	 *      Ids to look up, in any order
+	 * @return a bit set, laid out like {@link java.util.BitSet#toLongArray()}, in which bit i tells whether ids[i] is
+	 *      a member of the set
+	 */
+	default long[] containsEach(int[] ids) {
+		return IdLookups.containsEach(this::contains, ids);
+	}
+}
@@ -0,0 +1,196 @@
+package com.iab.gdpr;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of canonical vendor sets, shared by the consent strings decoded with it, see
+ * {@link ConsentInfoDecoder#decode(CharSequence, IdSetInterner)}.
+ *
+ * Strings from the same CMP and vendor list version usually carry the very same vendor sections. With an interner,
+ * the raw bits of a section, header included, are looked up before the section is decoded; when a string with the
+ * same section was decoded before, its immutable {@link IdSet} is reused rather than decoded again. Sections are
+ * compared bit for bit, so a set encoded once as a range section and once as a bit field is not shared.
+ *
+ * The pool holds at most a maximum number of sections, evicting the least recently used ones, and only references the
+ * canonical sets weakly, or softly: a set is kept for as long as some decoded string uses it, and the pool never keeps
+ * one alive on its own. It is striped into independently locked segments, and is thread safe.
+ */
+public final class IdSetInterner {
+	private static final int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private final boolean softReferences;
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * Creates an interner referencing its sets weakly.
+	 *
+	 * @param maximumSize
+	 *      the number of sections above which the least recently used ones are evicted
+	 */
+	public IdSetInterner(int maximumSize) {
+		this(maximumSize, false);
+	}
+
+	/**
+	 * @param maximumSize
+	 *      the number of sections above which the least recently used ones are evicted
+	 * @param softReferences
+	 *      whether the sets are referenced softly, so that they outlive the strings using them until memory runs
+	 *      short, rather than weakly
+	 */
+	public IdSetInterner(int maximumSize, boolean softReferences) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("maximumSize must not be negative");
+		}
+		this.softReferences = softReferences;
+		int segmentSize = (maximumSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * @return the number of sections that were found in the pool
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return the number of sections that had to be decoded
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return the number of sections in the pool, some of which may have been collected already
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param section:
+	 *            the raw bits of a section, header included
+	 * @return the canonical set of the section, or null when it has to be decoded
+	 */
+	IdSet get(BitField section) {
+		Segment segment = segmentFor(section);
+		IdSet ids;
+		synchronized (segment) {
+			Reference<IdSet> reference = segment.get(section);
+			ids = reference == null ? null : reference.get();
+		}
+		if (ids != null) {
+			hitCount.increment();
+		} else {
+			missCount.increment();
+		}
+		return ids;
+	}
+
+	/**
+	 * @param section:
+	 *            the raw bits of a section, header included
+	 * @param ids:
+	 *            the set the section decoded to
+	 * @return the canonical set of the section, which is ids unless another thread interned the section first
+	 */
+	IdSet intern(BitField section, IdSet ids) {
+		Segment segment = segmentFor(section);
+		synchronized (segment) {
+			segment.expungeCollected();
+			Reference<IdSet> reference = segment.get(section);
+			IdSet canonical = reference == null ? null : reference.get();
+			if (canonical != null) {
+				return canonical;
+			}
+			segment.put(section, softReferences ? new SoftSectionReference(section, ids, segment.queue)
+					: new WeakSectionReference(section, ids, segment.queue));
+			return ids;
+		}
+	}
+
+	private Segment segmentFor(BitField section) {
+		int hash = section.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * An access ordered map evicting its least recently used section past its capacity, and dropping the sections
+	 * whose set was collected.
+	 */
+	private static final class Segment extends LinkedHashMap<BitField, Reference<IdSet>> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final transient ReferenceQueue<IdSet> queue = new ReferenceQueue<IdSet>();
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		void expungeCollected() {
+			for (Reference<? extends IdSet> reference; (reference = queue.poll()) != null;) {
+				BitField section = ((SectionReference) reference).section();
+				// the section may have been interned again since
+				if (get(section) == reference) {
+					remove(section);
+				}
+			}
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<BitField, Reference<IdSet>> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	private interface SectionReference {
+		BitField section();
+	}
+
+	private static final class WeakSectionReference extends WeakReference<IdSet> implements SectionReference {
+		private final BitField section;
+
+		WeakSectionReference(BitField section, IdSet ids, ReferenceQueue<IdSet> queue) {
+			super(ids, queue);
+			this.section = section;
+		}
+
+		@Override
+		public BitField section() {
+			return section;
+		}
+	}
+
+	private static final class SoftSectionReference extends SoftReference<IdSet> implements SectionReference {
+		private final BitField section;
+
+		SoftSectionReference(BitField section, IdSet ids, ReferenceQueue<IdSet> queue) {
+			super(ids, queue);
+			this.section = section;
+		}
+
+		@Override
+		public BitField section() {
+			return section;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.iab.gdpr;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON reader, enough to load a Global Vendor List without pulling a JSON library into the dependency free
+ * parser. Objects are read as {@link Map}s, arrays as {@link List}s, numbers as {@link Long}s when they are integral
+ * and as {@link Double}s otherwise, and true, false and null as {@link Boolean}s and null.
+ */
+final class Json {
+	private final CharSequence text;
+	private int position;
+
+	private Json(CharSequence text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param text:
+	 *            a JSON document
+	 * @return the value the document holds
+	 * @throws ParseException
+	 *             carrying the offset of the first character that is not well formed JSON
+	 */
+	static Object parse(CharSequence text) throws ParseException {
+		Json json = new Json(text);
+		Object value = json.readValue();
+		json.skipWhitespace();
+		if (json.position != text.length()) {
+			throw new ParseException("unexpected content after the JSON value", json.position);
+		}
+		return value;
+	}
+
+	private Object readValue() throws ParseException {
+		skipWhitespace();
+		if (position >= text.length()) {
+			throw new ParseException("unexpected end of JSON", position);
+		}
+		char c = text.charAt(position);
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			return readLiteral("true", Boolean.TRUE);
+		case 'f':
+			return readLiteral("false", Boolean.FALSE);
+		case 'n':
+			return readLiteral("null", null);
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return readNumber();
+			}
+			throw new ParseException("unexpected character '" + c + "'", position);
+		}
+	}
+
+	private Map<String, Object> readObject() throws ParseException {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		position++;
+		skipWhitespace();
+		if (peek() == '}') {
+			position++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw new ParseException("expected an object key", position);
+			}
+			String key = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(key, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> readArray() throws ParseException {
+		List<Object> array = new ArrayList<Object>();
+		position++;
+		skipWhitespace();
+		if (peek() == ']') {
+			position++;
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String readString() throws ParseException {
+		position++;
+		StringBuilder s = new StringBuilder();
+		while (true) {
+			if (position >= text.length()) {
+				throw new ParseException("unterminated string", position);
+			}
+			char c = text.charAt(position++);
+			if (c == '"') {
+				return s.toString();
+			}
+			if (c != '\\') {
+				s.append(c);
+				continue;
+			}
+			if (position >= text.length()) {
+				throw new ParseException("unterminated string", position);
+			}
+			char escaped = text.charAt(position++);
+			switch (escaped) {
+			case '"':
+			case '\\':
+			case '/':
+				s.append(escaped);
+				break;
+			case 'b':
+				s.append('\b');
+				break;
+			case 'f':
+				s.append('\f');
+				break;
+			case 'n':
+				s.append('\n');
+				break;
+			case 'r':
+				s.append('\r');
+				break;
+			case 't':
+				s.append('\t');
+				break;
+			case 'u':
+				if (position + 4 > text.length()) {
+					throw new ParseException("truncated unicode escape", position);
+				}
+				try {
+					s.append((char) Integer.parseInt(text.subSequence(position, position + 4).toString(), 16));
+				} catch (NumberFormatException e) {
+					throw new ParseException("invalid unicode escape", position);
+				}
+				position += 4;
+				break;
+			default:
+				throw new ParseException("invalid escape '\\" + escaped + "'", position - 1);
+			}
+		}
+	}
+
+	private Object readNumber() throws ParseException {
+		int start = position;
+		boolean integral = true;
+		while (position < text.length()) {
+			char c = text.charAt(position);
+			if (c == '.' || c == 'e' || c == 'E') {
+				integral = false;
+			} else if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+				break;
+			}
+			position++;
+		}
+		String number = text.subSequence(start, position).toString();
+		try {
+			return integral ? (Object) Long.valueOf(number) : (Object) Double.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw new ParseException("invalid number " + number, start);
+		}
+	}
+
+	private Object readLiteral(String literal, Object value) throws ParseException {
+		if (position + literal.length() > text.length()
+				|| !literal.contentEquals(text.subSequence(position, position + literal.length()))) {
+			throw new ParseException("unexpected literal", position);
+		}
+		position += literal.length();
+		return value;
+	}
+
+	private void expect(char c) throws ParseException {
+		if (peek() != c) {
+			throw new ParseException("expected '" + c + "'", position);
+		}
+		position++;
+	}
+
+	private char peek() {
+		return position < text.length() ? text.charAt(position) : '\0';
+	}
+
+	private void skipWhitespace() {
+		while (position < text.length()) {
+			char c = text.charAt(position);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				return;
+			}
+			position++;
+		}
+	}
+}
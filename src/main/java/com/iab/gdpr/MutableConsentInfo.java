@@ -0,0 +1,958 @@
+package com.iab.gdpr;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reusable {@link ConsentInfo} that version 1 and version 2 consent strings are decoded into, see
+ * {@link ConsentInfoDecoder#decodeInto(CharSequence, MutableConsentInfo)}.
+ *
+ * The fields are kept as primitives and the sections in buffers that only ever grow, so once an instance has seen
+ * strings of a given size, decoding another one allocates nothing. The instants, the language and country strings
+ * and the lists are only created when their accessors are called. Errors are recorded rather than thrown, so a
+ * malformed string does not allocate an exception either.
+ *
+ * An instance is not thread safe: it is meant to be owned by one request at a time, either held by the caller or
+ * borrowed from a {@link MutableConsentInfoPool}.
+ */
+public class MutableConsentInfo implements ConsentInfo {
+	private static final int PURPOSE_COUNT = ConsentStringParserV2.PURPOSES_CONSENT_SIZE;
+
+	// the characters decoded, which only become a string when asked for
+	private CharSequence consentChars;
+	private String consentString;
+	private int version;
+	private long consentRecordCreatedDeciseconds;
+	private long consentRecordLastUpdatedDeciseconds;
+	private int cmpId;
+	private int cmpVersion;
+	private int consentScreen;
+	// the two six bit characters as read
+	private int consentLanguageCode;
+	private int vendorListVersion;
+	private int tcfPolicyVersion;
+	private boolean serviceSpecific;
+	private boolean nonStandardStacks;
+	// the bit fields below are kept as read, so the bit for id 1 is the most significant of the field
+	private int featureOptins;
+	private int purposeConsents;
+	private int purposeLegitInterests;
+	private boolean purposeOneDisclosed;
+	private int publisherCcCode;
+	// version 1 range sections list the vendors whose consent differs from this default
+	private boolean vendorRangeEncoding;
+	private boolean defaultConsent;
+	// the max vendor id of a version 1 string, which bounds its default consent
+	private int maxVendorId;
+	private final MutableIdSet vendorConsents = new MutableIdSet();
+	private final MutableIdSet vendorLegitInterests = new MutableIdSet();
+	private final MutableIdSet vendorDisclosures = new MutableIdSet();
+	private final MutableIdSet vendorAllowances = new MutableIdSet();
+	private int pubPurposeConsents;
+	private int pubPurposeLegitInterests;
+	private int customPurposeCount;
+	private long customPurposeConsents;
+	private long customPurposeLegitInterests;
+	private int restrictionCount;
+	private int[] restrictionPurposeIds = new int[0];
+	private int[] restrictionTypes = new int[0];
+	private MutableIdSet[] restrictionVendorIds = new MutableIdSet[0];
+
+	// created on first use
+	private Instant consentRecordCreated;
+	private Instant consentRecordLastUpdated;
+
+	// the segment being read, and whether reading it failed and why
+	private CharSequence chars;
+	private int charsStart;
+	private int bitLength;
+	private boolean failed;
+	private DecodeFailureReason failureReason;
+
+	/**
+	 * Decodes a consent string into this instance, replacing whatever it held before.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher, which must not change for as long as this instance holds it
+	 * @return whether the string could be decoded. When it could not, this instance reads like a
+	 *      {@link ConsentInfoStub}, except that its instants are null
+	 */
+	boolean decode(CharSequence consentString) {
+		reset();
+		if (consentString == null || consentString.length() == 0) {
+			failureReason = DecodeFailureReason.EMPTY;
+			return false;
+		}
+		int firstCharValue = Base64Url.valueOf(consentString.charAt(0));
+		switch (firstCharValue) {
+		case 1:
+			decodeV1(consentString);
+			break;
+		case 2:
+			decodeV2(consentString);
+			break;
+		default:
+			fail(firstCharValue < 0 ? DecodeFailureReason.MALFORMED_BASE64 : DecodeFailureReason.UNSUPPORTED_VERSION);
+		}
+		chars = null;
+		if (failed) {
+			DecodeFailureReason reason = failureReason;
+			reset();
+			failureReason = reason;
+			return false;
+		}
+		this.consentChars = consentString;
+		return true;
+	}
+
+	/**
+	 * Reads the binary form of a consent into this instance, replacing whatever it held before, see
+	 * {@link ConsentInfoSerializer}.
+	 *
+	 * @param buffer
+	 *      the buffer holding the binary form, which is only read with absolute gets
+	 * @param offset
+	 *      the offset of the binary form in the buffer
+	 * @return the length of the binary form, or -1 when it is malformed, in which case this instance reads like a
+	 *      {@link ConsentInfoStub}, except that its instants are null
+	 */
+	int decode(ByteBuffer buffer, int offset) {
+		reset();
+		int length = ConsentInfoSerializer.length(buffer, offset);
+		if (length < 0) {
+			return -1;
+		}
+		int end = offset + length;
+		version = buffer.get(offset + ConsentInfoSerializer.VERSION_OFFSET);
+		int flags = buffer.get(offset + ConsentInfoSerializer.FLAGS_OFFSET);
+		serviceSpecific = (flags & ConsentInfoSerializer.SERVICE_SPECIFIC) != 0;
+		nonStandardStacks = (flags & ConsentInfoSerializer.NON_STANDARD_STACKS) != 0;
+		purposeOneDisclosed = (flags & ConsentInfoSerializer.PURPOSE_ONE_DISCLOSED) != 0;
+		customPurposeCount = buffer.get(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_COUNT_OFFSET);
+		consentRecordCreatedDeciseconds = buffer.getLong(offset + ConsentInfoSerializer.CREATED_OFFSET);
+		consentRecordLastUpdatedDeciseconds = buffer.getLong(offset + ConsentInfoSerializer.LAST_UPDATED_OFFSET);
+		cmpId = buffer.getShort(offset + ConsentInfoSerializer.CMP_ID_OFFSET) & 0xFFFF;
+		cmpVersion = buffer.getShort(offset + ConsentInfoSerializer.CMP_VERSION_OFFSET) & 0xFFFF;
+		vendorListVersion = buffer.getShort(offset + ConsentInfoSerializer.VENDOR_LIST_VERSION_OFFSET) & 0xFFFF;
+		consentLanguageCode = buffer.getShort(offset + ConsentInfoSerializer.CONSENT_LANGUAGE_OFFSET);
+		publisherCcCode = buffer.getShort(offset + ConsentInfoSerializer.PUBLISHER_CC_OFFSET);
+		consentScreen = buffer.get(offset + ConsentInfoSerializer.CONSENT_SCREEN_OFFSET) & 0xFF;
+		tcfPolicyVersion = buffer.get(offset + ConsentInfoSerializer.TCF_POLICY_VERSION_OFFSET) & 0xFF;
+		featureOptins = buffer.getShort(offset + ConsentInfoSerializer.FEATURE_OPT_INS_OFFSET);
+		int numPubRestrictions = buffer.getShort(offset + ConsentInfoSerializer.RESTRICTION_COUNT_OFFSET) & 0xFFFF;
+		purposeConsents = buffer.getInt(offset + ConsentInfoSerializer.PURPOSE_CONSENTS_OFFSET);
+		purposeLegitInterests = buffer.getInt(offset + ConsentInfoSerializer.PURPOSE_LEGIT_INTERESTS_OFFSET);
+		pubPurposeConsents = buffer.getInt(offset + ConsentInfoSerializer.PUB_PURPOSE_CONSENTS_OFFSET);
+		pubPurposeLegitInterests = buffer.getInt(offset + ConsentInfoSerializer.PUB_PURPOSE_LEGIT_INTERESTS_OFFSET);
+		customPurposeConsents = buffer.getLong(offset + ConsentInfoSerializer.CUSTOM_PURPOSE_CONSENTS_OFFSET);
+		customPurposeLegitInterests = buffer.getLong(
+				offset + ConsentInfoSerializer.CUSTOM_PURPOSE_LEGIT_INTERESTS_OFFSET);
+
+		int position = readIdSet(vendorConsents, buffer, offset + ConsentInfoSerializer.HEADER_SIZE, end);
+		position = readIdSet(vendorLegitInterests, buffer, position, end);
+		position = readIdSet(vendorDisclosures, buffer, position, end);
+		position = readIdSet(vendorAllowances, buffer, position, end);
+		for (int i = 0; i < numPubRestrictions && position >= 0; i++) {
+			if (position > end - 2) {
+				position = -1;
+				break;
+			}
+			MutableIdSet vendorIds = addRestriction(buffer.get(position), buffer.get(position + 1));
+			position = readIdSet(vendorIds, buffer, position + 2, end);
+		}
+		if (position != end) {
+			reset();
+			return -1;
+		}
+		maxVendorId = vendorConsents.getMaxId();
+		return length;
+	}
+
+	/**
+	 * @return the offset right past the set, or -1 when it is malformed or when reading failed before
+	 */
+	private static int readIdSet(MutableIdSet ids, ByteBuffer buffer, int offset, int end) {
+		int setEnd = offset < 0 ? -1 : ConsentInfoSerializer.idSetEnd(buffer, offset, end);
+		if (setEnd < 0) {
+			return -1;
+		}
+		int count = buffer.getShort(offset + 1) & 0xFFFF;
+		int position = offset + ConsentInfoSerializer.ID_SET_HEADER_SIZE;
+		if (buffer.get(offset) == ConsentInfoSerializer.BITMAP) {
+			long[] words = ids.startBitField(count);
+			for (int i = 0, ii = (count + 63) >>> 6; i < ii; i++, position += Long.BYTES) {
+				words[i] = buffer.getLong(position);
+			}
+			return setEnd;
+		}
+		ids.startRanges(count);
+		for (int i = 0; i < count; i++, position += 2 * Short.BYTES) {
+			ids.addRange(buffer.getShort(position) & 0xFFFF, buffer.getShort(position + Short.BYTES) & 0xFFFF);
+		}
+		ids.finishRanges();
+		return setEnd;
+	}
+
+	/**
+	 * clears this instance, keeping its buffers
+	 */
+	public void reset() {
+		consentChars = null;
+		consentString = null;
+		version = 0;
+		consentRecordCreatedDeciseconds = 0;
+		consentRecordLastUpdatedDeciseconds = 0;
+		cmpId = 0;
+		cmpVersion = 0;
+		consentScreen = 0;
+		consentLanguageCode = 0;
+		vendorListVersion = 0;
+		tcfPolicyVersion = 0;
+		serviceSpecific = false;
+		nonStandardStacks = false;
+		featureOptins = 0;
+		purposeConsents = 0;
+		purposeLegitInterests = 0;
+		purposeOneDisclosed = false;
+		publisherCcCode = 0;
+		vendorRangeEncoding = false;
+		defaultConsent = false;
+		maxVendorId = 0;
+		vendorConsents.clear();
+		vendorLegitInterests.clear();
+		vendorDisclosures.clear();
+		vendorAllowances.clear();
+		pubPurposeConsents = 0;
+		pubPurposeLegitInterests = 0;
+		customPurposeCount = 0;
+		customPurposeConsents = 0;
+		customPurposeLegitInterests = 0;
+		restrictionCount = 0;
+		consentRecordCreated = null;
+		consentRecordLastUpdated = null;
+		chars = null;
+		failed = false;
+		failureReason = null;
+	}
+
+	/**
+	 * @return why the last string could not be decoded, or null when it could, or when the last thing read into this
+	 *      instance was not a string
+	 */
+	DecodeFailureReason getFailureReason() {
+		return failureReason;
+	}
+
+	private void fail(DecodeFailureReason reason) {
+		failed = true;
+		failureReason = reason;
+	}
+
+	private void decodeV1(CharSequence consentString) {
+		if (!select(consentString, 0, consentString.length())) {
+			return;
+		}
+		decodeHeader();
+		purposeConsents = readInt(ConsentStringParser.PURPOSES_OFFSET, ConsentStringParser.PURPOSES_SIZE);
+		maxVendorId = readInt(ConsentStringParser.MAX_VENDOR_ID_OFFSET, ConsentStringParser.MAX_VENDOR_ID_SIZE);
+		vendorRangeEncoding = readBit(ConsentStringParser.ENCODING_TYPE_OFFSET);
+		if (vendorRangeEncoding) {
+			defaultConsent = readBit(ConsentStringParser.DEFAULT_CONSENT_OFFSET);
+			int numEntries = readInt(ConsentStringParser.NUM_ENTRIES_OFFSET, ConsentStringParser.NUM_ENTRIES_SIZE);
+			readRanges(vendorConsents, ConsentStringParser.RANGE_ENTRY_OFFSET, numEntries);
+		} else {
+			// ids past the end of a truncated bit field are treated as not consented, like ConsentStringParser does
+			int available = Math.max(bitLength - ConsentStringParser.VENDOR_BITFIELD_OFFSET, 0);
+			readBitField(vendorConsents, ConsentStringParser.VENDOR_BITFIELD_OFFSET, Math.min(maxVendorId, available));
+		}
+	}
+
+	private void decodeV2(CharSequence consentString) {
+		int length = consentString.length();
+		int coreEnd = Base64Url.segmentEnd(consentString, 0, length);
+		if (!select(consentString, 0, coreEnd)) {
+			return;
+		}
+		decodeHeader();
+		tcfPolicyVersion = readInt(ConsentStringParserV2.TCF_POLICY_VERSION_OFFSET,
+				ConsentStringParserV2.TCF_POLICY_VERSION_SIZE);
+		serviceSpecific = readBit(ConsentStringParserV2.IS_SERVICE_SPECIFIC_OFFSET);
+		nonStandardStacks = readBit(ConsentStringParserV2.USE_NON_STANDARD_STACKS_OFFSET);
+		featureOptins = readInt(ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_OFFSET,
+				ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE);
+		purposeConsents = readInt(ConsentStringParserV2.PURPOSES_CONSENT_OFFSET,
+				ConsentStringParserV2.PURPOSES_CONSENT_SIZE);
+		purposeLegitInterests = readInt(ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_OFFSET,
+				ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE);
+		purposeOneDisclosed = !readBit(ConsentStringParserV2.PURPOSE_ONE_TREATMENT_OFFSET);
+		publisherCcCode = readInt(ConsentStringParserV2.PUBLISHER_CC_OFFSET, ConsentStringParserV2.PUBLISHER_CC_SIZE);
+
+		int offset = readRangeOrBitField(vendorConsents, ConsentStringParserV2.VENDOR_CONSENTS_OFFSET);
+		offset = readRangeOrBitField(vendorLegitInterests, offset);
+		decodePublisherRestrictions(offset);
+
+		for (int start = coreEnd + 1; start < length && !failed;) {
+			int end = Base64Url.segmentEnd(consentString, start, length);
+			if (end > start && select(consentString, start, end)) {
+				decodeSegment();
+			}
+			if (failed) {
+				failureReason = DecodeFailureReason.MALFORMED_SEGMENT;
+			}
+			start = end + 1;
+		}
+	}
+
+	// the header fields up to the vendor list version are laid out the same way in both versions
+	private void decodeHeader() {
+		version = readInt(ConsentStringParserV2.VERSION_OFFSET, ConsentStringParserV2.VERSION_SIZE);
+		consentRecordCreatedDeciseconds = read(ConsentStringParserV2.CREATED_OFFSET,
+				ConsentStringParserV2.CREATED_SIZE);
+		consentRecordLastUpdatedDeciseconds = read(ConsentStringParserV2.LAST_UPDATED_OFFSET,
+				ConsentStringParserV2.LAST_UPDATED_SIZE);
+		cmpId = readInt(ConsentStringParserV2.CMP_ID_OFFSET, ConsentStringParserV2.CMP_ID_SIZE);
+		cmpVersion = readInt(ConsentStringParserV2.CMP_VERSION_OFFSET, ConsentStringParserV2.CMP_VERSION_SIZE);
+		consentScreen = readInt(ConsentStringParserV2.CONSENT_SCREEN_OFFSET,
+				ConsentStringParserV2.CONSENT_SCREEN_SIZE);
+		consentLanguageCode = readInt(ConsentStringParserV2.CONSENT_LANGUAGE_OFFSET,
+				ConsentStringParserV2.CONSENT_LANGUAGE_SIZE);
+		vendorListVersion = readInt(ConsentStringParserV2.VENDOR_LIST_VERSION_OFFSET,
+				ConsentStringParserV2.VENDOR_LIST_VERSION_SIZE);
+	}
+
+	private void decodePublisherRestrictions(int offset) {
+		int numPubRestrictions = readInt(offset, ConsentStringParserV2.NUM_PUB_RESTRICTIONS_SIZE);
+		offset += ConsentStringParserV2.NUM_PUB_RESTRICTIONS_SIZE;
+		for (int i = 0; i < numPubRestrictions && !failed; i++) {
+			int purposeId = readInt(offset, ConsentStringParserV2.PURPOSE_ID_SIZE);
+			offset += ConsentStringParserV2.PURPOSE_ID_SIZE;
+			int type = readInt(offset, ConsentStringParserV2.RESTRICTION_TYPE_SIZE);
+			offset += ConsentStringParserV2.RESTRICTION_TYPE_SIZE;
+			MutableIdSet vendorIds = addRestriction(purposeId, type);
+			int numEntries = readInt(offset, ConsentStringParserV2.NUM_ENTRIES_SIZE);
+			offset = readRanges(vendorIds, offset + ConsentStringParserV2.NUM_ENTRIES_SIZE, numEntries);
+		}
+	}
+
+	private MutableIdSet addRestriction(int purposeId, int type) {
+		if (restrictionCount == restrictionPurposeIds.length) {
+			int capacity = Math.max(restrictionCount << 1, 4);
+			restrictionPurposeIds = Arrays.copyOf(restrictionPurposeIds, capacity);
+			restrictionTypes = Arrays.copyOf(restrictionTypes, capacity);
+			restrictionVendorIds = Arrays.copyOf(restrictionVendorIds, capacity);
+		}
+		if (restrictionVendorIds[restrictionCount] == null) {
+			restrictionVendorIds[restrictionCount] = new MutableIdSet();
+		}
+		restrictionPurposeIds[restrictionCount] = purposeId;
+		restrictionTypes[restrictionCount] = type;
+		return restrictionVendorIds[restrictionCount++];
+	}
+
+	private void decodeSegment() {
+		int segmentType = readInt(ConsentStringParserV2.SEGMENT_TYPE_OFFSET, ConsentStringParserV2.SEGMENT_TYPE_SIZE);
+		int offset = ConsentStringParserV2.SEGMENT_TYPE_SIZE;
+		switch (segmentType) {
+		case 1:
+			readRangeOrBitField(vendorDisclosures, offset);
+			return;
+		case 2:
+			readRangeOrBitField(vendorAllowances, offset);
+			return;
+		case 3:
+			pubPurposeConsents = readInt(offset, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE);
+			offset += ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE;
+			pubPurposeLegitInterests = readInt(offset, ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+			offset += ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE;
+			customPurposeCount = readInt(offset, ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE);
+			offset += ConsentStringParserV2.NUM_CUSTOM_PURPOSES_SIZE;
+			customPurposeConsents = read(offset, customPurposeCount);
+			offset += customPurposeCount;
+			customPurposeLegitInterests = read(offset, customPurposeCount);
+			return;
+		default:
+		}
+	}
+
+	/**
+	 * @return the offset right past the section
+	 */
+	private int readRangeOrBitField(MutableIdSet ids, int offset) {
+		int maxVendorId = readInt(offset, ConsentStringParserV2.VENDOR_ID_SIZE);
+		offset += ConsentStringParserV2.VENDOR_ID_SIZE;
+		boolean rangeEncoding = readBit(offset);
+		offset++;
+		if (rangeEncoding) {
+			int numEntries = readInt(offset, ConsentStringParserV2.NUM_ENTRIES_SIZE);
+			return readRanges(ids, offset + ConsentStringParserV2.NUM_ENTRIES_SIZE, numEntries);
+		}
+		readBitField(ids, offset, maxVendorId);
+		return offset + maxVendorId;
+	}
+
+	private void readBitField(MutableIdSet ids, int offset, int size) {
+		if (size <= 0) {
+			ids.clear();
+			return;
+		}
+		if (offset < 0 || offset > bitLength - size) {
+			fail(DecodeFailureReason.TRUNCATED);
+			return;
+		}
+		long[] words = ids.startBitField(size);
+		for (int i = 0, remaining = size; remaining > 0; i++, remaining -= Long.SIZE) {
+			int chunk = Math.min(remaining, Long.SIZE);
+			words[i] = read(offset + (i << 6), chunk) << (Long.SIZE - chunk);
+		}
+	}
+
+	/**
+	 * @return the offset right past the range entries
+	 */
+	private int readRanges(MutableIdSet ids, int offset, int numEntries) {
+		ids.startRanges(numEntries);
+		for (int i = 0; i < numEntries && !failed; i++) {
+			boolean range = readBit(offset);
+			offset++;
+			int startVendorId = readInt(offset, ConsentStringParserV2.VENDOR_ID_SIZE);
+			offset += ConsentStringParserV2.VENDOR_ID_SIZE;
+			int endVendorId = startVendorId;
+			if (range) {
+				endVendorId = readInt(offset, ConsentStringParserV2.VENDOR_ID_SIZE);
+				offset += ConsentStringParserV2.VENDOR_ID_SIZE;
+			}
+			ids.addRange(startVendorId, endVendorId);
+		}
+		ids.finishRanges();
+		return offset;
+	}
+
+	/**
+	 * selects the base64 segment [start, end) of the string for the reads that follow
+	 *
+	 * @return false, and records the failure, when the padding or the length of the segment is invalid
+	 */
+	private boolean select(CharSequence s, int start, int end) {
+		int dataEnd = Base64Url.dataEnd(s, start, end);
+		int dataChars = dataEnd - start;
+		if ((dataEnd != end && (end - start) % 4 != 0) || dataChars % 4 == 1) {
+			fail(DecodeFailureReason.MALFORMED_BASE64);
+			return false;
+		}
+		chars = s;
+		charsStart = start;
+		bitLength = (dataChars * 6) & ~7;
+		return true;
+	}
+
+	/**
+	 * reads up to 58 bits of the selected segment. Once a read has failed, every read returns 0.
+	 */
+	private long read(int offset, int size) {
+		if (size <= 0 || failed) {
+			return 0;
+		}
+		if (offset < 0 || offset > bitLength - size) {
+			fail(DecodeFailureReason.TRUNCATED);
+			return 0;
+		}
+		if (size > Long.SIZE - 6) {
+			int highSize = size - Integer.SIZE;
+			return (read(offset, highSize) << Integer.SIZE) | read(offset + highSize, Integer.SIZE);
+		}
+		long value = Base64Bits.read(chars, charsStart, offset, size);
+		if (value < 0) {
+			fail(DecodeFailureReason.MALFORMED_BASE64);
+			return 0;
+		}
+		return value;
+	}
+
+	private int readInt(int offset, int size) {
+		return (int) read(offset, size);
+	}
+
+	private boolean readBit(int offset) {
+		return read(offset, 1) != 0;
+	}
+
+	/**
+	 * @return whether the bit for id is set in a bit field of the given size, kept as read
+	 */
+	static boolean isSet(long field, int size, int id) {
+		return id >= 1 && id <= size && ((field >>> (size - id)) & 1) != 0;
+	}
+
+	/**
+	 * {@inheritDoc} A string decoded from other characters than a {@link String} becomes one on first use. When the
+	 * consent was read from its binary form, the string is encoded again on first use, see
+	 * {@link ConsentStringEncoder}.
+	 */
+	@Override
+	public String getConsentString() {
+		if (consentString == null && consentChars != null) {
+			consentString = consentChars.toString();
+		} else if (consentString == null && version != 0) {
+			consentString = new ConsentStringEncoder().encode(this);
+		}
+		return consentString;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Instant getConsentRecordCreated() {
+		if (consentRecordCreated == null && version != 0) {
+			consentRecordCreated = Instant.ofEpochMilli(consentRecordCreatedDeciseconds * 100);
+		}
+		return consentRecordCreated;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordCreatedDeciseconds() {
+		return consentRecordCreatedDeciseconds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Instant getConsentRecordLastUpdated() {
+		if (consentRecordLastUpdated == null && version != 0) {
+			consentRecordLastUpdated = Instant.ofEpochMilli(consentRecordLastUpdatedDeciseconds * 100);
+		}
+		return consentRecordLastUpdated;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsentRecordLastUpdatedDeciseconds() {
+		return consentRecordLastUpdatedDeciseconds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCmpId() {
+		return cmpId;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCmpVersion() {
+		return cmpVersion;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentScreen() {
+		return consentScreen;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getConsentLanguage() {
+		return TwoLetterCodes.toString(getConsentLanguageCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsentLanguageCode() {
+		return version != 0 ? consentLanguageCode : TwoLetterCodes.NONE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getVendorListVersion() {
+		return vendorListVersion;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeConsented(int purposeId) {
+		return isSet(purposeConsents, PURPOSE_COUNT, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeConsented(Purpose purpose) {
+		if (purpose.getVersion() != version) {
+			return false;
+		}
+		return isPurposeConsented(purpose.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Purpose> getConsentedPurposes() {
+		return PurposeSets.list(version, getPurposeConsentsMask());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeConsentsMask() {
+		return (int) IdMasks.fromField(purposeConsents, PURPOSE_COUNT);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPurposeLegitInterestsMask() {
+		return (int) IdMasks.fromField(purposeLegitInterests, ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSpecialFeatureOptInsMask() {
+		return (int) IdMasks.fromField(featureOptins, ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeConsentsMask() {
+		return (int) IdMasks.fromField(pubPurposeConsents, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPubPurposeLegitInterestsMask() {
+		return (int) IdMasks.fromField(pubPurposeLegitInterests,
+				ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeConsentsMask() {
+		return IdMasks.fromField(customPurposeConsents, customPurposeCount);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCustomPurposeLegitInterestsMask() {
+		return IdMasks.fromField(customPurposeLegitInterests, customPurposeCount);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorConsented(int vendorId) {
+		if (vendorRangeEncoding && defaultConsent) {
+			// the default only applies to the vendors of the section
+			return !vendorConsents.contains(vendorId) && vendorId >= 1 && vendorId <= maxVendorId;
+		}
+		return vendorConsents.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsConsented(int[] vendorIds) {
+		long[] present = vendorConsents.containsEach(vendorIds);
+		return vendorRangeEncoding && defaultConsent ? RangeSet.complement(present, vendorIds, maxVendorId) : present;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTcfPolicyVersion() {
+		return tcfPolicyVersion;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isServiceSpecific() {
+		return serviceSpecific;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean useNonStandardStacks() {
+		return nonStandardStacks;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isFeatureOptioned(int featureId) {
+		return isSet(featureOptins, ConsentStringParserV2.SPECIAL_FEATURE_OPT_INS_SIZE, featureId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isFeatureOptioned(SpecialFeature feature) {
+		if (feature.getVersion() != version) {
+			return false;
+		}
+		return isFeatureOptioned(feature.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeLegitInterestEstablished(int purposeId) {
+		return isSet(purposeLegitInterests, ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeLegitInterestEstablished(Purpose purpose) {
+		if (purpose.getVersion() != version) {
+			return false;
+		}
+		return isPurposeLegitInterestEstablished(purpose.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPurposeOneDisclosed() {
+		return purposeOneDisclosed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getPublisherCc() {
+		return TwoLetterCodes.toString(getPublisherCcCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPublisherCcCode() {
+		return version == 2 ? publisherCcCode : TwoLetterCodes.NONE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorLegitInterestEstablished(int vendorId) {
+		return vendorLegitInterests.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsLegitInterestEstablished(int[] vendorIds) {
+		return vendorLegitInterests.containsEach(vendorIds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorDisclosed(int vendorId) {
+		return vendorDisclosures.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsDisclosed(int[] vendorIds) {
+		return vendorDisclosures.containsEach(vendorIds);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isVendorAllowed(int vendorId) {
+		return vendorAllowances.contains(vendorId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] areVendorsAllowed(int[] vendorIds) {
+		return vendorAllowances.containsEach(vendorIds);
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of this instance, which changes when a string is decoded into it, except for a
+	 * version 1 section listing the exceptions to a default consent, which is answered with a copy.
+	 */
+	@Override
+	public IdSet getVendorConsents() {
+		if (vendorRangeEncoding && defaultConsent) {
+			return vendorConsents.toRangeSet().complement(maxVendorId);
+		}
+		return vendorConsents;
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of this instance, which changes when a string is decoded into it.
+	 */
+	@Override
+	public IdSet getVendorLegitInterests() {
+		return vendorLegitInterests;
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of this instance, which changes when a string is decoded into it.
+	 */
+	@Override
+	public IdSet getDisclosedVendors() {
+		return vendorDisclosures;
+	}
+
+	/**
+	 * {@inheritDoc} The set is a view of this instance, which changes when a string is decoded into it.
+	 */
+	@Override
+	public IdSet getAllowedVendors() {
+		return vendorAllowances;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPubPurposesConsented(int purposeId) {
+		return isSet(pubPurposeConsents, ConsentStringParserV2.PUB_PURPOSES_CONTENT_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPubPurposeLegitInterestEstablished(int purposeId) {
+		return isSet(pubPurposeLegitInterests, ConsentStringParserV2.PUB_PURPOSES_LI_TRANSPARENCY_SIZE, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCustomPurposeConsented(int purposeId) {
+		return isSet(customPurposeConsents, customPurposeCount, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCustomPurposeLegitInterestEstablished(int purposeId) {
+		return isSet(customPurposeLegitInterests, customPurposeCount, purposeId);
+	}
+
+	/**
+	 * {@inheritDoc} The entries are copied out of this instance, so they stay valid once it is reused.
+	 */
+	@Override
+	public List<PubRestrictionEntry> getPublisherRestrictions() {
+		if (restrictionCount == 0) {
+			return Collections.emptyList();
+		}
+		List<PubRestrictionEntry> restrictions = new ArrayList<PubRestrictionEntry>(restrictionCount);
+		for (int i = 0; i < restrictionCount; i++) {
+			restrictions.add(new PubRestrictionEntry(restrictionPurposeIds[i],
+					PubRestrictionEntry.RestrictionType.valueOf(restrictionTypes[i]),
+					restrictionVendorIds[i].toRangeSet()));
+		}
+		return restrictions;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PubRestrictionEntry.RestrictionType getRestrictionType(int purposeId, int vendorId) {
+		PubRestrictionEntry.RestrictionType restrictionType = null;
+		for (int i = 0; i < restrictionCount; i++) {
+			if (restrictionPurposeIds[i] == purposeId && restrictionVendorIds[i].contains(vendorId)) {
+				PubRestrictionEntry.RestrictionType type = PubRestrictionEntry.RestrictionType
+						.valueOf(restrictionTypes[i]);
+				if (restrictionType == null || type.ordinal() < restrictionType.ordinal()) {
+					restrictionType = type;
+				}
+			}
+		}
+		return restrictionType;
+	}
+
+	/**
+	 * {@inheritDoc} Only the restrictions of the purpose and type are copied out of this instance.
+	 */
+	@Override
+	public RangeSet getRestrictedVendors(int purposeId, PubRestrictionEntry.RestrictionType restrictionType) {
+		RangeSet.Builder vendorIds = null;
+		for (int i = 0; i < restrictionCount; i++) {
+			if (restrictionPurposeIds[i] == purposeId
+					&& PubRestrictionEntry.RestrictionType.valueOf(restrictionTypes[i]) == restrictionType) {
+				if (vendorIds == null) {
+					vendorIds = new RangeSet.Builder(0);
+				}
+				restrictionVendorIds[i].addTo(vendorIds);
+			}
+		}
+		return vendorIds == null ? RangeSet.EMPTY : vendorIds.build();
+	}
+}
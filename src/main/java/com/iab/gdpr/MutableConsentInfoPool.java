@@ -0,0 +1,53 @@
+package com.iab.gdpr;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of {@link MutableConsentInfo} instances, for callers that cannot keep one instance per worker.
+ *
+ * The pool is a fixed array of slots claimed and released with compare and set, so borrowing and returning neither
+ * block, nor hold a monitor, nor allocate. Nothing is kept per thread, so the pool behaves the same on platform
+ * threads and on virtual threads: an instance belongs to whoever borrowed it until it is released.
+ */
+public class MutableConsentInfoPool {
+	private final AtomicReferenceArray<MutableConsentInfo> slots;
+
+	/**
+	 * @param capacity
+	 *      the largest number of idle instances kept; instances released into a full pool are dropped
+	 */
+	public MutableConsentInfoPool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		this.slots = new AtomicReferenceArray<MutableConsentInfo>(capacity);
+	}
+
+	/**
+	 * @return an idle instance, or a new one when the pool is empty
+	 */
+	public MutableConsentInfo acquire() {
+		for (int i = 0, ii = slots.length(); i < ii; i++) {
+			MutableConsentInfo consentInfo = slots.get(i);
+			if (consentInfo != null && slots.compareAndSet(i, consentInfo, null)) {
+				return consentInfo;
+			}
+		}
+		return new MutableConsentInfo();
+	}
+
+	/**
+	 * Returns an instance to the pool. The caller must not use it afterwards.
+	 *
+	 * @param consentInfo
+	 *      an instance obtained from {@link #acquire()}
+	 */
+	public void release(MutableConsentInfo consentInfo) {
+		consentInfo.reset();
+		for (int i = 0, ii = slots.length(); i < ii; i++) {
+			if (slots.get(i) == null && slots.compareAndSet(i, null, consentInfo)) {
+				return;
+			}
+		}
+	}
+}
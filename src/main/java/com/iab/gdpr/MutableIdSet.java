@@ -0,0 +1,173 @@
+package com.iab.gdpr;
+
+import java.util.Arrays;
+
+/**
+ * A reusable {@link IdSet}, filled in place by {@link MutableConsentInfo} either as a bit field or as a range section.
+ * Its buffers only ever grow, so once they have reached the size of the sections being decoded, refilling the set
+ * allocates nothing.
+ */
+final class MutableIdSet implements IdSet {
+	private static final long[] NO_WORDS = new long[0];
+	private static final int[] NO_BOUNDS = new int[0];
+
+	private boolean rangeEncoding;
+	// bit field mode, laid out like BitField
+	private long[] words = NO_WORDS;
+	private int size;
+	// range mode, laid out like RangeSet: intervals are collected packed as start << 32 | end, then coalesced
+	private long[] intervals = NO_WORDS;
+	private int intervalCount;
+	private boolean sorted;
+	private int[] bounds = NO_BOUNDS;
+	private int boundCount;
+
+	void clear() {
+		rangeEncoding = false;
+		size = 0;
+		intervalCount = 0;
+		boundCount = 0;
+	}
+
+	/**
+	 * switches to bit field mode
+	 *
+	 * @param bitCount:
+	 *            the number of bits in the section
+	 * @return the cleared words the caller fills with the bits of the section, big endian
+	 */
+	long[] startBitField(int bitCount) {
+		clear();
+		int wordCount = (bitCount + 63) >>> 6;
+		if (words.length < wordCount) {
+			words = new long[wordCount];
+		} else {
+			Arrays.fill(words, 0, wordCount, 0L);
+		}
+		size = bitCount;
+		return words;
+	}
+
+	/**
+	 * switches to range mode, followed by {@link #addRange(int, int)} for every entry and {@link #finishRanges()}
+	 */
+	void startRanges(int expectedCount) {
+		clear();
+		rangeEncoding = true;
+		sorted = true;
+		if (intervals.length < expectedCount) {
+			intervals = new long[expectedCount];
+		}
+	}
+
+	void addRange(int startId, int endId) {
+		if (startId > endId) {
+			// an inverted range covers no vendor
+			return;
+		}
+		if (intervalCount == intervals.length) {
+			intervals = Arrays.copyOf(intervals, Math.max(intervalCount << 1, 4));
+		}
+		long interval = ((long) startId << 32) | (endId & 0xFFFFFFFFL);
+		if (intervalCount > 0 && interval < intervals[intervalCount - 1]) {
+			sorted = false;
+		}
+		intervals[intervalCount++] = interval;
+	}
+
+	void finishRanges() {
+		if (!sorted) {
+			Arrays.sort(intervals, 0, intervalCount);
+		}
+		if (bounds.length < intervalCount << 1) {
+			bounds = new int[intervalCount << 1];
+		}
+		int n = 0;
+		for (int i = 0; i < intervalCount; i++) {
+			int start = (int) (intervals[i] >>> 32);
+			int end = (int) intervals[i];
+			if (n > 0 && start <= bounds[n - 1] + 1L) {
+				bounds[n - 1] = Math.max(bounds[n - 1], end);
+			} else {
+				bounds[n++] = start;
+				bounds[n++] = end;
+			}
+		}
+		boundCount = n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean contains(int id) {
+		if (!rangeEncoding) {
+			int index = id - 1;
+			return Integer.compareUnsigned(index, size) < 0 && (words[index >>> 6] << (index & 63)) < 0;
+		}
+		return RangeSet.contains(bounds, boundCount, id);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] containsEach(int[] ids) {
+		if (rangeEncoding) {
+			return RangeSet.containsEach(bounds, boundCount, ids);
+		}
+		return IdSet.super.containsEach(ids);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		if (rangeEncoding) {
+			return boundCount == 0;
+		}
+		for (int i = 0, ii = (size + 63) >>> 6; i < ii; i++) {
+			if (words[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxId() {
+		if (rangeEncoding) {
+			return boundCount == 0 ? 0 : bounds[boundCount - 1];
+		}
+		return size;
+	}
+
+	/**
+	 * @return an immutable copy of the set
+	 */
+	RangeSet toRangeSet() {
+		return addTo(new RangeSet.Builder(boundCount >>> 1)).build();
+	}
+
+	/**
+	 * @return the builder, the ids of the set added to it
+	 */
+	RangeSet.Builder addTo(RangeSet.Builder builder) {
+		if (rangeEncoding) {
+			for (int i = 0; i < boundCount; i += 2) {
+				builder.add(bounds[i], bounds[i + 1]);
+			}
+		} else {
+			for (int id = 1; id <= size; id++) {
+				if (contains(id)) {
+					builder.add(id, id);
+				}
+			}
+		}
+		return builder;
+	}
+}
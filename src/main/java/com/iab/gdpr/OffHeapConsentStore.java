@@ -0,0 +1,489 @@
+package com.iab.gdpr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An off-heap store of decoded consent strings, keyed by the strings themselves, and kept in their binary form, see
+ * {@link ConsentInfoSerializer}, either in direct buffers or in a memory mapped file. The consent of a stored string is
+ * answered by a {@link BinaryConsentInfo} reading the store in place, so that millions of decoded strings cost the
+ * garbage collector nothing but the views in use.
+ *
+ * The store is split into stripes by the hash of the strings. Each stripe is a hash table of the offsets of its
+ * records, with linear probing, followed by the records, appended one after the other and never moved or removed:
+ *
+ * <pre>
+ * stripe header  records' end i32, record count i32
+ * slots          hash i32, offset of the record in the stripe i32, 0 when the slot is empty
+ * records        string length i32, string as ISO-8859-1 bytes, binary form
+ * </pre>
+ *
+ * A stripe is written under its own lock, while lookups are lock free: they read the stripe optimistically, and only
+ * take its read lock when a write raced with them.
+ *
+ * A store in a file is reopened as it was left, see {@link #open(Path)}, so that a restarted process serves from a warm
+ * store rather than decoding every string again. The file is written through by the operating system, even when the
+ * process dies, but only reaches the disk on {@link #force()} or when the system decides to.
+ */
+public final class OffHeapConsentStore implements Closeable {
+	private static final long MAGIC = 0x4941424353544F52L;
+	private static final int FORMAT_VERSION = 1;
+	private static final int STRIPE_COUNT = 16;
+	// magic i64, format version i32, stripe count i32, slots per stripe i32, record bytes per stripe i32
+	private static final int FILE_HEADER_SIZE = 24;
+	private static final int RECORDS_END_OFFSET = 0;
+	private static final int RECORD_COUNT_OFFSET = 4;
+	private static final int STRIPE_HEADER_SIZE = 8;
+	private static final int SLOT_SIZE = 8;
+	// what probing returns when the table has neither the string nor an empty slot
+	private static final int NO_SLOT = Integer.MIN_VALUE;
+	private static final int MAX_SLOTS_PER_STRIPE = 1 << 26;
+
+	private final FileChannel channel;
+	private final int slotsPerStripe;
+	// the shift taking the high bits of a mixed hash as the index of its first slot
+	private final int indexShift;
+	private final int recordBytesPerStripe;
+	private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+	private OffHeapConsentStore(FileChannel channel, int slotsPerStripe, int recordBytesPerStripe) {
+		this.channel = channel;
+		this.slotsPerStripe = slotsPerStripe;
+		this.indexShift = Integer.SIZE - Integer.numberOfTrailingZeros(slotsPerStripe);
+		this.recordBytesPerStripe = recordBytesPerStripe;
+	}
+
+	/**
+	 * Creates a store in direct buffers, which is lost with the process.
+	 *
+	 * @param capacity
+	 *      the number of strings the store holds at least
+	 * @param recordBytes
+	 *      the bytes set aside for the records, the strings and their binary forms, split evenly between the stripes
+	 * @return the store
+	 */
+	public static OffHeapConsentStore allocate(int capacity, long recordBytes) {
+		int slotsPerStripe = slotsPerStripe(capacity);
+		OffHeapConsentStore store = new OffHeapConsentStore(null, slotsPerStripe,
+				recordBytesPerStripe(recordBytes, slotsPerStripe));
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			store.stripes[i] = store.new Stripe(ByteBuffer.allocateDirect(store.stripeSize()));
+		}
+		return store;
+	}
+
+	/**
+	 * Creates a store in a file, replacing the file when it exists.
+	 *
+	 * @param file
+	 *      the file to map
+	 * @param capacity
+	 *      the number of strings the store holds at least
+	 * @param recordBytes
+	 *      the bytes set aside for the records, the strings and their binary forms, split evenly between the stripes
+	 * @return the store
+	 * @throws IOException
+	 *      when the file cannot be created or mapped
+	 */
+	public static OffHeapConsentStore create(Path file, int capacity, long recordBytes) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			int slotsPerStripe = slotsPerStripe(capacity);
+			OffHeapConsentStore store = new OffHeapConsentStore(channel, slotsPerStripe,
+					recordBytesPerStripe(recordBytes, slotsPerStripe));
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(STRIPE_COUNT).putInt(store.slotsPerStripe)
+					.putInt(store.recordBytesPerStripe).flip();
+			channel.write(header, 0);
+			store.map();
+			return store;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reopens a store created by {@link #create(Path, int, long)}, with the strings it held. Slots pointing at records
+	 * that were not completely written when the process writing them died are dropped.
+	 *
+	 * @param file
+	 *      the file of the store
+	 * @return the store
+	 * @throws IOException
+	 *      when the file cannot be mapped, or does not hold a store
+	 */
+	public static OffHeapConsentStore open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() < FILE_HEADER_SIZE) {
+				throw new IOException(file + " is not a consent store");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+			if (header.getLong() != MAGIC || header.getInt() != FORMAT_VERSION || header.getInt() != STRIPE_COUNT) {
+				throw new IOException(file + " is not a consent store");
+			}
+			int slotsPerStripe = header.getInt();
+			int recordBytesPerStripe = header.getInt();
+			if (Integer.bitCount(slotsPerStripe) != 1 || slotsPerStripe > MAX_SLOTS_PER_STRIPE
+					|| recordBytesPerStripe < 0 || recordBytesPerStripe > maxRecordBytesPerStripe(slotsPerStripe)) {
+				throw new IOException(file + " is not a consent store");
+			}
+			OffHeapConsentStore store = new OffHeapConsentStore(channel, slotsPerStripe, recordBytesPerStripe);
+			if (channel.size() < FILE_HEADER_SIZE + (long) STRIPE_COUNT * store.stripeSize()) {
+				throw new IOException(file + " is truncated");
+			}
+			store.map();
+			for (Stripe stripe : store.stripes) {
+				stripe.recover();
+			}
+			return store;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static int slotsPerStripe(int capacity) {
+		// linear probing is kept at most half full
+		long slots = Math.max(2 * ((capacity + (long) STRIPE_COUNT - 1) / STRIPE_COUNT), 2);
+		if (capacity < 0 || slots > MAX_SLOTS_PER_STRIPE) {
+			throw new IllegalArgumentException("capacity " + capacity + " is too large");
+		}
+		return Integer.highestOneBit((int) slots - 1) << 1;
+	}
+
+	private static int recordBytesPerStripe(long recordBytes, int slotsPerStripe) {
+		long perStripe = (recordBytes + STRIPE_COUNT - 1) / STRIPE_COUNT;
+		if (perStripe < 0 || perStripe > maxRecordBytesPerStripe(slotsPerStripe)) {
+			throw new IllegalArgumentException("recordBytes " + recordBytes + " is out of range");
+		}
+		return (int) perStripe;
+	}
+
+	// a stripe is a single buffer, indexed by int
+	private static int maxRecordBytesPerStripe(int slotsPerStripe) {
+		return Integer.MAX_VALUE - STRIPE_HEADER_SIZE - slotsPerStripe * SLOT_SIZE;
+	}
+
+	private int stripeSize() {
+		return STRIPE_HEADER_SIZE + slotsPerStripe * SLOT_SIZE + recordBytesPerStripe;
+	}
+
+	private void map() throws IOException {
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+					FILE_HEADER_SIZE + (long) i * stripeSize(), stripeSize());
+			stripes[i] = new Stripe(buffer);
+		}
+	}
+
+	/**
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return a view of the stored consent of the string, valid until the store is closed, or null when it is not
+	 *      stored
+	 */
+	public ConsentInfo get(String consentString) {
+		int hash = consentString.hashCode();
+		return stripeFor(hash).get(consentString, hash);
+	}
+
+	/**
+	 * Stores the consent of a string, unless the string is stored already.
+	 *
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @param consentInfo
+	 *      its consent, of version 1 or 2
+	 * @return false when the stripe of the string is full
+	 * @throws IllegalArgumentException
+	 *      when the string is not made of ISO-8859-1 characters, as consent strings are, or when the consent cannot be
+	 *      serialized, see {@link ConsentInfoSerializer#serialize(ConsentInfo, ByteBuffer)}
+	 */
+	public boolean put(String consentString, ConsentInfo consentInfo) {
+		int hash = consentString.hashCode();
+		return stripeFor(hash).put(consentString, hash, consentInfo);
+	}
+
+	/**
+	 * @param consentString
+	 *      Consent String passed in from the publisher
+	 * @return the stored consent of the string, or the consent decoded from it, which is stored unless the store is
+	 *      full or the consent cannot be serialized, see {@link ConsentInfoDecoder#decode(CharSequence)}
+	 */
+	public ConsentInfo getOrDecode(String consentString) {
+		ConsentInfo stored = get(consentString);
+		if (stored != null) {
+			return stored;
+		}
+		ConsentInfo decoded = ConsentInfoDecoder.decode(consentString);
+		try {
+			if (decoded.getVersion() == 0 || !put(consentString, decoded)) {
+				return decoded;
+			}
+		} catch (IllegalArgumentException e) {
+			// the record was not completed, so the store is left as it was
+			return decoded;
+		}
+		ConsentInfo put = get(consentString);
+		return put != null ? put : decoded;
+	}
+
+	/**
+	 * @return the number of strings stored
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.getRecordCount();
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the store through to the disk, when it is in a file.
+	 */
+	public void force() {
+		for (Stripe stripe : stripes) {
+			if (stripe.buffer instanceof MappedByteBuffer) {
+				((MappedByteBuffer) stripe.buffer).force();
+			}
+		}
+	}
+
+	/**
+	 * Forces the store to the disk and closes its file. The buffers stay mapped until they are collected, but the
+	 * views of the store should not be used anymore.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			force();
+			channel.close();
+		}
+	}
+
+	private int firstSlotIndex(int hash) {
+		// the low bits of the hash pick the stripe, so the slot is taken from the high bits of a multiplicative hash
+		return (hash * 0x9E3779B9) >>> indexShift;
+	}
+
+	private Stripe stripeFor(int hash) {
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+	}
+
+	private final class Stripe {
+		private final ByteBuffer buffer;
+		private final StampedLock lock = new StampedLock();
+		private final ConsentInfoSerializer serializer = new ConsentInfoSerializer();
+		private final int recordsStart = STRIPE_HEADER_SIZE + slotsPerStripe * SLOT_SIZE;
+
+		Stripe(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		int getRecordCount() {
+			long stamp = lock.tryOptimisticRead();
+			int count = buffer.getInt(RECORD_COUNT_OFFSET);
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					count = buffer.getInt(RECORD_COUNT_OFFSET);
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			return count;
+		}
+
+		ConsentInfo get(String consentString, int hash) {
+			long stamp = lock.tryOptimisticRead();
+			int record = find(consentString, hash);
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					record = find(consentString, hash);
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			if (record < 0) {
+				return null;
+			}
+			return new BinaryConsentInfo(buffer, record + Integer.BYTES + consentString.length());
+		}
+
+		boolean put(String consentString, int hash, ConsentInfo consentInfo) {
+			long stamp = lock.writeLock();
+			try {
+				int slot = slotOf(consentString, hash);
+				if (slot == NO_SLOT) {
+					return false;
+				}
+				if (slot < 0) {
+					// the string is stored already
+					return true;
+				}
+				int count = buffer.getInt(RECORD_COUNT_OFFSET);
+				if (count >= slotsPerStripe >>> 1) {
+					return false;
+				}
+				int record = buffer.getInt(RECORDS_END_OFFSET) + recordsStart;
+				int length = consentString.length();
+				if (buffer.capacity() - record < Integer.BYTES + length) {
+					return false;
+				}
+				ByteBuffer out = buffer.duplicate();
+				out.position(record);
+				out.putInt(length);
+				for (int i = 0; i < length; i++) {
+					char c = consentString.charAt(i);
+					if (c > 0xFF) {
+						throw new IllegalArgumentException("not a consent string: " + consentString);
+					}
+					out.put((byte) c);
+				}
+				try {
+					serializer.serialize(consentInfo, out);
+				} catch (BufferOverflowException e) {
+					return false;
+				}
+				// the record is complete before the slot points at it
+				buffer.putInt(RECORDS_END_OFFSET, out.position() - recordsStart);
+				buffer.putInt(RECORD_COUNT_OFFSET, count + 1);
+				buffer.putLong(slot, ((long) hash << 32) | (record - recordsStart + 1));
+				return true;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * @return the offset of the record of the string, or -1 when it is not stored
+		 */
+		private int find(String consentString, int hash) {
+			int slot = slotOf(consentString, hash);
+			if (slot >= 0 || slot == NO_SLOT) {
+				return -1;
+			}
+			return recordsStart + (int) buffer.getLong(-slot - 1) - 1;
+		}
+
+		/**
+		 * Probes the table for the string. Only reads within the buffer, so that a lookup racing with a write reads
+		 * garbage at worst, which the lock validation then discards.
+		 *
+		 * @return the offset of the empty slot where the string would go, -(offset + 1) of the slot of the string, or
+		 *      {@link #NO_SLOT}
+		 */
+		private int slotOf(String consentString, int hash) {
+			int mask = slotsPerStripe - 1;
+			int index = firstSlotIndex(hash);
+			for (int probes = 0; probes < slotsPerStripe; probes++, index = (index + 1) & mask) {
+				int slot = STRIPE_HEADER_SIZE + index * SLOT_SIZE;
+				long entry = buffer.getLong(slot);
+				if (entry == 0) {
+					return slot;
+				}
+				if ((int) (entry >>> 32) == hash && matches(recordsStart + (int) entry - 1, consentString)) {
+					return -slot - 1;
+				}
+			}
+			// cannot happen with a table at most half full, unless a racing write is read
+			return NO_SLOT;
+		}
+
+		private boolean matches(int record, String consentString) {
+			int length = consentString.length();
+			if (record < recordsStart || record > buffer.capacity() - Integer.BYTES - length
+					|| buffer.getInt(record) != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				char c = consentString.charAt(i);
+				if ((buffer.get(record + Integer.BYTES + i) & 0xFF) != c) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * drops the slots pointing past the records' end or at records that are not well formed, which a process
+		 * dying in the middle of a write may leave behind
+		 */
+		void recover() {
+			int recordsEnd = buffer.getInt(RECORDS_END_OFFSET);
+			if (recordsEnd < 0 || recordsEnd > recordBytesPerStripe) {
+				recordsEnd = 0;
+			}
+			int count = 0;
+			int end = 0;
+			for (int index = 0; index < slotsPerStripe; index++) {
+				int slot = STRIPE_HEADER_SIZE + index * SLOT_SIZE;
+				long entry = buffer.getLong(slot);
+				if (entry == 0) {
+					continue;
+				}
+				int record = recordsStart + (int) entry - 1;
+				int recordEnd = recordEnd(record, recordsStart + recordsEnd);
+				if (recordEnd < 0) {
+					buffer.putLong(slot, 0L);
+					continue;
+				}
+				count++;
+				end = Math.max(end, recordEnd - recordsStart);
+			}
+			buffer.putInt(RECORDS_END_OFFSET, end);
+			buffer.putInt(RECORD_COUNT_OFFSET, count);
+			// dropping slots may have broken probe sequences, so the table is rebuilt
+			if (count > 0) {
+				rehash();
+			}
+		}
+
+		private int recordEnd(int record, int recordsEnd) {
+			if (record < recordsStart || record > recordsEnd - Integer.BYTES) {
+				return -1;
+			}
+			int length = buffer.getInt(record);
+			int binary = record + Integer.BYTES + length;
+			if (length < 0 || binary > recordsEnd) {
+				return -1;
+			}
+			int binaryLength = ConsentInfoSerializer.length(buffer, binary);
+			if (binaryLength < 0 || binary + binaryLength > recordsEnd) {
+				return -1;
+			}
+			return binary + binaryLength;
+		}
+
+		private void rehash() {
+			long[] entries = new long[slotsPerStripe];
+			for (int index = 0; index < slotsPerStripe; index++) {
+				int slot = STRIPE_HEADER_SIZE + index * SLOT_SIZE;
+				entries[index] = buffer.getLong(slot);
+				buffer.putLong(slot, 0L);
+			}
+			int mask = slotsPerStripe - 1;
+			for (long entry : entries) {
+				if (entry != 0) {
+					int index = firstSlotIndex((int) (entry >>> 32));
+					while (buffer.getLong(STRIPE_HEADER_SIZE + index * SLOT_SIZE) != 0) {
+						index = (index + 1) & mask;
+					}
+					buffer.putLong(STRIPE_HEADER_SIZE + index * SLOT_SIZE, entry);
+				}
+			}
+		}
+	}
+}
@@ -1,25 +1,28 @@
 package com.iab.gdpr;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class PubRestrictionEntry {
 
-	private int purposeId;
-	private RestrictionType type;
+	private final int purposeId;
+	private final RestrictionType type;
+	private final RangeSet vendorIds;
+	// created on first use, racing threads creating equal lists
 	private List<RangeEntry> entries;
 
 	public PubRestrictionEntry(int purposeId, RestrictionType type) {
-		this.purposeId = purposeId;
-		this.type = type;
-		this.entries = new ArrayList<RangeEntry>();
-
+		this(purposeId, type, RangeSet.EMPTY);
 	}
 
 	public PubRestrictionEntry(int purposeId, RestrictionType type, List<RangeEntry> entries) {
+		this(purposeId, type, RangeSet.of(entries));
+	}
+
+	public PubRestrictionEntry(int purposeId, RestrictionType type, RangeSet vendorIds) {
 		this.purposeId = purposeId;
 		this.type = type;
-		this.entries = entries;
+		this.vendorIds = vendorIds;
 	}
 
 	public int getPurposeId() {
@@ -30,12 +33,26 @@ public class PubRestrictionEntry {
 		return type;
 	}
 
+	/**
+	 * @return the restricted vendor ids as sorted, coalesced range entries, in an unmodifiable list
+	 */
 	public List<RangeEntry> getEntries() {
-		return new ArrayList<>(entries);
+		List<RangeEntry> list = entries;
+		if (list == null) {
+			entries = list = Collections.unmodifiableList(vendorIds.toRangeEntries());
+		}
+		return list;
+	}
+
+	/**
+	 * @return the restricted vendor ids
+	 */
+	public RangeSet getVendorIds() {
+		return vendorIds;
 	}
 
 	public boolean isVendorRestricted(int vendorId) {
-		return RangeEntry.isVendorIdInRange(vendorId, entries);
+		return vendorIds.contains(vendorId);
 	}
 
 	public enum RestrictionType {
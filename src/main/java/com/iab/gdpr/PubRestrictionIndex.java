@@ -0,0 +1,92 @@
+package com.iab.gdpr;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The publisher restrictions of a consent string, indexed by purpose and by restriction type when the string is
+ * decoded. The entries of one purpose and type are merged into a single {@link RangeSet}, so telling how a vendor is
+ * restricted for a purpose is at most one binary search per restriction type, and never looks at other purposes.
+ */
+final class PubRestrictionIndex {
+	static final PubRestrictionIndex EMPTY = new PubRestrictionIndex(Collections.<PubRestrictionEntry>emptyList());
+
+	// purpose ids are six bit fields
+	private static final int PURPOSE_COUNT = 1 << 6;
+	private static final PubRestrictionEntry.RestrictionType[] TYPES = PubRestrictionEntry.RestrictionType.values();
+
+	private final List<PubRestrictionEntry> entries;
+	// indexed by purpose id, then by the ordinal of the restriction type; null when the purpose has no restriction
+	private final RangeSet[][] byPurpose = new RangeSet[PURPOSE_COUNT][];
+
+	/**
+	 * @param entries:
+	 *            the restrictions as they were decoded, which are kept as they are behind an unmodifiable view
+	 */
+	PubRestrictionIndex(List<PubRestrictionEntry> entries) {
+		this.entries = Collections.unmodifiableList(entries);
+		RangeSet.Builder[][] builders = new RangeSet.Builder[PURPOSE_COUNT][];
+		for (PubRestrictionEntry entry : entries) {
+			int purposeId = entry.getPurposeId();
+			if (purposeId < 0 || purposeId >= PURPOSE_COUNT) {
+				continue;
+			}
+			if (builders[purposeId] == null) {
+				builders[purposeId] = new RangeSet.Builder[TYPES.length];
+			}
+			int type = entry.getType().ordinal();
+			RangeSet vendorIds = entry.getVendorIds();
+			if (builders[purposeId][type] == null) {
+				builders[purposeId][type] = new RangeSet.Builder(vendorIds.getRangeCount());
+			}
+			for (int i = 0, ii = vendorIds.getRangeCount(); i < ii; i++) {
+				builders[purposeId][type].add(vendorIds.getStart(i), vendorIds.getEnd(i));
+			}
+		}
+		for (int purposeId = 0; purposeId < PURPOSE_COUNT; purposeId++) {
+			if (builders[purposeId] != null) {
+				byPurpose[purposeId] = new RangeSet[TYPES.length];
+				for (int type = 0; type < TYPES.length; type++) {
+					if (builders[purposeId][type] != null) {
+						byPurpose[purposeId][type] = builders[purposeId][type].build();
+					}
+				}
+			}
+		}
+	}
+
+	List<PubRestrictionEntry> entries() {
+		return entries;
+	}
+
+	/**
+	 * @see ConsentInfo#getRestrictionType(int, int)
+	 */
+	PubRestrictionEntry.RestrictionType getRestrictionType(int purposeId, int vendorId) {
+		if (purposeId < 0 || purposeId >= PURPOSE_COUNT) {
+			return null;
+		}
+		RangeSet[] byType = byPurpose[purposeId];
+		if (byType == null) {
+			return null;
+		}
+		// the types are declared from the most restrictive to the least
+		for (int type = 0; type < byType.length; type++) {
+			if (byType[type] != null && byType[type].contains(vendorId)) {
+				return TYPES[type];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @see ConsentInfo#getRestrictedVendors(int, PubRestrictionEntry.RestrictionType)
+	 */
+	RangeSet getRestrictedVendors(int purposeId, PubRestrictionEntry.RestrictionType type) {
+		if (purposeId < 0 || purposeId >= PURPOSE_COUNT || byPurpose[purposeId] == null) {
+			return RangeSet.EMPTY;
+		}
+		RangeSet vendorIds = byPurpose[purposeId][type.ordinal()];
+		return vendorIds == null ? RangeSet.EMPTY : vendorIds;
+	}
+}
@@ -0,0 +1,83 @@
+package com.iab.gdpr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The consented purposes of a {@link ConsentInfo} as unmodifiable collections, shared between all the consents with
+ * the same purpose mask. They are created on first use, racing threads creating equal instances, so that asking
+ * for the purposes of a consent allocates nothing once every mask seen so far has been seen before.
+ */
+final class PurposeSets {
+	// the ids past these are not defined, and only ever read as Purpose.PurposeV1.UNDEFINED or PurposeV2.UNDEFINED
+	private static final int V1_DEFINED = (1 << 5) - 1;
+	private static final int V2_DEFINED = (1 << 10) - 1;
+
+	private static final Set<Purpose.PurposeV2>[] V2_SETS = newSetArray(V2_DEFINED + 1);
+	private static final List<Purpose>[] V1_LISTS = newListArray(V1_DEFINED + 1);
+	private static final List<Purpose>[] V2_LISTS = newListArray(V2_DEFINED + 1);
+
+	private PurposeSets() {
+	}
+
+	/**
+	 * @return the defined purposes of the mask
+	 */
+	static Set<Purpose.PurposeV2> v2(int mask) {
+		int index = mask & V2_DEFINED;
+		Set<Purpose.PurposeV2> set = V2_SETS[index];
+		if (set == null) {
+			EnumSet<Purpose.PurposeV2> purposes = EnumSet.noneOf(Purpose.PurposeV2.class);
+			for (int bits = index; bits != 0; bits &= bits - 1) {
+				purposes.add(Purpose.PurposeV2.valueOf(Integer.numberOfTrailingZeros(bits) + 1));
+			}
+			V2_SETS[index] = set = Collections.unmodifiableSet(purposes);
+		}
+		return set;
+	}
+
+	/**
+	 * @param version
+	 *      the version of the purposes, 1 or 2; any other has no purposes
+	 * @param mask
+	 *      the purpose ids, see {@link ConsentInfo#getPurposeConsentsMask()}
+	 * @return the purposes of the ids in order, as {@link ConsentInfo#getConsentedPurposes()} lists them
+	 */
+	static List<Purpose> list(int version, int mask) {
+		List<Purpose>[] lists = version == 1 ? V1_LISTS : version == 2 ? V2_LISTS : null;
+		if (lists == null) {
+			return Collections.emptyList();
+		}
+		if (Integer.compareUnsigned(mask, lists.length) >= 0) {
+			// an undefined id is listed as many times as it occurs, so such lists are not shared
+			return newList(version, mask);
+		}
+		List<Purpose> list = lists[mask];
+		if (list == null) {
+			lists[mask] = list = newList(version, mask);
+		}
+		return list;
+	}
+
+	private static List<Purpose> newList(int version, int mask) {
+		List<Purpose> purposes = new ArrayList<Purpose>(Integer.bitCount(mask));
+		for (int bits = mask; bits != 0; bits &= bits - 1) {
+			int id = Integer.numberOfTrailingZeros(bits) + 1;
+			purposes.add(version == 1 ? Purpose.PurposeV1.valueOf(id) : Purpose.PurposeV2.valueOf(id));
+		}
+		return Collections.unmodifiableList(purposes);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<Purpose.PurposeV2>[] newSetArray(int length) {
+		return (Set<Purpose.PurposeV2>[]) new Set<?>[length];
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Purpose>[] newListArray(int length) {
+		return (List<Purpose>[]) new List<?>[length];
+	}
+}
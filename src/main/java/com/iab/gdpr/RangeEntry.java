@@ -1,31 +1,26 @@
 package com.iab.gdpr;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class RangeEntry {
 	/**
-	 * This class corresponds to the RangeEntry field given in the consent string specification.
+	 * This class corresponds to the RangeEntry field given in the consent string specification. Only the bounds of
+	 * the range are kept, the vendor ids in between are never materialized.
 	 */
-	private final List<Integer> vendorIds = new ArrayList<Integer>();
 	private final int maxVendorId;
 	private final int minVendorId;
 
 	public RangeEntry(int vendorId) {
-		vendorIds.add(vendorId);
 		this.maxVendorId = this.minVendorId = vendorId;
 	}
 
 	public RangeEntry(int startId, int endId) {
 		this.maxVendorId = endId;
 		this.minVendorId = startId;
-		for (; startId <= endId; startId++) {
-			vendorIds.add(startId);
-		}
 	}
 
 	public boolean containsVendorId(int vendorId) {
-		return vendorIds.indexOf(vendorId) >= 0;
+		return vendorId >= minVendorId && vendorId <= maxVendorId;
 	}
 
 	public boolean idIsGreaterThanMax(int vendorId) {
@@ -44,25 +39,21 @@ public class RangeEntry {
 		return minVendorId;
 	}
 
+	/**
+	 * Checks every entry, since the list is not required to be sorted or free of overlaps. Parsed sections are kept
+	 * as a {@link RangeSet}, which answers the same question with a binary search.
+	 *
+	 * @param vendorId
+	 *      Id of the vendor to look up
+	 * @param rangeEntries
+	 *      range entries in any order
+	 * @return whether any of the entries contains the vendor id
+	 */
 	public static boolean isVendorIdInRange(int vendorId, List<RangeEntry> rangeEntries) {
-		int limit = rangeEntries.size();
-		if (limit == 0) {
-			return false;
-		}
-		int index = limit / 2;
-		while (index >= 0 && index < limit) {
-			RangeEntry entry = rangeEntries.get(index);
-			if (entry.containsVendorId(vendorId)) {
+		for (int i = 0, ii = rangeEntries.size(); i < ii; i++) {
+			if (rangeEntries.get(i).containsVendorId(vendorId)) {
 				return true;
 			}
-			if (index == 0 || index == limit - 1) {
-				return false;
-			}
-			if (entry.idIsGreaterThanMax(vendorId)) {
-				index = (index + ((limit - index) / 2));
-			} else {
-				index = index / 2;
-			}
 		}
 		return false;
 	}
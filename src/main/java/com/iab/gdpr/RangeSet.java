@@ -0,0 +1,279 @@
+package com.iab.gdpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of vendor ids backed by a single int array of sorted, disjoint and non-adjacent [start, end]
+ * intervals. Range entries are sorted and coalesced once when the set is built, so a lookup is a binary search over
+ * the interval starts and no id is ever materialized.
+ */
+public final class RangeSet implements IdSet {
+	public static final RangeSet EMPTY = new RangeSet(new int[0]);
+
+	// start0, end0, start1, end1, ...
+	private final int[] bounds;
+
+	private RangeSet(int[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/**
+	 * @param entries:
+	 *            range entries in any order, possibly overlapping
+	 * @return the set of vendor ids covered by at least one of the entries
+	 */
+	public static RangeSet of(List<RangeEntry> entries) {
+		Builder builder = new Builder(entries.size());
+		for (RangeEntry entry : entries) {
+			builder.add(entry.getMinVendorId(), entry.getMaxVendorId());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean contains(int vendorId) {
+		return contains(bounds, bounds.length, vendorId);
+	}
+
+	static boolean contains(int[] bounds, int boundCount, int id) {
+		// find the last interval starting at or before id
+		int low = 0;
+		int high = (boundCount >>> 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (bounds[mid << 1] <= id) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high >= 0 && id <= bounds[(high << 1) + 1];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] containsEach(int[] ids) {
+		return containsEach(bounds, bounds.length, ids);
+	}
+
+	/**
+	 * Looks ids up in sorted, coalesced interval bounds. Ascending ids are answered in a single merge pass over the
+	 * intervals, galloping over runs of intervals that hold no id; any other order falls back to a binary search per id.
+	 *
+	 * @param bounds:
+	 *            start0, end0, start1, end1, ... sorted and coalesced
+	 * @param boundCount:
+	 *            the number of bounds in use, twice the number of intervals
+	 * @param ids:
+	 *            the ids to look up
+	 * @return a bit set in which bit i tells whether ids[i] lies within an interval
+	 */
+	static long[] containsEach(int[] bounds, int boundCount, int[] ids) {
+		long[] result = new long[(ids.length + 63) >>> 6];
+		if (!isAscending(ids)) {
+			for (int i = 0; i < ids.length; i++) {
+				if (contains(bounds, boundCount, ids[i])) {
+					result[i >>> 6] |= 1L << i;
+				}
+			}
+			return result;
+		}
+		int intervalCount = boundCount >>> 1;
+		int b = 0;
+		for (int i = 0; i < ids.length && b < intervalCount; i++) {
+			int id = ids[i];
+			if (bounds[(b << 1) + 1] < id) {
+				// skip the intervals ending before id, which all later ids are past too. Galloping keeps the skip
+				// logarithmic when the intervals far outnumber the ids.
+				int low = b + 1;
+				int step = 1;
+				while (low + step < intervalCount && bounds[((low + step) << 1) + 1] < id) {
+					low += step;
+					step <<= 1;
+				}
+				int high = Math.min(low + step, intervalCount);
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (bounds[(mid << 1) + 1] < id) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				b = low;
+				if (b == intervalCount) {
+					break;
+				}
+			}
+			if (bounds[b << 1] <= id) {
+				result[i >>> 6] |= 1L << i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * flips the bits of a bit set answering {@link IdSet#containsEach(int[])} in place, for sections that list the
+	 * exceptions to a default, leaving the ids outside of the section cleared
+	 *
+	 * @param maxId:
+	 *            the highest id of the section
+	 * @return the same bit set
+	 */
+	static long[] complement(long[] bits, int[] ids, int maxId) {
+		for (int i = 0; i < bits.length; i++) {
+			int remaining = ids.length - (i << 6);
+			bits[i] ^= remaining >= Long.SIZE ? -1L : (1L << remaining) - 1;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] < 1 || ids[i] > maxId) {
+				bits[i >>> 6] &= ~(1L << i);
+			}
+		}
+		return bits;
+	}
+
+	private static boolean isAscending(int[] ids) {
+		for (int i = 1; i < ids.length; i++) {
+			if (ids[i] < ids[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of disjoint intervals in this set
+	 */
+	public int getRangeCount() {
+		return bounds.length >>> 1;
+	}
+
+	/**
+	 * @param index:
+	 *            index of the interval, in ascending order
+	 * @return the first vendor id of the interval
+	 */
+	public int getStart(int index) {
+		return bounds[index << 1];
+	}
+
+	/**
+	 * @param index:
+	 *            index of the interval, in ascending order
+	 * @return the last vendor id of the interval, inclusive
+	 */
+	public int getEnd(int index) {
+		return bounds[(index << 1) + 1];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return bounds.length == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxId() {
+		return bounds.length == 0 ? 0 : bounds[bounds.length - 1];
+	}
+
+	/**
+	 * @return the ids from 1 to maxId that are not members of this set, for sections that list the exceptions to a
+	 *      default
+	 */
+	RangeSet complement(int maxId) {
+		Builder builder = new Builder(getRangeCount() + 1);
+		int next = 1;
+		for (int i = 0; i < bounds.length && next <= maxId; i += 2) {
+			builder.add(next, Math.min(bounds[i] - 1, maxId));
+			next = Math.max(next, bounds[i + 1] + 1);
+		}
+		return builder.add(next, maxId).build();
+	}
+
+	/**
+	 * @return the coalesced intervals of this set as range entries
+	 */
+	public List<RangeEntry> toRangeEntries() {
+		List<RangeEntry> entries = new ArrayList<RangeEntry>(getRangeCount());
+		for (int i = 0; i < bounds.length; i += 2) {
+			entries.add(new RangeEntry(bounds[i], bounds[i + 1]));
+		}
+		return entries;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof RangeSet && Arrays.equals(bounds, ((RangeSet) o).bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bounds);
+	}
+
+	/**
+	 * Collects the intervals of a range section while it is being parsed.
+	 */
+	static final class Builder {
+		// each interval is packed as start << 32 | end so that sorting the longs sorts the intervals by start
+		private long[] intervals;
+		private int count;
+		private boolean sorted = true;
+
+		Builder(int expectedCount) {
+			this.intervals = new long[Math.max(expectedCount, 1)];
+		}
+
+		Builder add(int startId, int endId) {
+			if (startId > endId) {
+				// an inverted range covers no vendor
+				return this;
+			}
+			if (count == intervals.length) {
+				intervals = Arrays.copyOf(intervals, count << 1);
+			}
+			long interval = ((long) startId << 32) | (endId & 0xFFFFFFFFL);
+			if (count > 0 && interval < intervals[count - 1]) {
+				sorted = false;
+			}
+			intervals[count++] = interval;
+			return this;
+		}
+
+		RangeSet build() {
+			if (count == 0) {
+				return EMPTY;
+			}
+			if (!sorted) {
+				Arrays.sort(intervals, 0, count);
+			}
+			int[] bounds = new int[count << 1];
+			int n = 0;
+			for (int i = 0; i < count; i++) {
+				int start = (int) (intervals[i] >>> 32);
+				int end = (int) intervals[i];
+				if (n > 0 && start <= bounds[n - 1] + 1L) {
+					bounds[n - 1] = Math.max(bounds[n - 1], end);
+				} else {
+					bounds[n++] = start;
+					bounds[n++] = end;
+				}
+			}
+			return new RangeSet(n == bounds.length ? bounds : Arrays.copyOf(bounds, n));
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.iab.gdpr;
+
+/**
+ * The consent language and publisher country codes, which strings hold as two six bit letters, 'A' being 0, packed
+ * into 12 bits with the first letter in the high bits. Every code has its string looked up in a table of interned
+ * strings built once, so that reading a code as a string allocates nothing.
+ */
+final class TwoLetterCodes {
+	/**
+	 * the code of a missing language or country
+	 */
+	static final int NONE = -1;
+
+	private static final int LETTER_SIZE = 6;
+	private static final String[] STRINGS = new String[1 << (2 * LETTER_SIZE)];
+
+	static {
+		// letters past 'Z' are read the way Bits.getSixBitString reads them, upper cased
+		for (int code = 0; code < STRINGS.length; code++) {
+			char[] letters = { (char) ((code >>> LETTER_SIZE) + 'A'), (char) ((code & 63) + 'A') };
+			STRINGS[code] = new String(letters).toUpperCase().intern();
+		}
+	}
+
+	private TwoLetterCodes() {
+	}
+
+	/**
+	 * @return the string of a code, or null for {@link #NONE}
+	 */
+	static String toString(int code) {
+		return code < 0 ? null : STRINGS[code & (STRINGS.length - 1)];
+	}
+
+	/**
+	 * @return the code of two upper case letters, or {@link #NONE} for null or any other string
+	 */
+	static int toCode(String s) {
+		if (s == null || s.length() != 2) {
+			return NONE;
+		}
+		int high = letter(s.charAt(0));
+		int low = letter(s.charAt(1));
+		return (high | low) < 0 ? NONE : (high << LETTER_SIZE) | low;
+	}
+
+	private static int letter(char c) {
+		return c >= 'A' && c <= 'Z' ? c - 'A' : -1;
+	}
+}
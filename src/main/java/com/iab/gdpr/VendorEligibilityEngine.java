@@ -0,0 +1,314 @@
+package com.iab.gdpr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the TCF v2 legal basis rules to version 2 consent strings, against compiled {@link GlobalVendorList}s.
+ *
+ * A vendor may process personal data for a purpose when:
+ * <ul>
+ * <li>it declares the purpose in the vendor list, under consent or under legitimate interest, and</li>
+ * <li>for consent, the user consented to the purpose and to the vendor, or</li>
+ * <li>for legitimate interest, the user did not object to the purpose nor to the vendor. Purpose 1 can never be
+ * processed under legitimate interest.</li>
+ * </ul>
+ * A publisher restriction for the purpose and the vendor overrides its declaration: "not allowed" forbids the purpose
+ * altogether, and "require consent" or "require legitimate interest" switch the legal basis of a vendor that declared
+ * the purpose flexible. A vendor that did not declare the purpose flexible cannot switch, so it may not process under
+ * a restriction requiring the other legal basis. A restriction requiring legitimate interest for purpose 1 does not
+ * apply. When a vendor is under several restrictions for a purpose, the most restrictive one applies, see
+ * {@link ConsentInfo#getRestrictionType(int, int)}.
+ *
+ * The vendor list a string is evaluated against is the one of its vendor list version. When that version has not been
+ * registered and cannot be loaded, the latest registered version is used instead, until the directory is looked at
+ * again for it once the missing version retry delay has passed. Compiled vendor lists are cached by version. Version 1 strings are not evaluated, and read as permitting nothing. An engine is thread safe.
+ */
+public class VendorEligibilityEngine {
+	private static final String FILE_NAME_FORMAT = "vendor-list-v%d.json";
+	private static final long DEFAULT_MISSING_VERSION_RETRY_SECONDS = 60;
+	private static final PubRestrictionEntry.RestrictionType[] RESTRICTION_TYPES = PubRestrictionEntry.RestrictionType
+			.values();
+
+	private final Path directory;
+	private final ConcurrentHashMap<Integer, GlobalVendorList> vendorLists =
+			new ConcurrentHashMap<Integer, GlobalVendorList>();
+	// System.nanoTime() when the directory did not have a version, so that it is not looked up again on every request
+	private final ConcurrentHashMap<Integer, Long> missingVersions = new ConcurrentHashMap<Integer, Long>();
+	private final long missingVersionRetryNanos;
+	private volatile GlobalVendorList latest;
+
+	/**
+	 * Creates an engine that only knows the vendor lists {@link #register(GlobalVendorList) registered} with it.
+	 */
+	public VendorEligibilityEngine() {
+		this(null);
+	}
+
+	/**
+	 * Creates an engine that also loads vendor lists on demand from a directory, where version n is stored as
+	 * vendor-list-vn.json, the way the IAB archives them. A version the directory does not have is looked up again a
+	 * minute later.
+	 *
+	 * @param directory
+	 *      the directory holding the vendor lists
+	 */
+	public VendorEligibilityEngine(Path directory) {
+		this(directory, DEFAULT_MISSING_VERSION_RETRY_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param directory
+	 *      the directory holding the vendor lists, see {@link #VendorEligibilityEngine(Path)}
+	 * @param missingVersionRetry
+	 *      how long strings of a version the directory does not have are evaluated against the latest list before the
+	 *      directory is looked at again for it, or 0 to look every time
+	 * @param unit
+	 *      the unit of missingVersionRetry
+	 */
+	public VendorEligibilityEngine(Path directory, long missingVersionRetry, TimeUnit unit) {
+		this.directory = directory;
+		this.missingVersionRetryNanos = unit.toNanos(missingVersionRetry);
+	}
+
+	/**
+	 * Loads, compiles and registers a vendor list.
+	 *
+	 * @param file
+	 *      a vendor-list.json file
+	 * @return the compiled vendor list
+	 * @throws IOException
+	 *      when the file cannot be read
+	 * @throws ParseException
+	 *      when the file is not a vendor list
+	 */
+	public GlobalVendorList load(Path file) throws IOException, ParseException {
+		return register(GlobalVendorList.load(file));
+	}
+
+	/**
+	 * @param vendorList
+	 *      a compiled vendor list, replacing any registered list of the same version
+	 * @return the vendor list
+	 */
+	public GlobalVendorList register(GlobalVendorList vendorList) {
+		vendorLists.put(vendorList.getVendorListVersion(), vendorList);
+		synchronized (vendorLists) {
+			if (latest == null || latest.getVendorListVersion() <= vendorList.getVendorListVersion()) {
+				latest = vendorList;
+			}
+		}
+		return vendorList;
+	}
+
+	/**
+	 * @param vendorListVersion
+	 *      the version of the vendor list
+	 * @return the registered vendor list of the version, loading it from the directory when there is one, or null
+	 *      when it is not available
+	 */
+	public GlobalVendorList getVendorList(int vendorListVersion) {
+		GlobalVendorList vendorList = vendorLists.get(vendorListVersion);
+		if (vendorList != null || directory == null) {
+			return vendorList;
+		}
+		Long missingSince = missingVersions.get(vendorListVersion);
+		if (missingSince != null && System.nanoTime() - missingSince < missingVersionRetryNanos) {
+			return null;
+		}
+		Path file = directory.resolve(String.format(FILE_NAME_FORMAT, vendorListVersion));
+		try {
+			if (Files.isRegularFile(file)) {
+				vendorList = register(GlobalVendorList.load(file));
+				missingVersions.remove(vendorListVersion);
+				return vendorList;
+			}
+		} catch (IOException | ParseException e) {
+			// an unreadable list is treated like a missing one
+		}
+		missingVersions.put(vendorListVersion, System.nanoTime());
+		return null;
+	}
+
+	/**
+	 * @param consentInfo
+	 *      a decoded consent string
+	 * @param vendorId
+	 *      Id of the vendor
+	 * @param purposeId
+	 *      Id of the purpose
+	 * @return whether the vendor may process personal data for the purpose
+	 */
+	public boolean isPermitted(ConsentInfo consentInfo, int vendorId, int purposeId) {
+		GlobalVendorList vendorList = vendorListFor(consentInfo);
+		if (vendorList == null || purposeId < 1 || purposeId > GlobalVendorList.MAX_PURPOSE_ID) {
+			return false;
+		}
+		int index = vendorList.indexOf(vendorId);
+		if (index < 0) {
+			return false;
+		}
+		return isPermitted(consentInfo, vendorList, index, vendorId, purposeId,
+				consentInfo.getRestrictionType(purposeId, vendorId));
+	}
+
+	/**
+	 * @param consentInfo
+	 *      a decoded consent string
+	 * @param vendorId
+	 *      Id of the vendor
+	 * @return the purposes the vendor may process personal data for, where bit n - 1 stands for purpose n. The
+	 *      vendor may process for the purposes of a mask when (mask &amp; permitted) == mask.
+	 */
+	public int getPermittedPurposes(ConsentInfo consentInfo, int vendorId) {
+		GlobalVendorList vendorList = vendorListFor(consentInfo);
+		int index = vendorList == null ? -1 : vendorList.indexOf(vendorId);
+		if (index < 0) {
+			return 0;
+		}
+		int permitted = 0;
+		for (int declared = vendorList.purposes(index) | vendorList.legIntPurposes(index); declared != 0;
+				declared &= declared - 1) {
+			int purposeId = Integer.numberOfTrailingZeros(declared) + 1;
+			if (isPermitted(consentInfo, vendorList, index, vendorId, purposeId,
+					consentInfo.getRestrictionType(purposeId, vendorId))) {
+				permitted |= 1 << (purposeId - 1);
+			}
+		}
+		return permitted;
+	}
+
+	/**
+	 * @param consentInfo
+	 *      a decoded consent string
+	 * @param vendorId
+	 *      Id of the vendor
+	 * @param featureId
+	 *      Id of the special feature
+	 * @return whether the vendor declares the special feature and the user opted in to it
+	 */
+	public boolean isSpecialFeaturePermitted(ConsentInfo consentInfo, int vendorId, int featureId) {
+		GlobalVendorList vendorList = vendorListFor(consentInfo);
+		if (vendorList == null || featureId < 1 || featureId > Integer.SIZE) {
+			return false;
+		}
+		return (vendorList.getSpecialFeatures(vendorId) & (1 << (featureId - 1))) != 0
+				&& consentInfo.isFeatureOptioned(featureId);
+	}
+
+	/**
+	 * Evaluates every vendor of the vendor list at once. The vendor sections of the consent string are looked up
+	 * with the batch queries of {@link ConsentInfo}, and combined with the compiled declarations a word at a time;
+	 * only the vendors under a publisher restriction for the purpose are evaluated one by one.
+	 *
+	 * @param consentInfo
+	 *      a decoded consent string
+	 * @param purposeId
+	 *      Id of the purpose
+	 * @return a bit set, laid out like {@link java.util.BitSet#toLongArray()}, in which bit n tells whether the vendor
+	 *      with id n may process personal data for the purpose
+	 */
+	public long[] getPermittedVendors(ConsentInfo consentInfo, int purposeId) {
+		GlobalVendorList vendorList = vendorListFor(consentInfo);
+		if (vendorList == null || purposeId < 1 || purposeId > GlobalVendorList.MAX_PURPOSE_ID) {
+			return new long[0];
+		}
+		int[] vendorIds = vendorList.vendorIds();
+		long[] permitted = new long[(vendorIds.length + 63) >>> 6];
+		if (consentInfo.isPurposeConsented(purposeId)) {
+			long[] declared = vendorList.consentVendors(purposeId);
+			long[] consented = consentInfo.areVendorsConsented(vendorIds);
+			for (int w = 0; w < permitted.length; w++) {
+				permitted[w] |= declared[w] & consented[w];
+			}
+		}
+		if (purposeId != 1 && consentInfo.isPurposeLegitInterestEstablished(purposeId)) {
+			long[] consentDeclared = vendorList.consentVendors(purposeId);
+			long[] declared = vendorList.legIntVendors(purposeId);
+			long[] established = consentInfo.areVendorsLegitInterestEstablished(vendorIds);
+			for (int w = 0; w < permitted.length; w++) {
+				// a purpose declared under both legal bases is processed under consent
+				permitted[w] |= declared[w] & ~consentDeclared[w] & established[w];
+			}
+		}
+
+		// from the least restrictive type to the most, so that the most restrictive one applies to a vendor under
+		// several, as with ConsentInfo#getRestrictionType
+		for (int t = RESTRICTION_TYPES.length - 1; t >= 0; t--) {
+			PubRestrictionEntry.RestrictionType restrictionType = RESTRICTION_TYPES[t];
+			RangeSet restricted = consentInfo.getRestrictedVendors(purposeId, restrictionType);
+			for (int k = 0, kk = restricted.getRangeCount(); k < kk; k++) {
+				int end = restricted.getEnd(k);
+				for (int i = vendorList.lowerBound(restricted.getStart(k)); i < vendorIds.length
+						&& vendorIds[i] <= end; i++) {
+					if (isPermitted(consentInfo, vendorList, i, vendorIds[i], purposeId, restrictionType)) {
+						permitted[i >>> 6] |= 1L << i;
+					} else {
+						permitted[i >>> 6] &= ~(1L << i);
+					}
+				}
+			}
+		}
+
+		long[] byVendorId = new long[vendorIds.length == 0 ? 0 : (vendorIds[vendorIds.length - 1] >>> 6) + 1];
+		for (int w = 0; w < permitted.length; w++) {
+			for (long word = permitted[w]; word != 0; word &= word - 1) {
+				int vendorId = vendorIds[(w << 6) + Long.numberOfTrailingZeros(word)];
+				byVendorId[vendorId >>> 6] |= 1L << vendorId;
+			}
+		}
+		return byVendorId;
+	}
+
+	/**
+	 * @return the vendor list to evaluate a version 2 string against, or null for any other version
+	 * @throws IllegalStateException
+	 *      when no vendor list is available at all
+	 */
+	private GlobalVendorList vendorListFor(ConsentInfo consentInfo) {
+		if (consentInfo.getVersion() != 2) {
+			return null;
+		}
+		GlobalVendorList vendorList = getVendorList(consentInfo.getVendorListVersion());
+		if (vendorList == null) {
+			vendorList = latest;
+		}
+		if (vendorList == null) {
+			throw new IllegalStateException("no global vendor list has been registered");
+		}
+		return vendorList;
+	}
+
+	private static boolean isPermitted(ConsentInfo consentInfo, GlobalVendorList vendorList, int index, int vendorId,
+			int purposeId, PubRestrictionEntry.RestrictionType restriction) {
+		int purpose = 1 << (purposeId - 1);
+		boolean consentBasis = (vendorList.purposes(index) & purpose) != 0;
+		boolean legIntBasis = (vendorList.legIntPurposes(index) & purpose) != 0;
+		boolean flexible = (vendorList.flexiblePurposes(index) & purpose) != 0;
+		if (restriction == PubRestrictionEntry.RestrictionType.NOT_ALLOWED) {
+			return false;
+		} else if (restriction == PubRestrictionEntry.RestrictionType.REQUIRE_CONSENT && legIntBasis) {
+			if (!flexible) {
+				return false;
+			}
+			consentBasis = true;
+			legIntBasis = false;
+		} else if (restriction == PubRestrictionEntry.RestrictionType.REQUIRE_LEGIT_INTEREST && consentBasis
+				&& purposeId != 1) {
+			if (!flexible) {
+				return false;
+			}
+			consentBasis = false;
+			legIntBasis = true;
+		}
+		if (consentBasis) {
+			return consentInfo.isPurposeConsented(purposeId) && consentInfo.isVendorConsented(vendorId);
+		}
+		return legIntBasis && purposeId != 1 && consentInfo.isPurposeLegitInterestEstablished(purposeId)
+				&& consentInfo.isVendorLegitInterestEstablished(vendorId);
+	}
+}
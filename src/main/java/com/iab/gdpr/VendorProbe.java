@@ -0,0 +1,261 @@
+package com.iab.gdpr;
+
+/**
+ * Answers the questions a single vendor asks of a consent string, straight from the string: whether it is consented
+ * and has its legitimate interest established, and which of the first purposes are. See
+ * {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}.
+ *
+ * The core segment is walked just far enough to answer: a bit field section jumps straight to the bit of the vendor,
+ * and the last range section read stops at the first entry starting past the vendor, since CMPs write entries in
+ * increasing order. Nothing is allocated, and the answers are packed into an int read with the static accessors of
+ * this class. Only the bits the answers need are read, so a string that a full decode rejects may still be answered.
+ */
+public final class VendorProbe {
+	/**
+	 * What a string that cannot be probed is answered with: neither a version 1 nor a version 2 string, or one whose
+	 * bits run out, or hold a character outside of the url and filename safe base64 alphabet, before the answer.
+	 */
+	public static final int INVALID = -1;
+	/**
+	 * The number of purposes, from purpose 1 on, whose consent and legitimate interest are answered.
+	 */
+	public static final int PURPOSE_COUNT = 12;
+
+	// purpose consents in the low bits, purpose i in bit i - 1, then the purpose legitimate interests, the vendor
+	// answers and the version
+	private static final int PURPOSE_LEGIT_INTERESTS_SHIFT = PURPOSE_COUNT;
+	private static final int VENDOR_CONSENT = 1 << (2 * PURPOSE_COUNT);
+	private static final int VENDOR_LEGIT_INTEREST = VENDOR_CONSENT << 1;
+	private static final int VERSION_SHIFT = 2 * PURPOSE_COUNT + 2;
+
+	// walking a range section yields the offset past it, or'ed with this when the vendor was found
+	private static final long FOUND = 1L << Integer.SIZE;
+
+	private VendorProbe() {
+	}
+
+	/**
+	 * @param consentString
+	 *      a version 1 or version 2 consent string
+	 * @param vendorId
+	 *      the vendor to answer for
+	 * @return the packed answers, or {@link #INVALID}
+	 */
+	static int probe(CharSequence consentString, int vendorId) {
+		if (consentString == null || consentString.length() == 0) {
+			return INVALID;
+		}
+		switch (Base64Url.valueOf(consentString.charAt(0))) {
+		case 1:
+			return probeV1(consentString, vendorId);
+		case 2:
+			return probeV2(consentString, vendorId);
+		default:
+			return INVALID;
+		}
+	}
+
+	private static int probeV1(CharSequence s, int vendorId) {
+		long purposes = read(s, ConsentStringParser.PURPOSES_OFFSET, PURPOSE_COUNT);
+		long maxVendorId = read(s, ConsentStringParser.MAX_VENDOR_ID_OFFSET, ConsentStringParser.MAX_VENDOR_ID_SIZE);
+		long encodingType = read(s, ConsentStringParser.ENCODING_TYPE_OFFSET, ConsentStringParser.ENCODING_TYPE_SIZE);
+		if ((purposes | maxVendorId | encodingType) < 0) {
+			return INVALID;
+		}
+		boolean consented;
+		if (encodingType == ConsentStringParser.VENDOR_ENCODING_RANGE) {
+			long defaultConsent = read(s, ConsentStringParser.DEFAULT_CONSENT_OFFSET, 1);
+			if (defaultConsent < 0) {
+				return INVALID;
+			}
+			// with a consenting default the entries are refusals, and are all looked at, since stopping early on out
+			// of order entries would consent the vendor
+			long ranges = walkRanges(s, ConsentStringParser.NUM_ENTRIES_OFFSET, vendorId, defaultConsent == 0);
+			if (ranges < 0) {
+				return INVALID;
+			}
+			boolean present = (ranges & FOUND) != 0;
+			consented = defaultConsent != 0 ? !present && vendorId >= 1 && vendorId <= maxVendorId : present;
+		} else if (vendorId >= 1 && vendorId <= maxVendorId) {
+			// ids past the end of a truncated bit field are not consented, like ConsentStringParser has it
+			int bitLength = (Base64Url.dataEnd(s, 0, s.length()) * 6) & ~7;
+			int offset = ConsentStringParser.VENDOR_BITFIELD_OFFSET + vendorId - 1;
+			long bit = offset < bitLength ? read(s, offset, 1) : 0;
+			if (bit < 0) {
+				return INVALID;
+			}
+			consented = bit != 0;
+		} else {
+			consented = false;
+		}
+		return pack(1, purposes, 0, consented, false);
+	}
+
+	private static int probeV2(CharSequence s, int vendorId) {
+		long purposes = read(s, ConsentStringParserV2.PURPOSES_CONSENT_OFFSET, PURPOSE_COUNT);
+		long purposeLegitInterests = read(s, ConsentStringParserV2.PURPOSES_LI_TRANSPARENCY_OFFSET, PURPOSE_COUNT);
+		if ((purposes | purposeLegitInterests) < 0) {
+			return INVALID;
+		}
+		// the consents are walked through to reach the legitimate interests that follow them
+		long consents = walkSection(s, ConsentStringParserV2.VENDOR_CONSENTS_OFFSET, vendorId, false);
+		if (consents < 0) {
+			return INVALID;
+		}
+		long legitInterests = walkSection(s, (int) consents, vendorId, true);
+		if (legitInterests < 0) {
+			return INVALID;
+		}
+		return pack(2, purposes, purposeLegitInterests, (consents & FOUND) != 0, (legitInterests & FOUND) != 0);
+	}
+
+	/**
+	 * walks a version 2 range or bit field section
+	 *
+	 * @param stopEarly
+	 *      whether the offset past the section is not needed, so that the walk can stop once the vendor is answered
+	 * @return the offset past the section, or'ed with {@link #FOUND} when the section holds the vendor, or -1 when the
+	 *      section cannot be read
+	 */
+	private static long walkSection(CharSequence s, int offset, int vendorId, boolean stopEarly) {
+		long maxVendorId = read(s, offset, ConsentStringParserV2.VENDOR_ID_SIZE);
+		long rangeEncoding = read(s, offset + ConsentStringParserV2.VENDOR_ID_SIZE, 1);
+		if ((maxVendorId | rangeEncoding) < 0) {
+			return -1;
+		}
+		offset += ConsentStringParserV2.VENDOR_ID_SIZE + 1;
+		if (rangeEncoding != 0) {
+			return walkRanges(s, offset, vendorId, stopEarly);
+		}
+		long bit = vendorId >= 1 && vendorId <= maxVendorId ? read(s, offset + vendorId - 1, 1) : 0;
+		if (bit < 0) {
+			return -1;
+		}
+		return (offset + maxVendorId) | (bit != 0 ? FOUND : 0);
+	}
+
+	/**
+	 * walks the range entries of a section, from their count on, reading every id without collecting any
+	 *
+	 * @param stopEarly
+	 *      whether to stop at the entry holding the vendor, or at the first one starting past it
+	 * @return the offset past the entries, or'ed with {@link #FOUND} when they hold the vendor, or -1 when they cannot
+	 *      be read
+	 */
+	private static long walkRanges(CharSequence s, int offset, int vendorId, boolean stopEarly) {
+		long numEntries = read(s, offset, ConsentStringParserV2.NUM_ENTRIES_SIZE);
+		if (numEntries < 0) {
+			return -1;
+		}
+		offset += ConsentStringParserV2.NUM_ENTRIES_SIZE;
+		boolean found = false;
+		for (int i = 0; i < numEntries; i++) {
+			long range = read(s, offset, 1);
+			long startId = read(s, offset + 1, ConsentStringParserV2.VENDOR_ID_SIZE);
+			long endId = range > 0 ? read(s, offset + 1 + ConsentStringParserV2.VENDOR_ID_SIZE,
+					ConsentStringParserV2.VENDOR_ID_SIZE) : startId;
+			if ((range | startId | endId) < 0) {
+				return -1;
+			}
+			offset += 1 + (range > 0 ? 2 : 1) * ConsentStringParserV2.VENDOR_ID_SIZE;
+			if (startId <= vendorId && vendorId <= endId) {
+				found = true;
+				if (stopEarly) {
+					break;
+				}
+			} else if (stopEarly && startId > vendorId) {
+				break;
+			}
+		}
+		return offset | (found ? FOUND : 0);
+	}
+
+	/**
+	 * reads a field of the core segment
+	 *
+	 * @return the field, or -1 when it runs past the end of the string or over a character outside of the alphabet,
+	 *      such as the '.' ending the core segment or padding
+	 */
+	private static long read(CharSequence s, int offset, int size) {
+		if (offset < 0 || offset > s.length() * 6 - size) {
+			return -1;
+		}
+		return Base64Bits.read(s, 0, offset, size);
+	}
+
+	private static int pack(int version, long purposes, long purposeLegitInterests, boolean vendorConsented,
+			boolean vendorLegitInterest) {
+		// fields are read with purpose 1 in their most significant bit
+		int packed = (Integer.reverse((int) purposes) >>> (Integer.SIZE - PURPOSE_COUNT))
+				| (Integer.reverse((int) purposeLegitInterests) >>> (Integer.SIZE - PURPOSE_COUNT))
+						<< PURPOSE_LEGIT_INTERESTS_SHIFT
+				| version << VERSION_SHIFT;
+		if (vendorConsented) {
+			packed |= VENDOR_CONSENT;
+		}
+		if (vendorLegitInterest) {
+			packed |= VENDOR_LEGIT_INTEREST;
+		}
+		return packed;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @return whether the string could be probed
+	 */
+	public static boolean isValid(int probe) {
+		return probe >= 0;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @return the version of the string, or 0 when it could not be probed
+	 */
+	public static int getVersion(int probe) {
+		return probe >= 0 ? probe >>> VERSION_SHIFT : 0;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @return whether the probed vendor is consented
+	 */
+	public static boolean isVendorConsented(int probe) {
+		return probe >= 0 && (probe & VENDOR_CONSENT) != 0;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @return whether the probed vendor has its legitimate interest established, never for a version 1 string
+	 */
+	public static boolean isVendorLegitInterestEstablished(int probe) {
+		return probe >= 0 && (probe & VENDOR_LEGIT_INTEREST) != 0;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @param purposeId
+	 *      a purpose from 1 to {@value #PURPOSE_COUNT}
+	 * @return whether the purpose is consented, false for the purposes past {@value #PURPOSE_COUNT}
+	 */
+	public static boolean isPurposeConsented(int probe, int purposeId) {
+		return probe >= 0 && purposeId >= 1 && purposeId <= PURPOSE_COUNT
+				&& (probe & (1 << (purposeId - 1))) != 0;
+	}
+
+	/**
+	 * @param probe
+	 *      answers of {@link ConsentInfoDecoder#probeVendor(CharSequence, int)}
+	 * @param purposeId
+	 *      a purpose from 1 to {@value #PURPOSE_COUNT}
+	 * @return whether the purpose has its legitimate interest established, never for a version 1 string
+	 */
+	public static boolean isPurposeLegitInterestEstablished(int probe, int purposeId) {
+		return probe >= 0 && purposeId >= 1 && purposeId <= PURPOSE_COUNT
+				&& (probe & (1 << (PURPOSE_LEGIT_INTERESTS_SHIFT + purposeId - 1))) != 0;
+	}
+}
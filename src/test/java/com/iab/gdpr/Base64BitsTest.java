@@ -0,0 +1,62 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Base64BitsTest {
+
+	@Test
+	public void testMatchesDecodedBytes() throws ParseException {
+		Random random = new Random(3);
+		for (int byteCount = 0; byteCount < 40; byteCount++) {
+			byte[] bytes = new byte[byteCount];
+			random.nextBytes(bytes);
+			Bits expected = new Bits(bytes);
+			for (boolean padded : new boolean[] { true, false }) {
+				Base64.Encoder encoder = padded ? Base64.getUrlEncoder() : Base64.getUrlEncoder().withoutPadding();
+				Bits bits = new Base64Bits(encoder.encodeToString(bytes));
+				assertEquals(expected.length(), bits.length());
+				assertEquals(expected.getBinaryString(), bits.getBinaryString());
+				for (int size = 1; size <= Long.SIZE; size += 7) {
+					for (int start = 0; start + size <= bits.length(); start += 5) {
+						assertEquals(expected.getLong(start, size), bits.getLong(start, size));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testReadsSegmentInPlace() throws ParseException {
+		String segment = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[] { 1, 2, 3, 4, 5, 6 });
+		Bits bits = new Base64Bits("xx." + segment + ".yy", 3, 3 + segment.length());
+		assertEquals(48, bits.length());
+		assertEquals(0x010203040506L, bits.getLong(0, 48));
+	}
+
+	@Test
+	public void testRejectsMalformedInput() throws ParseException {
+		for (String malformed : new String[] { "AAAAA", "AAA==", "AA=" }) {
+			try {
+				new Base64Bits(malformed);
+				fail(malformed);
+			} catch (ParseException e) {
+				// expected
+			}
+		}
+		Bits bits = new Base64Bits("AA+A");
+		assertEquals(0, bits.getInt(0, 12));
+		try {
+			bits.getInt(6, 12);
+			fail();
+		} catch (ParseException e) {
+			assertEquals(6, e.getErrorOffset());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BitsTest {
+
+	@Test
+	public void testFieldsMatchBitByBitReads() throws ParseException {
+		byte[] bytes = new byte[29];
+		new Random(7).nextBytes(bytes);
+		Bits bits = new Bits(bytes);
+		String binary = bits.getBinaryString();
+		assertEquals(bytes.length * 8, binary.length());
+
+		for (int size = 1; size <= Long.SIZE; size++) {
+			for (int start = 0; start + size <= bits.length(); start++) {
+				long expected = Long.parseUnsignedLong(binary.substring(start, start + size), 2);
+				assertEquals(expected, bits.getLong(start, size));
+				if (size <= Integer.SIZE) {
+					assertEquals((int) expected, bits.getInt(start, size));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBitFieldMatchesBits() throws ParseException {
+		byte[] bytes = new byte[40];
+		new Random(11).nextBytes(bytes);
+		Bits bits = new Bits(bytes);
+		for (int start : new int[] { 0, 3, 64, 101 }) {
+			for (int size : new int[] { 1, 24, 63, 64, 65, 150 }) {
+				BitField field = bits.getBitField(start, size);
+				assertEquals(size, field.size());
+				assertFalse(field.contains(0));
+				assertFalse(field.contains(size + 1));
+				for (int id = 1; id <= size; id++) {
+					assertEquals(bits.getBit(start + id - 1), field.contains(id));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBigEndianBitOrder() throws ParseException {
+		Bits bits = new Bits(new byte[] { 4, (byte) 0x81 });
+		assertEquals("0000010010000001", bits.getBinaryString());
+		assertTrue(bits.getBit(5));
+		assertFalse(bits.getBit(4));
+		assertEquals(0x481, bits.getInt(0, 16));
+		assertEquals(0, bits.getInt(3, 0));
+	}
+
+	@Test
+	public void testReadBeyondLength() {
+		Bits bits = new Bits(new byte[] { 1, 2, 3 });
+		try {
+			bits.getInt(20, 6);
+			fail();
+		} catch (ParseException e) {
+			assertEquals(24, e.getErrorOffset());
+		}
+		try {
+			bits.getBit(24);
+			fail();
+		} catch (ParseException e) {
+			assertEquals(24, e.getErrorOffset());
+		}
+		try {
+			bits.getInt(0, 33);
+			fail();
+		} catch (ParseException e) {
+			assertEquals(0, e.getErrorOffset());
+		}
+	}
+}
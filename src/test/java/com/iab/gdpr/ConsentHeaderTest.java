@@ -0,0 +1,48 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ConsentHeaderTest {
+
+	@Test
+	public void testMatchesFullDecode() {
+		for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+			ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+			ConsentHeader header = ConsentInfoDecoder.decodeHeader(consentString);
+			assertEquals(consentInfo.getVersion(), header.getVersion());
+			assertEquals(consentInfo.getConsentRecordCreated(), header.getConsentRecordCreated());
+			assertEquals(consentInfo.getConsentRecordLastUpdated(), header.getConsentRecordLastUpdated());
+			assertEquals(consentInfo.getConsentRecordCreated().toEpochMilli() / 100,
+					header.getConsentRecordCreatedDeciseconds());
+			assertEquals(consentInfo.getCmpId(), header.getCmpId());
+			assertEquals(consentInfo.getCmpVersion(), header.getCmpVersion());
+			assertEquals(consentInfo.getConsentScreen(), header.getConsentScreen());
+			assertEquals(consentInfo.getVendorListVersion(), header.getVendorListVersion());
+			assertEquals(consentInfo.getTcfPolicyVersion(), header.getTcfPolicyVersion());
+		}
+	}
+
+	@Test
+	public void testOnlyReadsTheHeader() {
+		String consentString = ConsentStringEncoderTest.CONSENT_STRINGS[4];
+		// the vendor sections and the segments are not looked at
+		String header = consentString.substring(0, 23);
+		assertEquals(ConsentInfoDecoder.decodeHeader(consentString).getCmpId(),
+				ConsentInfoDecoder.decodeHeader(header + "*.*").getCmpId());
+		assertEquals(0, ConsentInfoDecoder.decode(header).getVersion());
+	}
+
+	@Test
+	public void testRejectsMalformedHeaders() {
+		String consentString = ConsentStringEncoderTest.CONSENT_STRINGS[4];
+		assertNull(ConsentInfoDecoder.decodeHeader(null));
+		assertNull(ConsentInfoDecoder.decodeHeader(""));
+		assertNull(ConsentInfoDecoder.decodeHeader("D" + consentString.substring(1)));
+		assertNull(ConsentInfoDecoder.decodeHeader(consentString.substring(0, 22)));
+		assertNull(ConsentInfoDecoder.decodeHeader(consentString.substring(0, 10) + "*" + consentString.substring(11)));
+		assertNull(ConsentInfoDecoder.decodeHeader(consentString.substring(0, 20) + "." + consentString.substring(21)));
+	}
+}
@@ -0,0 +1,75 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConsentInfoCacheTest {
+
+	private static final String V1 = "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ";
+	private static final String V2 = "COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA";
+	private static final String MALFORMED = "adasdassadvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA=";
+
+	@Test
+	public void testRepeatedLookupsAreServedFromTheCache() {
+		ConsentInfoCache cache = new ConsentInfoCache(1 << 20);
+		ConsentInfo first = cache.decode(V2);
+		assertEquals(2, first.getVersion());
+		assertSame(first, cache.decode(V2));
+		assertEquals(1, cache.decode(V1).getVersion());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void testSharedTableWithoutMemo() {
+		ConsentInfoCache cache = new ConsentInfoCache(1 << 20, 0, TimeUnit.SECONDS,
+				ConsentInfoCache::estimateRetainedSize, true, 0);
+		ConsentInfo first = cache.decode(V1);
+		assertSame(first, cache.decode(V1));
+		assertSame(first, cache.decode(V1));
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void testEvictionStaysWithinWeight() {
+		ConsentInfoCache cache = new ConsentInfoCache(16 * 2, 0, TimeUnit.SECONDS, consentInfo -> 1, true, 0);
+		for (int i = 0; i < 200; i++) {
+			cache.decode(V2 + i);
+		}
+		assertTrue(cache.getWeight() <= 32);
+		assertEquals(cache.getSize(), cache.getWeight());
+		assertEquals(200 - cache.getSize(), cache.getEvictionCount());
+	}
+
+	@Test
+	public void testExpiredEntriesAreDecodedAgain() {
+		ConsentInfoCache cache = new ConsentInfoCache(1 << 20, 1, TimeUnit.NANOSECONDS,
+				ConsentInfoCache::estimateRetainedSize, true, 8);
+		ConsentInfo first = cache.decode(V2);
+		assertNotSame(first, cache.decode(V2));
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testNegativeCaching() {
+		ConsentInfoCache cache = new ConsentInfoCache(1 << 20);
+		ConsentInfo stub = cache.decode(MALFORMED);
+		assertTrue(stub instanceof ConsentInfoStub);
+		assertSame(stub, cache.decode(MALFORMED));
+
+		ConsentInfoCache withoutStubs = new ConsentInfoCache(1 << 20, 0, TimeUnit.SECONDS,
+				ConsentInfoCache::estimateRetainedSize, false, 8);
+		withoutStubs.decode(MALFORMED);
+		withoutStubs.decode(MALFORMED);
+		assertEquals(2, withoutStubs.getMissCount());
+		assertEquals(0, withoutStubs.getSize());
+	}
+}
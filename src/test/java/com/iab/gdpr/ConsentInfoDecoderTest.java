@@ -2,12 +2,59 @@ package com.iab.gdpr;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 public class ConsentInfoDecoderTest {
 
+	@Test
+	public void testDecodeCharactersInPlace() throws Exception {
+		for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+			ConsentInfo expected = ConsentInfoDecoder.decode(consentString);
+			byte[] framed = ("x=" + consentString + "&").getBytes(StandardCharsets.US_ASCII);
+			ByteBuffer direct = ByteBuffer.allocateDirect(framed.length);
+			direct.put(framed);
+			direct.position(2).limit(framed.length - 1);
+
+			List<ConsentInfo> decoded = new ArrayList<ConsentInfo>();
+			decoded.add(ConsentInfoDecoder.decode(new StringBuilder(consentString)));
+			decoded.add(ConsentInfoDecoder.decodeAscii(direct));
+			decoded.add(ConsentInfoDecoder.decodeAscii(framed, 2, consentString.length()));
+			decoded.add(ConsentInfoDecoder.decodeLazily(AsciiChars.of(framed, 2, consentString.length())));
+			if (expected.getVersion() == 1) {
+				decoded.add(new ConsentStringParser(framed, 2, consentString.length()));
+			} else {
+				decoded.add(new ConsentStringParserV2(AsciiChars.of(direct)));
+			}
+			decoded.addAll(ConsentInfoDecoder.decodeAll(Collections.singletonList(AsciiChars.of(direct))));
+			MutableConsentInfo target = new MutableConsentInfo();
+			assertTrue(ConsentInfoDecoder.decodeInto(AsciiChars.of(direct), target));
+			decoded.add(target);
+			for (ConsentInfo actual : decoded) {
+				ConsentStringEncoderTest.assertSameConsent(expected, actual);
+				assertEquals(consentString, actual.getConsentString());
+			}
+			// the buffer is read with absolute gets only
+			assertEquals(2, direct.position());
+		}
+		assertEquals(0, ConsentInfoDecoder.decodeAscii(new byte[] { '!' }, 0, 1).getVersion());
+	}
+
 	@Test
 	public void testDecodeConsentInfoV1() {
 		String consentString = "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ";
@@ -43,4 +90,165 @@ public class ConsentInfoDecoderTest {
 		ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
 		assertTrue(consentInfo instanceof ConsentInfoStub);
 	}
+
+	@Test
+	public void testTryDecodeTellsWhyAndWhere() throws Exception {
+		String v1 = ConsentStringEncoderTest.CONSENT_STRINGS[3];
+		String v2 = ConsentStringEncoderTest.CONSENT_STRINGS[4];
+		DecodeResult result = ConsentInfoDecoder.tryDecode(v2);
+		assertTrue(result.isSuccess());
+		assertNull(result.getFailureReason());
+		assertEquals(-1, result.getErrorOffset());
+		ConsentStringEncoderTest.assertSameConsent(new ConsentStringParserV2(v2), result.getConsentInfo());
+
+		// the vendor list version is the first field past the 20 characters left
+		String[] consentStrings = { null, "Zabc", v1.substring(0, 20), v1.substring(0, 20) + "*AAA", v2 + ".I" };
+		DecodeFailureReason[] reasons = { DecodeFailureReason.EMPTY, DecodeFailureReason.UNSUPPORTED_VERSION,
+				DecodeFailureReason.TRUNCATED, DecodeFailureReason.MALFORMED_BASE64,
+				DecodeFailureReason.MALFORMED_SEGMENT };
+		int[] errorOffsets = { 0, 0, 120, 120, (v2.length() + 1) * 6 };
+		for (int i = 0; i < consentStrings.length; i++) {
+			result = ConsentInfoDecoder.tryDecode(consentStrings[i]);
+			assertFalse(result.isSuccess());
+			assertNull(result.getConsentInfo());
+			assertTrue(result.getConsentInfoOrStub() instanceof ConsentInfoStub);
+			assertEquals(reasons[i], result.getFailureReason());
+			assertEquals(errorOffsets[i], result.getErrorOffset());
+		}
+
+		// the throwing constructors report the same failures
+		try {
+			new ConsentStringParserV2(v2 + ".I");
+			fail();
+		} catch (DecodeException e) {
+			assertEquals(DecodeFailureReason.MALFORMED_SEGMENT, e.getReason());
+			assertEquals((v2.length() + 1) * 6, e.getErrorOffset());
+		}
+		try {
+			new ConsentStringParser(v1.substring(0, 20));
+			fail();
+		} catch (DecodeException e) {
+			assertEquals(DecodeFailureReason.TRUNCATED, e.getReason());
+			assertEquals(120, e.getErrorOffset());
+		}
+	}
+
+	@Test
+	public void testUrlSafeCharactersDispatchConsistently() {
+		// '-' and '_' only exist in the url safe alphabet the parsers decode with
+		String consentString = "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA";
+		assertEquals(1, ConsentInfoDecoder.getVersion(consentString));
+		assertTrue(ConsentInfoDecoder.decode(consentString) instanceof ConsentStringParser);
+
+		String standardAlphabet = "BONZt+1ONZt+1AHABBENAO+AAAAHCAEAASABmADYAOAAeA";
+		assertEquals(0, ConsentInfoDecoder.getVersion(standardAlphabet));
+		assertTrue(ConsentInfoDecoder.decode(standardAlphabet) instanceof ConsentInfoStub);
+	}
+
+	@Test
+	public void testEmptyConsentString() {
+		assertEquals(0, ConsentInfoDecoder.getVersion(""));
+		assertTrue(ConsentInfoDecoder.decode("") instanceof ConsentInfoStub);
+		assertTrue(ConsentInfoDecoder.decode(null) instanceof ConsentInfoStub);
+	}
+
+	@Test
+	public void testBatchVendorQueriesMatchSingleQueries() {
+		String[] consentStrings = { "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+				"BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+				// the same range section, listing the vendors that did not consent
+				"BN5lERiOMYEdiAKAWXEND1HoSBE6DAFAApAMgBkIDIgM0AgOJxAnQA==",
+				"BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+				"COvf4CzOvf4CzEqAiYENAPCYAAgAABIAAIAAASgAAQAAAFkQAQFkAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw.QFmQBAFiQLHAsgBZQCzA",
+				"COvouH3OvouH3IyAAAENAPCAAAAAAAAAAAAAAAAAAAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw",
+				"adasdassadvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA=" };
+		int[] ascending = new int[1000];
+		for (int i = 0; i < ascending.length; i++) {
+			ascending[i] = i;
+		}
+		int[] descending = new int[ascending.length];
+		for (int i = 0; i < descending.length; i++) {
+			descending[i] = ascending.length - 1 - i;
+		}
+		for (String consentString : consentStrings) {
+			MutableConsentInfo reused = new MutableConsentInfo();
+			ConsentInfoDecoder.decodeInto(consentString, reused);
+			for (ConsentInfo consentInfo : new ConsentInfo[] { ConsentInfoDecoder.decode(consentString),
+					ConsentInfoDecoder.decodeLazily(consentString), reused }) {
+				for (int[] vendorIds : new int[][] { ascending, descending }) {
+					BitSet consented = BitSet.valueOf(consentInfo.areVendorsConsented(vendorIds));
+					BitSet legitInterests = BitSet.valueOf(consentInfo.areVendorsLegitInterestEstablished(vendorIds));
+					BitSet disclosed = BitSet.valueOf(consentInfo.areVendorsDisclosed(vendorIds));
+					BitSet allowed = BitSet.valueOf(consentInfo.areVendorsAllowed(vendorIds));
+					for (int i = 0; i < vendorIds.length; i++) {
+						assertEquals(consentInfo.isVendorConsented(vendorIds[i]), consented.get(i));
+						assertEquals(consentInfo.isVendorLegitInterestEstablished(vendorIds[i]), legitInterests.get(i));
+						assertEquals(consentInfo.isVendorDisclosed(vendorIds[i]), disclosed.get(i));
+						assertEquals(consentInfo.isVendorAllowed(vendorIds[i]), allowed.get(i));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBatchDecodeKeepsInputOrder() throws Exception {
+		String[] samples = { "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+				"COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA", "BOEFEAyOEFEAyAHABDENAI4AAAB9vABAASA",
+				"not a consent string", null };
+		List<String> batch = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			batch.add(samples[i % samples.length]);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			assertDecodedInOrder(batch, ConsentInfoDecoder.decodeAll(batch));
+			assertDecodedInOrder(batch, ConsentInfoDecoder.decodeAll(batch, pool));
+			assertDecodedInOrder(batch, ConsentInfoDecoder.decodeAll(batch, threads));
+			assertDecodedInOrder(batch, ConsentInfoDecoder.decodeAllOnVirtualThreads(batch));
+			assertDecodedInOrder(batch.subList(0, 10), ConsentInfoDecoder.decodeAll(batch.subList(0, 10), pool));
+
+			ConsentInfo[] streamed = new ConsentInfo[batch.size()];
+			ConsentInfoDecoder.decodeAll(batch, threads, (fromIndex, decoded) -> {
+				for (int i = 0; i < decoded.size(); i++) {
+					assertNull(streamed[fromIndex + i]);
+					streamed[fromIndex + i] = decoded.get(i);
+				}
+			}).get(10, TimeUnit.SECONDS);
+			List<ConsentInfo> streamedList = new ArrayList<ConsentInfo>();
+			for (ConsentInfo consentInfo : streamed) {
+				streamedList.add(consentInfo);
+			}
+			assertDecodedInOrder(batch, streamedList);
+		} finally {
+			pool.shutdown();
+			threads.shutdown();
+		}
+	}
+
+	@Test
+	public void testSmallBatchStaysOnCallingThread() throws Exception {
+		List<String> batch = new ArrayList<String>();
+		for (int i = 0; i < ConsentInfoDecoder.MIN_PARALLEL_BATCH_SIZE - 1; i++) {
+			batch.add("BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ");
+		}
+		Thread caller = Thread.currentThread();
+		ConsentInfoDecoder.decodeAll(batch, ForkJoinPool.commonPool(), (fromIndex, decoded) -> {
+			assertSame(caller, Thread.currentThread());
+			assertEquals(0, fromIndex);
+			assertEquals(batch.size(), decoded.size());
+		}).get();
+	}
+
+	private static void assertDecodedInOrder(List<String> batch, List<ConsentInfo> decoded) {
+		assertEquals(batch.size(), decoded.size());
+		for (int i = 0; i < batch.size(); i++) {
+			ConsentInfo expected = ConsentInfoDecoder.decode(batch.get(i));
+			assertEquals(expected.getClass(), decoded.get(i).getClass());
+			assertEquals(expected.getConsentString(), decoded.get(i).getConsentString());
+			assertEquals(expected.getCmpId(), decoded.get(i).getCmpId());
+		}
+	}
 }
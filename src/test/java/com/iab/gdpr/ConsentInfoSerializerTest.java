@@ -0,0 +1,93 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ConsentInfoSerializerTest {
+	@Test
+	public void testRoundTrip() {
+		ConsentInfoSerializer serializer = new ConsentInfoSerializer();
+		MutableConsentInfo target = new MutableConsentInfo();
+		for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+			ConsentInfo decoded = ConsentInfoDecoder.decode(consentString);
+			byte[] serialized = serializer.serialize(decoded);
+
+			ByteBuffer in = ByteBuffer.wrap(serialized);
+			assertTrue(ConsentInfoSerializer.deserializeInto(in, target));
+			assertEquals(serialized.length, in.position());
+			ConsentStringEncoderTest.assertSameConsent(decoded, target);
+
+			BinaryConsentInfo binary = new BinaryConsentInfo(ByteBuffer.wrap(serialized));
+			assertEquals(serialized.length, binary.getSerializedLength());
+			ConsentStringEncoderTest.assertSameConsent(decoded, binary);
+			// the string is encoded again, so it may differ from the original one, but not its consent
+			ConsentStringEncoderTest.assertSameConsent(decoded, ConsentInfoDecoder.decode(binary.getConsentString()));
+		}
+	}
+
+	@Test
+	public void testCodesPastZRoundTrip() {
+		ConsentInfo decoded = ConsentInfoDecoder.decode(ConsentStringEncoderTest.CODES_PAST_Z);
+		BinaryConsentInfo binary = new BinaryConsentInfo(ByteBuffer.wrap(new ConsentInfoSerializer().serialize(decoded)));
+		ConsentStringEncoderTest.assertSameConsent(decoded, binary);
+		assertEquals(ConsentStringEncoderTest.CODES_PAST_Z, binary.getConsentString());
+	}
+
+	@Test
+	public void testSerializeIntoSharedBuffer() {
+		ConsentInfoSerializer serializer = new ConsentInfoSerializer();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+		String[] consentStrings = ConsentStringEncoderTest.CONSENT_STRINGS;
+		int[] offsets = new int[consentStrings.length];
+		for (int i = 0; i < consentStrings.length; i++) {
+			offsets[i] = buffer.position();
+			serializer.serialize(ConsentInfoDecoder.decode(consentStrings[i]), buffer);
+		}
+		buffer.flip();
+		for (int i = 0; i < consentStrings.length; i++) {
+			ConsentInfo decoded = ConsentInfoDecoder.decode(consentStrings[i]);
+			ConsentStringEncoderTest.assertSameConsent(decoded, new BinaryConsentInfo(buffer, offsets[i]));
+			assertEquals(offsets[i], buffer.position());
+			ConsentStringEncoderTest.assertSameConsent(decoded, ConsentInfoSerializer.deserialize(buffer));
+		}
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void testVendorSetsUseTheShorterBlock() {
+		ConsentInfoSerializer serializer = new ConsentInfoSerializer();
+		// a few ranges of vendors up to 700 as runs, a 36 vendor bit field as a bitmap
+		byte[] serialized = serializer.serialize(
+				ConsentInfoDecoder.decode(ConsentStringEncoderTest.CONSENT_STRINGS[7]));
+		int offset = ConsentInfoSerializer.HEADER_SIZE;
+		assertEquals(ConsentInfoSerializer.RUNS, serialized[offset]);
+		assertEquals(3, serialized[offset + 2]);
+		offset += ConsentInfoSerializer.ID_SET_HEADER_SIZE + 3 * 4;
+		assertEquals(ConsentInfoSerializer.BITMAP, serialized[offset]);
+		assertEquals(36, serialized[offset + 2]);
+	}
+
+	@Test
+	public void testMalformed() {
+		byte[] serialized = new ConsentInfoSerializer().serialize(
+				ConsentInfoDecoder.decode(ConsentStringEncoderTest.CONSENT_STRINGS[4]));
+		MutableConsentInfo target = new MutableConsentInfo();
+		ByteBuffer truncated = ByteBuffer.wrap(serialized, 0, serialized.length - 1);
+		assertFalse(ConsentInfoSerializer.deserializeInto(truncated, target));
+		assertEquals(0, truncated.position());
+		assertEquals(0, target.getVersion());
+
+		serialized[ConsentInfoSerializer.FORMAT_VERSION_OFFSET] = 42;
+		try {
+			new BinaryConsentInfo(ByteBuffer.wrap(serialized));
+			assertTrue(false);
+		} catch (IllegalArgumentException expected) {
+			// a format version this reader does not know
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConsentLogAnalyzerTest {
+	private static final String[] LINES = {
+			"BOEFEAyOEFEAyAHABDENAI4AAAB9vABAASA",
+			"COvf4CzOvf4CzEqAiYENAPCYAAgAABIAAIAAASgAAQAAAFkQAQFkAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw.QFmQBAFiQLHAsgBZQCzA",
+			"  BN5lERiOMYEdiAKAWXEND1HoSBE6DAFAApAMgBkIDIgM0AgOJxAnQA==\r",
+			"",
+			"COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggAMP___wAYeHh4ACBAAUAAQAFAASEgAwAEAAweABAAoEgAwAeAB8",
+			"not a consent string",
+			"COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAA" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReportMatchesDecodingLineByLine() throws IOException {
+		Path file = folder.newFile("consents.log").toPath();
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			for (String line : LINES) {
+				lines.add(line);
+			}
+		}
+		Files.write(file, lines, StandardCharsets.ISO_8859_1);
+
+		// chunks far smaller than the file, and than some of its lines
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ConsentLogAnalyzer.Report report;
+		try {
+			report = new ConsentLogAnalyzer(pool, 1000, 150).analyze(file);
+		} finally {
+			pool.shutdown();
+		}
+
+		long decoded = 0;
+		long[] versions = new long[3];
+		long[] failures = new long[3];
+		long[] cmpIds = new long[4096];
+		long[] purposes = new long[25];
+		long[] vendors = new long[1001];
+		for (String line : lines) {
+			String consentString = line.trim();
+			if (consentString.isEmpty()) {
+				continue;
+			}
+			MutableConsentInfo consentInfo = new MutableConsentInfo();
+			if (!ConsentInfoDecoder.decodeInto(consentString, consentInfo)) {
+				failures[ConsentInfoDecoder.getVersion(consentString)]++;
+				continue;
+			}
+			decoded++;
+			versions[consentInfo.getVersion()]++;
+			cmpIds[consentInfo.getCmpId()]++;
+			for (int purposeId = 1; purposeId <= 24; purposeId++) {
+				purposes[purposeId] += consentInfo.isPurposeConsented(purposeId) ? 1 : 0;
+			}
+			for (int vendorId = 1; vendorId <= 1000; vendorId++) {
+				vendors[vendorId] += consentInfo.isVendorConsented(vendorId) ? 1 : 0;
+			}
+		}
+
+		assertEquals(300, report.getLineCount());
+		assertEquals(decoded, report.getDecodedCount());
+		assertEquals(300 - decoded, report.getFailureCount());
+		for (int version = 0; version < 3; version++) {
+			assertEquals(versions[version], report.getVersionCount(version));
+			assertEquals(failures[version], report.getFailureCount(version));
+		}
+		for (int cmpId = 0; cmpId < cmpIds.length; cmpId++) {
+			assertEquals(cmpIds[cmpId], report.getCmpIdCount(cmpId));
+		}
+		for (int purposeId = 1; purposeId <= 24; purposeId++) {
+			assertEquals(purposes[purposeId], report.getPurposeConsentCount(purposeId));
+		}
+		for (int vendorId = 1; vendorId <= 1000; vendorId++) {
+			assertEquals(vendors[vendorId], report.getVendorConsentCount(vendorId));
+		}
+		assertEquals(0, report.getVendorConsentCount(1001));
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		ConsentLogAnalyzer.Report report = new ConsentLogAnalyzer().analyze(folder.newFile("empty.log").toPath());
+		assertEquals(0, report.getLineCount());
+	}
+}
@@ -0,0 +1,145 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ConsentStringEncoderTest {
+	static final String[] CONSENT_STRINGS = {
+			"BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA",
+			"BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+			"BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+			"BOEFEAyOEFEAyAHABDENAI4AAAB9vABAASA",
+			"COvf4CzOvf4CzEqAiYENAPCYAAgAABIAAIAAASgAAQAAAFkQAQFkAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAI"
+					+ "AgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw"
+					+ ".QFmQBAFiQLHAsgBZQCzA",
+			"COvouH3OvouH3IyAAAENAPCAAAAAAAAAAAAAAAAAAAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQB"
+					+ "AAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw",
+			"COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggAMP___wAYeHh4ACBAAUAAQAFAASEgAwAEAAweABAAoEgAwAeAB8",
+			"COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggFeQA4AAgC0ATiBLAFeABQ8PDw8PAAAA" };
+	// the language and publisher country codes of the sixth string, with their first letters past 'Z'
+	static final String CODES_PAST_Z = "COvouH3OvouH3IyAAA_NAPCAAAAAAAAAAH4AAAAAAAAA" + CONSENT_STRINGS[5].substring(44);
+
+	@Test
+	public void testRoundTrip() throws ParseException {
+		ConsentStringEncoder encoder = new ConsentStringEncoder();
+		for (String consentString : CONSENT_STRINGS) {
+			ConsentInfo decoded = ConsentInfoDecoder.decode(consentString);
+			String encoded = encoder.encode(decoded);
+			assertTrue(encoded, encoded.length() <= consentString.length());
+			ConsentInfo roundTripped = ConsentInfoDecoder.decode(encoded);
+			assertSameConsent(decoded, roundTripped);
+			// an encoded string encodes back to itself
+			assertEquals(encoded, encoder.encode(roundTripped));
+		}
+	}
+
+	// strings using the shorter vendor encodings, with each section ending at its highest vendor
+	@Test
+	public void testCanonicalStringsAreBitExact() {
+		ConsentStringEncoder encoder = new ConsentStringEncoder();
+		// the legitimate interest bit field of the last string ends at its highest vendor, 36, rather than at 40
+		for (String consentString : new String[] { CONSENT_STRINGS[3], CONSENT_STRINGS[5],
+				"COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggFeQA4AAgC0ATiBLAFeABI8PDw8PAAA" }) {
+			assertEquals(consentString, encoder.encode(ConsentInfoDecoder.decode(consentString)));
+		}
+	}
+
+	// the decoder reads any six bit value as a letter, so codes past 'Z' are written back as they were
+	@Test
+	public void testCodesPastZRoundTrip() {
+		ConsentStringEncoder encoder = new ConsentStringEncoder();
+		ConsentInfo decoded = ConsentInfoDecoder.decode(CODES_PAST_Z);
+		assertEquals(4045, decoded.getConsentLanguageCode());
+		assertEquals(4032, decoded.getPublisherCcCode());
+		assertEquals(CODES_PAST_Z, encoder.encode(decoded));
+		String v1ConsentString = CONSENT_STRINGS[3].substring(0, 18) + "_" + CONSENT_STRINGS[3].substring(19);
+		assertEquals(v1ConsentString, encoder.encode(ConsentInfoDecoder.decode(v1ConsentString)));
+	}
+
+	@Test
+	public void testShorterVendorEncodingIsChosen() {
+		ConsentStringEncoder encoder = new ConsentStringEncoder();
+		MutableConsentInfo consentInfo = new MutableConsentInfo();
+		// every vendor but one: a range section of the refused vendor under default consent
+		ConsentInfoDecoder.decodeInto("BOEFEAyOEFEAyAHABDENAI4AAAB9vABAASA", consentInfo);
+		String encoded = encoder.encode(consentInfo);
+		ConsentInfo decoded = ConsentInfoDecoder.decode(encoded);
+		assertSameConsent(consentInfo, decoded);
+
+		// scattered vendors: a bit field is shorter than one range entry per run of vendors
+		IdSet vendorConsents = ConsentInfoDecoder.decode(encoder.encode(ConsentInfoDecoder.decode(CONSENT_STRINGS[4])))
+				.getVendorConsents();
+		int rangeSize = 12;
+		for (int vendorId = 1; vendorId <= vendorConsents.getMaxId(); vendorId++) {
+			if (vendorConsents.contains(vendorId) && !vendorConsents.contains(vendorId - 1)) {
+				rangeSize += vendorConsents.contains(vendorId + 1) ? 33 : 17;
+			}
+		}
+		assertEquals(rangeSize < vendorConsents.getMaxId(), vendorConsents instanceof RangeSet);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedVersion() {
+		new ConsentStringEncoder().encode(new MutableConsentInfo());
+	}
+
+	static void assertSameConsent(ConsentInfo expected, ConsentInfo actual) {
+		assertEquals(expected.getVersion(), actual.getVersion());
+		assertEquals(expected.getConsentRecordCreated(), actual.getConsentRecordCreated());
+		assertEquals(expected.getConsentRecordLastUpdated(), actual.getConsentRecordLastUpdated());
+		assertEquals(expected.getConsentRecordCreatedDeciseconds(), actual.getConsentRecordCreatedDeciseconds());
+		assertEquals(expected.getConsentRecordLastUpdatedDeciseconds(),
+				actual.getConsentRecordLastUpdatedDeciseconds());
+		assertEquals(expected.getCmpId(), actual.getCmpId());
+		assertEquals(expected.getCmpVersion(), actual.getCmpVersion());
+		assertEquals(expected.getConsentScreen(), actual.getConsentScreen());
+		assertEquals(expected.getConsentLanguage(), actual.getConsentLanguage());
+		assertEquals(expected.getConsentLanguageCode(), actual.getConsentLanguageCode());
+		assertEquals(expected.getVendorListVersion(), actual.getVendorListVersion());
+		assertEquals(expected.getConsentedPurposes(), actual.getConsentedPurposes());
+		assertEquals(expected.getConsentedPurposesV2(), actual.getConsentedPurposesV2());
+		assertEquals(expected.getPurposeConsentsMask(), actual.getPurposeConsentsMask());
+		assertEquals(expected.getPurposeLegitInterestsMask(), actual.getPurposeLegitInterestsMask());
+		assertEquals(expected.getSpecialFeatureOptInsMask(), actual.getSpecialFeatureOptInsMask());
+		assertEquals(expected.getPubPurposeConsentsMask(), actual.getPubPurposeConsentsMask());
+		assertEquals(expected.getPubPurposeLegitInterestsMask(), actual.getPubPurposeLegitInterestsMask());
+		assertEquals(expected.getCustomPurposeConsentsMask(), actual.getCustomPurposeConsentsMask());
+		assertEquals(expected.getCustomPurposeLegitInterestsMask(), actual.getCustomPurposeLegitInterestsMask());
+		assertEquals(expected.getTcfPolicyVersion(), actual.getTcfPolicyVersion());
+		assertEquals(expected.isServiceSpecific(), actual.isServiceSpecific());
+		assertEquals(expected.useNonStandardStacks(), actual.useNonStandardStacks());
+		assertEquals(expected.isPurposeOneDisclosed(), actual.isPurposeOneDisclosed());
+		assertEquals(expected.getPublisherCc(), actual.getPublisherCc());
+		assertEquals(expected.getPublisherCcCode(), actual.getPublisherCcCode());
+		for (int id = 1; id <= 64; id++) {
+			assertEquals(expected.isFeatureOptioned(id), actual.isFeatureOptioned(id));
+			assertEquals(expected.isPurposeLegitInterestEstablished(id), actual.isPurposeLegitInterestEstablished(id));
+			assertEquals(expected.isPubPurposesConsented(id), actual.isPubPurposesConsented(id));
+			assertEquals(expected.isPubPurposeLegitInterestEstablished(id),
+					actual.isPubPurposeLegitInterestEstablished(id));
+			assertEquals(expected.isCustomPurposeConsented(id), actual.isCustomPurposeConsented(id));
+			assertEquals(expected.isCustomPurposeLegitInterestEstablished(id),
+					actual.isCustomPurposeLegitInterestEstablished(id));
+		}
+		for (int vendorId = 0; vendorId <= 3000; vendorId++) {
+			assertEquals(expected.isVendorConsented(vendorId), actual.isVendorConsented(vendorId));
+			assertEquals(expected.isVendorLegitInterestEstablished(vendorId),
+					actual.isVendorLegitInterestEstablished(vendorId));
+			assertEquals(expected.isVendorDisclosed(vendorId), actual.isVendorDisclosed(vendorId));
+			assertEquals(expected.isVendorAllowed(vendorId), actual.isVendorAllowed(vendorId));
+		}
+		List<PubRestrictionEntry> expectedRestrictions = expected.getPublisherRestrictions();
+		List<PubRestrictionEntry> actualRestrictions = actual.getPublisherRestrictions();
+		assertEquals(expectedRestrictions.size(), actualRestrictions.size());
+		for (int i = 0; i < expectedRestrictions.size(); i++) {
+			assertEquals(expectedRestrictions.get(i).getPurposeId(), actualRestrictions.get(i).getPurposeId());
+			assertEquals(expectedRestrictions.get(i).getType(), actualRestrictions.get(i).getType());
+			assertEquals(expectedRestrictions.get(i).getVendorIds(), actualRestrictions.get(i).getVendorIds());
+		}
+	}
+}
@@ -73,4 +73,27 @@ public class ConsentStringParserTest {
 		assertTrue(consent.isVendorConsented(27));
 	}
 
+	@Test
+	public void testRangeEntryDefaultConsent() throws ParseException {
+		// the range entries are the vendors without consent, up to the max vendor id of 112
+		String consentString = "BONZt-1ONZt-1AHABBENAO-AAAAHDAEAASABmADYAOAAeA";
+		ConsentStringParser consent = new ConsentStringParser(consentString);
+
+		assertTrue(consent.isVendorConsented(1));
+		assertFalse(consent.isVendorConsented(9));
+		assertFalse(consent.isVendorConsented(28));
+		assertTrue(consent.isVendorConsented(112));
+		// the default consent does not reach beyond the vendors of the string
+		assertFalse(consent.isVendorConsented(113));
+		assertFalse(consent.isVendorConsented(0));
+		assertFalse(consent.isVendorConsented(-1));
+		assertEquals(0b101L, consent.areVendorsConsented(new int[] { 1, 9, 112, 113, 0 })[0]);
+
+		MutableConsentInfo mutable = new MutableConsentInfo();
+		assertTrue(ConsentInfoDecoder.decodeInto(consentString, mutable));
+		assertTrue(mutable.isVendorConsented(112));
+		assertFalse(mutable.isVendorConsented(113));
+		assertFalse(mutable.isVendorConsented(0));
+	}
+
 }
@@ -3,12 +3,73 @@ package com.iab.gdpr;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.text.ParseException;
+import java.util.HashSet;
+import java.util.List;
 
 public class ConsentStringParserV2Test {
 
+	@Test
+	public void testPrimitiveHeaderAccessors() throws ParseException {
+		ConsentInfo consent = new ConsentStringParserV2("COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA");
+		assertEquals(consent.getConsentRecordCreated().toEpochMilli() / 100,
+				consent.getConsentRecordCreatedDeciseconds());
+		assertEquals(consent.getConsentRecordLastUpdated().toEpochMilli() / 100,
+				consent.getConsentRecordLastUpdatedDeciseconds());
+		assertEquals(('E' - 'A') << 6 | ('N' - 'A'), consent.getConsentLanguageCode());
+		assertEquals(0, consent.getPublisherCcCode());
+		// the strings come from a table, so asking again gives the same instance
+		assertSame(consent.getConsentLanguage(), consent.getConsentLanguage());
+		assertSame("EN", consent.getConsentLanguage());
+		assertEquals(TwoLetterCodes.NONE, new ConsentInfoStub().getConsentLanguageCode());
+		assertEquals(TwoLetterCodes.NONE, new MutableConsentInfo().getPublisherCcCode());
+	}
+
+	@Test
+	public void testMasksAgreeWithFlags() throws ParseException {
+		ConsentInfo consent = new ConsentStringParserV2("COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA");
+		ConsentInfo flags = new ConsentInfoStub() {
+			@Override
+			public boolean isPurposeConsented(int purposeId) {
+				return consent.isPurposeConsented(purposeId);
+			}
+
+			@Override
+			public boolean isPurposeLegitInterestEstablished(int purposeId) {
+				return consent.isPurposeLegitInterestEstablished(purposeId);
+			}
+
+			@Override
+			public boolean isFeatureOptioned(int featureId) {
+				return consent.isFeatureOptioned(featureId);
+			}
+		};
+		assertEquals(flags.getPurposeConsentsMask(), consent.getPurposeConsentsMask());
+		assertEquals(flags.getPurposeLegitInterestsMask(), consent.getPurposeLegitInterestsMask());
+		assertEquals(flags.getSpecialFeatureOptInsMask(), consent.getSpecialFeatureOptInsMask());
+		assertTrue(IdMasks.containsAll(consent.getPurposeConsentsMask(), IdMasks.of(5)));
+		assertFalse(IdMasks.containsAll(consent.getPurposeConsentsMask(), IdMasks.of(4, 5)));
+		assertTrue(IdMasks.containsAll(consent.getPurposeLegitInterestsMask(),
+				IdMasks.of(Purpose.PurposeV2.PERSONALISED_ADS, Purpose.PurposeV2.MEASURE_ADS)));
+
+		assertEquals(new HashSet<Purpose>(consent.getConsentedPurposes()), consent.getConsentedPurposesV2());
+		assertTrue(consent.getConsentedPurposesV2().contains(Purpose.PurposeV2.PERSONALISED_CONTENT_PROFILE));
+		// the views are shared rather than copied
+		assertSame(consent.getConsentedPurposes(), consent.getConsentedPurposes());
+		assertSame(consent.getConsentedPurposesV2(), consent.getConsentedPurposesV2());
+		try {
+			consent.getConsentedPurposes().clear();
+			fail("the purposes are a view");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testParseCoreString() throws ParseException {
 		String consentString = "COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA";
@@ -37,6 +98,9 @@ public class ConsentStringParserV2Test {
 		assertTrue(consent.isFeatureOptioned(1));
 		assertTrue(consent.isFeatureOptioned(SpecialFeature.SpecialFeatureV2.GEOLOCATION));
 		assertFalse(consent.isFeatureOptioned(2));
+		assertFalse(consent.isVendorDisclosed(18));
+		assertFalse(consent.isVendorAllowed(18));
+		assertFalse(consent.isPubPurposesConsented(1));
 	}
 
 	@Test
@@ -62,4 +126,82 @@ public class ConsentStringParserV2Test {
 		assertTrue(consent.isVendorDisclosed(42));
 		assertFalse(consent.isVendorDisclosed(43));
 	}
+
+	@Test
+	public void testLazyDecodingMatchesEager() throws ParseException {
+		String consentString = "COvf4CzOvf4CzEqAiYENAPCYAAgAABIAAIAAASgAAQAAAFkQAQFkAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw.QFmQBAFiQLHAsgBZQCzA";
+		ConsentInfo eager = new ConsentStringParserV2(consentString);
+		ConsentInfo lazy = new ConsentStringParserV2(consentString, true);
+		assertEquals(eager.getCmpId(), lazy.getCmpId());
+		assertEquals(eager.getConsentRecordCreated(), lazy.getConsentRecordCreated());
+		// query the later sections first so they are located without the earlier ones being decoded
+		assertEquals(eager.getPublisherRestrictions().size(), lazy.getPublisherRestrictions().size());
+		for (int id = 0; id <= 800; id++) {
+			assertEquals(eager.isVendorLegitInterestEstablished(id), lazy.isVendorLegitInterestEstablished(id));
+			assertEquals(eager.isVendorConsented(id), lazy.isVendorConsented(id));
+			assertEquals(eager.isVendorDisclosed(id), lazy.isVendorDisclosed(id));
+			assertEquals(eager.isVendorAllowed(id), lazy.isVendorAllowed(id));
+		}
+	}
+
+	@Test
+	public void testLazyDecodingDefersMalformedSections() throws ParseException {
+		// the core segment is cut short right after the vendor consent section header
+		String consentString = "COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAA";
+		ConsentInfo consent = new ConsentStringParserV2(consentString, true);
+		assertEquals(298, consent.getCmpId());
+		assertTrue(consent.isPurposeConsented(5));
+		assertFalse(consent.isVendorConsented(18));
+		assertTrue(consent.getPublisherRestrictions().isEmpty());
+		try {
+			new ConsentStringParserV2(consentString);
+			fail();
+		} catch (ParseException e) {
+			// expected, eager decoding reads every section
+		}
+	}
+
+	@Test
+	public void testRestrictionTypeLookups() throws ParseException {
+		// purpose 2: not allowed for vendors 1-5 and 9, consent required for 4-12 and 30-31; purpose 7: legitimate
+		// interest required for vendor 20
+		String consentString = "COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggAMP___wAYeHh4ACBAAUAAQAFAASEgAwAEAAweABAAoEgAwAeAB8";
+		ConsentInfo eager = new ConsentStringParserV2(consentString);
+		ConsentInfo lazy = new ConsentStringParserV2(consentString, true);
+		MutableConsentInfo mutable = new MutableConsentInfo();
+		assertTrue(ConsentInfoDecoder.decodeInto(consentString, mutable));
+		assertEquals(4, eager.getPublisherRestrictions().size());
+		assertEquals(PubRestrictionEntry.RestrictionType.NOT_ALLOWED, eager.getRestrictionType(2, 5));
+		assertEquals(PubRestrictionEntry.RestrictionType.REQUIRE_CONSENT, eager.getRestrictionType(2, 6));
+		assertEquals(PubRestrictionEntry.RestrictionType.REQUIRE_LEGIT_INTEREST, eager.getRestrictionType(7, 20));
+		assertNull(eager.getRestrictionType(2, 13));
+		assertNull(eager.getRestrictionType(3, 1));
+		assertEquals(2, eager.getRestrictedVendors(2, PubRestrictionEntry.RestrictionType.REQUIRE_CONSENT)
+				.getRangeCount());
+		assertTrue(eager.getRestrictedVendors(3, PubRestrictionEntry.RestrictionType.NOT_ALLOWED).isEmpty());
+
+		// the indexed lookups answer like the scan of the restriction list
+		ConsentInfo scan = new ConsentInfoStub() {
+			@Override
+			public List<PubRestrictionEntry> getPublisherRestrictions() {
+				return eager.getPublisherRestrictions();
+			}
+		};
+		for (int purposeId = 0; purposeId <= 8; purposeId++) {
+			for (int vendorId = 0; vendorId <= 40; vendorId++) {
+				assertEquals(scan.getRestrictionType(purposeId, vendorId), eager.getRestrictionType(purposeId, vendorId));
+				assertEquals(scan.getRestrictionType(purposeId, vendorId), lazy.getRestrictionType(purposeId, vendorId));
+				assertEquals(scan.getRestrictionType(purposeId, vendorId),
+						mutable.getRestrictionType(purposeId, vendorId));
+			}
+			for (PubRestrictionEntry.RestrictionType type : PubRestrictionEntry.RestrictionType.values()) {
+				for (int vendorId = 0; vendorId <= 40; vendorId++) {
+					assertEquals(scan.getRestrictedVendors(purposeId, type).contains(vendorId),
+							lazy.getRestrictedVendors(purposeId, type).contains(vendorId));
+					assertEquals(scan.getRestrictedVendors(purposeId, type).contains(vendorId),
+							mutable.getRestrictedVendors(purposeId, type).contains(vendorId));
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,116 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DecodeMetricsTest {
+	private final DecodeMetrics metrics = new DecodeMetrics();
+
+	@After
+	public void unregister() {
+		ConsentInfoDecoder.setListener(null);
+	}
+
+	@Test
+	public void testDecodedStrings() {
+		ConsentInfoDecoder.setListener(metrics);
+		String[] consentStrings = ConsentStringEncoderTest.CONSENT_STRINGS;
+		long segmentCount = 0;
+		long[] rangeCounts = new long[DecodeListener.Section.values().length];
+		long[] bitFieldCounts = new long[rangeCounts.length];
+		for (String consentString : consentStrings) {
+			ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+			segmentCount += consentString.split("\\.").length;
+			if (consentInfo.getVersion() == 2) {
+				count(consentInfo.getVendorConsents(), DecodeListener.Section.VENDOR_CONSENTS, rangeCounts,
+						bitFieldCounts);
+				count(consentInfo.getVendorLegitInterests(), DecodeListener.Section.VENDOR_LEGIT_INTERESTS,
+						rangeCounts, bitFieldCounts);
+				count(consentInfo.getDisclosedVendors(), DecodeListener.Section.DISCLOSED_VENDORS, rangeCounts,
+						bitFieldCounts);
+				count(consentInfo.getAllowedVendors(), DecodeListener.Section.ALLOWED_VENDORS, rangeCounts,
+						bitFieldCounts);
+			}
+		}
+		assertEquals(consentStrings.length, metrics.getDecodedCount());
+		assertEquals(4, metrics.getDecodedCount(1));
+		assertEquals(4, metrics.getDecodedCount(2));
+		assertEquals(0, metrics.getFailedCount());
+		assertEquals(segmentCount, metrics.getSegmentCount());
+		assertTrue(metrics.getPayloadBits() > 0);
+		// every version 1 string has its consents either range or bit field encoded
+		assertEquals(4 + rangeCounts[0] + bitFieldCounts[0],
+				metrics.getRangeCount(DecodeListener.Section.VENDOR_CONSENTS)
+						+ metrics.getBitFieldCount(DecodeListener.Section.VENDOR_CONSENTS));
+		for (DecodeListener.Section section : DecodeListener.Section.values()) {
+			if (section != DecodeListener.Section.VENDOR_CONSENTS) {
+				assertEquals(section.name(), rangeCounts[section.ordinal()], metrics.getRangeCount(section));
+				assertEquals(section.name(), bitFieldCounts[section.ordinal()], metrics.getBitFieldCount(section));
+			}
+		}
+		assertTrue(metrics.getRangeCount(DecodeListener.Section.VENDOR_LEGIT_INTERESTS) > 0);
+		assertTrue(metrics.getBitFieldCount(DecodeListener.Section.DISCLOSED_VENDORS) > 0);
+
+		// lazy decodes are reported the same way, without decoding the deferred sections
+		metrics.reset();
+		ConsentInfoDecoder.decodeLazily(consentStrings[4]);
+		assertEquals(1, metrics.getDecodedCount(2));
+		assertEquals(3, metrics.getSegmentCount());
+		assertEquals(1, metrics.getRangeCount(DecodeListener.Section.ALLOWED_VENDORS)
+				+ metrics.getBitFieldCount(DecodeListener.Section.ALLOWED_VENDORS));
+	}
+
+	private static void count(IdSet ids, DecodeListener.Section section, long[] rangeCounts, long[] bitFieldCounts) {
+		// the core sections are always there, while the segment ones read as an empty bit field when missing
+		boolean core = section == DecodeListener.Section.VENDOR_CONSENTS
+				|| section == DecodeListener.Section.VENDOR_LEGIT_INTERESTS;
+		if (ids instanceof RangeSet) {
+			rangeCounts[section.ordinal()]++;
+		} else if (core || ids != BitField.EMPTY) {
+			bitFieldCounts[section.ordinal()]++;
+		}
+	}
+
+	@Test
+	public void testFailureReasons() {
+		ConsentInfoDecoder.setListener(metrics);
+		String v1 = ConsentStringEncoderTest.CONSENT_STRINGS[3];
+		String v2 = ConsentStringEncoderTest.CONSENT_STRINGS[4];
+		String[] consentStrings = { null, "", "Zabc", "*abc", v1.substring(0, 20), v1.substring(0, 20) + "*AAA",
+				v2 + ".I" };
+		DecodeFailureReason[] reasons = { DecodeFailureReason.EMPTY, DecodeFailureReason.EMPTY,
+				DecodeFailureReason.UNSUPPORTED_VERSION, DecodeFailureReason.MALFORMED_BASE64,
+				DecodeFailureReason.TRUNCATED, DecodeFailureReason.MALFORMED_BASE64,
+				DecodeFailureReason.MALFORMED_SEGMENT };
+		MutableConsentInfo target = new MutableConsentInfo();
+		for (int i = 0; i < consentStrings.length; i++) {
+			metrics.reset();
+			assertEquals(0, ConsentInfoDecoder.decode(consentStrings[i]).getVersion());
+			assertFalse(ConsentInfoDecoder.decodeInto(consentStrings[i], target));
+			assertEquals(String.valueOf(i), 2, metrics.getFailedCount(reasons[i]));
+			assertEquals(0, metrics.getDecodedCount());
+		}
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		assertEquals(0, DecodeMetrics.bucket(0));
+		assertEquals(1, DecodeMetrics.bucket(1));
+		assertEquals(10, DecodeMetrics.bucket(1000));
+		assertEquals(63, DecodeMetrics.bucket(Long.MAX_VALUE));
+		assertEquals(0, metrics.getLatencyQuantile(0.5));
+
+		for (int i = 0; i < 99; i++) {
+			metrics.onDecoded(2, 1, 0, 0, 0, 1000);
+		}
+		metrics.onFailed(DecodeFailureReason.TRUNCATED, 1000000);
+		assertEquals(99, metrics.getLatencyHistogram()[10]);
+		assertEquals(1023, metrics.getLatencyQuantile(0.5));
+		assertEquals(1023, metrics.getLatencyQuantile(0.99));
+		assertEquals((1 << 20) - 1, metrics.getLatencyQuantile(1));
+	}
+}
@@ -0,0 +1,64 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IdSetInternerTest {
+	// the same vendor sections, with different timestamps and purposes
+	private static final String FIRST = "COztr8AOztr8AAHABBENAwCgAP4AAH4AAAggFeQA4AAgC0ATiBLAFeABQ8PDw8PAAAA";
+	private static final String SECOND = "COztu85Oztu85AHABBENAwCgAMAAAH4AAAggFeQA4AAgC0ATiBLAFeABQ8PDw8PAAAA";
+
+	@Test
+	public void testIdenticalSectionsAreShared() throws ParseException {
+		IdSetInterner interner = new IdSetInterner(1000);
+		ConsentInfo first = ConsentInfoDecoder.decode(FIRST, interner);
+		assertEquals(0, interner.getHitCount());
+		assertEquals(2, interner.getMissCount());
+		ConsentInfo second = ConsentInfoDecoder.decode(SECOND, interner);
+		assertEquals(2, interner.getHitCount());
+		assertEquals(2, interner.getSize());
+
+		ConsentInfo[] decoded = { first, second };
+		for (ConsentInfo interned : decoded) {
+			ConsentInfo plain = ConsentInfoDecoder.decode(interned.getConsentString());
+			assertEquals(plain.getConsentRecordCreated(), interned.getConsentRecordCreated());
+			assertEquals(plain.getConsentedPurposes(), interned.getConsentedPurposes());
+			for (int vendorId = 0; vendorId <= 800; vendorId++) {
+				assertEquals(plain.isVendorConsented(vendorId), interned.isVendorConsented(vendorId));
+				assertEquals(plain.isVendorLegitInterestEstablished(vendorId),
+						interned.isVendorLegitInterestEstablished(vendorId));
+			}
+		}
+		assertTrue(first.isVendorConsented(312));
+		assertTrue(second.isVendorLegitInterestEstablished(1));
+
+		// lazily decoded sections are interned as well
+		ConsentInfo lazy = new ConsentStringParserV2(SECOND, true, interner);
+		assertTrue(lazy.isVendorConsented(650));
+		assertEquals(3, interner.getHitCount());
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		IdSetInterner interner = new IdSetInterner(32, true);
+		// keeps the interned sets reachable
+		List<IdSet> sets = new ArrayList<IdSet>();
+		for (int i = 0; i < 1000; i++) {
+			BitField section = new BitField(new long[] { (long) i << 32 }, 40);
+			IdSet ids = new BitField(new long[] { (long) i << 40 }, 30);
+			sets.add(ids);
+			assertNull(interner.get(section));
+			assertSame(ids, interner.intern(section, ids));
+			assertSame(ids, interner.intern(new BitField(new long[] { (long) i << 32 }, 40), BitField.EMPTY));
+		}
+		assertTrue(interner.getSize() <= 32);
+	}
+}
@@ -0,0 +1,104 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class MutableConsentInfoTest {
+
+	private static final String[] CONSENT_STRINGS = {
+			"BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+			"BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+			"BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+			"COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA",
+			"COvf4CzOvf4CzEqAiYENAPCYAAgAABIAAIAAASgAAQAAAFkQAQFkAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw.QFmQBAFiQLHAsgBZQCzA",
+			"COvouH3OvouH3IyAAAENAPCAAAAAAAAAAAAAAAAAAAAA.IFoEUQQgAIQwgIwQABAEAAAAOIAACAIAAAAQAIAgEAACEAAAAAgAQBAAAAAAAGBAAgAAAAAAAFAAECAAAgAAQARAEQAAAAAJAAIAAgAAAYQEAAAQmAgBC3ZAYzUw" };
+
+	@Test
+	public void testMatchesParsersAcrossReuse() {
+		MutableConsentInfo target = new MutableConsentInfo();
+		// every string is decoded after every other one, so that nothing leaks from a previous decode
+		for (String previous : CONSENT_STRINGS) {
+			for (String consentString : CONSENT_STRINGS) {
+				assertTrue(ConsentInfoDecoder.decodeInto(previous, target));
+				assertTrue(ConsentInfoDecoder.decodeInto(consentString, target));
+				assertSameConsent(ConsentInfoDecoder.decode(consentString), target);
+			}
+		}
+	}
+
+	@Test
+	public void testMalformedStringReadsAsEmpty() {
+		MutableConsentInfo target = new MutableConsentInfo();
+		assertTrue(ConsentInfoDecoder.decodeInto(CONSENT_STRINGS[3], target));
+		assertFalse(ConsentInfoDecoder.decodeInto("COvf4CzOvf4CzEqAiYENAPC4AAgAABIAAIAA", target));
+		assertEquals(0, target.getVersion());
+		assertNull(target.getConsentString());
+		assertNull(target.getConsentRecordCreated());
+		assertFalse(target.isVendorConsented(18));
+		assertTrue(target.getConsentedPurposes().isEmpty());
+		assertFalse(ConsentInfoDecoder.decodeInto("adasdassadvf4CzEqAiYENAPC4AAgAABIAAIAAASgAAQAAAFkQAQFkAAA=", target));
+		assertFalse(ConsentInfoDecoder.decodeInto(null, target));
+	}
+
+	@Test
+	public void testPoolRecyclesInstances() {
+		MutableConsentInfoPool pool = new MutableConsentInfoPool(2);
+		MutableConsentInfo first = pool.acquire();
+		assertTrue(ConsentInfoDecoder.decodeInto(CONSENT_STRINGS[0], first));
+		pool.release(first);
+		MutableConsentInfo second = pool.acquire();
+		assertSame(first, second);
+		assertNull(second.getConsentString());
+		assertEquals(0, second.getVersion());
+	}
+
+	private static void assertSameConsent(ConsentInfo expected, ConsentInfo actual) {
+		assertEquals(expected.getConsentString(), actual.getConsentString());
+		assertEquals(expected.getVersion(), actual.getVersion());
+		assertEquals(expected.getConsentRecordCreated(), actual.getConsentRecordCreated());
+		assertEquals(expected.getConsentRecordLastUpdated(), actual.getConsentRecordLastUpdated());
+		assertEquals(expected.getCmpId(), actual.getCmpId());
+		assertEquals(expected.getCmpVersion(), actual.getCmpVersion());
+		assertEquals(expected.getConsentScreen(), actual.getConsentScreen());
+		assertEquals(expected.getConsentLanguage(), actual.getConsentLanguage());
+		assertEquals(expected.getVendorListVersion(), actual.getVendorListVersion());
+		assertEquals(expected.getConsentedPurposes(), actual.getConsentedPurposes());
+		assertEquals(expected.getTcfPolicyVersion(), actual.getTcfPolicyVersion());
+		assertEquals(expected.isServiceSpecific(), actual.isServiceSpecific());
+		assertEquals(expected.useNonStandardStacks(), actual.useNonStandardStacks());
+		assertEquals(expected.isPurposeOneDisclosed(), actual.isPurposeOneDisclosed());
+		assertEquals(expected.getPublisherCc(), actual.getPublisherCc());
+		for (int id = 0; id <= 64; id++) {
+			assertEquals(expected.isPurposeConsented(id), actual.isPurposeConsented(id));
+			assertEquals(expected.isPurposeLegitInterestEstablished(id), actual.isPurposeLegitInterestEstablished(id));
+			assertEquals(expected.isFeatureOptioned(id), actual.isFeatureOptioned(id));
+			assertEquals(expected.isPubPurposesConsented(id), actual.isPubPurposesConsented(id));
+			assertEquals(expected.isPubPurposeLegitInterestEstablished(id),
+					actual.isPubPurposeLegitInterestEstablished(id));
+			assertEquals(expected.isCustomPurposeConsented(id), actual.isCustomPurposeConsented(id));
+			assertEquals(expected.isCustomPurposeLegitInterestEstablished(id),
+					actual.isCustomPurposeLegitInterestEstablished(id));
+		}
+		for (int id = 0; id <= 1200; id++) {
+			assertEquals(expected.isVendorConsented(id), actual.isVendorConsented(id));
+			assertEquals(expected.isVendorLegitInterestEstablished(id), actual.isVendorLegitInterestEstablished(id));
+			assertEquals(expected.isVendorDisclosed(id), actual.isVendorDisclosed(id));
+			assertEquals(expected.isVendorAllowed(id), actual.isVendorAllowed(id));
+		}
+		List<PubRestrictionEntry> expectedRestrictions = expected.getPublisherRestrictions();
+		List<PubRestrictionEntry> actualRestrictions = actual.getPublisherRestrictions();
+		assertEquals(expectedRestrictions.size(), actualRestrictions.size());
+		for (int i = 0; i < expectedRestrictions.size(); i++) {
+			assertEquals(expectedRestrictions.get(i).getPurposeId(), actualRestrictions.get(i).getPurposeId());
+			assertEquals(expectedRestrictions.get(i).getType(), actualRestrictions.get(i).getType());
+			assertEquals(expectedRestrictions.get(i).getVendorIds(), actualRestrictions.get(i).getVendorIds());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapConsentStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWarmRestart() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("consents.store");
+		try (OffHeapConsentStore store = OffHeapConsentStore.create(file, 100, 64 * 1024)) {
+			for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+				assertTrue(store.put(consentString, ConsentInfoDecoder.decode(consentString)));
+			}
+			// storing a string again keeps its record
+			assertTrue(store.put(ConsentStringEncoderTest.CONSENT_STRINGS[0],
+					ConsentInfoDecoder.decode(ConsentStringEncoderTest.CONSENT_STRINGS[1])));
+			assertEquals(ConsentStringEncoderTest.CONSENT_STRINGS.length, store.size());
+		}
+		try (OffHeapConsentStore store = OffHeapConsentStore.open(file)) {
+			assertEquals(ConsentStringEncoderTest.CONSENT_STRINGS.length, store.size());
+			for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+				ConsentStringEncoderTest.assertSameConsent(ConsentInfoDecoder.decode(consentString),
+						store.get(consentString));
+			}
+			assertNull(store.get("BOEFEAyOEFEAyAHABDENAI4AAAB9vABAAAA"));
+			ConsentInfo decoded = store.getOrDecode("BOEFEAyOEFEAyAHABDENAI4AAAB9vABAAAA");
+			assertTrue(decoded instanceof BinaryConsentInfo);
+			assertEquals(ConsentStringEncoderTest.CONSENT_STRINGS.length + 1, store.size());
+			// strings that cannot be decoded are not stored
+			assertEquals(0, store.getOrDecode("not a consent string").getVersion());
+			assertEquals(ConsentStringEncoderTest.CONSENT_STRINGS.length + 1, store.size());
+		}
+	}
+
+	@Test
+	public void testGetOrDecodeAnyDecodableString() {
+		OffHeapConsentStore store = OffHeapConsentStore.allocate(16, 16 * 1024);
+		ConsentInfo decoded = store.getOrDecode(ConsentStringEncoderTest.CODES_PAST_Z);
+		assertTrue(decoded instanceof BinaryConsentInfo);
+		ConsentStringEncoderTest.assertSameConsent(ConsentInfoDecoder.decode(ConsentStringEncoderTest.CODES_PAST_Z),
+				decoded);
+		// a record that cannot be written is dropped, leaving the store as it was
+		try {
+			store.put("\u0100" + ConsentStringEncoderTest.CONSENT_STRINGS[0], decoded);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(1, store.size());
+		assertTrue(store.get(ConsentStringEncoderTest.CODES_PAST_Z) instanceof BinaryConsentInfo);
+	}
+
+	@Test
+	public void testFullStore() {
+		String consentString = ConsentStringEncoderTest.CONSENT_STRINGS[4];
+		ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+		// the keys all have the same length, so every record takes the same bytes
+		int recordSize = Integer.BYTES + consentString.length() + ".1000".length()
+				+ new ConsentInfoSerializer().serialize(consentInfo).length;
+		// slots for 64 strings per stripe, but room for the records of 3 and a half only
+		OffHeapConsentStore store = OffHeapConsentStore.allocate(16 * 64, 16L * (3 * recordSize + recordSize / 2));
+		int stored = 0;
+		for (int i = 1000; i < 2000; i++) {
+			if (store.put(consentString + "." + i, consentInfo)) {
+				stored++;
+			}
+		}
+		assertEquals(16 * 3, stored);
+		assertEquals(stored, store.size());
+	}
+
+	@Test
+	public void testConcurrentReadsAndWrites() throws Exception {
+		final OffHeapConsentStore store = OffHeapConsentStore.allocate(20000, 20000L * 200);
+		final String[] consentStrings = ConsentStringEncoderTest.CONSENT_STRINGS;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 4; t++) {
+				final int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 2000; i++) {
+						// every string under a distinct key, but the one of the first string, which all threads share
+						int index = i % consentStrings.length;
+						String key = index == 0 ? consentStrings[0] : consentStrings[index] + "." + thread + "." + i;
+						ConsentInfo expected = ConsentInfoDecoder.decode(consentStrings[index]);
+						assertTrue(store.put(key, expected));
+						ConsentInfo stored = store.get(key);
+						assertEquals(expected.getCmpId(), stored.getCmpId());
+						assertEquals(expected.isVendorConsented(i % 800), stored.isVendorConsented(i % 800));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1 + 4 * (2000 - 2000 / consentStrings.length), store.size());
+	}
+}
@@ -0,0 +1,80 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RangeSetTest {
+
+	@Test
+	public void testUnsortedOverlappingEntriesAreCoalesced() {
+		List<RangeEntry> entries = Arrays.asList(new RangeEntry(40, 50), new RangeEntry(3), new RangeEntry(10, 20),
+				new RangeEntry(15, 30), new RangeEntry(31), new RangeEntry(4, 4), new RangeEntry(9, 2));
+		RangeSet set = RangeSet.of(entries);
+
+		assertEquals(3, set.getRangeCount());
+		assertEquals(3, set.getStart(0));
+		assertEquals(4, set.getEnd(0));
+		assertEquals(10, set.getStart(1));
+		assertEquals(31, set.getEnd(1));
+		assertEquals(40, set.getStart(2));
+		assertEquals(50, set.getEnd(2));
+
+		for (int id = 0; id <= 60; id++) {
+			assertEquals(RangeEntry.isVendorIdInRange(id, entries), set.contains(id));
+		}
+	}
+
+	@Test
+	public void testWideRangeDoesNotMaterializeIds() {
+		RangeEntry entry = new RangeEntry(1, 65535);
+		RangeSet set = RangeSet.of(Arrays.asList(entry));
+		assertTrue(entry.containsVendorId(65535));
+		assertTrue(set.contains(1));
+		assertTrue(set.contains(32768));
+		assertTrue(set.contains(65535));
+		assertFalse(set.contains(0));
+		assertFalse(set.contains(65536));
+	}
+
+	@Test
+	public void testIsVendorIdInRangeFindsEveryEntry() {
+		// the previous half-search skipped over entries that were not at the probed indexes
+		List<RangeEntry> entries = Arrays.asList(new RangeEntry(1), new RangeEntry(2), new RangeEntry(3),
+				new RangeEntry(4), new RangeEntry(5));
+		for (int id = 1; id <= 5; id++) {
+			assertTrue(RangeEntry.isVendorIdInRange(id, entries));
+		}
+		assertFalse(RangeEntry.isVendorIdInRange(6, entries));
+		assertTrue(RangeSet.EMPTY.isEmpty());
+		assertFalse(RangeSet.EMPTY.contains(1));
+	}
+
+	@Test
+	public void testContainsEachMatchesContains() {
+		RangeSet set = RangeSet.of(Arrays.asList(new RangeEntry(3, 7), new RangeEntry(20), new RangeEntry(64, 130)));
+		int[] ascending = new int[150];
+		for (int i = 0; i < ascending.length; i++) {
+			ascending[i] = i - 5;
+		}
+		int[] shuffled = ascending.clone();
+		for (int i = shuffled.length - 1; i > 0; i--) {
+			int j = (i * 31) % (i + 1);
+			int tmp = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = tmp;
+		}
+		for (int[] ids : new int[][] { ascending, shuffled, { 20, 20, 20 }, {} }) {
+			BitSet found = BitSet.valueOf(set.containsEach(ids));
+			for (int i = 0; i < ids.length; i++) {
+				assertEquals(set.contains(ids[i]), found.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VendorEligibilityEngineTest {
+
+	private static final String VENDOR_LIST = "{\"gvlSpecificationVersion\": 2, \"vendorListVersion\": 7, "
+			+ "\"tcfPolicyVersion\": 2, \"lastUpdated\": \"2020-06-04T16:00:22Z\", \"purposes\": {}, \"vendors\": {"
+			+ "\"1\": {\"id\": 1, \"name\": \"Consent \\\"only\\\"\", \"purposes\": [1, 2], \"legIntPurposes\": [], "
+			+ "\"flexiblePurposes\": [], \"specialPurposes\": [1], \"features\": [], \"specialFeatures\": []},"
+			+ "\"2\": {\"id\": 2, \"name\": \"Flexible\", \"purposes\": [1], \"legIntPurposes\": [2, 3], "
+			+ "\"flexiblePurposes\": [2], \"specialFeatures\": []},"
+			+ "\"3\": {\"id\": 3, \"name\": \"Flexible consent\", \"purposes\": [3], \"legIntPurposes\": [], "
+			+ "\"flexiblePurposes\": [3]},"
+			+ "\"4\": {\"id\": 4, \"name\": \"Deleted\", \"purposes\": [1], \"deletedDate\": \"2020-06-01T00:00:00Z\"},"
+			+ "\"5\": {\"id\": 5, \"name\": \"Geo\", \"purposes\": [2], \"specialFeatures\": [1]},"
+			+ "\"70\": {\"id\": 70, \"name\": \"Rigid\", \"purposes\": [], \"legIntPurposes\": [4], "
+			+ "\"flexiblePurposes\": []}}}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testVendorListIsCompiledIntoMasks() throws ParseException {
+		GlobalVendorList vendorList = GlobalVendorList.parse(VENDOR_LIST);
+		assertEquals(7, vendorList.getVendorListVersion());
+		assertEquals(2, vendorList.getTcfPolicyVersion());
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3, 5, 70 }, vendorList.getVendorIds()));
+		assertFalse(vendorList.hasVendor(4));
+		assertEquals(0b11, vendorList.getPurposes(1));
+		assertEquals(0b110, vendorList.getLegIntPurposes(2));
+		assertEquals(0b10, vendorList.getFlexiblePurposes(2));
+		assertEquals(0b1, vendorList.getSpecialFeatures(5));
+		assertEquals(0, vendorList.getPurposes(4));
+	}
+
+	@Test
+	public void testLegalBasisRules() throws ParseException {
+		VendorEligibilityEngine engine = new VendorEligibilityEngine();
+		engine.register(GlobalVendorList.parse(VENDOR_LIST));
+		ConsentInfo consent = consent();
+
+		assertTrue(engine.isPermitted(consent, 1, 1));
+		assertTrue(engine.isPermitted(consent, 1, 2));
+		assertFalse(engine.isPermitted(consent, 1, 3));
+		// legitimate interest switched to consent by the publisher
+		assertTrue(engine.isPermitted(consent, 2, 2));
+		assertTrue(engine.isPermitted(consent, 2, 3));
+		// consent switched to legitimate interest, which the user objected to for this vendor
+		assertFalse(engine.isPermitted(consent, 3, 3));
+		// deleted vendor
+		assertFalse(engine.isPermitted(consent, 4, 1));
+		// not allowed by the publisher
+		assertFalse(engine.isPermitted(consent, 5, 2));
+		assertTrue(engine.isSpecialFeaturePermitted(consent, 5, 1));
+		assertFalse(engine.isSpecialFeaturePermitted(consent, 1, 1));
+		// legitimate interest that cannot be switched to the required consent
+		assertFalse(engine.isPermitted(consent, 70, 4));
+		assertFalse(engine.isPermitted(consent, 99, 1));
+
+		assertEquals(0b11, engine.getPermittedPurposes(consent, 1));
+		assertEquals(0b111, engine.getPermittedPurposes(consent, 2));
+		assertEquals(0, engine.getPermittedPurposes(consent, 70));
+	}
+
+	@Test
+	public void testAllVendorsMatchSingleVendors() throws ParseException {
+		VendorEligibilityEngine engine = new VendorEligibilityEngine();
+		engine.register(GlobalVendorList.parse(VENDOR_LIST));
+		ConsentInfo consent = consent();
+		for (int purposeId = 0; purposeId <= 6; purposeId++) {
+			BitSet permitted = BitSet.valueOf(engine.getPermittedVendors(consent, purposeId));
+			for (int vendorId = 0; vendorId <= 80; vendorId++) {
+				assertEquals(engine.isPermitted(consent, vendorId, purposeId), permitted.get(vendorId));
+			}
+		}
+	}
+
+	@Test
+	public void testDecodedRestrictionsMatchTheRestrictionList() throws ParseException {
+		VendorEligibilityEngine engine = new VendorEligibilityEngine();
+		engine.register(GlobalVendorList.parse(VENDOR_LIST));
+		ConsentInfo consent = consent();
+		MutableConsentInfo mutable = new MutableConsentInfo();
+		assertTrue(ConsentInfoDecoder.decodeInto(new ConsentStringEncoder().encode(consent), mutable));
+		ConsentInfo binary = new BinaryConsentInfo(ByteBuffer.wrap(new ConsentInfoSerializer().serialize(mutable)));
+		assertEquals(5, mutable.getPublisherRestrictions().size());
+
+		assertTrue(engine.isPermitted(mutable, 2, 2));
+		assertFalse(engine.isPermitted(mutable, 3, 3));
+		assertFalse(engine.isPermitted(mutable, 5, 2));
+		for (int purposeId = 0; purposeId <= 6; purposeId++) {
+			long[] permitted = engine.getPermittedVendors(consent, purposeId);
+			assertArrayEquals(permitted, engine.getPermittedVendors(mutable, purposeId));
+			assertArrayEquals(permitted, engine.getPermittedVendors(binary, purposeId));
+		}
+	}
+
+	@Test
+	public void testVendorListsAreLoadedByVersion() throws IOException, ParseException {
+		Path directory = folder.getRoot().toPath();
+		Files.write(directory.resolve("vendor-list-v7.json"), VENDOR_LIST.getBytes(StandardCharsets.UTF_8));
+		VendorEligibilityEngine engine = new VendorEligibilityEngine(directory);
+		assertNull(engine.getVendorList(6));
+		GlobalVendorList vendorList = engine.getVendorList(7);
+		assertEquals(7, vendorList.getVendorListVersion());
+		assertSame(vendorList, engine.getVendorList(7));
+		// a string of an unknown version is evaluated against the latest list
+		assertTrue(engine.isPermitted(consent(), 1, 1));
+	}
+
+	@Test
+	public void testMissingVersionsAreLookedUpAgain() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		VendorEligibilityEngine retrying = new VendorEligibilityEngine(directory, 0, TimeUnit.SECONDS);
+		VendorEligibilityEngine waiting = new VendorEligibilityEngine(directory);
+		assertNull(retrying.getVendorList(7));
+		assertNull(waiting.getVendorList(7));
+		Files.write(directory.resolve("vendor-list-v7.json"), VENDOR_LIST.getBytes(StandardCharsets.UTF_8));
+		assertEquals(7, retrying.getVendorList(7).getVendorListVersion());
+		// the miss is remembered until the retry delay has passed
+		assertNull(waiting.getVendorList(7));
+	}
+
+	@Test(expected = ParseException.class)
+	public void testMalformedVendorList() throws ParseException {
+		GlobalVendorList.parse("{\"vendorListVersion\": 7, \"vendors\": {\"1\": {\"id\": 1,}}}");
+	}
+
+	/**
+	 * purposes 1 to 3 consented and 2 to 4 not objected to, vendors 1, 2, 3 and 5 consented and vendor 2 not objected
+	 * to, with publisher restrictions switching vendor 2 to consent and vendor 3 to legitimate interest
+	 */
+	private static ConsentInfo consent() {
+		return new ConsentInfoStub() {
+			@Override
+			public int getVersion() {
+				return 2;
+			}
+
+			@Override
+			public int getVendorListVersion() {
+				return 9;
+			}
+
+			@Override
+			public boolean isPurposeConsented(int purposeId) {
+				return purposeId >= 1 && purposeId <= 3;
+			}
+
+			@Override
+			public boolean isPurposeLegitInterestEstablished(int purposeId) {
+				return purposeId >= 2 && purposeId <= 4;
+			}
+
+			@Override
+			public boolean isVendorConsented(int vendorId) {
+				return vendorId == 1 || vendorId == 2 || vendorId == 3 || vendorId == 5;
+			}
+
+			@Override
+			public boolean isVendorLegitInterestEstablished(int vendorId) {
+				return vendorId == 2 || vendorId == 70;
+			}
+
+			@Override
+			public IdSet getVendorConsents() {
+				return new RangeSet.Builder(2).add(1, 3).add(5, 5).build();
+			}
+
+			@Override
+			public IdSet getVendorLegitInterests() {
+				return new RangeSet.Builder(2).add(2, 2).add(70, 70).build();
+			}
+
+			@Override
+			public boolean isFeatureOptioned(int featureId) {
+				return featureId == 1;
+			}
+
+			@Override
+			public List<PubRestrictionEntry> getPublisherRestrictions() {
+				List<PubRestrictionEntry> restrictions = new ArrayList<PubRestrictionEntry>();
+				restrictions.add(new PubRestrictionEntry(2, PubRestrictionEntry.RestrictionType.REQUIRE_CONSENT,
+						Arrays.asList(new RangeEntry(2))));
+				restrictions.add(new PubRestrictionEntry(3,
+						PubRestrictionEntry.RestrictionType.REQUIRE_LEGIT_INTEREST, Arrays.asList(new RangeEntry(3))));
+				restrictions.add(new PubRestrictionEntry(2, PubRestrictionEntry.RestrictionType.NOT_ALLOWED,
+						Arrays.asList(new RangeEntry(4, 6))));
+				restrictions.add(new PubRestrictionEntry(4, PubRestrictionEntry.RestrictionType.REQUIRE_CONSENT,
+						Arrays.asList(new RangeEntry(60, 80))));
+				// legitimate interest can never apply to purpose 1, so this one is ignored
+				restrictions.add(new PubRestrictionEntry(1,
+						PubRestrictionEntry.RestrictionType.REQUIRE_LEGIT_INTEREST, Arrays.asList(new RangeEntry(1))));
+				return restrictions;
+			}
+		};
+	}
+}
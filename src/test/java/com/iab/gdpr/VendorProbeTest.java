@@ -0,0 +1,97 @@
+package com.iab.gdpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+
+import org.junit.Test;
+
+public class VendorProbeTest {
+
+	@Test
+	public void testMatchesFullDecode() {
+		for (String consentString : ConsentStringEncoderTest.CONSENT_STRINGS) {
+			ConsentInfo consentInfo = ConsentInfoDecoder.decode(consentString);
+			for (int vendorId = -1; vendorId <= 3000; vendorId++) {
+				int probe = ConsentInfoDecoder.probeVendor(consentString, vendorId);
+				assertTrue(VendorProbe.isValid(probe));
+				assertEquals(consentInfo.getVersion(), VendorProbe.getVersion(probe));
+				assertEquals(consentString + " " + vendorId, consentInfo.isVendorConsented(vendorId),
+						VendorProbe.isVendorConsented(probe));
+				assertEquals(consentString + " " + vendorId, consentInfo.isVendorLegitInterestEstablished(vendorId),
+						VendorProbe.isVendorLegitInterestEstablished(probe));
+			}
+			int probe = ConsentInfoDecoder.probeVendor(consentString, 1);
+			for (int purposeId = 0; purposeId <= VendorProbe.PURPOSE_COUNT + 1; purposeId++) {
+				boolean answered = purposeId >= 1 && purposeId <= VendorProbe.PURPOSE_COUNT;
+				assertEquals(answered && consentInfo.isPurposeConsented(purposeId),
+						VendorProbe.isPurposeConsented(probe, purposeId));
+				assertEquals(answered && consentInfo.isPurposeLegitInterestEstablished(purposeId),
+						VendorProbe.isPurposeLegitInterestEstablished(probe, purposeId));
+			}
+		}
+	}
+
+	@Test
+	public void testStopsAtTheVendor() throws ParseException {
+		String consentString = ConsentStringEncoderTest.CONSENT_STRINGS[6];
+		String header = new Base64Bits(consentString).getBinaryString().substring(0,
+				ConsentStringParserV2.VENDOR_CONSENTS_OFFSET);
+		// no consents, then legitimate interests for 5, 10-20 and 30, cut before the last entry
+		String bits = header + bits(0, 16) + "0" + bits(20, 16) + "1" + bits(3, 12) + "0" + bits(5, 16) + "1"
+				+ bits(10, 16) + bits(20, 16);
+		String cut = toBase64(bits);
+		assertEquals(0, ConsentInfoDecoder.decode(cut).getVersion());
+
+		int probe = ConsentInfoDecoder.probeVendor(cut, 15);
+		assertTrue(VendorProbe.isVendorLegitInterestEstablished(probe));
+		assertFalse(VendorProbe.isVendorConsented(probe));
+		probe = ConsentInfoDecoder.probeVendor(cut, 7);
+		assertTrue(VendorProbe.isValid(probe));
+		assertFalse(VendorProbe.isVendorLegitInterestEstablished(probe));
+		// the answer for 25 lies in the entry that was cut
+		assertFalse(VendorProbe.isValid(ConsentInfoDecoder.probeVendor(cut, 25)));
+
+		String whole = toBase64(bits + "0" + bits(30, 16) + bits(0, 12));
+		assertTrue(ConsentInfoDecoder.decode(whole).isVendorLegitInterestEstablished(30));
+		assertTrue(VendorProbe.isVendorLegitInterestEstablished(ConsentInfoDecoder.probeVendor(whole, 30)));
+	}
+
+	private static String bits(int value, int size) {
+		StringBuilder s = new StringBuilder(size);
+		for (int i = size - 1; i >= 0; i--) {
+			s.append((value >>> i & 1) != 0 ? '1' : '0');
+		}
+		return s.toString();
+	}
+
+	private static String toBase64(String bits) {
+		// whole bytes only are decoded
+		while (bits.length() % 8 != 0) {
+			bits += "0";
+		}
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < bits.length(); i += 6) {
+			String sixBits = (bits.substring(i, Math.min(i + 6, bits.length())) + "00000").substring(0, 6);
+			s.append("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+					.charAt(Integer.parseInt(sixBits, 2)));
+		}
+		return s.toString();
+	}
+
+	@Test
+	public void testInvalidStrings() {
+		String v2 = ConsentStringEncoderTest.CONSENT_STRINGS[6];
+		for (String consentString : new String[] { null, "", "Zabc", v2.substring(0, 30), "*" + v2.substring(1),
+				v2.substring(0, 30) + "." + v2.substring(31) }) {
+			int probe = ConsentInfoDecoder.probeVendor(consentString, 1);
+			assertEquals(VendorProbe.INVALID, probe);
+			assertFalse(VendorProbe.isValid(probe));
+			assertEquals(0, VendorProbe.getVersion(probe));
+			assertFalse(VendorProbe.isVendorConsented(probe));
+			assertFalse(VendorProbe.isPurposeConsented(probe, 1));
+		}
+	}
+}